@@ -0,0 +1,168 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.DynamicQuery;
+import rafael.alcocer.caldera.jdbc.arrow.ArrowQueryReader;
+import rafael.alcocer.caldera.jdbc.batch.BatchInserter;
+import rafael.alcocer.caldera.jdbc.batch.ParallelInserter;
+import rafael.alcocer.caldera.jdbc.binding.BindingPlanCache;
+import rafael.alcocer.caldera.jdbc.bulk.BulkLoader;
+import rafael.alcocer.caldera.jdbc.cache.QueryResultCache;
+import rafael.alcocer.caldera.jdbc.delete.BulkDeleter;
+import rafael.alcocer.caldera.jdbc.export.ResultSetExporter;
+import rafael.alcocer.caldera.jdbc.keyed.KeyedRowWriter;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+import rafael.alcocer.caldera.jdbc.scan.ParallelScanner;
+import rafael.alcocer.caldera.jdbc.streaming.QueryStreamer;
+import rafael.alcocer.caldera.jdbc.upsert.Upserter;
+
+/**
+ * An in-memory H2 database in PostgreSQL mode with the employees table of
+ * queries.sql, and the DynamicQuery classes wired by hand, without Spring.
+ * The operations are measured in a SimpleMeterRegistry, as in the application.
+ *
+ * Every fork gets its own database.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    public static final String TABLE_NAME = "employees";
+
+    /** Rows loaded before the benchmarks start. */
+    public static final int SEED_ROWS = 1000;
+
+    public DbConfig dbConfig;
+    public HikariDataSource dataSource;
+    public TableMetadataCache tableMetadataCache;
+    public BindingPlanCache bindingPlanCache;
+    public BatchInserter batchInserter;
+    public DynamicQuery dynamicQuery;
+    public ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dbConfig = new DbConfig();
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("benchmarks");
+        config.setJdbcUrl("jdbc:h2:mem:benchmarks;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setMaximumPoolSize(4);
+        dataSource = new HikariDataSource(config);
+
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE IF NOT EXISTS employees
+                    (
+                        id SERIAL PRIMARY KEY,
+                        user_name CHARACTER VARYING(100) NOT NULL,
+                        name CHARACTER VARYING(100) NOT NULL,
+                        email CHARACTER VARYING(100) NOT NULL,
+                        phone_number CHARACTER VARYING(30),
+                        active BOOLEAN NOT NULL,
+                        created TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )
+                    """);
+        }
+
+        QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry(), dbConfig);
+
+        // No replicas, every connection comes from the one database
+        ReplicaRouter replicaRouter = new ReplicaRouter(dataSource, List.of(), Duration.ZERO, Duration.ZERO);
+
+        tableMetadataCache = new TableMetadataCache(replicaRouter, queryMetrics, dbConfig);
+        bindingPlanCache = new BindingPlanCache(dbConfig);
+        batchInserter = new BatchInserter(dataSource, tableMetadataCache, queryMetrics);
+
+        QueryStreamer queryStreamer = new QueryStreamer(dataSource, bindingPlanCache, queryMetrics, dbConfig);
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        dynamicQuery = new DynamicQuery(dataSource, replicaRouter, tableMetadataCache, bindingPlanCache, batchInserter,
+                new ParallelInserter(batchInserter, dbConfig, executor),
+                new BulkLoader(dataSource, tableMetadataCache, batchInserter, queryMetrics, dbConfig),
+                new Upserter(dataSource, tableMetadataCache, queryMetrics),
+                new KeyedRowWriter(dataSource, tableMetadataCache, queryMetrics, dbConfig),
+                new BulkDeleter(dataSource, tableMetadataCache, bindingPlanCache, queryMetrics), queryStreamer,
+                new ParallelScanner(dataSource, tableMetadataCache, queryStreamer, dbConfig),
+                new ResultSetExporter(queryStreamer, dbConfig), new ArrowQueryReader(queryStreamer, dbConfig),
+                new QueryResultCache(dbConfig), queryMetrics, dbConfig);
+
+        truncate();
+        dynamicQuery.insertMultipleRows(TABLE_NAME, rows(1, SEED_ROWS));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        dataSource.close();
+    }
+
+    /**
+     * Empties the table and restarts its ids.
+     */
+    public void truncate() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+                PreparedStatement ps = conn.prepareStatement("TRUNCATE TABLE employees RESTART IDENTITY")) {
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * @return rows for the insertable columns, like
+     *         ExecuteDynamicQuery.generateParameters()
+     */
+    public static List<List<?>> rows(int first, int count) {
+        List<List<?>> rows = new ArrayList<>(count);
+
+        for (int i = first; i < first + count; i++) {
+            rows.add(row(i));
+        }
+
+        return rows;
+    }
+
+    public static List<?> row(int i) {
+        return List.of("username" + i, "Name" + i, "email" + i + "@test.com", "515-123-" + (1000 + i % 9000),
+                i % 2 == 0);
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so every benchmark also reports
+ * the bytes allocated per operation (gc.alloc.rate.norm), writes the results
+ * to target/jmh-result.csv and compares them with the baseline.
+ *
+ * The arguments are the usual JMH ones. The baseline is src/jmh/baseline.csv,
+ * or -Djmh.baseline; to make a new one copy target/jmh-result.csv over it.
+ * src/jmh/baseline.csv was recorded with -f 3 -wi 5 -w 1s -i 5 -r 1s, fewer
+ * forks or iterations give error margins too wide to compare.
+ *
+ * A difference is marked as a regression when it is above -Djmh.threshold
+ * percent, 10 by default, and the confidence intervals of the two scores
+ * (score +- score error) don't overlap, so noise isn't reported.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public class BenchmarkRunner {
+
+    private static final Path RESULT = Path.of("target", "jmh-result.csv");
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            builder.include(BenchmarkRunner.class.getPackageName() + ".*Benchmark");
+        }
+
+        Options options = builder
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("-Dlogback.configurationFile=logback-benchmark.xml")
+                .resultFormat(ResultFormatType.CSV)
+                .result(RESULT.toString())
+                .build();
+
+        new Runner(options).run();
+
+        Path baseline = Path.of(System.getProperty("jmh.baseline", "src/jmh/baseline.csv"));
+        double threshold = Double.parseDouble(System.getProperty("jmh.threshold", "10"));
+
+        if (Files.exists(baseline)) {
+            compare(read(baseline), read(RESULT), threshold);
+        } else {
+            System.out.println("No baseline in " + baseline);
+        }
+    }
+
+    private static void compare(Map<String, Score> baseline, Map<String, Score> current, double threshold) {
+        System.out.println();
+        System.out.printf("%-90s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+
+        current.forEach((name, score) -> {
+            Score before = baseline.get(name);
+
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %9s %s%n", name, "-", score.value(), "-", score.unit());
+
+                return;
+            }
+
+            double change = before.value() == 0 ? 0 : (score.value() - before.value()) / before.value() * 100;
+            // Time and bytes per operation get worse when they grow, throughput when it falls
+            boolean worse = score.unit().endsWith("/op")
+                    ? change > threshold && score.low() > before.high()
+                    : change < -threshold && score.high() < before.low();
+
+            System.out.printf("%-90s %14.3f %14.3f %8.1f%% %s%s%n", name, before.value(), score.value(), change,
+                    score.unit(), worse ? "  REGRESSION" : "");
+        });
+    }
+
+    /**
+     * Reads the primary scores and the allocations per operation of a JMH CSV,
+     * by benchmark and parameters.
+     */
+    private static Map<String, Score> read(Path csv) throws IOException {
+        List<String> lines = Files.readAllLines(csv);
+        Map<String, Score> scores = new LinkedHashMap<>();
+
+        if (lines.isEmpty()) {
+            return scores;
+        }
+
+        List<String> header = split(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> fields = split(line);
+            String name = fields.get(benchmark);
+
+            if (name.contains(":") && !name.endsWith("gc.alloc.rate.norm")) {
+                continue;
+            }
+
+            StringBuilder key = new StringBuilder(name);
+
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && i < fields.size() && !fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                }
+            }
+
+            scores.put(key.toString(), new Score(Double.parseDouble(fields.get(score)),
+                    error < 0 ? 0 : parseError(fields.get(error)), fields.get(unit)));
+        }
+
+        return scores;
+    }
+
+    /**
+     * A single measurement has no error, JMH writes NaN.
+     */
+    private static double parseError(String error) {
+        double value = Double.parseDouble(error);
+
+        return Double.isNaN(value) ? 0 : value;
+    }
+
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    private record Score(double value, double error, String unit) {
+
+        double low() {
+            return value - error;
+        }
+
+        double high() {
+            return value + error;
+        }
+    }
+}
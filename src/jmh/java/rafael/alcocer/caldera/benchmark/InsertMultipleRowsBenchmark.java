@@ -0,0 +1,69 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * insertMultipleRows of ROWS rows with several db.batch.chunk-size and
+ * db.batch.rows-per-statement. The table is emptied before every iteration.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class InsertMultipleRowsBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    @Param({ "100", "1000", "10000" })
+    public int chunkSize;
+
+    @Param({ "1", "10" })
+    public int rowsPerStatement;
+
+    private List<List<?>> rows;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase db) {
+        db.dbConfig.getBatch().setChunkSize(chunkSize);
+        db.dbConfig.getBatch().setRowsPerStatement(rowsPerStatement);
+        rows = BenchmarkDatabase.rows(1, ROWS);
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate(BenchmarkDatabase db) throws SQLException {
+        db.truncate();
+    }
+
+    @Benchmark
+    public int[] insertMultipleRows(BenchmarkDatabase db) {
+        return db.dynamicQuery.insertMultipleRows(BenchmarkDatabase.TABLE_NAME, rows);
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * The generated INSERT of a table: from the metadata cache, and reloading the
+ * metadata as every call did before the cache existed.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InsertQueryBenchmark {
+
+    @Benchmark
+    public String createDynamicInsertQuery(BenchmarkDatabase db) {
+        return db.dynamicQuery.createDynamicInsertQuery(BenchmarkDatabase.TABLE_NAME);
+    }
+
+    @Benchmark
+    public String createDynamicInsertQueryWithoutCache(BenchmarkDatabase db) {
+        db.dynamicQuery.invalidateMetadata(BenchmarkDatabase.TABLE_NAME);
+
+        return db.dynamicQuery.createDynamicInsertQuery(BenchmarkDatabase.TABLE_NAME);
+    }
+}
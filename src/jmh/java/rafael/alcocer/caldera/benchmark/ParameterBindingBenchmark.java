@@ -0,0 +1,94 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import rafael.alcocer.caldera.jdbc.binding.RowBinder;
+
+/**
+ * The binding of the parameters of getResultSet: the cached RowBinder against
+ * setObject(), and the whole getResultSet() call.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ParameterBindingBenchmark {
+
+    private static final String QUERY = """
+            SELECT *
+            FROM employees
+            WHERE id = ? AND user_name = ? AND active = ?
+            """;
+
+    private final List<?> parameters = List.of(11, "username11", false);
+
+    private Connection conn;
+    private PreparedStatement ps;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase db) throws SQLException {
+        conn = db.dataSource.getConnection();
+        ps = conn.prepareStatement(QUERY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        ps.close();
+        conn.close();
+    }
+
+    @Benchmark
+    public PreparedStatement bindWithPlan(BenchmarkDatabase db) throws SQLException {
+        RowBinder rowBinder = db.bindingPlanCache.get(QUERY, ps);
+        rowBinder.bind(ps, parameters);
+
+        return ps;
+    }
+
+    @Benchmark
+    public PreparedStatement bindWithSetObject() throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            ps.setObject(i + 1, parameters.get(i));
+        }
+
+        return ps;
+    }
+
+    @Benchmark
+    public boolean getResultSet(BenchmarkDatabase db) throws SQLException {
+        try (ResultSet rs = db.dynamicQuery.getResultSet(QUERY, parameters)) {
+            return rs.next();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.benchmark;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import rafael.alcocer.caldera.jdbc.binding.RowReader;
+
+/**
+ * Reads the SEED_ROWS rows of the table as executeSelectBy does: with a
+ * compiled RowReader into a reused array, against getObject() per column.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResultIterationBenchmark {
+
+    private static final String QUERY = """
+            SELECT *
+            FROM employees
+            WHERE id >= ?
+            """;
+
+    private static final List<?> PARAMETERS = List.of(0);
+
+    @Benchmark
+    public void rowReader(BenchmarkDatabase db, Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = db.dynamicQuery.getResultSet(QUERY, PARAMETERS)) {
+            RowReader rowReader = RowReader.compile(rs.getMetaData());
+            Object[] row = new Object[rowReader.columnCount()];
+
+            while (rs.next()) {
+                blackhole.consume(rowReader.read(rs, row));
+            }
+        }
+    }
+
+    @Benchmark
+    public void getObject(BenchmarkDatabase db, Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = db.dynamicQuery.getResultSet(QUERY, PARAMETERS)) {
+            int columnCount = rs.getMetaData().getColumnCount();
+
+            while (rs.next()) {
+                for (int i = 1; i <= columnCount; i++) {
+                    blackhole.consume(rs.getObject(i));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public long stream(BenchmarkDatabase db) throws SQLException {
+        try (Stream<Object[]> rows = db.dynamicQuery.stream(QUERY, PARAMETERS, 1000)) {
+            return rows.count();
+        }
+    }
+}
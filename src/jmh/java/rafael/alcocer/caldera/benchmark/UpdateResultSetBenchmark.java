@@ -0,0 +1,91 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The column updates of updateResultSet: the compiled RowUpdater against
+ * updateObject(). The row is never written, updateRow() is not called.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class UpdateResultSetBenchmark {
+
+    private final List<?> parameters = List.of(11, "username11", "Name11", "email11@test.com", "515-123-1011", false,
+            new Timestamp(0));
+
+    private Connection conn;
+    private PreparedStatement ps;
+    private ResultSet rs;
+    private ResultSetMetaData rsMetaData;
+    private int columnCount;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase db) throws SQLException {
+        conn = db.dataSource.getConnection();
+        ps = conn.prepareStatement("SELECT * FROM employees WHERE id = 11", ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_UPDATABLE);
+        rs = ps.executeQuery();
+        rs.next();
+        rsMetaData = rs.getMetaData();
+        columnCount = rsMetaData.getColumnCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        rs.cancelRowUpdates();
+        rs.close();
+        ps.close();
+        conn.close();
+    }
+
+    @Benchmark
+    public ResultSet updateResultSet(BenchmarkDatabase db) throws SQLException {
+        db.dynamicQuery.updateResultSet(rs, columnCount, rsMetaData, parameters);
+
+        return rs;
+    }
+
+    @Benchmark
+    public ResultSet updateObject() throws SQLException {
+        for (int i = 0; i < columnCount; i++) {
+            rs.updateObject(i + 1, parameters.get(i));
+        }
+
+        return rs;
+    }
+}
@@ -18,9 +18,12 @@ package rafael.alcocer.caldera;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 
 import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.WorkloadConfig;
 import rafael.alcocer.caldera.jdbc.ExecuteDynamicQuery;
+import rafael.alcocer.caldera.workload.WorkloadRunner;
 
 /**
  * 
@@ -29,10 +32,13 @@ import rafael.alcocer.caldera.jdbc.ExecuteDynamicQuery;
  *
  */
 @RequiredArgsConstructor
-@SpringBootApplication
+// The R2DBC ConnectionPool is created by DbConfig, only when db.engine is R2DBC
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 public class SpringBootDynamicQueriesApplication implements CommandLineRunner {
 
     private final ExecuteDynamicQuery executeDynamicQuery;
+    private final WorkloadConfig workloadConfig;
+    private final WorkloadRunner workloadRunner;
 
     public static void main(String[] args) {
         SpringApplication.run(SpringBootDynamicQueriesApplication.class, args);
@@ -40,9 +46,24 @@ public class SpringBootDynamicQueriesApplication implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
+        // --workload.enabled=true and the other workload.* options
+        if (workloadConfig.isEnabled()) {
+            workloadRunner.run();
+        }
+
         // executeDynamicQuery.executeSelectBy("employees", "id", "11");
+        // executeDynamicQuery.executeCachedSelectBy("employees", "id", 11);
+        // executeDynamicQuery.executePages("employees", 100);
+        // executeDynamicQuery.executeExport("employees", "employees.csv");
+        // executeDynamicQuery.executeArrowExport("employees", "employees.arrow");
+        // executeDynamicQuery.executeLookups("employees", "id", List.of(1, 2, 3, 11));
         // executeDynamicQuery.executeInsert("employees");
         // executeDynamicQuery.executeMultipleInserts("employees", 10000);
+        // executeDynamicQuery.executeUpserts("employees", 10000);
+        // executeDynamicQuery.executeUpdatesByKey("employees", 10000);
+        // executeDynamicQuery.executeDeletesByKey("employees", List.of(1, 2, 3));
+        // executeDynamicQuery.executeDeleteWhere("employees", "active", false);
         // executeDynamicQuery.executeDeleteAll("employees");
+        // executeDynamicQuery.executePoolStats();
     }
 }
@@ -15,16 +15,46 @@
  */
 package rafael.alcocer.caldera.configuration;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
 import lombok.Getter;
 import lombok.Setter;
+import rafael.alcocer.caldera.engine.DynamicQueryEngine;
+import rafael.alcocer.caldera.engine.EngineType;
+import rafael.alcocer.caldera.engine.JdbcDynamicQueryEngine;
+import rafael.alcocer.caldera.jdbc.async.AsyncDynamicQuery;
+import rafael.alcocer.caldera.jdbc.batch.BatchInserter;
+import rafael.alcocer.caldera.jdbc.batch.CommitMode;
+import rafael.alcocer.caldera.jdbc.batch.FailurePolicy;
+import rafael.alcocer.caldera.jdbc.cache.QueryResultCache;
+import rafael.alcocer.caldera.jdbc.export.ExportFormat;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+import rafael.alcocer.caldera.jdbc.streaming.QueryStreamer;
+import rafael.alcocer.caldera.r2dbc.R2dbcDynamicQueryEngine;
 
 @Getter
 @Setter
@@ -36,23 +66,493 @@ public class DbConfig {
     private String url;
     private String username;
     private String password;
+    private Pool pool = new Pool();
+    private Metadata metadata = new Metadata();
+    private Warmup warmup = new Warmup();
+    private Binding binding = new Binding();
+    private Batch batch = new Batch();
+    private ParallelInsert parallelInsert = new ParallelInsert();
+    private Bulk bulk = new Bulk();
+    private Delete delete = new Delete();
+    private Streaming streaming = new Streaming();
+    private Export export = new Export();
+    private Arrow arrow = new Arrow();
+    private Scan scan = new Scan();
+    private Async async = new Async();
+    private Lookup lookup = new Lookup();
+    private ResultCache resultCache = new ResultCache();
+    private Metrics metrics = new Metrics();
+    private Routing routing = new Routing();
+
+    /** JDBC or R2DBC, the implementation of DynamicQueryEngine. */
+    private EngineType engine = EngineType.JDBC;
+    private R2dbc r2dbc = new R2dbc();
+
+    /**
+     * Driver properties, for example the server side statement cache:
+     * prepareThreshold on PostgreSQL, cachePrepStmts and useServerPrepStmts on
+     * MySQL.
+     */
+    private Map<String, String> dataSourceProperties = new LinkedHashMap<>();
 
+    /**
+     * Also publishes the hikaricp.* meters, Spring Boot doesn't bind them when
+     * the pool already has a MetricsTrackerFactory.
+     */
     @Bean
-    Connection conn() {
-        try {
-            Class.forName(driver);
-        } catch (ClassNotFoundException ex) {
-            ex.printStackTrace();
+    PoolStatsTracker poolStatsTracker(ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+
+        return new PoolStatsTracker(registry == null ? null : new MicrometerMetricsTrackerFactory(registry));
+    }
+
+    @Bean(destroyMethod = "close")
+    DataSource dataSource(PoolStatsTracker poolStatsTracker) {
+        HikariConfig config = hikariConfig("dynamic-queries", url, username, password);
+        config.setMetricsTrackerFactory(poolStatsTracker);
+
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * The primary and the db.routing.replicas. A replica that is down when the
+     * application starts doesn't stop it, it is ejected on its first read.
+     */
+    @Bean(destroyMethod = "close")
+    ReplicaRouter replicaRouter(DataSource dataSource, ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        List<DataSource> replicas = new ArrayList<>();
+
+        for (int i = 0; i < routing.getReplicas().size(); i++) {
+            Replica replica = routing.getReplicas().get(i);
+            HikariConfig config = hikariConfig("dynamic-queries-replica-" + (i + 1), replica.getUrl(),
+                    replica.getUsername() == null ? username : replica.getUsername(),
+                    replica.getPassword() == null ? password : replica.getPassword());
+            config.setConnectionTimeout(routing.getAcquireTimeout().toMillis());
+            config.setInitializationFailTimeout(-1);
+
+            if (registry != null) {
+                config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            }
+
+            replicas.add(new HikariDataSource(config));
+        }
+
+        return new ReplicaRouter(dataSource, replicas, routing.getEjectionTime(), routing.getReadYourWrites());
+    }
+
+    private HikariConfig hikariConfig(String poolName, String jdbcUrl, String user, String pass) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setDriverClassName(driver);
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(user);
+        config.setPassword(pass);
+
+        config.setMinimumIdle(pool.getMinSize());
+        config.setMaximumPoolSize(pool.getMaxSize());
+        config.setConnectionTimeout(pool.getAcquireTimeout().toMillis());
+        config.setIdleTimeout(pool.getIdleTimeout().toMillis());
+        config.setMaxLifetime(pool.getMaxLifetime().toMillis());
+        config.setKeepaliveTime(pool.getKeepaliveTime().toMillis());
+        config.setValidationTimeout(pool.getValidationTimeout().toMillis());
+        config.setLeakDetectionThreshold(pool.getLeakDetectionThreshold().toMillis());
+
+        if (pool.getTestQuery() != null) {
+            config.setConnectionTestQuery(pool.getTestQuery());
         }
 
-        Connection conn = null;
+        dataSourceProperties.forEach(config::addDataSourceProperty);
+
+        return config;
+    }
 
-        try {
-            conn = DriverManager.getConnection(url, username, password);
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /**
+     * Runs the calls of AsyncDynamicQuery.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    ExecutorService dynamicQueryExecutor() {
+        if (async.isVirtualThreads()) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dynamic-query-", 0).factory());
         }
 
-        return conn;
+        return Executors.newFixedThreadPool(async.getPlatformThreads(),
+                Thread.ofPlatform().name("dynamic-query-", 0).daemon(true).factory());
+    }
+
+    /**
+     * The connections of the R2DBC engine, only created when db.engine is
+     * R2DBC. The pool uses the same db.pool.* settings as the JDBC one.
+     */
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty(name = "db.engine", havingValue = "r2dbc")
+    ConnectionPool r2dbcConnectionPool() {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(r2dbc.getUrl()).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+
+        ConnectionPoolConfiguration configuration = ConnectionPoolConfiguration
+                .builder(ConnectionFactories.get(options))
+                .name("dynamic-queries-r2dbc")
+                .initialSize(pool.getMinSize())
+                .minIdle(pool.getMinSize())
+                .maxSize(pool.getMaxSize())
+                .maxAcquireTime(pool.getAcquireTimeout())
+                .maxIdleTime(pool.getIdleTimeout())
+                .maxLifeTime(pool.getMaxLifetime().isZero() ? Duration.ofMillis(-1) : pool.getMaxLifetime())
+                .maxValidationTime(pool.getValidationTimeout())
+                .build();
+
+        return new ConnectionPool(configuration);
+    }
+
+    @Bean
+    DynamicQueryEngine dynamicQueryEngine(ObjectProvider<ConnectionPool> r2dbcConnectionPool,
+            QueryStreamer queryStreamer, AsyncDynamicQuery asyncDynamicQuery, BatchInserter batchInserter,
+            TableMetadataCache tableMetadataCache, QueryResultCache queryResultCache, ReplicaRouter replicaRouter) {
+        return switch (engine) {
+        case R2DBC -> new R2dbcDynamicQueryEngine(r2dbcConnectionPool.getObject(), queryResultCache, replicaRouter,
+                this);
+        case JDBC -> new JdbcDynamicQueryEngine(queryStreamer, asyncDynamicQuery, batchInserter, tableMetadataCache,
+                queryResultCache, replicaRouter, this);
+        };
+    }
+
+    /**
+     * Settings of the connection pool, under db.pool.*
+     */
+    @Getter
+    @Setter
+    public static class Pool {
+
+        /** Connections kept open even when idle. */
+        private int minSize = 2;
+
+        /** Upper bound of open connections. */
+        private int maxSize = 10;
+
+        /** How long a caller waits for a free connection before failing. */
+        private Duration acquireTimeout = Duration.ofSeconds(30);
+
+        /** Idle connections above minSize are closed after this time. */
+        private Duration idleTimeout = Duration.ofMinutes(10);
+
+        /** Connections are retired after this time, 0 means never. */
+        private Duration maxLifetime = Duration.ofMinutes(30);
+
+        /** Idle connections are pinged at this interval, 0 disables it. */
+        private Duration keepaliveTime = Duration.ZERO;
+
+        /** Maximum time to validate a connection before lending it. */
+        private Duration validationTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Query used to validate connections, when null the JDBC4
+         * Connection.isValid() is used.
+         */
+        private String testQuery;
+
+        /** A connection borrowed longer than this is logged as a leak, 0 disables it. */
+        private Duration leakDetectionThreshold = Duration.ZERO;
+    }
+
+    /**
+     * Settings of the table metadata cache, under db.metadata.*
+     */
+    @Getter
+    @Setter
+    public static class Metadata {
+
+        /** Cached table metadata is loaded again after this time. */
+        private Duration ttl = Duration.ofMinutes(10);
+    }
+
+    /**
+     * Settings of the StartupWarmer, under db.warmup.*
+     */
+    @Getter
+    @Setter
+    public static class Warmup {
+
+        /** Runs the warm-up before the application reports it is ready. */
+        private boolean enabled = true;
+
+        /** Tables whose metadata and statements are prepared at startup. */
+        private List<String> tables = new ArrayList<>();
+
+        /** Tables whose metadata is loaded at the same time. */
+        private int parallelism = 4;
+
+        /** JSON file with the metadata of the tables, used on the next start while their columns don't change. */
+        private String snapshotFile;
+
+        /** Opens the db.pool.min-size connections before the first request. */
+        private boolean openConnections = true;
+
+        /** Prepares the INSERT and the SELECT by primary key of every table on every open connection. */
+        private boolean prepareStatements = true;
+    }
+
+    /**
+     * Settings of the parameter binding plans, under db.binding.*
+     */
+    @Getter
+    @Setter
+    public static class Binding {
+
+        /** Maximum number of distinct SQL texts whose plan is kept. */
+        private int maxPlans = 1000;
+    }
+
+    /**
+     * Settings of the batch inserts, under db.batch.*
+     */
+    @Getter
+    @Setter
+    public static class Batch {
+
+        /** Rows sent in each executeBatch. */
+        private int chunkSize = 1000;
+
+        /** AUTO_COMMIT, PER_CHUNK or SINGLE_TRANSACTION. */
+        private CommitMode commitMode = CommitMode.PER_CHUNK;
+
+        /** Rows packed in each INSERT ... VALUES (...), (...), 1 disables it. */
+        private int rowsPerStatement = 1;
+
+        /** Keep inserting the next chunks after a failed one. */
+        private boolean continueOnError = false;
+
+        /** Keys in every DELETE ... WHERE pk IN (...) of deleteRowsByKey. */
+        private int keysPerStatement = 256;
+    }
+
+    /**
+     * Settings of the ParallelInserter, under db.parallel-insert.*
+     */
+    @Getter
+    @Setter
+    public static class ParallelInsert {
+
+        /** insertMultipleRows() spreads the rows over several connections. */
+        private boolean enabled = false;
+
+        /** Shards inserted at the same time, each one takes a connection of the pool. */
+        private int connections = 4;
+
+        /** Rows of every shard, fewer rows are inserted with one connection. */
+        private int shardSize = 10000;
+
+        /** FAIL_FAST or BEST_EFFORT. */
+        private FailurePolicy failurePolicy = FailurePolicy.FAIL_FAST;
+    }
+
+    /**
+     * Settings of the bulk loads, under db.bulk.*
+     */
+    @Getter
+    @Setter
+    public static class Bulk {
+
+        /** Bytes of encoded rows kept in memory before sending them. */
+        private int bufferSize = 64 * 1024;
+    }
+
+    /**
+     * Settings of the BulkDeleter, under db.delete.*
+     */
+    @Getter
+    @Setter
+    public static class Delete {
+
+        /** Rows deleted and committed in each transaction. */
+        private int chunkSize = 10000;
+
+        /** The chunks are spaced to stay below this rate, 0 doesn't wait. */
+        private int maxRowsPerSecond = 0;
+
+        /** deleteAllRows() uses TRUNCATE when the table has no triggers or references. */
+        private boolean truncate = false;
+    }
+
+    /**
+     * Settings of the streaming queries, under db.streaming.*
+     */
+    @Getter
+    @Setter
+    public static class Streaming {
+
+        /** Rows fetched from the server at a time, MySQL always streams one by one. */
+        private int fetchSize = 1000;
+    }
+
+    /**
+     * Settings of the ResultSetExporter, under db.export.*
+     */
+    @Getter
+    @Setter
+    public static class Export {
+
+        /** CSV or NDJSON. */
+        private ExportFormat format = ExportFormat.CSV;
+
+        /** Writes gzip files. */
+        private boolean gzip = false;
+
+        /** A new file is started once a file reaches this size, 0 writes a single file. */
+        private long maxFileBytes = 0;
+
+        /** Bytes of the direct buffer the rows are encoded into. */
+        private int bufferSize = 256 * 1024;
+    }
+
+    /**
+     * Settings of the ArrowQueryReader, under db.arrow.*
+     */
+    @Getter
+    @Setter
+    public static class Arrow {
+
+        /** Rows of every VectorSchemaRoot batch. */
+        private int batchSize = 4096;
+
+        /** Off-heap bytes all the Arrow batches can use at the same time. */
+        private long maxMemory = 1024L * 1024 * 1024;
+    }
+
+    /**
+     * Settings of the parallel table scans, under db.scan.*
+     */
+    @Getter
+    @Setter
+    public static class Scan {
+
+        /** Threads reading partitions, one connection each, below db.pool.max-size. 0 uses the cores. */
+        private int parallelism = 0;
+
+        /** Rows read ahead by every partition while the consumer is busy. */
+        private int queueCapacity = 1000;
+    }
+
+    /**
+     * Settings of AsyncDynamicQuery, under db.async.*
+     */
+    @Getter
+    @Setter
+    public static class Async {
+
+        /** One virtual thread per call, false uses a bounded pool of platform threads. */
+        private boolean virtualThreads = true;
+
+        /** Size of the platform thread pool when virtualThreads is false. */
+        private int platformThreads = 2 * Runtime.getRuntime().availableProcessors();
+
+        /** Default timeout of the calls, the statement is cancelled after it, 0 waits forever. */
+        private Duration timeout = Duration.ZERO;
+    }
+
+    /**
+     * Settings of the R2DBC engine, under db.r2dbc.*
+     */
+    @Getter
+    @Setter
+    public static class R2dbc {
+
+        /**
+         * For example r2dbc:postgresql://localhost:5432/testdb, db.username and
+         * db.password are used.
+         */
+        private String url;
+    }
+
+    /**
+     * Settings of the LookupBatcher, under db.lookup.*
+     */
+    @Getter
+    @Setter
+    public static class Lookup {
+
+        /** Lookups arriving within this time are sent in one query. */
+        private Duration window = Duration.ofMillis(2);
+
+        /** A window is sent right away when it holds this many distinct keys. */
+        private int maxBatchSize = 128;
+    }
+
+    /**
+     * Settings of the QueryResultCache, under db.result-cache.*
+     */
+    @Getter
+    @Setter
+    public static class ResultCache {
+
+        /** Off by default, results are only cached when it is true. */
+        private boolean enabled = false;
+
+        /** Cached results are read again from the database after this time. */
+        private Duration ttl = Duration.ofMinutes(1);
+
+        /** Approximate bytes of heap used by all the cached results. */
+        private long maxWeight = 64L * 1024 * 1024;
+
+        /** Results heavier than this are not cached. */
+        private long maxEntryWeight = 1024L * 1024;
+    }
+
+    /**
+     * Settings of the QueryMetrics, under db.metrics.*
+     */
+    @Getter
+    @Setter
+    public static class Metrics {
+
+        /** Operations slower than this are logged with their SQL, 0 disables the log. */
+        private Duration slowQueryThreshold = Duration.ofSeconds(1);
+
+        /** Adds the parameters to the slow query log, they can hold personal data. */
+        private boolean logParameters = false;
+
+        /** Percentiles of the latency published by the dynamic.query timer. */
+        private double[] percentiles = { 0.5, 0.95, 0.99 };
+
+        /** Publishes the buckets of the latency histogram, to aggregate percentiles. */
+        private boolean percentileHistogram = true;
+    }
+
+    /**
+     * Settings of the ReplicaRouter, under db.routing.*
+     */
+    @Getter
+    @Setter
+    public static class Routing {
+
+        /** Databases of the read only queries, empty sends everything to db.url. */
+        private List<Replica> replicas = new ArrayList<>();
+
+        /** A replica without a free connection after this time is busy, the read goes to the next one. */
+        private Duration acquireTimeout = Duration.ofSeconds(2);
+
+        /** How long an ejected replica gets no reads. */
+        private Duration ejectionTime = Duration.ofSeconds(30);
+
+        /** Reads of a table written less than this ago go to the primary, 0 disables it. */
+        private Duration readYourWrites = Duration.ofSeconds(2);
+    }
+
+    /**
+     * A read replica, under db.routing.replicas[n].*
+     */
+    @Getter
+    @Setter
+    public static class Replica {
+
+        private String url;
+
+        /** db.username when null. */
+        private String username;
+
+        /** db.password when null. */
+        private String password;
     }
 }
@@ -0,0 +1,145 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.configuration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Collects the wait time and utilization of the connection pool, so the pool
+ * can be sized from real numbers.
+ *
+ * Hikari accepts only one MetricsTrackerFactory, the events are also passed to
+ * a delegate, the Micrometer one when there is a MeterRegistry.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public class PoolStatsTracker implements MetricsTrackerFactory {
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator maxAcquireNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder usageCount = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+    private final LongAccumulator maxUsageMillis = new LongAccumulator(Math::max, 0);
+    private final LongAdder timeouts = new LongAdder();
+
+    private final MetricsTrackerFactory delegate;
+
+    private volatile PoolStats poolStats;
+
+    public PoolStatsTracker() {
+        this(null);
+    }
+
+    /**
+     * @param delegate receives the events too, null for none
+     */
+    public PoolStatsTracker(MetricsTrackerFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+
+        IMetricsTracker tracker = delegate == null ? new IMetricsTracker() {
+        } : delegate.create(poolName, poolStats);
+
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                tracker.recordConnectionCreatedMillis(connectionCreatedMillis);
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireCount.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                maxAcquireNanos.accumulate(elapsedAcquiredNanos);
+                tracker.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageCount.increment();
+                usageMillis.add(elapsedBorrowedMillis);
+                maxUsageMillis.accumulate(elapsedBorrowedMillis);
+                tracker.recordConnectionUsageMillis(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+                tracker.recordConnectionTimeout();
+            }
+
+            @Override
+            public void close() {
+                tracker.close();
+            }
+        };
+    }
+
+    /**
+     * Takes a point in time copy of the pool statistics.
+     *
+     * @return the statistics
+     */
+    public Snapshot snapshot() {
+        PoolStats stats = poolStats;
+        long acquires = acquireCount.sum();
+        long usages = usageCount.sum();
+
+        return new Snapshot(stats == null ? 0 : stats.getActiveConnections(),
+                stats == null ? 0 : stats.getIdleConnections(), stats == null ? 0 : stats.getTotalConnections(),
+                stats == null ? 0 : stats.getMaxConnections(), stats == null ? 0 : stats.getPendingThreads(), acquires,
+                acquires == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(acquireNanos.sum() / acquires),
+                TimeUnit.NANOSECONDS.toMicros(maxAcquireNanos.get()), usages == 0 ? 0 : usageMillis.sum() / usages,
+                maxUsageMillis.get(), timeouts.sum());
+    }
+
+    /**
+     * Point in time view of the pool.
+     *
+     * @param active             connections borrowed right now
+     * @param idle               connections waiting in the pool
+     * @param total              connections opened by the pool
+     * @param max                maximum size of the pool
+     * @param pendingThreads     threads waiting for a connection
+     * @param acquires           number of connections borrowed so far
+     * @param avgAcquireMicros   average time waiting for a connection
+     * @param maxAcquireMicros   longest time waiting for a connection
+     * @param avgUsageMillis     average time a connection was kept borrowed
+     * @param maxUsageMillis     longest time a connection was kept borrowed
+     * @param timeouts           number of times the acquire timeout expired
+     */
+    public record Snapshot(int active, int idle, int total, int max, int pendingThreads, long acquires,
+            long avgAcquireMicros, long maxAcquireMicros, long avgUsageMillis, long maxUsageMillis, long timeouts) {
+
+        /**
+         * @return the fraction of the maximum pool size that is borrowed
+         */
+        public double utilization() {
+            return max == 0 ? 0 : (double) active / max;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.configuration;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import rafael.alcocer.caldera.workload.Pacing;
+import rafael.alcocer.caldera.workload.WorkloadOperation;
+
+/**
+ * Settings of the WorkloadRunner, under workload.* Every one can be given in
+ * the command line, for example:
+ *
+ * java -jar app.jar --workload.enabled=true --workload.workers=16
+ * --workload.pacing=OPEN_LOOP --workload.rate=2000
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties("workload")
+public class WorkloadConfig {
+
+    /** Runs the workload when the application starts. */
+    private boolean enabled = false;
+
+    /** The table, with the columns of employees. */
+    private String table = "employees";
+
+    /** The integer primary key used by selects, updates and deletes. */
+    private String keyColumn = "id";
+
+    /** Selects, updates and deletes pick a key between 1 and this value. */
+    private long keyRange = 10000;
+
+    /** Rows inserted before the run, so the keys exist. */
+    private int seedRows = 0;
+
+    /** Threads running operations at the same time. */
+    private int workers = 8;
+
+    /** How the operations are spaced, see Pacing. */
+    private Pacing pacing = Pacing.MAX;
+
+    /** Operations per second of all the workers, ignored with MAX. */
+    private double rate = 1000;
+
+    /** Operations run before the measurement, to warm up the JIT and the pool. */
+    private Duration warmup = Duration.ofSeconds(5);
+
+    /** Time measured, after the warm-up. */
+    private Duration duration = Duration.ofSeconds(30);
+
+    /** Relative weight of every operation, 0 leaves it out. */
+    private Map<WorkloadOperation, Integer> mix = new EnumMap<>(Map.of(WorkloadOperation.SELECT, 60,
+            WorkloadOperation.INSERT, 15, WorkloadOperation.BATCH_INSERT, 5, WorkloadOperation.UPDATE, 15,
+            WorkloadOperation.DELETE, 5));
+
+    /** Rows of every BATCH_INSERT. */
+    private int batchSize = 100;
+
+    /** JSON report of the run. */
+    private String reportFile = "workload-report.json";
+}
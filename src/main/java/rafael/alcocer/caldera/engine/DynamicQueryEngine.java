@@ -0,0 +1,84 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.engine;
+
+import java.util.List;
+import java.util.Map;
+
+import org.reactivestreams.Publisher;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The dynamic query operations as reactive streams, so they can be used from
+ * event loop threads. There is one implementation over JDBC and one over
+ * R2DBC, the bean is created by DbConfig as configured in db.engine.
+ *
+ * Nothing runs until the result is subscribed.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public interface DynamicQueryEngine {
+
+    /**
+     * Runs a query. Rows are fetched from the database as they are requested,
+     * cancelling the subscription releases the connection.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @return the rows, column label to value, in the order of the columns
+     */
+    Flux<Map<String, Object>> select(String query, List<?> parameters);
+
+    /**
+     * Inserts one row with the INSERT generated from the metadata of the table.
+     *
+     * @param tableName  the name of the table
+     * @param parameters the values of the insertable columns
+     * @return the number of rows inserted
+     */
+    Mono<Long> insertOneRow(String tableName, List<?> parameters);
+
+    /**
+     * Inserts rows in batches of db.batch.chunk-size, rows are requested from
+     * the publisher one batch at a time.
+     *
+     * @param tableName the name of the table
+     * @param rows      the values of the insertable columns of every row
+     * @return the number of rows inserted
+     */
+    Mono<Long> insertMultipleRows(String tableName, Publisher<? extends List<?>> rows);
+
+    /**
+     * Deletes all rows in chunks of db.delete.chunk-size, one transaction each.
+     *
+     * @param tableName the name of the table
+     * @return the number of rows deleted, -1 when the table was truncated
+     */
+    Mono<Long> deleteAllRows(String tableName);
+
+    /**
+     * @param tableName the name of the table
+     * @return the names of the columns that go in the generated INSERT
+     */
+    Mono<List<String>> getColumns(String tableName);
+
+    /**
+     * @return which implementation this is
+     */
+    EngineType type();
+}
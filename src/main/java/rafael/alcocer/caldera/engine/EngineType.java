@@ -0,0 +1,30 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.engine;
+
+/**
+ * The implementations of DynamicQueryEngine, chosen with db.engine.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public enum EngineType {
+
+    /** Blocking JDBC, every call runs on a scheduler meant for blocking work. */
+    JDBC,
+
+    /** Non-blocking R2DBC, nothing blocks the calling thread. */
+    R2DBC
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.engine;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.reactivestreams.Publisher;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.RowMapper;
+import rafael.alcocer.caldera.jdbc.UncheckedSQLException;
+import rafael.alcocer.caldera.jdbc.async.AsyncDynamicQuery;
+import rafael.alcocer.caldera.jdbc.batch.BatchInserter;
+import rafael.alcocer.caldera.jdbc.batch.BatchOptions;
+import rafael.alcocer.caldera.jdbc.batch.BatchResult;
+import rafael.alcocer.caldera.jdbc.binding.RowReader;
+import rafael.alcocer.caldera.jdbc.cache.QueryResultCache;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+import rafael.alcocer.caldera.jdbc.streaming.QueryStreamer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * DynamicQueryEngine over the JDBC classes. JDBC blocks, so queries and batch
+ * inserts run on the boundedElastic scheduler and the single statements on the
+ * executor of AsyncDynamicQuery, never on the subscribing thread.
+ *
+ * A query is read through a QueryStreamer cursor, rows are fetched from the
+ * server only as the subscriber requests them.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+public class JdbcDynamicQueryEngine implements DynamicQueryEngine {
+
+    private final QueryStreamer queryStreamer;
+    private final AsyncDynamicQuery asyncDynamicQuery;
+    private final BatchInserter batchInserter;
+    private final TableMetadataCache tableMetadataCache;
+    private final QueryResultCache queryResultCache;
+    private final ReplicaRouter replicaRouter;
+    private final DbConfig dbConfig;
+
+    @Override
+    public Flux<Map<String, Object>> select(String query, List<?> parameters) {
+        return Flux
+                .using(() -> queryStreamer.stream(query, parameters, queryStreamer.defaultFetchSize(), mapMapper()),
+                        Flux::fromStream, Stream::close)
+                .onErrorMap(UncheckedSQLException.class, UncheckedSQLException::getCause)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Long> insertOneRow(String tableName, List<?> parameters) {
+        return Mono.fromFuture(() -> asyncDynamicQuery.insertOneRow(tableName, parameters)).map(Integer::longValue);
+    }
+
+    @Override
+    public Mono<Long> insertMultipleRows(String tableName, Publisher<? extends List<?>> rows) {
+        BatchOptions options = BatchOptions.of(dbConfig.getBatch());
+
+        return Mono.fromCallable(() -> {
+            BatchResult result;
+
+            // Closing the stream cancels the publisher when the insert stops early
+            try (Stream<? extends List<?>> stream = Flux.from(rows).toStream(options.chunkSize())) {
+                result = batchInserter.insert(tableName, stream.iterator(), options, false);
+            } finally {
+                written(tableName);
+            }
+
+            if (!result.isSuccessful() && !options.continueOnError()) {
+                throw result.failures().get(0).cause();
+            }
+
+            return result.rowsInserted();
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Long> deleteAllRows(String tableName) {
+        return Mono.fromFuture(() -> asyncDynamicQuery.deleteAllRows(tableName)).map(Integer::longValue);
+    }
+
+    @Override
+    public Mono<List<String>> getColumns(String tableName) {
+        return Mono.fromCallable(() -> tableMetadataCache.get(tableName).insertableColumnNames())
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public EngineType type() {
+        return EngineType.JDBC;
+    }
+
+    private void written(String tableName) {
+        queryResultCache.invalidate(tableName);
+        replicaRouter.written(tableName);
+    }
+
+    /**
+     * Reads every row into a map, the RowReader is compiled with the first row.
+     */
+    private static RowMapper<Map<String, Object>> mapMapper() {
+        return new RowMapper<>() {
+
+            private RowReader rowReader;
+
+            @Override
+            public Map<String, Object> map(ResultSet rs) throws SQLException {
+                if (rowReader == null) {
+                    rowReader = RowReader.compile(rs.getMetaData());
+                }
+
+                Map<String, Object> row = new LinkedHashMap<>();
+
+                for (int i = 1; i <= rowReader.columnCount(); i++) {
+                    row.put(rowReader.columnLabel(i), rowReader.read(rs, i));
+                }
+
+                return row;
+            }
+        };
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Wraps a ResultSet so that closing it also closes its Statement and gives the
+ * Connection back to the pool.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+final class ConnectionReleasingResultSet implements InvocationHandler {
+
+    private final ResultSet rs;
+    private final Statement statement;
+    private final Connection conn;
+    private boolean closed;
+
+    private ConnectionReleasingResultSet(ResultSet rs, Statement statement, Connection conn) {
+        this.rs = rs;
+        this.statement = statement;
+        this.conn = conn;
+    }
+
+    static ResultSet wrap(ResultSet rs, Statement statement, Connection conn) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+                new ConnectionReleasingResultSet(rs, statement, conn));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+        case "close":
+            close();
+            return null;
+        case "isClosed":
+            return closed;
+        case "equals":
+            return proxy == args[0];
+        case "hashCode":
+            return System.identityHashCode(proxy);
+        default:
+            try {
+                return method.invoke(rs, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    private void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try (conn; statement; rs) {
+            // Closed in reverse order: ResultSet, Statement, Connection
+        }
+    }
+}
@@ -15,27 +15,80 @@
  */
 package rafael.alcocer.caldera.jdbc;
 
-import java.math.BigDecimal;
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.sql.SQLException;
-import java.sql.Types;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.arrow.ArrowQueryReader;
+import rafael.alcocer.caldera.jdbc.batch.BatchInserter;
+import rafael.alcocer.caldera.jdbc.batch.BatchOptions;
+import rafael.alcocer.caldera.jdbc.batch.BatchResult;
+import rafael.alcocer.caldera.jdbc.batch.CommitMode;
+import rafael.alcocer.caldera.jdbc.batch.ParallelInserter;
+import rafael.alcocer.caldera.jdbc.batch.ParallelOptions;
+import rafael.alcocer.caldera.jdbc.binding.BindingPlanCache;
+import rafael.alcocer.caldera.jdbc.binding.RowBinder;
+import rafael.alcocer.caldera.jdbc.binding.RowReader;
+import rafael.alcocer.caldera.jdbc.bulk.BulkLoader;
+import rafael.alcocer.caldera.jdbc.cache.QueryResult;
+import rafael.alcocer.caldera.jdbc.cache.QueryResultCache;
+import rafael.alcocer.caldera.jdbc.delete.BulkDeleter;
+import rafael.alcocer.caldera.jdbc.delete.DeleteOptions;
+import rafael.alcocer.caldera.jdbc.delete.DeleteProgress;
+import rafael.alcocer.caldera.jdbc.delete.DeleteResult;
+import rafael.alcocer.caldera.jdbc.export.ExportOptions;
+import rafael.alcocer.caldera.jdbc.export.ExportResult;
+import rafael.alcocer.caldera.jdbc.export.ResultSetExporter;
+import rafael.alcocer.caldera.jdbc.keyed.KeyedRowWriter;
+import rafael.alcocer.caldera.jdbc.keyed.KeyedWriteResult;
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.Operation;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.query.Condition;
+import rafael.alcocer.caldera.jdbc.query.Page;
+import rafael.alcocer.caldera.jdbc.query.PageToken;
+import rafael.alcocer.caldera.jdbc.query.SelectQuery;
+import rafael.alcocer.caldera.jdbc.query.SqlQuery;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+import rafael.alcocer.caldera.jdbc.scan.ParallelScanner;
+import rafael.alcocer.caldera.jdbc.streaming.QueryStreamer;
+import rafael.alcocer.caldera.jdbc.upsert.UpsertResult;
+import rafael.alcocer.caldera.jdbc.upsert.Upserter;
 
 /**
  * This class has the necessary methods to execute dynamic queries.
  * 
+ * Every method borrows a connection from the pool and gives it back when it
+ * finishes, so it can be called from many threads at the same time.
+ * 
+ * Every operation is measured by {@link QueryMetrics}.
+ * 
+ * Writes go to the primary, read only queries and metadata can go to the
+ * replicas, see {@link ReplicaRouter}.
+ * 
  * @author Rafael Alcocer Caldera
  */
 @RequiredArgsConstructor
@@ -44,114 +97,509 @@ public class DynamicQuery {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DynamicQuery.class);
 
-    private final Connection conn;
+    private final DataSource dataSource;
+    private final ReplicaRouter replicaRouter;
+    private final TableMetadataCache tableMetadataCache;
+    private final BindingPlanCache bindingPlanCache;
+    private final BatchInserter batchInserter;
+    private final ParallelInserter parallelInserter;
+    private final BulkLoader bulkLoader;
+    private final Upserter upserter;
+    private final KeyedRowWriter keyedRowWriter;
+    private final BulkDeleter bulkDeleter;
+    private final QueryStreamer queryStreamer;
+    private final ParallelScanner parallelScanner;
+    private final ResultSetExporter resultSetExporter;
+    private final ArrowQueryReader arrowQueryReader;
+    private final QueryResultCache queryResultCache;
+    private final QueryMetrics queryMetrics;
+    private final DbConfig dbConfig;
+
+    // Read from the first connection, the pool only talks to one database
+    private volatile Dialect dialect;
+
+    /**
+     * Starts a SELECT of a table whose column names are checked against its
+     * metadata, see {@link SelectQuery}.
+     * 
+     * @param tableName the name of the table
+     * @return the query, run it with getResultSet(SqlQuery) or stream()
+     * @throws SQLException if the metadata can't be loaded
+     */
+    public SelectQuery select(String tableName) throws SQLException {
+        return new SelectQuery(tableMetadataCache.get(tableName), dialect());
+    }
+
+    /**
+     * Gets a read only ResultSet of a query built by select().
+     * 
+     * @param query the SQL and its parameters
+     * @return ResultSet
+     * @throws SQLException
+     */
+    public ResultSet getResultSet(SqlQuery query) throws SQLException {
+        return getResultSet(query.sql(), query.parameters(), false);
+    }
+
+    /**
+     * Runs a query built by select() whose rows are fetched as the Stream is
+     * consumed.
+     * 
+     * @param <T>       the type of the rows
+     * @param query     the SQL and its parameters
+     * @param rowMapper converts every row
+     * @return the lazily fetched rows
+     * @throws SQLException
+     */
+    public <T> Stream<T> stream(SqlQuery query, RowMapper<T> rowMapper) throws SQLException {
+        return stream(query.sql(), query.parameters(), rowMapper);
+    }
+
+    /**
+     * Reads a page of a table ordered by its primary key, see the other page().
+     * 
+     * @param <T>       the type of the rows
+     * @param tableName the name of the table
+     * @param filter    the condition of the rows, null for all of them
+     * @param pageSize  the maximum number of rows of the page
+     * @param token     nextToken or previousToken of another page, null for
+     *                  the first page
+     * @param rowMapper converts every row
+     * @return the page
+     * @throws SQLException
+     */
+    public <T> Page<T> page(String tableName, Condition filter, int pageSize, String token, RowMapper<T> rowMapper)
+            throws SQLException {
+        return page(tableName, List.of(), filter, pageSize, token, rowMapper);
+    }
+
+    /**
+     * Reads a page of a table with keyset pagination: instead of an OFFSET the
+     * query starts after the sort key of the last row of the page before,
+     * WHERE (k1, k2) > (?, ?) ORDER BY k1, k2 LIMIT ?, so with an index on the
+     * sort columns every page costs the same, however deep it is.
+     * 
+     * The columns of the primary key missing from the sort columns are added
+     * to them, so the sort key is unique. The sort columns must not be null.
+     * 
+     * @param <T>         the type of the rows
+     * @param tableName   the name of the table
+     * @param sortColumns the columns the rows are ordered by, empty for the
+     *                    primary key
+     * @param filter      the condition of the rows, null for all of them
+     * @param pageSize    the maximum number of rows of the page
+     * @param token       nextToken or previousToken of another page of the same
+     *                    table and sort columns, null for the first page
+     * @param rowMapper   converts every row
+     * @return the page
+     * @throws SQLException
+     */
+    public <T> Page<T> page(String tableName, List<String> sortColumns, Condition filter, int pageSize,
+            String token, RowMapper<T> rowMapper) throws SQLException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+
+        TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+        List<String> keyColumns = keyColumns(tableMetadata, sortColumns);
+        String shape = tableMetadata.tableName() + keyColumns;
+        PageToken position = token == null ? null : PageToken.decode(token, shape);
+        boolean backward = position != null && position.backward();
+
+        // Backwards the order is reversed, the rows are put back in order below
+        SelectQuery select = new SelectQuery(tableMetadata, dialect());
+
+        if (filter != null) {
+            select.where(filter);
+        }
+
+        keyColumns.forEach(column -> select.orderBy(column,
+                backward ? SelectQuery.Direction.DESC : SelectQuery.Direction.ASC));
+
+        if (position != null) {
+            select.after(position.key());
+        }
+
+        // One more row tells if there is another page
+        select.limit(pageSize + 1L);
+
+        List<T> rows = new ArrayList<>(pageSize);
+        List<Object> firstKey = null;
+        List<Object> lastKey = null;
+        boolean more = false;
+
+        try (ResultSet rs = getResultSet(select.build())) {
+            while (rs.next()) {
+                if (rows.size() == pageSize) {
+                    more = true;
+                    break;
+                }
+
+                lastKey = new ArrayList<>(keyColumns.size());
+
+                for (String column : keyColumns) {
+                    lastKey.add(rs.getObject(column));
+                }
+
+                if (firstKey == null) {
+                    firstKey = lastKey;
+                }
+
+                rows.add(rowMapper.map(rs));
+            }
+        }
+
+        if (rows.isEmpty()) {
+            return new Page<>(List.of(), null, null);
+        }
+
+        if (backward) {
+            Collections.reverse(rows);
+
+            return new Page<>(rows, new PageToken(false, firstKey).encode(shape),
+                    more ? new PageToken(true, lastKey).encode(shape) : null);
+        }
+
+        return new Page<>(rows, more ? new PageToken(false, lastKey).encode(shape) : null,
+                position == null ? null : new PageToken(true, firstKey).encode(shape));
+    }
 
     /**
      * 
      * Gets the ResultSet, using the generic query and passing the list of
      * parameters.
      * 
+     * The ResultSet holds a pooled connection, it must be closed to give the
+     * connection back.
+     * 
+     * The ResultSet is updatable, for update(), delete() and
+     * insertRowFromResultSet(), so it is always read from the primary.
+     * 
      * @param query      SELECT * FROM %s WHERE %s = ?
      * @param parameters the column values
      * @return ResultSet
      * @throws SQLException
      */
     public ResultSet getResultSet(String query, List<?> parameters) throws SQLException {
-        LOGGER.info("##### conn: " + conn);
-        LOGGER.info("##### query: " + query);
-        LOGGER.info("##### parameters: " + parameters);
+        return getResultSet(query, parameters, true);
+    }
 
-        ResultSet rs = null;
+    /**
+     * Gets the ResultSet, using the generic query and passing the list of
+     * parameters. A read only ResultSet is cheaper, the driver doesn't need to
+     * track the identity of the rows, and it is read from a replica when
+     * db.routing.replicas has any.
+     * 
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param updatable  true for CONCUR_UPDATABLE, false for CONCUR_READ_ONLY
+     * @return ResultSet
+     * @throws SQLException
+     */
+    public ResultSet getResultSet(String query, List<?> parameters, boolean updatable) throws SQLException {
+        LOGGER.debug("##### query: {}, parameters: {}", query, parameters);
 
-        PreparedStatement ps = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE);
-        ParameterMetaData parameterMetaData = ps.getParameterMetaData();
+        QueryMetrics.Sample sample = queryMetrics.startSelect(query, parameters);
 
-        int parametersCount = parameterMetaData.getParameterCount();
-        int lisCount = parameters.size();
+        // The writes of an updatable ResultSet can only go to the primary
+        Connection conn = updatable ? replicaRouter.getWriteConnection() : replicaRouter.getReadConnection(query);
+        PreparedStatement ps = null;
 
-        LOGGER.info("##### parametersCount: " + parametersCount);
-        LOGGER.info("##### lisCount: " + lisCount);
+        try {
+            ps = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                    updatable ? ResultSet.CONCUR_UPDATABLE : ResultSet.CONCUR_READ_ONLY);
+            ResultSet rs = executeQuery(query, ps, parameters);
 
-        if (lisCount == parametersCount) {
-            for (int i = 0; i < parametersCount; i++) {
-                // Starts with 1 not 0 due SQL
-                int parameterType = parameterMetaData.getParameterType(i + 1);
-                LOGGER.info("##### parameterType: " + parameterType);
-                
-                String parameterClassName = parameterMetaData.getParameterClassName(i + 1);
-                LOGGER.info("##### parameterClassName: " + parameterClassName);
-
-                switch (parameterType) {
-                case Types.CHAR: // 1
-                case Types.VARCHAR: // 12
-                case Types.LONGVARCHAR: // -1
-                    String stringParam = (String) parameters.get(i);
-                    ps.setString(i + 1, stringParam);
-                    break;
+            // The rows are read by the caller, only the execution is measured
+            sample.success(-1);
 
-                case Types.BIT: // -7
-                case Types.BOOLEAN: // 16
-                    boolean booleanParam = ((Boolean) parameters.get(i)).booleanValue();
-                    ps.setBoolean(i + 1, booleanParam);
-                    break;
+            if (rs == null) {
+                ps.close();
+                conn.close();
 
-                case Types.TINYINT: // -6
-                    byte byteParam = ((Byte) parameters.get(i)).byteValue();
-                    ps.setByte(i + 1, byteParam);
-                    break;
+                return null;
+            }
 
-                case Types.SMALLINT: // 5
-                    short shortParam = ((Short) parameters.get(i)).shortValue();
-                    ps.setShort(i + 1, shortParam);
-                    break;
+            return ConnectionReleasingResultSet.wrap(rs, ps, conn);
+        } catch (SQLException | RuntimeException ex) {
+            sample.failure(ex);
 
-                case Types.INTEGER: // 4
-                    int intParam = ((Integer) parameters.get(i)).intValue();
-                    ps.setInt(i + 1, intParam);
-                    break;
+            try (Connection c = conn; PreparedStatement p = ps) {
+                throw ex;
+            }
+        }
+    }
 
-                case Types.BIGINT: // -5
-                    long longParam = ((Long) parameters.get(i)).longValue();
-                    ps.setLong(i + 1, longParam);
-                    break;
+    /**
+     * Runs a query and keeps its rows in the QueryResultCache, when
+     * db.result-cache.enabled is true. The next call with the same query and
+     * parameters gets the cached rows until the ttl expires or a method of this
+     * class writes to one of the tables of the query.
+     * 
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @return the rows, shared with other callers
+     * @throws SQLException
+     */
+    public QueryResult getCachedResult(String query, List<?> parameters) throws SQLException {
+        return queryResultCache.get(query, parameters, () -> {
+            QueryMetrics.Sample sample = queryMetrics.startSelect(query, parameters);
+
+            try (Connection conn = replicaRouter.getReadConnection(query);
+                    PreparedStatement ps = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY)) {
+                RowBinder rowBinder = bindingPlanCache.get(query, ps);
+
+                if (rowBinder.parameterCount() != parameters.size()) {
+                    throw new SQLException("The query has " + rowBinder.parameterCount() + " parameters, "
+                            + parameters.size() + " were given");
+                }
 
-                case Types.REAL: // 7
-                    float floatParam = ((Float) parameters.get(i)).floatValue();
-                    ps.setFloat(i + 1, floatParam);
-                    break;
+                rowBinder.bind(ps, parameters);
 
-                case Types.FLOAT: // 6
-                case Types.DOUBLE: // 8
-                    double doubleParam = ((Double) parameters.get(i)).doubleValue();
-                    ps.setDouble(i + 1, doubleParam);
-                    break;
+                try (ResultSet rs = ps.executeQuery()) {
+                    QueryResult result = QueryResult.read(rs);
+                    sample.success(result.rowCount());
 
-                case Types.NUMERIC: // 2
-                case Types.DECIMAL: // 3
-                    BigDecimal bigdecimalParam = (BigDecimal) parameters.get(i);
-                    ps.setBigDecimal(i + 1, bigdecimalParam);
-                    break;
+                    return result;
+                }
+            } catch (SQLException | RuntimeException ex) {
+                sample.failure(ex);
 
-                case Types.DATE: // 91
-                    java.sql.Date dateParam = (java.sql.Date) parameters.get(i);
-                    ps.setDate(i + 1, dateParam);
-                    break;
+                throw ex;
+            }
+        });
+    }
 
-                case Types.TIME: // 92
-                    java.sql.Time timeParam = (java.sql.Time) parameters.get(i);
-                    ps.setTime(i + 1, timeParam);
-                    break;
+    /**
+     * Runs a read only query whose rows are fetched as the Stream is consumed,
+     * db.streaming.fetch-size rows at a time. The Stream holds a pooled
+     * connection until it is consumed or closed, use it in a try-with-resources.
+     * 
+     * @param <T>        the type of the rows
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param rowMapper  converts every row
+     * @return the lazily fetched rows
+     * @throws SQLException
+     */
+    public <T> Stream<T> stream(String query, List<?> parameters, RowMapper<T> rowMapper) throws SQLException {
+        return queryStreamer.stream(query, parameters, queryStreamer.defaultFetchSize(), rowMapper);
+    }
 
-                case Types.TIMESTAMP: // 93
-                    java.sql.Timestamp timestampParam = (java.sql.Timestamp) parameters.get(i);
-                    ps.setTimestamp(i + 1, timestampParam);
-                    break;
-                }
+    /**
+     * Runs a read only query whose rows are fetched as the Stream is consumed,
+     * every row is an array with the values of the columns.
+     * 
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param fetchSize  rows fetched from the server at a time
+     * @return the lazily fetched rows
+     * @throws SQLException
+     */
+    public Stream<Object[]> stream(String query, List<?> parameters, int fetchSize) throws SQLException {
+        return queryStreamer.stream(query, parameters, fetchSize, RowReader.arrayMapper());
+    }
+
+    /**
+     * Runs a read only query and hands every row to a callback, the connection
+     * is given back when the method returns.
+     * 
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param callback   receives the ResultSet positioned on every row
+     * @return the number of rows
+     * @throws SQLException
+     */
+    public long forEachRow(String query, List<?> parameters, QueryStreamer.RowCallback callback)
+            throws SQLException {
+        return queryStreamer.forEach(query, parameters, queryStreamer.defaultFetchSize(), callback);
+    }
+
+    /**
+     * Reads a whole table in parallel, splitting the range of its primary key in
+     * partitions that are read with different connections.
+     * 
+     * @param <T>        the type of the rows
+     * @param tableName  the name of the table, with a single integer primary key
+     * @param partitions number of ranges read at the same time
+     * @param ordered    true to receive the rows ordered by the primary key
+     * @param rowMapper  converts every row, it must not return null
+     * @param consumer   receives every row, on the calling thread
+     * @return the number of rows read
+     * @throws SQLException
+     */
+    public <T> long parallelScan(String tableName, int partitions, boolean ordered, RowMapper<T> rowMapper,
+            Consumer<? super T> consumer) throws SQLException {
+        return parallelScanner.scan(tableName, partitions, ordered, rowMapper, consumer);
+    }
+
+    /**
+     * Writes the rows of a read only query to a file, with the db.export.*
+     * settings. The rows are streamed, neither the result nor the file is kept
+     * in memory.
+     * 
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param file       the file, numbered parts when db.export.max-file-bytes
+     *                   is set
+     * @return rows, bytes and files written
+     * @throws SQLException
+     * @throws IOException
+     */
+    public ExportResult export(String query, List<?> parameters, Path file) throws SQLException, IOException {
+        return resultSetExporter.export(query, parameters, file);
+    }
+
+    /**
+     * Writes the rows of a read only query to one or more files.
+     * 
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param file       the file, numbered parts when maxFileBytes is set
+     * @param options    format, compression and split of the files
+     * @return rows, bytes and files written
+     * @throws SQLException
+     * @throws IOException
+     */
+    public ExportResult export(String query, List<?> parameters, Path file, ExportOptions options)
+            throws SQLException, IOException {
+        return resultSetExporter.export(query, parameters, file, options);
+    }
+
+    /**
+     * Writes the rows of a read only query to a stream, which is not closed.
+     * 
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param out        receives the rows
+     * @param options    format and compression
+     * @return rows and bytes written
+     * @throws SQLException
+     * @throws IOException
+     */
+    public ExportResult export(String query, List<?> parameters, OutputStream out, ExportOptions options)
+            throws SQLException, IOException {
+        return resultSetExporter.export(query, parameters, out, options);
+    }
+
+    /**
+     * Reads a read only query in Arrow batches of db.arrow.batch-size rows,
+     * the columns are kept off the heap. The callback receives the same
+     * VectorSchemaRoot refilled for every batch.
+     * 
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param callback   receives every batch
+     * @return the number of rows
+     * @throws SQLException
+     * @throws IOException  thrown by the callback
+     */
+    public long forEachArrowBatch(String query, List<?> parameters, ArrowQueryReader.BatchCallback callback)
+            throws SQLException, IOException {
+        return arrowQueryReader.forEachBatch(query, parameters, callback);
+    }
+
+    /**
+     * Writes the rows of a read only query to an Arrow IPC file.
+     * 
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param file       the file, usually with the .arrow extension
+     * @return the number of rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long writeArrowFile(String query, List<?> parameters, Path file) throws SQLException, IOException {
+        return arrowQueryReader.writeFile(query, parameters, file);
+    }
+
+    /**
+     * Writes the rows of a read only query in the Arrow IPC stream format, the
+     * stream is not closed.
+     * 
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param out        receives the batches
+     * @return the number of rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long writeArrowStream(String query, List<?> parameters, OutputStream out)
+            throws SQLException, IOException {
+        return arrowQueryReader.writeStream(query, parameters, out);
+    }
+
+    /**
+     * @return the sort columns followed by the missing primary key columns
+     */
+    private static List<String> keyColumns(TableMetadata tableMetadata, List<String> sortColumns)
+            throws SQLException {
+        List<String> keyColumns = new ArrayList<>();
+
+        for (String sortColumn : sortColumns) {
+            keyColumns.add(tableMetadata.column(sortColumn).map(ColumnMetadata::name)
+                    .orElseThrow(() -> new IllegalArgumentException(
+                            "Column not found: " + tableMetadata.tableName() + "." + sortColumn)));
+        }
+
+        for (String keyColumn : tableMetadata.primaryKey()) {
+            if (!keyColumns.contains(keyColumn)) {
+                keyColumns.add(keyColumn);
             }
+        }
 
-            rs = ps.executeQuery();
+        if (keyColumns.isEmpty()) {
+            throw new SQLException(tableMetadata.tableName() + " has no primary key, give the sort columns");
+        }
+
+        return keyColumns;
+    }
+
+    /**
+     * A write invalidates the cached results of the table and sends its reads
+     * to the primary for a while.
+     */
+    private void written(String tableName) {
+        queryResultCache.invalidate(tableName);
+        replicaRouter.written(tableName);
+    }
+
+    private void written(ResultSetMetaData rsMetaData) throws SQLException {
+        queryResultCache.invalidate(rsMetaData);
+        replicaRouter.written(tableName(rsMetaData));
+    }
+
+    private Dialect dialect() throws SQLException {
+        Dialect result = dialect;
+
+        if (result == null) {
+            try (Connection conn = dataSource.getConnection()) {
+                result = Dialect.of(conn);
+                dialect = result;
+            }
+        }
+
+        return result;
+    }
+
+    private ResultSet executeQuery(String query, PreparedStatement ps, List<?> parameters) throws SQLException {
+        ResultSet rs = null;
+
+        // The parameter types are read once per query, not once per execution
+        RowBinder rowBinder = bindingPlanCache.get(query, ps);
+
+        int parametersCount = rowBinder.parameterCount();
+        int lisCount = parameters.size();
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("##### parametersCount: {}, lisCount: {}", parametersCount, lisCount);
+        }
 
-            LOGGER.info("##### ResultSet: " + rs);
+        if (lisCount == parametersCount) {
+            rowBinder.bind(ps, parameters);
+
+            rs = ps.executeQuery();
         }
 
         return rs;
@@ -165,17 +613,28 @@ public class DynamicQuery {
      * @return 1 if the row was inserted successfully 0 if not
      */
     public int insertOneRow(String tableName, List<?> parameters) {
-        String insertQuery = createDynamicInsertQuery(tableName);
-        LOGGER.info("##### insertQuery: " + insertQuery);
+        try {
+            TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+            String insertQuery = tableMetadata.insertSql();
+            LOGGER.debug("##### insertQuery: {}", insertQuery);
 
-        try (PreparedStatement ps = conn.prepareStatement(insertQuery, ResultSet.TYPE_FORWARD_ONLY,
-                ResultSet.CONCUR_UPDATABLE);) {
+            QueryMetrics.Sample sample = queryMetrics.start(Operation.INSERT, tableName, insertQuery, parameters);
 
-            for (int i = 1; i <= parameters.size(); i++) {
-                ps.setObject(i, parameters.get(i - 1));
-            }
+            try (Connection conn = dataSource.getConnection();
+                    PreparedStatement ps = conn.prepareStatement(insertQuery, ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_UPDATABLE);) {
+                tableMetadata.insertBinder().bind(ps, parameters);
+
+                int inserted = ps.executeUpdate();
+                sample.success(inserted);
+                written(tableName);
 
-            return ps.executeUpdate();
+                return inserted;
+            } catch (SQLException | RuntimeException ex) {
+                sample.failure(ex);
+
+                throw ex;
+            }
         } catch (SQLException ex) {
             ex.printStackTrace();
         }
@@ -184,36 +643,33 @@ public class DynamicQuery {
     }
 
     /**
-     * Inserts multiple rows using batch.
+     * Inserts multiple rows using batch. The rows are sent in chunks of
+     * db.batch.chunk-size and committed as configured in db.batch.commit-mode.
+     * 
+     * With db.parallel-insert.enabled the rows are split in shards inserted
+     * over several connections at the same time, the counts keep the order of
+     * the rows. With SINGLE_TRANSACTION the rows stay on one connection, the
+     * shards can't share a transaction.
      * 
      * @param tableName        the name of the table
      * @param listOfParameters list of parameters
-     * @return array of updated rows
+     * @return array of updated rows, Statement.EXECUTE_FAILED for the rows that
+     *         were not inserted
      */
     public int[] insertMultipleRows(String tableName, List<List<?>> listOfParameters) {
-        String insertQuery = createDynamicInsertQuery(tableName);
-        LOGGER.info("##### insertQuery: " + insertQuery);
-
-        try (PreparedStatement ps = conn.prepareStatement(insertQuery, ResultSet.TYPE_FORWARD_ONLY,
-                ResultSet.CONCUR_UPDATABLE);) {
-
-            listOfParameters.forEach(parameters -> {
-                for (int i = 1; i <= parameters.size(); i++) {
-                    try {
-                        ps.setObject(i, parameters.get(i - 1));
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
-                    }
-                }
-
-                try {
-                    ps.addBatch();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
-            });
-
-            return ps.executeBatch();
+        try {
+            BatchOptions options = BatchOptions.of(dbConfig.getBatch());
+            ParallelOptions parallel = ParallelOptions.of(dbConfig.getParallelInsert());
+            BatchResult result = dbConfig.getParallelInsert().isEnabled()
+                    && options.commitMode() != CommitMode.SINGLE_TRANSACTION
+                    && listOfParameters.size() > parallel.shardSize()
+                            ? parallelInserter.insert(tableName, listOfParameters.iterator(), options, parallel,
+                                    true)
+                            : batchInserter.insert(tableName, listOfParameters.iterator(), options, true);
+            written(tableName);
+            result.failures().forEach(failure -> failure.cause().printStackTrace());
+
+            return result.updateCounts(listOfParameters.size());
         } catch (SQLException ex) {
             ex.printStackTrace();
         }
@@ -221,6 +677,197 @@ public class DynamicQuery {
         return new int[0];
     }
 
+    /**
+     * Inserts the rows of an iterator in chunks, only one chunk is kept in
+     * memory.
+     * 
+     * @param tableName the name of the table
+     * @param rows      the rows, in the order of the columns of getColumns()
+     * @param options   chunk size, commit mode and rows per statement
+     * @return the rows inserted and the chunks that failed
+     * @throws SQLException
+     */
+    public BatchResult insertRows(String tableName, Iterator<? extends List<?>> rows, BatchOptions options)
+            throws SQLException {
+        try {
+            return batchInserter.insert(tableName, rows, options, false);
+        } finally {
+            written(tableName);
+        }
+    }
+
+    /**
+     * Inserts the rows of an iterator over several connections at the same
+     * time, see {@link ParallelInserter}. Only the shards being inserted are
+     * in memory.
+     * 
+     * @param tableName the name of the table
+     * @param rows      the rows, in the order of the columns of getColumns()
+     * @param options   chunk size, commit mode and rows per statement of every
+     *                  shard
+     * @param parallel  connections, shard size and failure policy
+     * @return the rows inserted and the chunks that failed
+     * @throws SQLException
+     */
+    public BatchResult insertRowsInParallel(String tableName, Iterator<? extends List<?>> rows,
+            BatchOptions options, ParallelOptions parallel) throws SQLException {
+        try {
+            return parallelInserter.insert(tableName, rows, options, parallel, false);
+        } finally {
+            written(tableName);
+        }
+    }
+
+    /**
+     * Inserts the rows of a stream in chunks, using the db.batch.* settings.
+     * 
+     * @param tableName the name of the table
+     * @param rows      the rows, in the order of the columns of getColumns()
+     * @return the rows inserted and the chunks that failed
+     * @throws SQLException
+     */
+    public BatchResult insertRows(String tableName, Stream<? extends List<?>> rows) throws SQLException {
+        try (rows) {
+            return insertRows(tableName, rows.iterator(), BatchOptions.of(dbConfig.getBatch()));
+        }
+    }
+
+    /**
+     * Loads rows with the bulk protocol of the database: COPY on PostgreSQL,
+     * LOAD DATA LOCAL INFILE on MySQL, batch inserts on the others. The rows
+     * are encoded as they are sent, they are never all in memory.
+     * 
+     * @param tableName the name of the table
+     * @param rows      the rows, in the order of the columns of getColumns()
+     * @return the number of rows loaded
+     * @throws SQLException
+     */
+    public long bulkLoad(String tableName, Iterator<? extends List<?>> rows) throws SQLException {
+        try {
+            return bulkLoader.load(tableName, rows);
+        } finally {
+            written(tableName);
+        }
+    }
+
+    /**
+     * Loads the rows of a stream with the bulk protocol of the database.
+     * 
+     * @param tableName the name of the table
+     * @param rows      the rows, in the order of the columns of getColumns()
+     * @return the number of rows loaded
+     * @throws SQLException
+     */
+    public long bulkLoad(String tableName, Stream<? extends List<?>> rows) throws SQLException {
+        try (rows) {
+            return bulkLoad(tableName, rows.iterator());
+        }
+    }
+
+    /**
+     * Inserts the rows, or updates the rows with the same key, with INSERT ...
+     * ON CONFLICT on PostgreSQL and INSERT ... ON DUPLICATE KEY UPDATE on
+     * MySQL. The rows are sent in chunks of db.batch.chunk-size and committed
+     * as configured in db.batch.commit-mode.
+     * 
+     * @param tableName  the name of the table
+     * @param keyColumns the columns that identify a row, empty for the primary
+     *                   key
+     * @param rows       the rows, in the order of getUpsertColumns()
+     * @return the outcome of every row and, on PostgreSQL, its primary key
+     * @throws SQLException
+     */
+    public UpsertResult upsertMultipleRows(String tableName, List<String> keyColumns, List<List<?>> rows)
+            throws SQLException {
+        return upsertRows(tableName, keyColumns, rows.iterator(), BatchOptions.of(dbConfig.getBatch()), true);
+    }
+
+    /**
+     * Upserts the rows of an iterator in chunks, only one chunk is kept in
+     * memory.
+     * 
+     * @param tableName       the name of the table
+     * @param keyColumns      the columns that identify a row, empty for the
+     *                        primary key
+     * @param rows            the rows, in the order of getUpsertColumns()
+     * @param options         chunk size and commit mode
+     * @param collectOutcomes true to return the outcome of every row
+     * @return the rows inserted and updated and the chunks that failed
+     * @throws SQLException
+     */
+    public UpsertResult upsertRows(String tableName, List<String> keyColumns, Iterator<? extends List<?>> rows,
+            BatchOptions options, boolean collectOutcomes) throws SQLException {
+        try {
+            return upserter.upsert(tableName, keyColumns, rows, options, collectOutcomes);
+        } finally {
+            written(tableName);
+        }
+    }
+
+    /**
+     * Gets the columns of the rows of an upsert: the columns of getColumns()
+     * followed by the key columns it leaves out, like a SERIAL id.
+     * 
+     * @param tableName  the name of the table
+     * @param keyColumns the columns that identify a row, empty for the primary
+     *                   key
+     * @return list of column names
+     * @throws SQLException
+     */
+    public List<String> getUpsertColumns(String tableName, List<String> keyColumns) throws SQLException {
+        return upserter.upsertColumnNames(tableName, keyColumns);
+    }
+
+    /**
+     * Updates rows by primary key, with one UPDATE ... WHERE pk = ? per row
+     * sent in batches of db.batch.chunk-size. It sets the columns of
+     * getColumns() that are not in the primary key.
+     * 
+     * @param tableName the name of the table
+     * @param rows      the values of the columns, followed by the primary key
+     * @return one count per row, 0 for the keys that were not found
+     * @throws SQLException
+     */
+    public KeyedWriteResult updateRowsByKey(String tableName, List<List<?>> rows) throws SQLException {
+        return updateRowsByKey(tableName, List.of(), rows);
+    }
+
+    /**
+     * Updates some columns of rows by primary key.
+     * 
+     * @param tableName the name of the table
+     * @param columns   the columns that are set
+     * @param rows      the values of the columns, followed by the primary key
+     * @return one count per row, 0 for the keys that were not found
+     * @throws SQLException
+     */
+    public KeyedWriteResult updateRowsByKey(String tableName, List<String> columns, List<List<?>> rows)
+            throws SQLException {
+        try {
+            return keyedRowWriter.update(tableName, columns, rows.iterator(), BatchOptions.of(dbConfig.getBatch()),
+                    true);
+        } finally {
+            written(tableName);
+        }
+    }
+
+    /**
+     * Deletes rows by primary key, with DELETE ... WHERE pk IN (...) of
+     * db.batch.keys-per-statement keys.
+     * 
+     * @param tableName the name of the table
+     * @param keys      the keys, a List of values for a composite primary key
+     * @return the rows deleted
+     * @throws SQLException
+     */
+    public KeyedWriteResult deleteRowsByKey(String tableName, List<?> keys) throws SQLException {
+        try {
+            return keyedRowWriter.delete(tableName, keys.iterator(), BatchOptions.of(dbConfig.getBatch()));
+        } finally {
+            written(tableName);
+        }
+    }
+
     /**
      * Inserts a row from a ResutSet.
      * 
@@ -234,66 +881,21 @@ public class DynamicQuery {
         ResultSetMetaData rsMetaData = rs.getMetaData();
         int columnCount = rsMetaData.getColumnCount();
 
-        for (int i = 0; i < columnCount; i++) {
-            int columnType = rsMetaData.getColumnType(i + 1);
-
-            switch (columnType) {
-            case Types.CHAR: // 1
-            case Types.VARCHAR: // 12
-            case Types.LONGVARCHAR: // -1
-                rs.updateString(i + 1, (String) parameters.get(i));
-                break;
-
-            case Types.BIT: // -7
-            case Types.BOOLEAN: // 16
-                rs.updateBoolean(i + 1, ((Boolean) parameters.get(i)).booleanValue());
-                break;
-
-            case Types.TINYINT: // -6
-                rs.updateByte(i, ((Byte) parameters.get(i)).byteValue());
-                break;
-
-            case Types.SMALLINT: // 5
-                rs.updateShort(i, ((Short) parameters.get(i)).shortValue());
-                break;
-
-            case Types.INTEGER: // 4
-                rs.updateInt(i, ((Integer) parameters.get(i)).intValue());
-                break;
-
-            case Types.BIGINT: // -5
-                rs.updateLong(i, ((Long) parameters.get(i)).longValue());
-                break;
-
-            case Types.REAL: // 7
-                rs.updateFloat(i, ((Float) parameters.get(i)).floatValue());
-                break;
-
-            case Types.FLOAT: // 6
-            case Types.DOUBLE: // 8
-                rs.updateDouble(i, ((Double) parameters.get(i)).doubleValue());
-                break;
-
-            case Types.NUMERIC: // 2
-            case Types.DECIMAL: // 3
-                rs.updateBigDecimal(i, (BigDecimal) parameters.get(i));
-                break;
-
-            case Types.DATE: // 91
-                rs.updateDate(i, (java.sql.Date) parameters.get(i));
-                break;
-
-            case Types.TIME: // 92
-                rs.updateTime(i, (java.sql.Time) parameters.get(i));
-                break;
-
-            case Types.TIMESTAMP: // 93
-                rs.updateTimestamp(i, (java.sql.Timestamp) parameters.get(i));
-                break;
-            }
+        bindingPlanCache.updater(rsMetaData).update(rs, columnCount, parameters);
+
+        QueryMetrics.Sample sample = queryMetrics.start(Operation.INSERT, tableName(rsMetaData),
+                "ResultSet.insertRow()", parameters);
+
+        try {
+            rs.insertRow();
+            sample.success(1);
+        } catch (SQLException | RuntimeException ex) {
+            sample.failure(ex);
+
+            throw ex;
         }
 
-        rs.insertRow();
+        written(rsMetaData);
 
         // return rs.rowInserted(); // Regresa un boolean
         // MySQL no soporta "rs.rowInserted()" => com.mysql.jdbc.NotImplemented:
@@ -301,7 +903,8 @@ public class DynamicQuery {
     }
 
     /**
-     * Updates data from a ResultSet.
+     * Updates data from a ResultSet, one round trip per row. To update many
+     * rows use updateRowsByKey().
      * 
      * @param rs
      * @param parameters
@@ -311,66 +914,21 @@ public class DynamicQuery {
         ResultSetMetaData rsMetaData = rs.getMetaData();
         int columnCount = rsMetaData.getColumnCount();
 
-        for (int i = 0; i < columnCount; i++) {
-            int columnType = rsMetaData.getColumnType(i + 1);
-
-            switch (columnType) {
-            case Types.CHAR: // 1
-            case Types.VARCHAR: // 12
-            case Types.LONGVARCHAR: // -1
-                rs.updateString(i + 1, (String) parameters.get(i));
-                break;
-
-            case Types.BIT: // -7
-            case Types.BOOLEAN: // 16
-                rs.updateBoolean(i + 1, ((Boolean) parameters.get(i)).booleanValue());
-                break;
-
-            case Types.TINYINT: // -6
-                rs.updateByte(i, ((Byte) parameters.get(i)).byteValue());
-                break;
-
-            case Types.SMALLINT: // 5
-                rs.updateShort(i, ((Short) parameters.get(i)).shortValue());
-                break;
-
-            case Types.INTEGER: // 4
-                rs.updateInt(i, ((Integer) parameters.get(i)).intValue());
-                break;
-
-            case Types.BIGINT: // -5
-                rs.updateLong(i, ((Long) parameters.get(i)).longValue());
-                break;
-
-            case Types.REAL: // 7
-                rs.updateFloat(i, ((Float) parameters.get(i)).floatValue());
-                break;
-
-            case Types.FLOAT: // 6
-            case Types.DOUBLE: // 8
-                rs.updateDouble(i, ((Double) parameters.get(i)).doubleValue());
-                break;
-
-            case Types.NUMERIC: // 2
-            case Types.DECIMAL: // 3
-                rs.updateBigDecimal(i, (BigDecimal) parameters.get(i));
-                break;
-
-            case Types.DATE: // 91
-                rs.updateDate(i, (java.sql.Date) parameters.get(i));
-                break;
-
-            case Types.TIME: // 92
-                rs.updateTime(i, (java.sql.Time) parameters.get(i));
-                break;
-
-            case Types.TIMESTAMP: // 93
-                rs.updateTimestamp(i, (java.sql.Timestamp) parameters.get(i));
-                break;
-            }
+        bindingPlanCache.updater(rsMetaData).update(rs, columnCount, parameters);
+
+        QueryMetrics.Sample sample = queryMetrics.start(Operation.UPDATE, tableName(rsMetaData),
+                "ResultSet.updateRow()", parameters);
+
+        try {
+            rs.updateRow();
+            sample.success(1);
+        } catch (SQLException | RuntimeException ex) {
+            sample.failure(ex);
+
+            throw ex;
         }
 
-        rs.updateRow();
+        written(rsMetaData);
 
         // return rs.rowUpdated(); // Regresa un boolean
         // MySQL no soporta "rs.rowUpdated()" => com.mysql.jdbc.NotImplemented:
@@ -378,13 +936,27 @@ public class DynamicQuery {
     }
 
     /**
-     * Elimina el renglon obtenido del ResultSet.
+     * Elimina el renglon obtenido del ResultSet. To delete many rows use
+     * deleteRowsByKey().
      * 
      * @param rs
      * @throws SQLException
      */
     public void delete(ResultSet rs) throws SQLException {
-        rs.deleteRow();
+        ResultSetMetaData rsMetaData = rs.getMetaData();
+        QueryMetrics.Sample sample = queryMetrics.start(Operation.DELETE, tableName(rsMetaData),
+                "ResultSet.deleteRow()", null);
+
+        try {
+            rs.deleteRow();
+            sample.success(1);
+        } catch (SQLException | RuntimeException ex) {
+            sample.failure(ex);
+
+            throw ex;
+        }
+
+        written(rsMetaData);
 
         // return rs.rowDeleted(); // Regresa un boolean
         // MySQL no soporta "rs.rowDeleted()" => com.mysql.jdbc.NotImplemented:
@@ -392,18 +964,18 @@ public class DynamicQuery {
     }
 
     /**
-     * Deletes all rows.
+     * Deletes all rows, in chunks or with TRUNCATE as configured in
+     * db.delete.*
      * 
      * @param tableName the name of the table
-     * @return the number of rows deleted
+     * @return the number of rows deleted, -1 when the table was truncated
      */
     public int deleteAllRows(String tableName) {
-        String deletQuery = """
-                DELETE FROM %s
-                         """.formatted(tableName);
+        try {
+            DeleteResult result = deleteAllRows(tableName, DeleteOptions.of(dbConfig.getDelete()),
+                    progress -> LOGGER.debug("##### {}: {}", tableName, progress));
 
-        try (PreparedStatement ps = conn.prepareStatement(deletQuery);) {
-            return ps.executeUpdate();
+            return (int) Math.min(result.rowsDeleted(), Integer.MAX_VALUE);
         } catch (SQLException ex) {
             ex.printStackTrace();
         }
@@ -412,58 +984,64 @@ public class DynamicQuery {
     }
 
     /**
-     * Gets the list of column names dynamically from a table.
+     * Deletes all the rows of a table with TRUNCATE, when options.truncate()
+     * is true and no trigger or foreign key depends on the table, otherwise in
+     * chunks of one transaction each.
+     * 
+     * @param tableName the name of the table
+     * @param options   chunk size, rows per second and TRUNCATE
+     * @param progress  receives the rows deleted after every chunk
+     * @return the rows deleted, -1 after a TRUNCATE
+     * @throws SQLException
+     */
+    public DeleteResult deleteAllRows(String tableName, DeleteOptions options, Consumer<DeleteProgress> progress)
+            throws SQLException {
+        try {
+            return bulkDeleter.deleteAll(tableName, options, progress);
+        } finally {
+            written(tableName);
+        }
+    }
+
+    /**
+     * Deletes the rows of a table matching a condition, in chunks of one
+     * transaction each, see {@link BulkDeleter}.
+     * 
+     * @param tableName   the name of the table
+     * @param filter      the rows to delete, null for all of them
+     * @param options     chunk size and rows per second
+     * @param resumeToken the resumeToken of the last progress of an
+     *                    interrupted delete, null to start
+     * @param progress    receives the rows deleted after every chunk
+     * @return the rows deleted
+     * @throws SQLException
+     */
+    public DeleteResult deleteRows(String tableName, Condition filter, DeleteOptions options, String resumeToken,
+            Consumer<DeleteProgress> progress) throws SQLException {
+        try {
+            return bulkDeleter.delete(tableName, filter, options, resumeToken, progress);
+        } finally {
+            written(tableName);
+        }
+    }
+
+    /**
+     * Gets the list of column names dynamically from a table. Serial, auto
+     * increment and CURRENT_TIMESTAMP columns are left out.
+     * 
+     * The metadata is cached, see {@link TableMetadataCache}.
      * 
      * @param tableName the name of the table
      * @return list of column names
      */
     public List<String> getColumns(String tableName) {
-        List<String> columnNames = new ArrayList<String>();
-        DatabaseMetaData databaseMetaData = null;
-
         try {
-            databaseMetaData = conn.getMetaData();
+            return tableMetadataCache.get(tableName).insertableColumnNames();
         } catch (SQLException ex) {
             ex.printStackTrace();
         }
 
-        if (databaseMetaData != null) {
-            try (ResultSet columns = databaseMetaData.getColumns(null, null, tableName, null)) {
-                LOGGER.info("##### columns: " + columns);
-
-                while (columns.next()) {
-                    String COLUMN_NAME = columns.getString("COLUMN_NAME");
-                    String COLUMN_SIZE = columns.getString("COLUMN_SIZE");
-                    String DATA_TYPE = columns.getString("DATA_TYPE");
-                    String IS_NULLABLE = columns.getString("IS_NULLABLE");
-                    String IS_AUTOINCREMENT = columns.getString("IS_AUTOINCREMENT");
-                    String COLUMN_DEF = columns.getString("COLUMN_DEF");
-                    String TYPE_NAME = columns.getString("TYPE_NAME");
-                    String IS_GENERATEDCOLUMN = columns.getString("IS_GENERATEDCOLUMN");
-
-                    LOGGER.info("##### COLUMN_NAME: " + COLUMN_NAME);
-                    LOGGER.info("##### COLUMN_SIZE: " + COLUMN_SIZE);
-                    LOGGER.info("##### DATA_TYPE: " + DATA_TYPE);
-                    LOGGER.info("##### IS_NULLABLE: " + IS_NULLABLE);
-                    LOGGER.info("##### IS_AUTOINCREMENT: " + IS_AUTOINCREMENT);
-                    LOGGER.info("##### COLUMN_DEF: " + COLUMN_DEF);
-                    LOGGER.info("##### TYPE_NAME: " + TYPE_NAME);
-                    LOGGER.info("##### IS_GENERATEDCOLUMN: " + IS_GENERATEDCOLUMN);
-                    LOGGER.info("---------------------------------------");
-
-                    if ("serial".equalsIgnoreCase(TYPE_NAME) || "YES".equalsIgnoreCase(IS_AUTOINCREMENT)
-                            || "CURRENT_TIMESTAMP".equalsIgnoreCase(COLUMN_DEF)) {
-                        continue;
-                    }
-
-                    columnNames.add(COLUMN_NAME);
-                }
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-            }
-        }
-
-        return columnNames;
+        return new ArrayList<String>();
     }
 
     /*
@@ -491,89 +1069,40 @@ public class DynamicQuery {
      * return columnNames; }
      */
 
+    /**
+     * Creates the INSERT of a table with all the insertable columns.
+     * 
+     * @param tableName the name of the table
+     * @return INSERT INTO table (columns) VALUES (?, ...)
+     */
     public String createDynamicInsertQuery(String tableName) {
-        List<String> columnNames = getColumns(tableName);
-        LOGGER.info("##### columnNames: " + columnNames);
-        LOGGER.info("##### columnNames.size(): " + columnNames.size());
-
-        StringBuilder insertColumns = new StringBuilder();
-        StringBuilder insertValues = new StringBuilder();
-
-        for (int i = 0; i < columnNames.size(); i++) {
-            insertColumns.append(columnNames.get(i));
-            insertColumns.append(", ");
-            insertValues.append("?");
-            insertValues.append(", ");
+        try {
+            return tableMetadataCache.get(tableName).insertSql();
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Unable to create the INSERT of " + tableName, ex);
         }
+    }
 
-        insertColumns.delete(insertColumns.length() - 2, insertColumns.length());
-        insertValues.delete(insertValues.length() - 2, insertValues.length());
+    /**
+     * Forgets the cached metadata of a table, call it after a DDL.
+     * 
+     * @param tableName the name of the table
+     */
+    public void invalidateMetadata(String tableName) {
+        tableMetadataCache.invalidate(tableName);
+    }
 
-        return """
-                INSERT INTO %s (%s)
-                VALUES (%s)
-                         """.formatted(tableName, insertColumns, insertValues);
+    /**
+     * @return the table of the first column, null if the driver doesn't know it
+     */
+    private static String tableName(ResultSetMetaData rsMetaData) throws SQLException {
+        String tableName = rsMetaData.getColumnCount() == 0 ? null : rsMetaData.getTableName(1);
+
+        return tableName == null || tableName.isEmpty() ? null : tableName;
     }
-    
+
     public void updateResultSet(ResultSet rs, int columnCount, ResultSetMetaData rsMetaData, List<?> parameters)
             throws SQLException {
-        for (int i = 0; i < columnCount; i++) {
-            int columnType = rsMetaData.getColumnType(i + 1);
-
-            switch (columnType) {
-            case Types.CHAR: // 1
-            case Types.VARCHAR: // 12
-            case Types.LONGVARCHAR: // -1
-                rs.updateString(i + 1, (String) parameters.get(i));
-                break;
-
-            case Types.BIT: // -7
-            case Types.BOOLEAN: // 16
-                rs.updateBoolean(i + 1, ((Boolean) parameters.get(i)).booleanValue());
-                break;
-
-            case Types.TINYINT: // -6
-                rs.updateByte(i, ((Byte) parameters.get(i)).byteValue());
-                break;
-
-            case Types.SMALLINT: // 5
-                rs.updateShort(i, ((Short) parameters.get(i)).shortValue());
-                break;
-
-            case Types.INTEGER: // 4
-                rs.updateInt(i, ((Integer) parameters.get(i)).intValue());
-                break;
-
-            case Types.BIGINT: // -5
-                rs.updateLong(i, ((Long) parameters.get(i)).longValue());
-                break;
-
-            case Types.REAL: // 7
-                rs.updateFloat(i, ((Float) parameters.get(i)).floatValue());
-                break;
-
-            case Types.FLOAT: // 6
-            case Types.DOUBLE: // 8
-                rs.updateDouble(i, ((Double) parameters.get(i)).doubleValue());
-                break;
-
-            case Types.NUMERIC: // 2
-            case Types.DECIMAL: // 3
-                rs.updateBigDecimal(i, (BigDecimal) parameters.get(i));
-                break;
-
-            case Types.DATE: // 91
-                rs.updateDate(i, (java.sql.Date) parameters.get(i));
-                break;
-
-            case Types.TIME: // 92
-                rs.updateTime(i, (java.sql.Time) parameters.get(i));
-                break;
-
-            case Types.TIMESTAMP: // 93
-                rs.updateTimestamp(i, (java.sql.Timestamp) parameters.get(i));
-                break;
-            }
-        }
+        bindingPlanCache.updater(rsMetaData).update(rs, columnCount, parameters);
     }
 }
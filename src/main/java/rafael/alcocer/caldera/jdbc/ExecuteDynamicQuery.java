@@ -15,12 +15,16 @@
  */
 package rafael.alcocer.caldera.jdbc;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
@@ -28,6 +32,19 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.configuration.PoolStatsTracker;
+import rafael.alcocer.caldera.jdbc.binding.RowReader;
+import rafael.alcocer.caldera.jdbc.cache.QueryResult;
+import rafael.alcocer.caldera.jdbc.cache.QueryResultCache;
+import rafael.alcocer.caldera.jdbc.delete.DeleteOptions;
+import rafael.alcocer.caldera.jdbc.delete.DeleteResult;
+import rafael.alcocer.caldera.jdbc.export.ExportResult;
+import rafael.alcocer.caldera.jdbc.keyed.KeyedWriteResult;
+import rafael.alcocer.caldera.jdbc.lookup.LookupBatcher;
+import rafael.alcocer.caldera.jdbc.query.Condition;
+import rafael.alcocer.caldera.jdbc.query.Page;
+import rafael.alcocer.caldera.jdbc.upsert.UpsertResult;
 
 /**
  * Executes the tests of the DynamicQuery class.
@@ -41,6 +58,10 @@ public class ExecuteDynamicQuery {
     private static final Logger LOGGER = LoggerFactory.getLogger(ExecuteDynamicQuery.class);
 
     private final DynamicQuery dynamicQuery;
+    private final PoolStatsTracker poolStatsTracker;
+    private final LookupBatcher lookupBatcher;
+    private final QueryResultCache queryResultCache;
+    private final DbConfig dbConfig;
 
     public void executeInsert(String tableName) {
         List<Object> parameters = new ArrayList<>();
@@ -50,7 +71,7 @@ public class ExecuteDynamicQuery {
         parameters.add("515.123.4567");
         parameters.add(true);
 
-        LOGGER.info("##### inserted: " + dynamicQuery.insertOneRow(tableName, parameters));
+        LOGGER.info("##### inserted: {}", dynamicQuery.insertOneRow(tableName, parameters));
     }
 
     public void executeMultipleInserts(String tableName, int numberOfRecordsToInsert) {
@@ -62,41 +83,77 @@ public class ExecuteDynamicQuery {
         });
 
         int[] rowsInserted = dynamicQuery.insertMultipleRows(tableName, listOfParameters);
+        long failed = Arrays.stream(rowsInserted).filter(count -> count == Statement.EXECUTE_FAILED).count();
 
-        LOGGER.info("##### inserted: " + rowsInserted);
-        LOGGER.info("##### total inserted: " + rowsInserted.length);
+        LOGGER.info("##### total inserted: {}, failed: {}", rowsInserted.length - failed, failed);
     }
 
-    public void executeSelectBy(String tableName, String columnName, Object columnValue) {
-        String querySelect = """
-                SELECT *
-                FROM %s
-                WHERE %s = ?
-                         """.formatted(tableName, columnName);
+    public void executeUpserts(String tableName, int numberOfRecordsToUpsert) {
+        List<List<?>> listOfParameters = new ArrayList<>();
 
-        List<Object> parameters = new ArrayList<>();
-        parameters.add(columnValue);
+        // The id goes last, it is not one of the insertable columns
+        IntStream.rangeClosed(1, numberOfRecordsToUpsert).forEach(i -> {
+            List<Object> parameters = new ArrayList<>(generateParameters(i));
+            parameters.add(i);
+            listOfParameters.add(parameters);
+        });
 
-        try (ResultSet rs = dynamicQuery.getResultSet(querySelect, parameters);) {
-            if (rs != null) {
-                List<String> columnNames = new ArrayList<>();
-                ResultSetMetaData rsmd = rs.getMetaData();
+        try {
+            UpsertResult result = dynamicQuery.upsertMultipleRows(tableName, List.of("id"), listOfParameters);
 
-                for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-                    columnNames.add(rsmd.getColumnLabel(i));
-                }
+            LOGGER.info("##### inserted: {}, updated: {}, failed chunks: {}", result.rowsInserted(),
+                    result.rowsUpdated(), result.failures().size());
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void executeUpdatesByKey(String tableName, int numberOfRecordsToUpdate) {
+        List<List<?>> listOfParameters = new ArrayList<>();
+
+        // The primary key goes last
+        IntStream.rangeClosed(1, numberOfRecordsToUpdate).forEach(i -> {
+            List<Object> parameters = new ArrayList<>(generateParameters(i));
+            parameters.add(i);
+            listOfParameters.add(parameters);
+        });
 
-                LOGGER.info("##### columnNames.size(): " + columnNames.size());
-                LOGGER.info("##### columnNames: " + columnNames);
+        try {
+            KeyedWriteResult result = dynamicQuery.updateRowsByKey(tableName, listOfParameters);
+            LOGGER.info("##### updated: {}, failed chunks: {}", result.rowsAffected(), result.failures().size());
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void executeDeletesByKey(String tableName, List<?> keys) {
+        try {
+            KeyedWriteResult result = dynamicQuery.deleteRowsByKey(tableName, keys);
+            LOGGER.info("##### deleted: {}, failed chunks: {}", result.rowsAffected(), result.failures().size());
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void executeSelectBy(String tableName, String columnName, Object columnValue) {
+        try (ResultSet rs = dynamicQuery.getResultSet(
+                dynamicQuery.select(tableName).where(Condition.eq(columnName, columnValue)).build());) {
+            if (rs != null) {
+                RowReader rowReader = RowReader.compile(rs.getMetaData());
+                Object[] row = new Object[rowReader.columnCount()];
+
+                LOGGER.debug("##### columnCount: {}", rowReader.columnCount());
 
                 while (rs.next()) {
-                    for (int i = 0; i < columnNames.size(); i++) {
-                        if (rs.getObject(columnNames.get(i)) != null) {
-                            LOGGER.info("##### " + columnNames.get(i) + ": " + rs.getObject(columnNames.get(i)));
+                    rowReader.read(rs, row);
+
+                    for (int i = 0; i < row.length; i++) {
+                        if (row[i] != null) {
+                            LOGGER.debug("##### {}: {}", rowReader.columnLabel(i + 1), row[i]);
                         }
                     }
 
-                    LOGGER.info("---------------------------------");
+                    LOGGER.debug("---------------------------------");
                 }
             } else {
                 LOGGER.info("#####ResultSet in null");
@@ -106,13 +163,118 @@ public class ExecuteDynamicQuery {
         }
     }
 
+    public void executePages(String tableName, int pageSize) {
+        try {
+            String token = null;
+            int pages = 0;
+
+            do {
+                Page<Object[]> page = dynamicQuery.page(tableName, null, pageSize, token, RowReader.arrayMapper());
+                LOGGER.debug("##### page {}: {} rows", pages, page.rows().size());
+
+                token = page.nextToken();
+                pages++;
+            } while (token != null);
+
+            LOGGER.info("##### pages: {}", pages);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void executeExport(String tableName, String fileName) {
+        try {
+            String query = """
+                    SELECT *
+                    FROM %s
+                    """.formatted(tableName);
+
+            ExportResult result = dynamicQuery.export(query, List.of(), Path.of(fileName));
+            LOGGER.info("##### rows: {}, files: {}, rows/s: {}, MB/s: {}", result.rows(), result.files(),
+                    (long) result.rowsPerSecond(), "%.1f".formatted(result.megabytesPerSecond()));
+        } catch (SQLException | IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void executeArrowExport(String tableName, String fileName) {
+        try {
+            String query = """
+                    SELECT *
+                    FROM %s
+                    """.formatted(tableName);
+
+            long start = System.nanoTime();
+            long rows = dynamicQuery.writeArrowFile(query, List.of(), Path.of(fileName));
+            LOGGER.info("##### rows: {}, file: {}, ms: {}", rows, fileName, (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException | IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void executeCachedSelectBy(String tableName, String columnName, Object columnValue) {
+        String querySelect = """
+                SELECT *
+                FROM %s
+                WHERE %s = ?
+                         """.formatted(tableName, columnName);
+
+        try {
+            QueryResult result = dynamicQuery.getCachedResult(querySelect, List.of(columnValue));
+
+            for (Object[] row : result.rows()) {
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] != null) {
+                        LOGGER.debug("##### {}: {}", result.columnLabels().get(i), row[i]);
+                    }
+                }
+
+                LOGGER.debug("---------------------------------");
+            }
+
+            LOGGER.info("##### cacheStats: {}", queryResultCache.stats());
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void executeLookups(String tableName, String columnName, List<?> columnValues) {
+        List<CompletableFuture<List<Object[]>>> futures = new ArrayList<>();
+
+        // All the lookups are in flight at the same time, so they are coalesced
+        columnValues.forEach(columnValue -> futures.add(lookupBatcher.lookup(tableName, columnName, columnValue)));
+
+        for (int i = 0; i < futures.size(); i++) {
+            LOGGER.debug("##### {} {}: {} rows", columnName, columnValues.get(i), futures.get(i).join().size());
+        }
+
+        LOGGER.info("##### lookupStats: {}", lookupBatcher.stats());
+    }
+
     public void executeDeleteAll(String tableName) {
         int rowsDeleted = dynamicQuery.deleteAllRows(tableName);
-        LOGGER.info("##### rowsDeleted: " + rowsDeleted);
+        LOGGER.info("##### rowsDeleted: {}", rowsDeleted);
+    }
+
+    public void executeDeleteWhere(String tableName, String columnName, Object columnValue) {
+        try {
+            DeleteResult result = dynamicQuery.deleteRows(tableName, Condition.eq(columnName, columnValue),
+                    DeleteOptions.of(dbConfig.getDelete()), null,
+                    progress -> LOGGER.info("##### rowsDeleted: {}, chunks: {}", progress.rowsDeleted(),
+                            progress.chunks()));
+            LOGGER.info("##### {}", result);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void executePoolStats() {
+        LOGGER.info("##### poolStats: {}", poolStatsTracker.snapshot());
     }
 
     public List<?> generateParameters(int i) {
-        Random random = new Random();
+        // One generator per thread, nothing is shared by the workload workers
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         int randomNumber = random.nextInt(1000);
         boolean active = random.nextBoolean();
 
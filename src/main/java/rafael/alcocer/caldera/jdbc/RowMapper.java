@@ -0,0 +1,36 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Converts the current row of a ResultSet into an object.
+ *
+ * @param <T> the type of the object
+ * @author Rafael Alcocer Caldera
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * @param rs the ResultSet positioned on the row, don't move it
+     * @return the object
+     * @throws SQLException
+     */
+    T map(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.arrow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.ArrowWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.streaming.QueryStreamer;
+
+/**
+ * Reads the rows of a query into Apache Arrow batches: a VectorSchemaRoot of
+ * db.arrow.batch-size rows whose columns live in off-heap vectors. The same
+ * vectors are refilled for every batch, so a query of any size only needs the
+ * memory of one batch.
+ *
+ * The batches can also be written in the Arrow IPC file or stream format,
+ * which pandas, Polars, DuckDB or Spark read without conversion.
+ *
+ * Arrow reads the address of direct buffers, the JVM must be started with
+ * --add-opens=java.base/java.nio=ALL-UNNAMED.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@Component
+public class ArrowQueryReader implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArrowQueryReader.class);
+
+    private final QueryStreamer queryStreamer;
+    private final DbConfig dbConfig;
+
+    // Created on first use, so the application starts without --add-opens
+    private BufferAllocator allocator;
+
+    public ArrowQueryReader(QueryStreamer queryStreamer, DbConfig dbConfig) {
+        this.queryStreamer = queryStreamer;
+        this.dbConfig = dbConfig;
+    }
+
+    /**
+     * Reads a query in batches of db.arrow.batch-size rows.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param callback   receives every batch
+     * @return the number of rows
+     * @throws SQLException
+     * @throws IOException  thrown by the callback
+     */
+    public long forEachBatch(String query, List<?> parameters, BatchCallback callback)
+            throws SQLException, IOException {
+        return forEachBatch(query, parameters, dbConfig.getArrow().getBatchSize(), callback);
+    }
+
+    /**
+     * Reads a query in batches. The callback receives the same root every
+     * time, refilled: it must copy or transfer what it wants to keep before
+     * returning.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param batchSize  rows of every batch, the last one can have fewer
+     * @param callback   receives every batch
+     * @return the number of rows
+     * @throws SQLException
+     * @throws IOException  thrown by the callback
+     */
+    public long forEachBatch(String query, List<?> parameters, int batchSize, BatchCallback callback)
+            throws SQLException, IOException {
+        return read(query, parameters, batchSize, new Batches() {
+            @Override
+            public void batch(VectorSchemaRoot root) throws IOException {
+                callback.process(root);
+            }
+        });
+    }
+
+    /**
+     * Writes the rows of a query to an Arrow IPC file, readable at random
+     * positions.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param file       the file, usually with the .arrow extension
+     * @return the number of rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long writeFile(String query, List<?> parameters, Path file) throws SQLException, IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return read(query, parameters, dbConfig.getArrow().getBatchSize(),
+                    new WriterBatches(root -> new ArrowFileWriter(root, null, channel)));
+        }
+    }
+
+    /**
+     * Writes the rows of a query in the Arrow IPC stream format. The stream is
+     * not closed.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param out        receives the batches
+     * @return the number of rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long writeStream(String query, List<?> parameters, OutputStream out) throws SQLException, IOException {
+        return read(query, parameters, dbConfig.getArrow().getBatchSize(),
+                new WriterBatches(root -> new ArrowStreamWriter(root, null, Channels.newChannel(out))));
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (allocator != null) {
+            allocator.close();
+        }
+    }
+
+    private synchronized BufferAllocator allocator() {
+        if (allocator == null) {
+            allocator = new RootAllocator(dbConfig.getArrow().getMaxMemory());
+        }
+
+        return allocator;
+    }
+
+    private long read(String query, List<?> parameters, int batchSize, Batches batches)
+            throws SQLException, IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+
+        // A child per query, closing it fails if a vector was not released
+        try (BufferAllocator queryAllocator = allocator().newChildAllocator("query", 0, Long.MAX_VALUE)) {
+            return queryStreamer.read(query, parameters, queryStreamer.defaultFetchSize(), rs -> {
+                try (VectorSchemaRoot root = VectorSchemaRoot.create(BatchFiller.schema(rs.getMetaData()),
+                        queryAllocator)) {
+                    for (FieldVector vector : root.getFieldVectors()) {
+                        vector.setInitialCapacity(batchSize);
+                        vector.allocateNew();
+                    }
+
+                    BatchFiller filler = new BatchFiller(root);
+                    long rowCount = 0;
+                    int index = 0;
+
+                    batches.start(root);
+
+                    while (rs.next()) {
+                        filler.fill(rs, index++);
+                        rowCount++;
+
+                        if (index == batchSize) {
+                            flush(root, index, batches);
+                            index = 0;
+                        }
+                    }
+
+                    if (index > 0) {
+                        flush(root, index, batches);
+                    }
+
+                    batches.end();
+                    LOGGER.debug("##### {} rows in batches of {}, {} bytes off-heap at most", rowCount, batchSize,
+                            queryAllocator.getPeakMemoryAllocation());
+
+                    return rowCount;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static void flush(VectorSchemaRoot root, int rowCount, Batches batches) throws IOException {
+        root.setRowCount(rowCount);
+        batches.batch(root);
+
+        // Keeps the buffers, only the values are cleared
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.reset();
+        }
+    }
+
+    /**
+     * Receives every batch of a query.
+     */
+    @FunctionalInterface
+    public interface BatchCallback {
+
+        /**
+         * @param root the rows of the batch, refilled after the method returns
+         * @throws IOException
+         */
+        void process(VectorSchemaRoot root) throws IOException;
+    }
+
+    /**
+     * What happens before, during and after the batches of a query.
+     */
+    private interface Batches {
+
+        default void start(VectorSchemaRoot root) throws IOException {
+        }
+
+        void batch(VectorSchemaRoot root) throws IOException;
+
+        default void end() throws IOException {
+        }
+    }
+
+    /**
+     * Writes the batches with an Arrow IPC writer. The writer is not closed,
+     * that would close the channel.
+     */
+    private static class WriterBatches implements Batches {
+
+        private final WriterFactory writerFactory;
+        private ArrowWriter writer;
+
+        WriterBatches(WriterFactory writerFactory) {
+            this.writerFactory = writerFactory;
+        }
+
+        @Override
+        public void start(VectorSchemaRoot root) throws IOException {
+            writer = writerFactory.create(root);
+            writer.start();
+        }
+
+        @Override
+        public void batch(VectorSchemaRoot root) throws IOException {
+            writer.writeBatch();
+        }
+
+        @Override
+        public void end() throws IOException {
+            writer.end();
+        }
+    }
+
+    @FunctionalInterface
+    private interface WriterFactory {
+
+        ArrowWriter create(VectorSchemaRoot root);
+    }
+}
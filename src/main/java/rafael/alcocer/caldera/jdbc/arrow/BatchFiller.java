@@ -0,0 +1,215 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.arrow;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Copies rows of a ResultSet into the vectors of a VectorSchemaRoot. The
+ * getter of every column is chosen once from the type of its vector, numbers
+ * and booleans go from the driver to off-heap memory without being boxed.
+ *
+ * Timestamps and dates are read as java.time values, JDBC has no primitive
+ * getter for them. Types without a vector of their own are read as text.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+final class BatchFiller {
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final OffsetDateTime EPOCH_UTC = EPOCH.atOffset(ZoneOffset.UTC);
+
+    private final ColumnFiller[] fillers;
+
+    BatchFiller(VectorSchemaRoot root) {
+        List<FieldVector> vectors = root.getFieldVectors();
+        this.fillers = new ColumnFiller[vectors.size()];
+
+        for (int i = 0; i < fillers.length; i++) {
+            fillers[i] = filler(vectors.get(i));
+        }
+    }
+
+    /**
+     * Maps the columns of a query to Arrow fields, named by their labels.
+     */
+    static Schema schema(ResultSetMetaData metaData) throws SQLException {
+        List<Field> fields = new ArrayList<>();
+
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+            boolean nullable = metaData.isNullable(column) != ResultSetMetaData.columnNoNulls;
+            FieldType fieldType = new FieldType(nullable, arrowType(metaData, column), null);
+            fields.add(new Field(metaData.getColumnLabel(column), fieldType, null));
+        }
+
+        return new Schema(fields);
+    }
+
+    /**
+     * Copies the current row into position index of every vector.
+     */
+    void fill(ResultSet rs, int index) throws SQLException {
+        for (int i = 0; i < fillers.length; i++) {
+            fillers[i].fill(rs, i + 1, index);
+        }
+    }
+
+    private static ArrowType arrowType(ResultSetMetaData metaData, int column) throws SQLException {
+        switch (metaData.getColumnType(column)) {
+        case Types.TINYINT, Types.SMALLINT, Types.INTEGER:
+            return new ArrowType.Int(32, true);
+        case Types.BIGINT:
+            return new ArrowType.Int(64, true);
+        case Types.REAL, Types.FLOAT, Types.DOUBLE:
+            return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+        case Types.BOOLEAN:
+            return ArrowType.Bool.INSTANCE;
+        case Types.BIT:
+            // PostgreSQL reports boolean as BIT(1), bit(8) or BIT(8) are not booleans
+            return metaData.getPrecision(column) <= 1 ? ArrowType.Bool.INSTANCE : ArrowType.Utf8.INSTANCE;
+        case Types.DATE:
+            return new ArrowType.Date(DateUnit.DAY);
+        case Types.TIMESTAMP:
+            // pgjdbc reports timestamptz as TIMESTAMP, only its name tells them apart
+            return withTimeZone(metaData.getColumnTypeName(column))
+                    ? new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC")
+                    : new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+        case Types.TIMESTAMP_WITH_TIMEZONE:
+            return new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC");
+        default:
+            return ArrowType.Utf8.INSTANCE;
+        }
+    }
+
+    private static boolean withTimeZone(String typeName) {
+        return typeName != null && (typeName.equalsIgnoreCase("timestamptz")
+                || typeName.toUpperCase(Locale.ROOT).endsWith("WITH TIME ZONE"));
+    }
+
+    private static ColumnFiller filler(FieldVector fieldVector) {
+        return switch (fieldVector) {
+        case IntVector vector -> (rs, column, index) -> {
+            int value = rs.getInt(column);
+
+            if (rs.wasNull()) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, value);
+            }
+        };
+        case BigIntVector vector -> (rs, column, index) -> {
+            long value = rs.getLong(column);
+
+            if (rs.wasNull()) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, value);
+            }
+        };
+        case Float8Vector vector -> (rs, column, index) -> {
+            double value = rs.getDouble(column);
+
+            if (rs.wasNull()) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, value);
+            }
+        };
+        case BitVector vector -> (rs, column, index) -> {
+            boolean value = rs.getBoolean(column);
+
+            if (rs.wasNull()) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, value ? 1 : 0);
+            }
+        };
+        case DateDayVector vector -> (rs, column, index) -> {
+            LocalDate value = rs.getObject(column, LocalDate.class);
+
+            if (value == null) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, Math.toIntExact(value.toEpochDay()));
+            }
+        };
+        case TimeStampMicroTZVector vector -> (rs, column, index) -> {
+            OffsetDateTime value = rs.getObject(column, OffsetDateTime.class);
+
+            if (value == null) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, ChronoUnit.MICROS.between(EPOCH_UTC, value));
+            }
+        };
+        case TimeStampMicroVector vector -> (rs, column, index) -> {
+            LocalDateTime value = rs.getObject(column, LocalDateTime.class);
+
+            if (value == null) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, ChronoUnit.MICROS.between(EPOCH, value));
+            }
+        };
+        case VarCharVector vector -> (rs, column, index) -> {
+            String value = rs.getString(column);
+
+            if (value == null) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+        default -> throw new IllegalArgumentException("No filler for " + fieldVector.getField());
+        };
+    }
+
+    @FunctionalInterface
+    private interface ColumnFiller {
+
+        void fill(ResultSet rs, int column, int index) throws SQLException;
+    }
+}
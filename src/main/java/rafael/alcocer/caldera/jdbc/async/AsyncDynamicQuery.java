@@ -0,0 +1,316 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.async;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.RowMapper;
+import rafael.alcocer.caldera.jdbc.batch.BatchInserter;
+import rafael.alcocer.caldera.jdbc.batch.BatchOptions;
+import rafael.alcocer.caldera.jdbc.batch.BatchResult;
+import rafael.alcocer.caldera.jdbc.binding.BindingPlanCache;
+import rafael.alcocer.caldera.jdbc.cache.QueryResultCache;
+import rafael.alcocer.caldera.jdbc.binding.RowBinder;
+import rafael.alcocer.caldera.jdbc.delete.BulkDeleter;
+import rafael.alcocer.caldera.jdbc.delete.DeleteOptions;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.Operation;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+
+/**
+ * The operations of DynamicQuery returning a CompletableFuture. They run on
+ * the executor configured in db.async.*, virtual threads by default, so
+ * thousands of calls in flight don't need thousands of platform threads.
+ *
+ * When the future is cancelled or its timeout expires the running statement
+ * is cancelled with Statement.cancel(), so the database stops working on it.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@Component
+public class AsyncDynamicQuery {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncDynamicQuery.class);
+
+    private final DataSource dataSource;
+    private final TableMetadataCache tableMetadataCache;
+    private final BindingPlanCache bindingPlanCache;
+    private final BatchInserter batchInserter;
+    private final BulkDeleter bulkDeleter;
+    private final QueryResultCache queryResultCache;
+    private final ReplicaRouter replicaRouter;
+    private final QueryMetrics queryMetrics;
+    private final DbConfig dbConfig;
+    private final ExecutorService executor;
+
+    public AsyncDynamicQuery(DataSource dataSource, TableMetadataCache tableMetadataCache,
+            BindingPlanCache bindingPlanCache, BatchInserter batchInserter, BulkDeleter bulkDeleter,
+            QueryResultCache queryResultCache, ReplicaRouter replicaRouter, QueryMetrics queryMetrics,
+            DbConfig dbConfig, @Qualifier("dynamicQueryExecutor") ExecutorService executor) {
+        this.dataSource = dataSource;
+        this.tableMetadataCache = tableMetadataCache;
+        this.bindingPlanCache = bindingPlanCache;
+        this.batchInserter = batchInserter;
+        this.bulkDeleter = bulkDeleter;
+        this.queryResultCache = queryResultCache;
+        this.replicaRouter = replicaRouter;
+        this.queryMetrics = queryMetrics;
+        this.dbConfig = dbConfig;
+        this.executor = executor;
+    }
+
+    /**
+     * Runs a query and reads all its rows, with the db.async.timeout.
+     *
+     * @param <T>        the type of the rows
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param rowMapper  converts every row
+     * @return the rows
+     */
+    public <T> CompletableFuture<List<T>> select(String query, List<?> parameters, RowMapper<T> rowMapper) {
+        return select(query, parameters, rowMapper, dbConfig.getAsync().getTimeout());
+    }
+
+    /**
+     * Runs a query and reads all its rows.
+     *
+     * @param <T>        the type of the rows
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param rowMapper  converts every row
+     * @param timeout    the call is cancelled after this time, zero waits forever
+     * @return the rows
+     */
+    public <T> CompletableFuture<List<T>> select(String query, List<?> parameters, RowMapper<T> rowMapper,
+            Duration timeout) {
+        return submit(timeout, statements -> {
+            QueryMetrics.Sample sample = queryMetrics.startSelect(query, parameters);
+
+            try (Connection conn = replicaRouter.getReadConnection(query);
+                    PreparedStatement ps = conn.prepareStatement(query)) {
+                statements.add(ps);
+
+                RowBinder rowBinder = bindingPlanCache.get(query, ps);
+
+                if (rowBinder.parameterCount() != parameters.size()) {
+                    throw new SQLException("The query has " + rowBinder.parameterCount() + " parameters, "
+                            + parameters.size() + " were given");
+                }
+
+                rowBinder.bind(ps, parameters);
+
+                List<T> rows = new ArrayList<>();
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(rowMapper.map(rs));
+                    }
+                }
+
+                sample.success(rows.size());
+
+                return rows;
+            } catch (Exception ex) {
+                sample.failure(ex);
+
+                throw ex;
+            }
+        });
+    }
+
+    /**
+     * Inserts one row, see DynamicQuery.insertOneRow().
+     *
+     * @param tableName  the name of the table
+     * @param parameters the list of parameters
+     * @return the number of rows inserted
+     */
+    public CompletableFuture<Integer> insertOneRow(String tableName, List<?> parameters) {
+        return submit(dbConfig.getAsync().getTimeout(), statements -> {
+            TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+            QueryMetrics.Sample sample = queryMetrics.start(Operation.INSERT, tableName, tableMetadata.insertSql(),
+                    parameters);
+
+            try (Connection conn = dataSource.getConnection();
+                    PreparedStatement ps = conn.prepareStatement(tableMetadata.insertSql())) {
+                statements.add(ps);
+                tableMetadata.insertBinder().bind(ps, parameters);
+
+                int inserted = ps.executeUpdate();
+                sample.success(inserted);
+                written(tableName);
+
+                return inserted;
+            } catch (Exception ex) {
+                sample.failure(ex);
+
+                throw ex;
+            }
+        });
+    }
+
+    /**
+     * Inserts multiple rows using batch, see DynamicQuery.insertMultipleRows().
+     *
+     * Without db.batch.continue-on-error the future completes with the error
+     * of the first failed chunk.
+     *
+     * @param tableName        the name of the table
+     * @param listOfParameters list of parameters
+     * @return one count per row, Statement.EXECUTE_FAILED for the rows that
+     *         were not inserted
+     */
+    public CompletableFuture<int[]> insertMultipleRows(String tableName, List<List<?>> listOfParameters) {
+        return submit(dbConfig.getAsync().getTimeout(), statements -> {
+            BatchOptions options = BatchOptions.of(dbConfig.getBatch());
+            BatchResult result;
+
+            try {
+                result = batchInserter.insert(tableName, listOfParameters.iterator(), options, true,
+                        statements::add);
+            } finally {
+                written(tableName);
+            }
+
+            if (!result.isSuccessful() && !options.continueOnError()) {
+                throw result.failures().get(0).cause();
+            }
+
+            result.failures().forEach(failure -> LOGGER.warn("##### {} rows of {} from row {} not inserted",
+                    failure.rowCount(), tableName, failure.firstRow(), failure.cause()));
+
+            return result.updateCounts(listOfParameters.size());
+        });
+    }
+
+    /**
+     * Deletes all rows, in chunks or with TRUNCATE as configured in db.delete.*,
+     * see DynamicQuery.deleteAllRows(). Cancelling the future cancels the
+     * running chunk or TRUNCATE, the committed chunks stay deleted.
+     *
+     * @param tableName the name of the table
+     * @return the number of rows deleted, -1 when the table was truncated
+     */
+    public CompletableFuture<Integer> deleteAllRows(String tableName) {
+        return submit(dbConfig.getAsync().getTimeout(), statements -> {
+            try {
+                long deleted = bulkDeleter.deleteAll(tableName, DeleteOptions.of(dbConfig.getDelete()),
+                        progress -> LOGGER.debug("##### {}: {}", tableName, progress), statements::add)
+                        .rowsDeleted();
+
+                return (int) Math.min(deleted, Integer.MAX_VALUE);
+            } finally {
+                written(tableName);
+            }
+        });
+    }
+
+    private void written(String tableName) {
+        queryResultCache.invalidate(tableName);
+        replicaRouter.written(tableName);
+    }
+
+    private <T> CompletableFuture<T> submit(Duration timeout, Call<T> call) {
+        CancellableStatements statements = new CancellableStatements();
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        Future<?> task = executor.submit(() -> {
+            try {
+                future.complete(call.run(statements));
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+
+        if (timeout != null && !timeout.isZero()) {
+            future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        future.whenComplete((result, ex) -> {
+            if (ex instanceof CancellationException || ex instanceof TimeoutException) {
+                statements.cancel();
+                task.cancel(true);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * The work of an asynchronous call, it adds its statements so they can be
+     * cancelled.
+     */
+    @FunctionalInterface
+    private interface Call<T> {
+
+        T run(CancellableStatements statements) throws Exception;
+    }
+
+    /**
+     * The statements of a call. A statement added after the call was cancelled
+     * is cancelled right away.
+     */
+    private static class CancellableStatements {
+
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean cancelled;
+
+        synchronized void add(Statement statement) {
+            statements.add(statement);
+
+            if (cancelled) {
+                cancel(statement);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            statements.forEach(CancellableStatements::cancel);
+        }
+
+        private static void cancel(Statement statement) {
+            try {
+                statement.cancel();
+            } catch (SQLException ex) {
+                LOGGER.debug("##### Statement not cancelled: {}", ex.getMessage());
+            }
+        }
+    }
+}
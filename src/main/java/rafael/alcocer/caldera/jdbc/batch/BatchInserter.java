@@ -0,0 +1,362 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.batch;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.jdbc.binding.RowBinder;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.Operation;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+
+/**
+ * Inserts rows in chunks: only one chunk is in memory at a time, every chunk
+ * is one executeBatch and, depending on the CommitMode, one transaction.
+ *
+ * Rows can also be packed in multi-row INSERT ... VALUES (...), (...)
+ * statements. The same effect can be obtained from the driver with
+ * reWriteBatchedInserts=true (PostgreSQL) or rewriteBatchedStatements=true
+ * (MySQL) in db.data-source-properties.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class BatchInserter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchInserter.class);
+
+    /**
+     * Bind parameters of one statement, PostgreSQL and MySQL send the count in
+     * 16 bits.
+     */
+    static final int MAX_PARAMETERS = 65535;
+
+    private final DataSource dataSource;
+    private final TableMetadataCache tableMetadataCache;
+    private final QueryMetrics queryMetrics;
+
+    /**
+     * Inserts the rows of an iterator, reading one chunk at a time.
+     *
+     * @param tableName           the name of the table
+     * @param rows                the rows, in the order of the insertable columns
+     * @param options             how the rows are split and committed
+     * @param collectUpdateCounts true to return one count per row, it keeps an
+     *                            int per row in memory
+     * @return the outcome of the insert
+     * @throws SQLException if the metadata can't be loaded or a connection can't
+     *                      be obtained, failed chunks are reported in the result
+     */
+    public BatchResult insert(String tableName, Iterator<? extends List<?>> rows, BatchOptions options,
+            boolean collectUpdateCounts) throws SQLException {
+        return insert(tableName, rows, options, collectUpdateCounts, statement -> {
+        });
+    }
+
+    /**
+     * Inserts the rows of an iterator, reading one chunk at a time.
+     *
+     * @param tableName           the name of the table
+     * @param rows                the rows, in the order of the insertable columns
+     * @param options             how the rows are split and committed
+     * @param collectUpdateCounts true to return one count per row
+     * @param statementListener   receives every statement once it is prepared,
+     *                            for example to cancel it from another thread
+     * @return the outcome of the insert
+     * @throws SQLException
+     */
+    public BatchResult insert(String tableName, Iterator<? extends List<?>> rows, BatchOptions options,
+            boolean collectUpdateCounts, Consumer<Statement> statementListener) throws SQLException {
+        TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+        QueryMetrics.Sample sample = queryMetrics.start(Operation.BATCH_INSERT, tableName, tableMetadata.insertSql(),
+                null);
+
+        try {
+            BatchResult result = insertChunks(tableMetadata, rows, options, collectUpdateCounts, statementListener);
+
+            if (result.failures().isEmpty()) {
+                sample.success(result.rowsInserted());
+            } else {
+                sample.failure(result.failures().get(0).cause());
+            }
+
+            return result;
+        } catch (SQLException | RuntimeException ex) {
+            sample.failure(ex);
+
+            throw ex;
+        }
+    }
+
+    private BatchResult insertChunks(TableMetadata tableMetadata, Iterator<? extends List<?>> rows,
+            BatchOptions options, boolean collectUpdateCounts, Consumer<Statement> statementListener)
+            throws SQLException {
+        String tableName = tableMetadata.tableName();
+        CommitMode commitMode = options.commitMode();
+        int rowsPerStatement = rowsPerStatement(options.rowsPerStatement(), tableMetadata);
+
+        List<List<?>> chunk = new ArrayList<>(options.chunkSize());
+        List<ChunkFailure> failures = new ArrayList<>();
+        UpdateCounts allCounts = collectUpdateCounts ? new UpdateCounts() : null;
+        long rowsRead = 0;
+        long rowsInserted = 0;
+        int chunks = 0;
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(commitMode == CommitMode.AUTO_COMMIT);
+
+            try (PreparedStatement single = conn.prepareStatement(tableMetadata.insertSql());
+                    PreparedStatement multi = rowsPerStatement > 1
+                            ? conn.prepareStatement(tableMetadata.multiRowInsertSql(rowsPerStatement))
+                            : null) {
+                statementListener.accept(single);
+
+                if (multi != null) {
+                    statementListener.accept(multi);
+                }
+
+                boolean stop = false;
+
+                while (!stop && rows.hasNext()) {
+                    chunk.clear();
+
+                    while (chunk.size() < options.chunkSize() && rows.hasNext()) {
+                        chunk.add(rows.next());
+                    }
+
+                    int[] counts = new int[chunk.size()];
+                    Arrays.fill(counts, Statement.EXECUTE_FAILED);
+
+                    queryMetrics.recordBatchSize(tableName, chunk.size());
+
+                    try {
+                        executeChunk(tableMetadata.insertBinder(), single, multi, rowsPerStatement, chunk, counts);
+
+                        if (commitMode == CommitMode.PER_CHUNK) {
+                            conn.commit();
+                        }
+                    } catch (SQLException ex) {
+                        LOGGER.warn("##### chunk {} of {} failed: {}", chunks, tableName, ex.getMessage());
+
+                        failures.add(new ChunkFailure(chunks, rowsRead, chunk.size(), ex));
+                        single.clearBatch();
+
+                        if (multi != null) {
+                            multi.clearBatch();
+                        }
+
+                        if (commitMode != CommitMode.AUTO_COMMIT) {
+                            conn.rollback();
+                            Arrays.fill(counts, Statement.EXECUTE_FAILED);
+                        }
+
+                        stop = commitMode == CommitMode.SINGLE_TRANSACTION || !options.continueOnError();
+                    }
+
+                    rowsRead += chunk.size();
+                    rowsInserted += sum(counts);
+                    chunks++;
+
+                    if (allCounts != null) {
+                        allCounts.add(counts);
+                    }
+
+                    LOGGER.debug("##### {}: chunk {}, {} rows read", tableName, chunks, rowsRead);
+                }
+
+                if (commitMode == CommitMode.SINGLE_TRANSACTION) {
+                    if (failures.isEmpty()) {
+                        conn.commit();
+                    } else {
+                        // Everything was rolled back
+                        rowsInserted = 0;
+
+                        if (allCounts != null) {
+                            allCounts.fill(Statement.EXECUTE_FAILED);
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException ex) {
+                // Turning auto-commit back on would commit the rows sent so far
+                if (commitMode != CommitMode.AUTO_COMMIT) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException rollbackEx) {
+                        ex.addSuppressed(rollbackEx);
+                    }
+                }
+
+                throw ex;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+
+        return new BatchResult(rowsRead, rowsInserted, chunks, List.copyOf(failures),
+                allCounts == null ? null : allCounts.toArray());
+    }
+
+    /**
+     * A multi-row INSERT with more than MAX_PARAMETERS parameters fails on
+     * every execution, the rows per statement are reduced to fit.
+     */
+    static int rowsPerStatement(int rowsPerStatement, TableMetadata tableMetadata) {
+        int columns = Math.max(1, tableMetadata.insertableColumns().size());
+        int maxRows = MAX_PARAMETERS / columns;
+
+        if (rowsPerStatement > maxRows) {
+            LOGGER.debug("##### {}: {} rows per statement reduced to {}, {} columns each", tableMetadata.tableName(),
+                    rowsPerStatement, maxRows, columns);
+
+            return maxRows;
+        }
+
+        return rowsPerStatement;
+    }
+
+    private void executeChunk(RowBinder rowBinder, PreparedStatement single, PreparedStatement multi,
+            int rowsPerStatement, List<List<?>> chunk, int[] counts) throws SQLException {
+        int groups = multi == null ? 0 : chunk.size() / rowsPerStatement;
+        int parameterCount = rowBinder.parameterCount();
+        int position = 0;
+
+        if (groups > 0) {
+            for (int group = 0; group < groups; group++) {
+                for (int i = 0; i < rowsPerStatement; i++) {
+                    rowBinder.bind(multi, chunk.get(position++), i * parameterCount);
+                }
+
+                multi.addBatch();
+            }
+
+            try {
+                spread(multi.executeBatch(), rowsPerStatement, counts, 0);
+            } catch (BatchUpdateException ex) {
+                spread(ex.getUpdateCounts(), rowsPerStatement, counts, 0);
+                throw ex;
+            }
+        }
+
+        int firstSingle = position;
+
+        if (position < chunk.size()) {
+            for (; position < chunk.size(); position++) {
+                rowBinder.bind(single, chunk.get(position));
+                single.addBatch();
+            }
+
+            try {
+                spread(single.executeBatch(), 1, counts, firstSingle);
+            } catch (BatchUpdateException ex) {
+                spread(ex.getUpdateCounts(), 1, counts, firstSingle);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Converts the counts of the statements into counts of the rows.
+     */
+    private static void spread(int[] statementCounts, int rowsPerStatement, int[] counts, int offset) {
+        if (statementCounts == null) {
+            return;
+        }
+
+        for (int i = 0; i < statementCounts.length; i++) {
+            int statementCount = statementCounts[i];
+            int rowCount;
+
+            if (rowsPerStatement == 1 || statementCount == Statement.EXECUTE_FAILED) {
+                rowCount = statementCount;
+            } else if (statementCount == rowsPerStatement) {
+                rowCount = 1;
+            } else {
+                rowCount = Statement.SUCCESS_NO_INFO;
+            }
+
+            for (int j = 0; j < rowsPerStatement; j++) {
+                int index = offset + i * rowsPerStatement + j;
+
+                if (index < counts.length) {
+                    counts[index] = rowCount;
+                }
+            }
+        }
+    }
+
+    /**
+     * SUCCESS_NO_INFO, returned when the driver rewrites the batch, counts as one
+     * row.
+     */
+    private static long sum(int[] counts) {
+        long sum = 0;
+
+        for (int count : counts) {
+            if (count >= 0) {
+                sum += count;
+            } else if (count == Statement.SUCCESS_NO_INFO) {
+                sum++;
+            }
+        }
+
+        return sum;
+    }
+
+    /**
+     * Growable int array, it avoids boxing the counts of millions of rows.
+     */
+    private static class UpdateCounts {
+
+        private int[] counts = new int[1024];
+        private int size;
+
+        void add(int[] chunkCounts) {
+            if (size + chunkCounts.length > counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, size + chunkCounts.length));
+            }
+
+            System.arraycopy(chunkCounts, 0, counts, size, chunkCounts.length);
+            size += chunkCounts.length;
+        }
+
+        void fill(int value) {
+            Arrays.fill(counts, 0, size, value);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(counts, size);
+        }
+    }
+}
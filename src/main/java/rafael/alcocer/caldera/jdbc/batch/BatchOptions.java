@@ -0,0 +1,69 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.batch;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+
+/**
+ * How a batch insert is split and committed.
+ *
+ * @param chunkSize        rows sent in each executeBatch
+ * @param commitMode       when the rows are committed
+ * @param rowsPerStatement rows in each INSERT ... VALUES (...), (...), 1 sends
+ *                         one row per statement. The inserter reduces it so
+ *                         a statement has at most 65535 parameters
+ * @param continueOnError  keep going with the next chunk after a failed one,
+ *                         ignored with SINGLE_TRANSACTION
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record BatchOptions(int chunkSize, CommitMode commitMode, int rowsPerStatement, boolean continueOnError) {
+
+    public BatchOptions {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1: " + chunkSize);
+        }
+
+        if (rowsPerStatement < 1) {
+            throw new IllegalArgumentException("rowsPerStatement must be at least 1: " + rowsPerStatement);
+        }
+    }
+
+    /**
+     * @param batch the db.batch.* settings
+     * @return the options configured in application.yml
+     */
+    public static BatchOptions of(DbConfig.Batch batch) {
+        return new BatchOptions(batch.getChunkSize(), batch.getCommitMode(), batch.getRowsPerStatement(),
+                batch.isContinueOnError());
+    }
+
+    public BatchOptions withChunkSize(int chunkSize) {
+        return new BatchOptions(chunkSize, commitMode, rowsPerStatement, continueOnError);
+    }
+
+    public BatchOptions withCommitMode(CommitMode commitMode) {
+        return new BatchOptions(chunkSize, commitMode, rowsPerStatement, continueOnError);
+    }
+
+    public BatchOptions withRowsPerStatement(int rowsPerStatement) {
+        return new BatchOptions(chunkSize, commitMode, rowsPerStatement, continueOnError);
+    }
+
+    public BatchOptions withContinueOnError(boolean continueOnError) {
+        return new BatchOptions(chunkSize, commitMode, rowsPerStatement, continueOnError);
+    }
+}
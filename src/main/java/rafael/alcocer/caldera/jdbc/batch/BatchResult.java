@@ -0,0 +1,60 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.batch;
+
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The outcome of a batch insert.
+ *
+ * @param rowsRead     rows taken from the input
+ * @param rowsInserted rows committed, as reported by the driver
+ * @param chunks       number of chunks sent
+ * @param failures     the chunks that failed, empty if everything was inserted
+ * @param updateCounts one count per input row when they were requested,
+ *                     Statement.EXECUTE_FAILED for the rows that were not
+ *                     inserted, otherwise null
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record BatchResult(long rowsRead, long rowsInserted, int chunks, List<ChunkFailure> failures,
+        int[] updateCounts) {
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * The rows after a failed chunk are not sent and have no count. Only for a
+     * result with its update counts.
+     *
+     * @param rowCount the number of input rows
+     * @return one count per input row, Statement.EXECUTE_FAILED for the rows
+     *         that were not inserted or not sent
+     */
+    public int[] updateCounts(int rowCount) {
+        if (updateCounts.length >= rowCount) {
+            return updateCounts;
+        }
+
+        int[] padded = Arrays.copyOf(updateCounts, rowCount);
+        Arrays.fill(padded, updateCounts.length, rowCount, Statement.EXECUTE_FAILED);
+
+        return padded;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.batch;
+
+import java.sql.SQLException;
+
+/**
+ * A chunk of a batch insert that failed.
+ *
+ * @param chunk    number of the chunk, starting with 0
+ * @param firstRow position of the first row of the chunk in the input,
+ *                 starting with 0
+ * @param rowCount number of rows in the chunk
+ * @param cause    the error returned by the driver
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record ChunkFailure(int chunk, long firstRow, int rowCount, SQLException cause) {
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.batch;
+
+/**
+ * When the rows of a batch insert are committed.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public enum CommitMode {
+
+    /** The driver commits every executeBatch, a failed chunk can be partially applied. */
+    AUTO_COMMIT,
+
+    /** Every chunk is one transaction, a failed chunk is rolled back completely. */
+    PER_CHUNK,
+
+    /** All the chunks are one transaction, any failure rolls back everything. */
+    SINGLE_TRANSACTION
+}
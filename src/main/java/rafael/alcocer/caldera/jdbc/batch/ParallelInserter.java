@@ -0,0 +1,314 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.batch;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.UncheckedSQLException;
+
+/**
+ * Inserts rows over several connections at the same time. The rows are split
+ * in shards of consecutive rows and every shard is inserted by the
+ * BatchInserter with its own pooled connection, prepared statement and
+ * batches, so the load is spread over several server processes.
+ *
+ * At most ParallelOptions.connections() shards are in memory at a time: the
+ * calling thread reads the next shard only when a connection is free.
+ *
+ * The counts of the shards are put back in the order of the input. Unlogged
+ * and partitioned tables scale best, with an index or a single hot page the
+ * shards wait for each other.
+ *
+ * There is no transaction spanning the shards, SINGLE_TRANSACTION is
+ * rejected. Every shard holds a connection, so the connections must stay below
+ * db.pool.max-size.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@Component
+public class ParallelInserter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelInserter.class);
+
+    private final BatchInserter batchInserter;
+    private final int poolMaxSize;
+    private final ExecutorService executor;
+
+    public ParallelInserter(BatchInserter batchInserter, DbConfig dbConfig,
+            @Qualifier("dynamicQueryExecutor") ExecutorService executor) {
+        this.batchInserter = batchInserter;
+        this.poolMaxSize = dbConfig.getPool().getMaxSize();
+        this.executor = executor;
+
+        if (dbConfig.getParallelInsert().isEnabled()) {
+            checkConnections(dbConfig.getParallelInsert().getConnections(), poolMaxSize);
+        }
+    }
+
+    /**
+     * Inserts the rows of an iterator, several shards at a time.
+     *
+     * @param tableName           the name of the table
+     * @param rows                the rows, in the order of the insertable columns
+     * @param options             how every shard is split and committed
+     * @param parallel            connections, shard size and failure policy
+     * @param collectUpdateCounts true to return one count per row, in the order
+     *                            of the input
+     * @return the outcome of all the shards, the chunks are numbered across the
+     *         shards
+     * @throws SQLException             if the calling thread is interrupted
+     * @throws IllegalArgumentException if the commit mode is
+     *                                  SINGLE_TRANSACTION or the shards would
+     *                                  take all the connections of the pool
+     */
+    public BatchResult insert(String tableName, Iterator<? extends List<?>> rows, BatchOptions options,
+            ParallelOptions parallel, boolean collectUpdateCounts) throws SQLException {
+        if (options.commitMode() == CommitMode.SINGLE_TRANSACTION) {
+            throw new IllegalArgumentException("A parallel insert can't be one transaction, use PER_CHUNK");
+        }
+
+        checkConnections(parallel.connections(), poolMaxSize);
+
+        // A cancelled chunk must stop its shard too
+        BatchOptions shardOptions = parallel.failurePolicy() == FailurePolicy.FAIL_FAST
+                ? options.withContinueOnError(false)
+                : options;
+        Semaphore connections = new Semaphore(parallel.connections());
+        Run run = new Run(parallel.failurePolicy());
+        List<Shard> shards = new ArrayList<>();
+        long offset = 0;
+
+        try {
+            while (rows.hasNext() && !run.stopped()) {
+                connections.acquire();
+
+                if (run.stopped()) {
+                    connections.release();
+                    break;
+                }
+
+                List<List<?>> shardRows = new ArrayList<>(parallel.shardSize());
+
+                while (shardRows.size() < parallel.shardSize() && rows.hasNext()) {
+                    shardRows.add(rows.next());
+                }
+
+                Shard shard = new Shard(offset, shardRows.size());
+                offset += shardRows.size();
+
+                try {
+                    shard.future = CompletableFuture.supplyAsync(() -> {
+                        try {
+                            BatchResult result = batchInserter.insert(tableName, shardRows.iterator(),
+                                    shardOptions, collectUpdateCounts, statement -> run.add(shard, statement));
+
+                            if (!result.isSuccessful()) {
+                                run.failed(shard);
+                            }
+
+                            return result;
+                        } catch (SQLException | RuntimeException ex) {
+                            // A binder error must not lose the results of the other shards
+                            run.failed(shard);
+                            shard.error = asSQLException(ex);
+
+                            return null;
+                        } finally {
+                            run.finished(shard);
+                            connections.release();
+                        }
+                    }, executor);
+                } catch (RejectedExecutionException ex) {
+                    connections.release();
+                    run.failed(shard);
+                    shard.error = new SQLException("The shard at row " + shard.offset + " was not started", ex);
+                    shard.future = CompletableFuture.completedFuture(null);
+                }
+
+                shards.add(shard);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            run.cancel();
+
+            throw new SQLException("Interrupted while inserting in parallel", ex);
+        } finally {
+            shards.forEach(shard -> shard.future.join());
+        }
+
+        LOGGER.debug("##### {}: {} rows in {} shards", tableName, offset, shards.size());
+
+        return merge(shards, offset, collectUpdateCounts);
+    }
+
+    /**
+     * Every shard holds a connection, one connection of the pool is always
+     * left to the other callers.
+     *
+     * @throws IllegalArgumentException if the shards would take all the
+     *                                  connections of the pool
+     */
+    static void checkConnections(int connections, int poolMaxSize) {
+        if (connections > Math.max(1, poolMaxSize - 1)) {
+            throw new IllegalArgumentException("db.parallel-insert.connections is " + connections
+                    + ", it must be below db.pool.max-size: " + poolMaxSize);
+        }
+    }
+
+    private static SQLException asSQLException(Exception ex) {
+        if (ex instanceof SQLException sqlException) {
+            return sqlException;
+        }
+
+        if (ex instanceof UncheckedSQLException unchecked) {
+            return unchecked.getCause();
+        }
+
+        return new SQLException(ex.getMessage(), ex);
+    }
+
+    /**
+     * Adds up the results of the shards, the positions of their failures and
+     * counts are moved to the input.
+     */
+    private static BatchResult merge(List<Shard> shards, long rowsRead, boolean collectUpdateCounts) {
+        List<ChunkFailure> failures = new ArrayList<>();
+        int[] updateCounts = collectUpdateCounts ? new int[Math.toIntExact(rowsRead)] : null;
+        long rowsInserted = 0;
+        int chunks = 0;
+
+        for (Shard shard : shards) {
+            BatchResult result = shard.future.join();
+
+            if (result == null) {
+                // The shard failed outside of its chunks, for example without a connection
+                failures.add(new ChunkFailure(chunks, shard.offset, shard.rowCount, shard.error));
+                chunks++;
+
+                if (updateCounts != null) {
+                    Arrays.fill(updateCounts, (int) shard.offset, (int) shard.offset + shard.rowCount,
+                            Statement.EXECUTE_FAILED);
+                }
+
+                continue;
+            }
+
+            for (ChunkFailure failure : result.failures()) {
+                failures.add(new ChunkFailure(chunks + failure.chunk(), shard.offset + failure.firstRow(),
+                        failure.rowCount(), failure.cause()));
+            }
+
+            rowsInserted += result.rowsInserted();
+            chunks += result.chunks();
+
+            if (updateCounts != null) {
+                int[] counts = result.updateCounts();
+                System.arraycopy(counts, 0, updateCounts, (int) shard.offset, counts.length);
+
+                // The rows after a failed chunk were not sent
+                Arrays.fill(updateCounts, (int) shard.offset + counts.length, (int) shard.offset + shard.rowCount,
+                        Statement.EXECUTE_FAILED);
+            }
+        }
+
+        return new BatchResult(rowsRead, rowsInserted, chunks, List.copyOf(failures), updateCounts);
+    }
+
+    private static class Shard {
+
+        private final long offset;
+        private final int rowCount;
+        private final List<Statement> statements = new ArrayList<>();
+        private CompletableFuture<BatchResult> future;
+        private SQLException error;
+
+        Shard(long offset, int rowCount) {
+            this.offset = offset;
+            this.rowCount = rowCount;
+        }
+    }
+
+    /**
+     * The state shared by the shards of one insert: with FAIL_FAST the first
+     * failure cancels the statements of the running shards.
+     */
+    private static class Run {
+
+        private final FailurePolicy failurePolicy;
+        private final List<Shard> running = new ArrayList<>();
+        private boolean stopped;
+
+        Run(FailurePolicy failurePolicy) {
+            this.failurePolicy = failurePolicy;
+        }
+
+        synchronized boolean stopped() {
+            return stopped;
+        }
+
+        synchronized void add(Shard shard, Statement statement) {
+            if (!running.contains(shard)) {
+                running.add(shard);
+            }
+
+            shard.statements.add(statement);
+
+            if (stopped) {
+                cancel(statement);
+            }
+        }
+
+        synchronized void finished(Shard shard) {
+            running.remove(shard);
+            shard.statements.clear();
+        }
+
+        synchronized void failed(Shard shard) {
+            if (failurePolicy == FailurePolicy.FAIL_FAST && !stopped) {
+                LOGGER.warn("##### Shard at row {} failed, cancelling the other shards", shard.offset);
+                cancel();
+            }
+        }
+
+        synchronized void cancel() {
+            stopped = true;
+            running.forEach(shard -> shard.statements.forEach(Run::cancel));
+        }
+
+        private static void cancel(Statement statement) {
+            try {
+                statement.cancel();
+            } catch (SQLException ex) {
+                LOGGER.debug("##### Statement not cancelled: {}", ex.getMessage());
+            }
+        }
+    }
+}
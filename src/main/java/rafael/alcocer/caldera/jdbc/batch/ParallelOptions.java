@@ -0,0 +1,63 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.batch;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+
+/**
+ * How a parallel insert splits the rows among connections.
+ *
+ * @param connections   shards inserted at the same time, each one with its own
+ *                      pooled connection
+ * @param shardSize     rows of every shard, a shard is split in chunks as any
+ *                      batch insert
+ * @param failurePolicy what happens when a shard fails
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record ParallelOptions(int connections, int shardSize, FailurePolicy failurePolicy) {
+
+    public ParallelOptions {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be at least 1: " + connections);
+        }
+
+        if (shardSize < 1) {
+            throw new IllegalArgumentException("shardSize must be at least 1: " + shardSize);
+        }
+    }
+
+    /**
+     * @param parallelInsert the db.parallel-insert.* settings
+     * @return the options configured in application.yml
+     */
+    public static ParallelOptions of(DbConfig.ParallelInsert parallelInsert) {
+        return new ParallelOptions(parallelInsert.getConnections(), parallelInsert.getShardSize(),
+                parallelInsert.getFailurePolicy());
+    }
+
+    public ParallelOptions withConnections(int connections) {
+        return new ParallelOptions(connections, shardSize, failurePolicy);
+    }
+
+    public ParallelOptions withShardSize(int shardSize) {
+        return new ParallelOptions(connections, shardSize, failurePolicy);
+    }
+
+    public ParallelOptions withFailurePolicy(FailurePolicy failurePolicy) {
+        return new ParallelOptions(connections, shardSize, failurePolicy);
+    }
+}
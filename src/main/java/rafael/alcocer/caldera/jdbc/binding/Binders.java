@@ -0,0 +1,280 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.binding;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+
+/**
+ * The switch over java.sql.Types, resolved once per column instead of once per
+ * cell. Every method returns the setter, updater or getter specialized for a
+ * JDBC type.
+ *
+ * When a value is not of the expected Java type it is handed to the driver with
+ * setObject() / updateObject(), so the driver does the conversion. That
+ * includes a Long for an INTEGER or a BigDecimal for a BIGINT: the driver
+ * rejects a value that doesn't fit instead of it being truncated here.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public final class Binders {
+
+    private Binders() {
+    }
+
+    /**
+     * @param jdbcType one of java.sql.Types
+     * @return the setter of the type
+     */
+    public static ParameterBinder binder(int jdbcType) {
+        ParameterBinder binder = switch (jdbcType) {
+        case Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR, Types.LONGNVARCHAR ->
+            (ps, i, v) -> {
+                if (v instanceof String s) {
+                    ps.setString(i, s);
+                } else {
+                    ps.setObject(i, v, jdbcType);
+                }
+            };
+        case Types.BIT, Types.BOOLEAN -> (ps, i, v) -> {
+            if (v instanceof Boolean b) {
+                ps.setBoolean(i, b.booleanValue());
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        case Types.TINYINT -> (ps, i, v) -> {
+            if (v instanceof Byte n) {
+                ps.setByte(i, n.byteValue());
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        case Types.SMALLINT -> (ps, i, v) -> {
+            if (v instanceof Short n) {
+                ps.setShort(i, n.shortValue());
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        case Types.INTEGER -> (ps, i, v) -> {
+            if (v instanceof Integer n) {
+                ps.setInt(i, n.intValue());
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        case Types.BIGINT -> (ps, i, v) -> {
+            if (v instanceof Long n) {
+                ps.setLong(i, n.longValue());
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        case Types.REAL -> (ps, i, v) -> {
+            if (v instanceof Float n) {
+                ps.setFloat(i, n.floatValue());
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        case Types.FLOAT, Types.DOUBLE -> (ps, i, v) -> {
+            if (v instanceof Double n) {
+                ps.setDouble(i, n.doubleValue());
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        case Types.NUMERIC, Types.DECIMAL -> (ps, i, v) -> {
+            if (v instanceof BigDecimal d) {
+                ps.setBigDecimal(i, d);
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        case Types.DATE -> (ps, i, v) -> {
+            if (v instanceof java.sql.Date d) {
+                ps.setDate(i, d);
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        case Types.TIME -> (ps, i, v) -> {
+            if (v instanceof java.sql.Time t) {
+                ps.setTime(i, t);
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        case Types.TIMESTAMP -> (ps, i, v) -> {
+            if (v instanceof java.sql.Timestamp t) {
+                ps.setTimestamp(i, t);
+            } else {
+                ps.setObject(i, v, jdbcType);
+            }
+        };
+        // Types.OTHER and anything else, the driver decides
+        default -> (ps, i, v) -> ps.setObject(i, v);
+        };
+
+        return (ps, i, v) -> {
+            if (v == null) {
+                ps.setNull(i, jdbcType);
+            } else {
+                binder.bind(ps, i, v);
+            }
+        };
+    }
+
+    /**
+     * @param jdbcType one of java.sql.Types
+     * @return the updater of the type
+     */
+    public static ColumnUpdater updater(int jdbcType) {
+        ColumnUpdater updater = switch (jdbcType) {
+        case Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR, Types.LONGNVARCHAR ->
+            (rs, i, v) -> {
+                if (v instanceof String s) {
+                    rs.updateString(i, s);
+                } else {
+                    rs.updateObject(i, v, jdbcType);
+                }
+            };
+        case Types.BIT, Types.BOOLEAN -> (rs, i, v) -> {
+            if (v instanceof Boolean b) {
+                rs.updateBoolean(i, b.booleanValue());
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        case Types.TINYINT -> (rs, i, v) -> {
+            if (v instanceof Byte n) {
+                rs.updateByte(i, n.byteValue());
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        case Types.SMALLINT -> (rs, i, v) -> {
+            if (v instanceof Short n) {
+                rs.updateShort(i, n.shortValue());
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        case Types.INTEGER -> (rs, i, v) -> {
+            if (v instanceof Integer n) {
+                rs.updateInt(i, n.intValue());
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        case Types.BIGINT -> (rs, i, v) -> {
+            if (v instanceof Long n) {
+                rs.updateLong(i, n.longValue());
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        case Types.REAL -> (rs, i, v) -> {
+            if (v instanceof Float n) {
+                rs.updateFloat(i, n.floatValue());
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        case Types.FLOAT, Types.DOUBLE -> (rs, i, v) -> {
+            if (v instanceof Double n) {
+                rs.updateDouble(i, n.doubleValue());
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        case Types.NUMERIC, Types.DECIMAL -> (rs, i, v) -> {
+            if (v instanceof BigDecimal d) {
+                rs.updateBigDecimal(i, d);
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        case Types.DATE -> (rs, i, v) -> {
+            if (v instanceof java.sql.Date d) {
+                rs.updateDate(i, d);
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        case Types.TIME -> (rs, i, v) -> {
+            if (v instanceof java.sql.Time t) {
+                rs.updateTime(i, t);
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        case Types.TIMESTAMP -> (rs, i, v) -> {
+            if (v instanceof java.sql.Timestamp t) {
+                rs.updateTimestamp(i, t);
+            } else {
+                rs.updateObject(i, v, jdbcType);
+            }
+        };
+        default -> (rs, i, v) -> rs.updateObject(i, v);
+        };
+
+        return (rs, i, v) -> {
+            if (v == null) {
+                rs.updateNull(i);
+            } else {
+                updater.update(rs, i, v);
+            }
+        };
+    }
+
+    /**
+     * @param jdbcType one of java.sql.Types
+     * @return the getter of the type
+     */
+    public static ColumnReader reader(int jdbcType) {
+        return switch (jdbcType) {
+        case Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR, Types.LONGNVARCHAR ->
+            (rs, i) -> rs.getString(i);
+        case Types.BIT, Types.BOOLEAN -> (rs, i) -> {
+            boolean value = rs.getBoolean(i);
+            return rs.wasNull() ? null : value;
+        };
+        case Types.TINYINT, Types.SMALLINT, Types.INTEGER -> (rs, i) -> {
+            int value = rs.getInt(i);
+            return rs.wasNull() ? null : value;
+        };
+        case Types.BIGINT -> (rs, i) -> {
+            long value = rs.getLong(i);
+            return rs.wasNull() ? null : value;
+        };
+        case Types.REAL -> (rs, i) -> {
+            float value = rs.getFloat(i);
+            return rs.wasNull() ? null : value;
+        };
+        case Types.FLOAT, Types.DOUBLE -> (rs, i) -> {
+            double value = rs.getDouble(i);
+            return rs.wasNull() ? null : value;
+        };
+        case Types.NUMERIC, Types.DECIMAL -> (rs, i) -> rs.getBigDecimal(i);
+        case Types.DATE -> (rs, i) -> rs.getDate(i);
+        case Types.TIME -> (rs, i) -> rs.getTime(i);
+        case Types.TIMESTAMP -> (rs, i) -> rs.getTimestamp(i);
+        default -> (rs, i) -> rs.getObject(i);
+        };
+    }
+}
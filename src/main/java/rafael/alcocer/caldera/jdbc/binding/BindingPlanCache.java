@@ -0,0 +1,145 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.binding;
+
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.DbConfig;
+
+/**
+ * Remembers, by SQL text, the types of the parameters of a query. The
+ * ParameterMetaData is read the first time the query runs and compiled into a
+ * RowBinder that is reused after that, so the next executions don't pay the
+ * extra round trip nor the switch over the types.
+ *
+ * When the driver can't describe the parameters (MySQL without
+ * generateSimpleParameterMetadata=true) the plan binds them with setObject().
+ *
+ * It also keeps the RowUpdater of every shape of updatable ResultSet.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class BindingPlanCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BindingPlanCache.class);
+
+    private final DbConfig dbConfig;
+
+    private final ConcurrentMap<String, RowBinder> plans = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Shape, RowUpdater> updaters = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the plan of a query, reading it from the statement the first time.
+     *
+     * @param query the SQL text
+     * @param ps    the statement prepared with the query
+     * @return the binder of the parameters
+     * @throws SQLException
+     */
+    public RowBinder get(String query, PreparedStatement ps) throws SQLException {
+        RowBinder plan = plans.get(query);
+
+        if (plan == null) {
+            plan = describe(ps);
+
+            // Dynamic SQL can produce any number of texts, stop caching when full
+            if (plans.size() < dbConfig.getBinding().getMaxPlans()) {
+                plans.putIfAbsent(query, plan);
+            }
+        }
+
+        return plan;
+    }
+
+    /**
+     * Gets the updater of the columns of a ResultSet, compiling it the first
+     * time its shape is seen.
+     *
+     * @param rsMetaData the metadata of the ResultSet
+     * @return the updater of the columns
+     * @throws SQLException
+     */
+    public RowUpdater updater(ResultSetMetaData rsMetaData) throws SQLException {
+        int[] columnTypes = new int[rsMetaData.getColumnCount()];
+
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = rsMetaData.getColumnType(i + 1);
+        }
+
+        return updaters.computeIfAbsent(new Shape(columnTypes), shape -> RowUpdater.compile(shape.columnTypes()));
+    }
+
+    /**
+     * Removes all the plans.
+     */
+    public void clear() {
+        plans.clear();
+        updaters.clear();
+    }
+
+    private RowBinder describe(PreparedStatement ps) throws SQLException {
+        ParameterMetaData parameterMetaData = ps.getParameterMetaData();
+        int parameterCount = parameterMetaData.getParameterCount();
+        int[] parameterTypes = new int[parameterCount];
+
+        try {
+            for (int i = 0; i < parameterCount; i++) {
+                // Starts with 1 not 0 due SQL
+                parameterTypes[i] = parameterMetaData.getParameterType(i + 1);
+            }
+        } catch (SQLException ex) {
+            LOGGER.debug("##### Parameter types not available, binding with setObject: {}", ex.getMessage());
+
+            for (int i = 0; i < parameterCount; i++) {
+                parameterTypes[i] = Types.OTHER;
+            }
+        }
+
+        return RowBinder.compile(parameterTypes);
+    }
+
+    private record Shape(int[] columnTypes) {
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Shape shape && Arrays.equals(columnTypes, shape.columnTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(columnTypes);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(columnTypes);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.binding;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Sets one parameter of a PreparedStatement with the setter of its JDBC type.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@FunctionalInterface
+public interface ParameterBinder {
+
+    /**
+     * @param ps    the statement
+     * @param index starts with 1 not 0 due SQL
+     * @param value the value, it can be null
+     * @throws SQLException
+     */
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException;
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.binding;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * The setters of all the parameters of a statement, compiled once from their
+ * JDBC types and then applied to every row.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public final class RowBinder {
+
+    private final int[] jdbcTypes;
+    private final ParameterBinder[] binders;
+
+    private RowBinder(int[] jdbcTypes) {
+        this.jdbcTypes = jdbcTypes.clone();
+        this.binders = new ParameterBinder[jdbcTypes.length];
+
+        for (int i = 0; i < jdbcTypes.length; i++) {
+            binders[i] = Binders.binder(jdbcTypes[i]);
+        }
+    }
+
+    /**
+     * @param jdbcTypes one of java.sql.Types for each parameter
+     * @return the compiled binder
+     */
+    public static RowBinder compile(int[] jdbcTypes) {
+        return new RowBinder(jdbcTypes);
+    }
+
+    public int parameterCount() {
+        return binders.length;
+    }
+
+    /**
+     * @param index starts with 1 not 0 due SQL
+     * @return the JDBC type of the parameter
+     */
+    public int parameterType(int index) {
+        return jdbcTypes[index - 1];
+    }
+
+    /**
+     * Sets all the parameters from a row, the first value goes to parameter 1.
+     *
+     * @param ps  the statement
+     * @param row the values, one per parameter
+     * @throws SQLException
+     */
+    public void bind(PreparedStatement ps, List<?> row) throws SQLException {
+        bind(ps, row, 0);
+    }
+
+    /**
+     * Sets the parameters starting at an offset, used when a statement carries
+     * several rows.
+     *
+     * @param ps     the statement
+     * @param row    the values, one per parameter of this binder
+     * @param offset number of parameters before the first one of this row
+     * @throws SQLException
+     */
+    public void bind(PreparedStatement ps, List<?> row, int offset) throws SQLException {
+        for (int i = 0; i < binders.length; i++) {
+            // Starts with 1 not 0 due SQL
+            binders[i].bind(ps, offset + i + 1, row.get(i));
+        }
+    }
+}
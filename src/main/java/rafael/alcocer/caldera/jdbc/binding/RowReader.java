@@ -0,0 +1,144 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.binding;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import rafael.alcocer.caldera.jdbc.RowMapper;
+
+/**
+ * The getters of all the columns of a ResultSet, compiled once from its
+ * ResultSetMetaData and then applied to every row.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public final class RowReader {
+
+    private final String[] columnLabels;
+    private final int[] jdbcTypes;
+    private final ColumnReader[] readers;
+
+    private RowReader(String[] columnLabels, int[] jdbcTypes) {
+        this.columnLabels = columnLabels;
+        this.jdbcTypes = jdbcTypes;
+        this.readers = new ColumnReader[jdbcTypes.length];
+
+        for (int i = 0; i < jdbcTypes.length; i++) {
+            readers[i] = Binders.reader(jdbcTypes[i]);
+        }
+    }
+
+    /**
+     * @param rsMetaData the metadata of the ResultSet
+     * @return the compiled reader
+     * @throws SQLException
+     */
+    public static RowReader compile(ResultSetMetaData rsMetaData) throws SQLException {
+        int columnCount = rsMetaData.getColumnCount();
+        String[] columnLabels = new String[columnCount];
+        int[] jdbcTypes = new int[columnCount];
+
+        for (int i = 0; i < columnCount; i++) {
+            columnLabels[i] = rsMetaData.getColumnLabel(i + 1);
+            jdbcTypes[i] = rsMetaData.getColumnType(i + 1);
+        }
+
+        return new RowReader(columnLabels, jdbcTypes);
+    }
+
+    /**
+     * Creates a RowMapper that reads every row into a new array, the RowReader
+     * is compiled with the first row.
+     *
+     * @return the mapper, for one query only
+     */
+    public static RowMapper<Object[]> arrayMapper() {
+        return new RowMapper<>() {
+
+            private RowReader rowReader;
+
+            @Override
+            public Object[] map(ResultSet rs) throws SQLException {
+                if (rowReader == null) {
+                    rowReader = compile(rs.getMetaData());
+                }
+
+                return rowReader.read(rs);
+            }
+        };
+    }
+
+    public int columnCount() {
+        return readers.length;
+    }
+
+    /**
+     * @param index starts with 1 not 0 due SQL
+     * @return the label of the column
+     */
+    public String columnLabel(int index) {
+        return columnLabels[index - 1];
+    }
+
+    /**
+     * @param index starts with 1 not 0 due SQL
+     * @return the JDBC type of the column
+     */
+    public int columnType(int index) {
+        return jdbcTypes[index - 1];
+    }
+
+    /**
+     * Reads one column of the current row.
+     *
+     * @param rs    the ResultSet positioned on the row
+     * @param index starts with 1 not 0 due SQL
+     * @return the value, null if the column is SQL NULL
+     * @throws SQLException
+     */
+    public Object read(ResultSet rs, int index) throws SQLException {
+        return readers[index - 1].read(rs, index);
+    }
+
+    /**
+     * Reads the current row into an array, so the caller can reuse it.
+     *
+     * @param rs  the ResultSet positioned on the row
+     * @param row array of at least columnCount() elements
+     * @return the same array
+     * @throws SQLException
+     */
+    public Object[] read(ResultSet rs, Object[] row) throws SQLException {
+        for (int i = 0; i < readers.length; i++) {
+            row[i] = readers[i].read(rs, i + 1);
+        }
+
+        return row;
+    }
+
+    /**
+     * Reads the current row into a new array.
+     *
+     * @param rs the ResultSet positioned on the row
+     * @return the values of the row
+     * @throws SQLException
+     */
+    public Object[] read(ResultSet rs) throws SQLException {
+        return read(rs, new Object[readers.length]);
+    }
+}
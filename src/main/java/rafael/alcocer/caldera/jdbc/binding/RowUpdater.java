@@ -0,0 +1,67 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.binding;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * The updaters of all the columns of an updatable ResultSet, compiled once
+ * from their JDBC types and then applied to every row.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public final class RowUpdater {
+
+    private final ColumnUpdater[] updaters;
+
+    private RowUpdater(int[] jdbcTypes) {
+        this.updaters = new ColumnUpdater[jdbcTypes.length];
+
+        for (int i = 0; i < jdbcTypes.length; i++) {
+            updaters[i] = Binders.updater(jdbcTypes[i]);
+        }
+    }
+
+    /**
+     * @param jdbcTypes one of java.sql.Types for each column
+     * @return the compiled updater
+     */
+    public static RowUpdater compile(int[] jdbcTypes) {
+        return new RowUpdater(jdbcTypes);
+    }
+
+    public int columnCount() {
+        return updaters.length;
+    }
+
+    /**
+     * Updates the first columns of the current row, the first value goes to
+     * column 1.
+     *
+     * @param rs          the ResultSet positioned on the row
+     * @param columnCount how many columns to update
+     * @param row         the values, one per column
+     * @throws SQLException
+     */
+    public void update(ResultSet rs, int columnCount, List<?> row) throws SQLException {
+        for (int i = 0; i < columnCount; i++) {
+            // Starts with 1 not 0 due SQL
+            updaters[i].update(rs, i + 1, row.get(i));
+        }
+    }
+}
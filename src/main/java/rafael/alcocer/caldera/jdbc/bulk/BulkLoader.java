@@ -0,0 +1,175 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.bulk;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.batch.BatchInserter;
+import rafael.alcocer.caldera.jdbc.batch.BatchOptions;
+import rafael.alcocer.caldera.jdbc.batch.BatchResult;
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.Operation;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+
+/**
+ * Loads rows with the native bulk protocol of the database: COPY ... FROM STDIN
+ * on PostgreSQL and LOAD DATA LOCAL INFILE on MySQL. Rows are encoded as they
+ * are sent, only db.bulk.buffer-size bytes are kept in memory.
+ *
+ * Other databases fall back to the BatchInserter.
+ *
+ * MySQL needs allowLoadLocalInfile=true in the url and local_infile=ON in the
+ * server.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class BulkLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoader.class);
+
+    private final DataSource dataSource;
+    private final TableMetadataCache tableMetadataCache;
+    private final BatchInserter batchInserter;
+    private final QueryMetrics queryMetrics;
+    private final DbConfig dbConfig;
+
+    /**
+     * Loads the rows of an iterator in the table.
+     *
+     * @param tableName the name of the table
+     * @param rows      the rows, in the order of the insertable columns
+     * @return the number of rows loaded
+     * @throws SQLException if the load fails, with the batch inserts the first
+     *                      failed chunk
+     */
+    public long load(String tableName, Iterator<? extends List<?>> rows) throws SQLException {
+        TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+        Dialect dialect;
+
+        try (Connection conn = dataSource.getConnection()) {
+            dialect = Dialect.of(conn);
+
+            switch (dialect) {
+            case POSTGRESQL:
+                return copy(conn, tableMetadata, rows);
+            case MYSQL:
+                return loadData(conn, tableMetadata, rows);
+            default:
+                break;
+            }
+        }
+
+        LOGGER.debug("##### No bulk protocol for {}, using batch inserts", dialect);
+
+        BatchResult result = batchInserter.insert(tableName, rows, BatchOptions.of(dbConfig.getBatch()), false);
+
+        // Fails like COPY and LOAD DATA instead of returning a partial count
+        if (!result.isSuccessful()) {
+            throw result.failures().get(0).cause();
+        }
+
+        return result.rowsInserted();
+    }
+
+    private long copy(Connection conn, TableMetadata tableMetadata, Iterator<? extends List<?>> rows)
+            throws SQLException {
+        String copySql = """
+                COPY %s (%s) FROM STDIN WITH (FORMAT csv)
+                """.formatted(tableMetadata.tableName(), String.join(", ", tableMetadata.insertableColumnNames()));
+
+        int bufferSize = dbConfig.getBulk().getBufferSize();
+        RowEncoder encoder = new RowEncoder(RowEncoder.Format.POSTGRESQL_CSV, bufferSize);
+        QueryMetrics.Sample sample = queryMetrics.start(Operation.BULK_LOAD, tableMetadata.tableName(), copySql, null);
+        CopyIn copyIn = null;
+
+        try {
+            copyIn = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+
+            while (rows.hasNext()) {
+                encoder.encode(rows.next());
+
+                if (encoder.size() >= bufferSize) {
+                    copyIn.writeToCopy(encoder.buffer(), 0, encoder.size());
+                    encoder.reset();
+                }
+            }
+
+            if (encoder.size() > 0) {
+                copyIn.writeToCopy(encoder.buffer(), 0, encoder.size());
+            }
+
+            long loaded = copyIn.endCopy();
+            sample.success(loaded);
+
+            return loaded;
+        } catch (SQLException | RuntimeException ex) {
+            sample.failure(ex);
+
+            throw ex;
+        } finally {
+            if (copyIn != null && copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private long loadData(Connection conn, TableMetadata tableMetadata, Iterator<? extends List<?>> rows)
+            throws SQLException {
+        String loadSql = """
+                LOAD DATA LOCAL INFILE 'rows.tsv' INTO TABLE %s CHARACTER SET utf8mb4 (%s)
+                """.formatted(tableMetadata.tableName(), String.join(", ", tableMetadata.insertableColumnNames()));
+
+        int bufferSize = dbConfig.getBulk().getBufferSize();
+        RowInputStream input = new RowInputStream(rows,
+                new RowEncoder(RowEncoder.Format.MYSQL_TEXT, bufferSize), bufferSize);
+
+        QueryMetrics.Sample sample = queryMetrics.start(Operation.BULK_LOAD, tableMetadata.tableName(), loadSql, null);
+
+        try (Statement statement = conn.createStatement()) {
+            statement.unwrap(JdbcStatement.class).setLocalInfileInputStream(input);
+
+            long loaded = statement.executeLargeUpdate(loadSql);
+            LOGGER.debug("##### {} rows read, {} rows loaded", input.rowCount(), loaded);
+            sample.success(loaded);
+
+            return loaded;
+        } catch (SQLException | RuntimeException ex) {
+            sample.failure(ex);
+
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.bulk;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes rows, one at a time, in the text format read by the bulk load
+ * commands, into a reusable UTF-8 buffer.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+final class RowEncoder {
+
+    enum Format {
+
+        /**
+         * COPY ... WITH (FORMAT csv): unquoted empty field is NULL, text is
+         * always quoted so the empty string is not confused with NULL.
+         */
+        POSTGRESQL_CSV,
+
+        /**
+         * LOAD DATA with the default FIELDS TERMINATED BY '\t' ESCAPED BY '\\':
+         * \N is NULL, booleans are 1 and 0.
+         */
+        MYSQL_TEXT
+    }
+
+    private final Format format;
+    private byte[] buffer;
+    private int size;
+
+    RowEncoder(Format format, int initialCapacity) {
+        this.format = format;
+        this.buffer = new byte[initialCapacity];
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    /**
+     * Appends one row, ended by a new line.
+     *
+     * @param row the values of the row
+     */
+    void encode(List<?> row) {
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0) {
+                append(format == Format.POSTGRESQL_CSV ? ',' : '\t');
+            }
+
+            encodeValue(row.get(i));
+        }
+
+        append('\n');
+    }
+
+    private void encodeValue(Object value) {
+        if (value == null) {
+            if (format == Format.MYSQL_TEXT) {
+                append('\\');
+                append('N');
+            }
+
+            return;
+        }
+
+        if (value instanceof Boolean b) {
+            appendAscii(format == Format.MYSQL_TEXT ? (b ? "1" : "0") : b.toString());
+        } else if (value instanceof Number) {
+            appendAscii(value.toString());
+        } else if (format == Format.POSTGRESQL_CSV) {
+            appendCsvQuoted(value.toString());
+        } else {
+            appendMysqlEscaped(value.toString());
+        }
+    }
+
+    private void appendCsvQuoted(String text) {
+        append('"');
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (c == '"') {
+                append('"');
+            }
+
+            i = appendChar(text, i);
+        }
+
+        append('"');
+    }
+
+    private void appendMysqlEscaped(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            switch (c) {
+            case '\\' -> {
+                append('\\');
+                append('\\');
+            }
+            case '\t' -> {
+                append('\\');
+                append('t');
+            }
+            case '\n' -> {
+                append('\\');
+                append('n');
+            }
+            case '\r' -> {
+                append('\\');
+                append('r');
+            }
+            case '\0' -> {
+                append('\\');
+                append('0');
+            }
+            default -> i = appendChar(text, i);
+            }
+        }
+    }
+
+    private void appendAscii(String text) {
+        ensureCapacity(text.length());
+
+        for (int i = 0; i < text.length(); i++) {
+            buffer[size++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Appends the UTF-8 bytes of the character at index, a surrogate pair takes
+     * two chars.
+     *
+     * @return the index of the last char consumed
+     */
+    private int appendChar(String text, int index) {
+        char c = text.charAt(index);
+        ensureCapacity(4);
+
+        if (c < 0x80) {
+            buffer[size++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[size++] = (byte) (0xC0 | (c >> 6));
+            buffer[size++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < text.length()
+                && Character.isLowSurrogate(text.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+            buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+
+            return index + 1;
+        } else {
+            buffer[size++] = (byte) (0xE0 | (c >> 12));
+            buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[size++] = (byte) (0x80 | (c & 0x3F));
+        }
+
+        return index;
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.bulk;
+
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * InputStream that encodes the rows of an iterator as the driver reads it, so
+ * the file sent by LOAD DATA LOCAL INFILE never exists in memory.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+final class RowInputStream extends InputStream {
+
+    private final Iterator<? extends List<?>> rows;
+    private final RowEncoder encoder;
+    private final int bufferSize;
+    private int position;
+    private long rowCount;
+
+    RowInputStream(Iterator<? extends List<?>> rows, RowEncoder encoder, int bufferSize) {
+        this.rows = rows;
+        this.encoder = encoder;
+        this.bufferSize = bufferSize;
+    }
+
+    long rowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int read() {
+        if (!fill()) {
+            return -1;
+        }
+
+        return encoder.buffer()[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        int n = Math.min(len, encoder.size() - position);
+        System.arraycopy(encoder.buffer(), position, b, off, n);
+        position += n;
+
+        return n;
+    }
+
+    /**
+     * Encodes the next rows when everything encoded so far was read.
+     *
+     * @return false at the end of the rows
+     */
+    private boolean fill() {
+        if (position < encoder.size()) {
+            return true;
+        }
+
+        encoder.reset();
+        position = 0;
+
+        while (encoder.size() < bufferSize && rows.hasNext()) {
+            encoder.encode(rows.next());
+            rowCount++;
+        }
+
+        return encoder.size() > 0;
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.cache;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import rafael.alcocer.caldera.jdbc.binding.RowReader;
+
+/**
+ * The rows of a query kept in memory, immutable so one instance can be shared
+ * by all the callers of the QueryResultCache.
+ *
+ * The values of all the rows are kept in one array, row after row, instead of
+ * one array per row. Mutable values, dates and byte arrays, are copied when
+ * they are read.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public final class QueryResult {
+
+    private final List<String> columnLabels;
+    private final Object[] values;
+    private final int rowCount;
+    private final long weight;
+
+    private QueryResult(List<String> columnLabels, Object[] values) {
+        this.columnLabels = columnLabels;
+        this.values = values;
+        this.rowCount = columnLabels.isEmpty() ? 0 : values.length / columnLabels.size();
+        this.weight = estimateWeight(columnLabels, values);
+    }
+
+    /**
+     * Reads all the rows of a ResultSet.
+     *
+     * @param rs a ResultSet before its first row
+     * @return the rows
+     * @throws SQLException
+     */
+    public static QueryResult read(ResultSet rs) throws SQLException {
+        RowReader rowReader = RowReader.compile(rs.getMetaData());
+        int columnCount = rowReader.columnCount();
+        List<String> columnLabels = new ArrayList<>(columnCount);
+
+        for (int i = 1; i <= columnCount; i++) {
+            columnLabels.add(rowReader.columnLabel(i));
+        }
+
+        List<Object> values = new ArrayList<>();
+
+        while (rs.next()) {
+            for (int i = 1; i <= columnCount; i++) {
+                values.add(rowReader.read(rs, i));
+            }
+        }
+
+        return new QueryResult(List.copyOf(columnLabels), values.toArray());
+    }
+
+    public List<String> columnLabels() {
+        return columnLabels;
+    }
+
+    public int columnCount() {
+        return columnLabels.size();
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param row    starts with 0
+     * @param column starts with 1 not 0 due SQL
+     * @return the value, null if the column is SQL NULL
+     */
+    public Object get(int row, int column) {
+        if (row < 0 || row >= rowCount || column < 1 || column > columnCount()) {
+            throw new IndexOutOfBoundsException("row " + row + ", column " + column);
+        }
+
+        return copy(values[row * columnCount() + column - 1]);
+    }
+
+    /**
+     * @param row starts with 0
+     * @return a new array with the values of the row
+     */
+    public Object[] row(int row) {
+        Object[] copy = new Object[columnCount()];
+
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = get(row, i + 1);
+        }
+
+        return copy;
+    }
+
+    /**
+     * @return a new array per row
+     */
+    public List<Object[]> rows() {
+        List<Object[]> rows = new ArrayList<>(rowCount);
+
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(row(i));
+        }
+
+        return rows;
+    }
+
+    /**
+     * @return approximate bytes of heap used by the rows
+     */
+    public long weight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResult[columns=" + columnLabels + ", rows=" + rowCount + ", weight=" + weight + "]";
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof java.util.Date date) {
+            return date.clone();
+        }
+
+        if (value instanceof byte[] bytes) {
+            return bytes.clone();
+        }
+
+        return value;
+    }
+
+    private static long estimateWeight(List<String> columnLabels, Object[] values) {
+        long weight = 64 + 8L * values.length;
+
+        for (String columnLabel : columnLabels) {
+            weight += weight(columnLabel);
+        }
+
+        for (Object value : values) {
+            weight += weight(value);
+        }
+
+        return weight;
+    }
+
+    private static long weight(Object value) {
+        if (value == null) {
+            return 0;
+        }
+
+        if (value instanceof String s) {
+            return 40 + 2L * s.length();
+        }
+
+        if (value instanceof byte[] bytes) {
+            return 16 + bytes.length;
+        }
+
+        if (value instanceof BigDecimal) {
+            return 64;
+        }
+
+        if (value instanceof Number || value instanceof Boolean) {
+            return 16;
+        }
+
+        return 48;
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.cache;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+
+/**
+ * Opt-in cache of the results of DynamicQuery.getCachedResult(), keyed by the
+ * SQL and its parameters. It is meant for reference tables that are read much
+ * more than they are written.
+ *
+ * Entries are bounded by their weight, the approximate bytes of their rows,
+ * and expire after db.result-cache.ttl. Caffeine evicts with W-TinyLFU, so a
+ * burst of one-off queries doesn't push out the frequently used ones.
+ *
+ * Every write of DynamicQuery invalidates the entries of the table. A result
+ * loaded while a write was running is returned but not kept.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@Component
+public class QueryResultCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryResultCache.class);
+
+    private final DbConfig dbConfig;
+    private final Cache<Key, QueryResult> cache;
+
+    /** The keys that read every table, to invalidate them on a write. */
+    private final ConcurrentMap<String, Set<Key>> keysByTable = new ConcurrentHashMap<>();
+
+    /** Incremented by every invalidation. */
+    private final AtomicLong writes = new AtomicLong();
+
+    public QueryResultCache(DbConfig dbConfig) {
+        this.dbConfig = dbConfig;
+
+        DbConfig.ResultCache settings = dbConfig.getResultCache();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaxWeight())
+                .weigher((Key key, QueryResult result) -> (int) Math.min(Integer.MAX_VALUE,
+                        key.weight() + result.weight()))
+                .expireAfterWrite(settings.getTtl())
+                // Called synchronously, while the entry is being evicted
+                .evictionListener((Key key, QueryResult result, RemovalCause cause) -> {
+                    if (key != null) {
+                        forget(key);
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Gets the result of a query, running it if it is not cached.
+     *
+     * Queries whose tables can't be found in the SQL are never cached, nothing
+     * would invalidate them.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param loader     runs the query
+     * @return the rows
+     * @throws SQLException
+     */
+    public QueryResult get(String query, List<?> parameters, Loader loader) throws SQLException {
+        if (!dbConfig.getResultCache().isEnabled()) {
+            return loader.load();
+        }
+
+        Set<String> tables = SqlTables.of(query);
+
+        if (tables.isEmpty()) {
+            LOGGER.debug("##### No tables found, not cached: {}", query);
+
+            return loader.load();
+        }
+
+        Key key = new Key(query, Collections.unmodifiableList(new ArrayList<>(parameters)), tables);
+        QueryResult result = cache.getIfPresent(key);
+
+        if (result != null) {
+            return result;
+        }
+
+        long writesBefore = writes.get();
+        result = loader.load();
+
+        if (result.weight() > dbConfig.getResultCache().getMaxEntryWeight()) {
+            return result;
+        }
+
+        cache.put(key, result);
+
+        for (String table : tables) {
+            keysByTable.compute(table, (t, keys) -> {
+                Set<Key> tableKeys = keys == null ? new HashSet<>() : keys;
+                tableKeys.add(key);
+
+                return tableKeys;
+            });
+        }
+
+        if (writes.get() != writesBefore) {
+            // The rows may have been read before the write committed
+            cache.asMap().remove(key, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes the results of the queries that read a table.
+     *
+     * @param tableName the name of the table
+     */
+    public void invalidate(String tableName) {
+        writes.incrementAndGet();
+
+        Set<Key> keys = keysByTable.remove(SqlTables.normalize(tableName));
+
+        if (keys != null) {
+            cache.invalidateAll(keys);
+        }
+    }
+
+    /**
+     * Removes the results of the tables of a ResultSet, or all of them when
+     * the driver doesn't report the tables.
+     *
+     * @param rsMetaData the metadata of an updatable ResultSet
+     * @throws SQLException
+     */
+    public void invalidate(ResultSetMetaData rsMetaData) throws SQLException {
+        Set<String> tables = new HashSet<>();
+
+        for (int i = 1; i <= rsMetaData.getColumnCount(); i++) {
+            String tableName = rsMetaData.getTableName(i);
+
+            if (tableName != null && !tableName.isEmpty()) {
+                tables.add(tableName);
+            }
+        }
+
+        if (tables.isEmpty()) {
+            invalidateAll();
+        } else {
+            tables.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * Removes all the results.
+     */
+    public void invalidateAll() {
+        writes.incrementAndGet();
+        cache.invalidateAll();
+        keysByTable.clear();
+    }
+
+    /**
+     * @return hits, misses, evictions and load times so far
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return the number of results cached, approximately
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private void forget(Key key) {
+        for (String table : key.tables()) {
+            keysByTable.computeIfPresent(table, (t, keys) -> {
+                keys.remove(key);
+
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    /**
+     * Runs the query of a cache miss.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        QueryResult load() throws SQLException;
+    }
+
+    /**
+     * The tables are derived from the query, they don't change the equality.
+     */
+    private record Key(String query, List<Object> parameters, Set<String> tables) {
+
+        long weight() {
+            return 64 + 2L * query.length() + 16L * parameters.size();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Finds the tables read by a SELECT: the names after FROM, separated by
+ * commas, and after JOIN, also inside subqueries. It doesn't understand SQL,
+ * only enough of it for the queries of DynamicQuery.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public final class SqlTables {
+
+    /** Words that can follow a table name and are not its alias. */
+    private static final Set<String> KEYWORDS = Set.of("WHERE", "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "CROSS",
+            "NATURAL", "ON", "USING", "GROUP", "ORDER", "HAVING", "LIMIT", "OFFSET", "UNION", "INTERSECT", "EXCEPT",
+            "FOR", "WINDOW", "FETCH");
+
+    private SqlTables() {
+    }
+
+    /**
+     * @param sql a SELECT
+     * @return the tables, normalized with normalize()
+     */
+    public static Set<String> of(String sql) {
+        List<String> tokens = tokenize(sql);
+        Set<String> tables = new LinkedHashSet<>();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            String keyword = tokens.get(i).toUpperCase(Locale.ROOT);
+
+            if (!keyword.equals("FROM") && !keyword.equals("JOIN")) {
+                continue;
+            }
+
+            int j = i + 1;
+
+            while (j < tokens.size() && isIdentifier(tokens.get(j))) {
+                tables.add(normalize(tokens.get(j++)));
+
+                if (j < tokens.size() && tokens.get(j).equalsIgnoreCase("AS")) {
+                    j++;
+                }
+
+                if (j < tokens.size() && isIdentifier(tokens.get(j))
+                        && !KEYWORDS.contains(tokens.get(j).toUpperCase(Locale.ROOT))) {
+                    j++;
+                }
+
+                if (keyword.equals("FROM") && j < tokens.size() && tokens.get(j).equals(",")) {
+                    j++;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        return tables;
+    }
+
+    /**
+     * Quotes and schema are removed and the name is lower cased, so "HR".Employees
+     * and employees are the same table.
+     *
+     * @param tableName the name of a table
+     * @return the normalized name
+     */
+    public static String normalize(String tableName) {
+        String name = tableName.replace("\"", "").replace("`", "");
+        int dot = name.lastIndexOf('.');
+
+        return (dot < 0 ? name : name.substring(dot + 1)).toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isIdentifier(String token) {
+        char first = token.charAt(0);
+
+        return Character.isLetter(first) || first == '_' || first == '"' || first == '`';
+    }
+
+    /**
+     * Splits the SQL in words, quoted identifiers and symbols. String literals
+     * are skipped.
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'') {
+                int end = sql.indexOf('\'', i + 1);
+                i = end < 0 ? sql.length() : end + 1;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '"' || c == '`') {
+                int start = i;
+
+                while (i < sql.length()) {
+                    char d = sql.charAt(i);
+
+                    if (d == '"' || d == '`') {
+                        int end = sql.indexOf(d, i + 1);
+                        i = end < 0 ? sql.length() : end + 1;
+                    } else if (Character.isLetterOrDigit(d) || d == '_' || d == '$' || d == '.') {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+
+                tokens.add(sql.substring(start, i));
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+
+        return tokens;
+    }
+}
@@ -0,0 +1,433 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.delete;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.jdbc.binding.BindingPlanCache;
+import rafael.alcocer.caldera.jdbc.cache.SqlTables;
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.Operation;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.query.Condition;
+import rafael.alcocer.caldera.jdbc.query.DeleteQuery;
+import rafael.alcocer.caldera.jdbc.query.PageToken;
+import rafael.alcocer.caldera.jdbc.query.SelectQuery;
+import rafael.alcocer.caldera.jdbc.query.SqlQuery;
+
+/**
+ * Deletes many rows without one huge statement: every chunk is its own short
+ * transaction, so locks are held briefly, the WAL or binlog grows a chunk at a
+ * time and vacuum or purge can keep up. The chunks can be paced with a
+ * maximum number of rows per second.
+ *
+ * Tables with a primary key of one column are deleted in ranges of
+ * consecutive keys, found with an index scan from the last deleted key. Other
+ * tables repeat a DELETE with a LIMIT on PostgreSQL and MySQL. The other
+ * databases can't limit a DELETE, those tables are deleted in one statement.
+ *
+ * All the rows of a table can be removed with TRUNCATE when no trigger and no
+ * foreign key depend on it.
+ *
+ * A delete stopped by an error or an interrupt keeps its committed chunks,
+ * the resume token of the last DeleteProgress continues from there.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class BulkDeleter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkDeleter.class);
+
+    private final DataSource dataSource;
+    private final TableMetadataCache tableMetadataCache;
+    private final BindingPlanCache bindingPlanCache;
+    private final QueryMetrics queryMetrics;
+
+    /**
+     * Deletes all the rows of a table, with TRUNCATE when it is allowed and
+     * safe, otherwise in chunks.
+     *
+     * @param tableName the name of the table
+     * @param options   chunk size, pace and TRUNCATE
+     * @param progress  receives the progress after every chunk
+     * @return the outcome
+     * @throws SQLException
+     */
+    public DeleteResult deleteAll(String tableName, DeleteOptions options, Consumer<DeleteProgress> progress)
+            throws SQLException {
+        return deleteAll(tableName, options, progress, statement -> {
+        });
+    }
+
+    /**
+     * Deletes all the rows of a table, with TRUNCATE when it is allowed and
+     * safe, otherwise in chunks.
+     *
+     * @param tableName         the name of the table
+     * @param options           chunk size, pace and TRUNCATE
+     * @param progress          receives the progress after every chunk
+     * @param statementListener receives every statement before it runs, for
+     *                          example to cancel it from another thread
+     * @return the outcome
+     * @throws SQLException
+     */
+    public DeleteResult deleteAll(String tableName, DeleteOptions options, Consumer<DeleteProgress> progress,
+            Consumer<Statement> statementListener) throws SQLException {
+        TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+
+        if (options.truncate()) {
+            try (Connection conn = dataSource.getConnection()) {
+                String reason = truncateBlocker(conn, tableMetadata);
+
+                if (reason == null) {
+                    return truncate(conn, tableMetadata, progress, statementListener);
+                }
+
+                LOGGER.info("##### {} not truncated, {}, deleting in chunks", tableName, reason);
+            }
+        }
+
+        return delete(tableName, null, options, null, progress, statementListener);
+    }
+
+    /**
+     * Deletes the rows of a table matching a condition, in chunks.
+     *
+     * @param tableName   the name of the table
+     * @param filter      the rows to delete, null for all of them
+     * @param options     chunk size and pace
+     * @param resumeToken the resumeToken of the progress of an interrupted
+     *                    delete with the same table, null to start
+     * @param progress    receives the progress after every chunk
+     * @return the outcome
+     * @throws SQLException the chunks committed before the error stay deleted
+     */
+    public DeleteResult delete(String tableName, Condition filter, DeleteOptions options, String resumeToken,
+            Consumer<DeleteProgress> progress) throws SQLException {
+        return delete(tableName, filter, options, resumeToken, progress, statement -> {
+        });
+    }
+
+    /**
+     * Deletes the rows of a table matching a condition, in chunks.
+     *
+     * @param tableName         the name of the table
+     * @param filter            the rows to delete, null for all of them
+     * @param options           chunk size and pace
+     * @param resumeToken       the resumeToken of the progress of an
+     *                          interrupted delete with the same table, null to
+     *                          start
+     * @param progress          receives the progress after every chunk
+     * @param statementListener receives every statement before it runs, for
+     *                          example to cancel it from another thread
+     * @return the outcome
+     * @throws SQLException the chunks committed before the error stay deleted
+     */
+    public DeleteResult delete(String tableName, Condition filter, DeleteOptions options, String resumeToken,
+            Consumer<DeleteProgress> progress, Consumer<Statement> statementListener) throws SQLException {
+        TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+
+        try (Connection conn = dataSource.getConnection()) {
+            Dialect dialect = Dialect.of(conn);
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try {
+                if (tableMetadata.primaryKey().size() == 1) {
+                    return deleteByKeyRanges(conn, dialect, tableMetadata, filter, options, resumeToken, progress,
+                            statementListener);
+                }
+
+                if (dialect == Dialect.OTHER) {
+                    LOGGER.info("##### {} has no single column key and the database can't limit a DELETE,"
+                            + " deleting in one statement", tableName);
+
+                    return deleteAtOnce(conn, dialect, tableMetadata, filter, progress, statementListener);
+                }
+
+                return deleteByLimit(conn, dialect, tableMetadata, filter, options, progress, statementListener);
+            } catch (SQLException | RuntimeException ex) {
+                conn.rollback();
+
+                throw ex;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private DeleteResult deleteByKeyRanges(Connection conn, Dialect dialect, TableMetadata tableMetadata,
+            Condition filter, DeleteOptions options, String resumeToken, Consumer<DeleteProgress> progress,
+            Consumer<Statement> statementListener) throws SQLException {
+        String keyColumn = tableMetadata.primaryKey().get(0);
+        String shape = tableMetadata.tableName() + List.of(keyColumn);
+        List<Object> after = resumeToken == null ? null : PageToken.decode(resumeToken, shape).key();
+
+        long start = System.nanoTime();
+        long rowsDeleted = 0;
+        int chunks = 0;
+        String token = resumeToken;
+
+        while (true) {
+            SelectQuery select = new SelectQuery(tableMetadata, dialect).columns(keyColumn).orderBy(keyColumn)
+                    .limit(options.chunkSize());
+
+            if (filter != null) {
+                select.where(filter);
+            }
+
+            if (after != null) {
+                select.after(after);
+            }
+
+            Object[] range = keyRange(conn, select.build(), statementListener);
+
+            if (range == null) {
+                break;
+            }
+
+            DeleteQuery delete = new DeleteQuery(tableMetadata, dialect)
+                    .where(Condition.ge(keyColumn, range[0]))
+                    .where(Condition.le(keyColumn, range[1]));
+
+            if (filter != null) {
+                delete.where(filter);
+            }
+
+            rowsDeleted += execute(conn, tableMetadata.tableName(), delete.build(), statementListener);
+            conn.commit();
+            chunks++;
+
+            after = List.of(range[1]);
+            token = new PageToken(false, after).encode(shape);
+            progress.accept(new DeleteProgress(DeleteMode.KEY_RANGES, rowsDeleted, chunks, token));
+
+            if ((long) range[2] < options.chunkSize()) {
+                break;
+            }
+
+            if (!pace(start, rowsDeleted, options.maxRowsPerSecond())) {
+                return new DeleteResult(DeleteMode.KEY_RANGES, rowsDeleted, chunks, false, token);
+            }
+        }
+
+        return new DeleteResult(DeleteMode.KEY_RANGES, rowsDeleted, chunks, true, null);
+    }
+
+    private DeleteResult deleteByLimit(Connection conn, Dialect dialect, TableMetadata tableMetadata,
+            Condition filter, DeleteOptions options, Consumer<DeleteProgress> progress,
+            Consumer<Statement> statementListener) throws SQLException {
+        DeleteQuery delete = new DeleteQuery(tableMetadata, dialect).limit(options.chunkSize());
+
+        if (filter != null) {
+            delete.where(filter);
+        }
+
+        SqlQuery query = delete.build();
+        long start = System.nanoTime();
+        long rowsDeleted = 0;
+        int chunks = 0;
+
+        while (true) {
+            int deleted = execute(conn, tableMetadata.tableName(), query, statementListener);
+            conn.commit();
+            rowsDeleted += deleted;
+            chunks++;
+
+            // The deleted rows are gone, starting again continues where it stopped
+            progress.accept(new DeleteProgress(DeleteMode.LIMIT_BATCHES, rowsDeleted, chunks, null));
+
+            if (deleted < options.chunkSize()) {
+                break;
+            }
+
+            if (!pace(start, rowsDeleted, options.maxRowsPerSecond())) {
+                return new DeleteResult(DeleteMode.LIMIT_BATCHES, rowsDeleted, chunks, false, null);
+            }
+        }
+
+        return new DeleteResult(DeleteMode.LIMIT_BATCHES, rowsDeleted, chunks, true, null);
+    }
+
+    private DeleteResult deleteAtOnce(Connection conn, Dialect dialect, TableMetadata tableMetadata,
+            Condition filter, Consumer<DeleteProgress> progress, Consumer<Statement> statementListener)
+            throws SQLException {
+        DeleteQuery delete = new DeleteQuery(tableMetadata, dialect);
+
+        if (filter != null) {
+            delete.where(filter);
+        }
+
+        int deleted = execute(conn, tableMetadata.tableName(), delete.build(), statementListener);
+        conn.commit();
+
+        progress.accept(new DeleteProgress(DeleteMode.SINGLE_STATEMENT, deleted, 1, null));
+
+        return new DeleteResult(DeleteMode.SINGLE_STATEMENT, deleted, 1, true, null);
+    }
+
+    private DeleteResult truncate(Connection conn, TableMetadata tableMetadata, Consumer<DeleteProgress> progress,
+            Consumer<Statement> statementListener) throws SQLException {
+        String truncateSql = "TRUNCATE TABLE " + Dialect.of(conn).quote(tableMetadata.tableName());
+        QueryMetrics.Sample sample = queryMetrics.start(Operation.DELETE, tableMetadata.tableName(), truncateSql,
+                null);
+
+        try (Statement statement = conn.createStatement()) {
+            statementListener.accept(statement);
+            statement.executeUpdate(truncateSql);
+
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+
+            sample.success(-1);
+        } catch (SQLException ex) {
+            sample.failure(ex);
+
+            throw ex;
+        }
+
+        progress.accept(new DeleteProgress(DeleteMode.TRUNCATE, -1, 1, null));
+
+        return new DeleteResult(DeleteMode.TRUNCATE, -1, 1, true, null);
+    }
+
+    /**
+     * TRUNCATE doesn't fire the DELETE triggers and fails when other tables
+     * reference the table.
+     *
+     * @return why the table can't be truncated, null if it can
+     */
+    private static String truncateBlocker(Connection conn, TableMetadata tableMetadata) {
+        try (ResultSet rs = conn.getMetaData().getExportedKeys(null, null, tableMetadata.tableName())) {
+            if (rs.next()) {
+                return "it is referenced by " + rs.getString("FKTABLE_NAME");
+            }
+        } catch (SQLException ex) {
+            return "its foreign keys can't be read: " + ex.getMessage();
+        }
+
+        String triggersSql = """
+                SELECT COUNT(*) FROM information_schema.triggers WHERE LOWER(event_object_table) = ?
+                """;
+
+        try (PreparedStatement ps = conn.prepareStatement(triggersSql)) {
+            ps.setString(1, SqlTables.normalize(tableMetadata.tableName()));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+
+                return rs.getInt(1) == 0 ? null : "it has triggers";
+            }
+        } catch (SQLException ex) {
+            return "its triggers can't be read: " + ex.getMessage();
+        }
+    }
+
+    /**
+     * @return the first key, the last key and the number of keys of the chunk,
+     *         null when no row is left
+     */
+    private Object[] keyRange(Connection conn, SqlQuery select, Consumer<Statement> statementListener)
+            throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(select.sql())) {
+            statementListener.accept(ps);
+            bindingPlanCache.get(select.sql(), ps).bind(ps, select.parameters());
+
+            try (ResultSet rs = ps.executeQuery()) {
+                Object first = null;
+                Object last = null;
+                long count = 0;
+
+                while (rs.next()) {
+                    last = rs.getObject(1);
+
+                    if (count++ == 0) {
+                        first = last;
+                    }
+                }
+
+                return count == 0 ? null : new Object[] { first, last, count };
+            }
+        }
+    }
+
+    private int execute(Connection conn, String tableName, SqlQuery query, Consumer<Statement> statementListener)
+            throws SQLException {
+        QueryMetrics.Sample sample = queryMetrics.start(Operation.DELETE, tableName, query.sql(), query.parameters());
+
+        try (PreparedStatement ps = conn.prepareStatement(query.sql())) {
+            statementListener.accept(ps);
+            bindingPlanCache.get(query.sql(), ps).bind(ps, query.parameters());
+
+            int deleted = ps.executeUpdate();
+            sample.success(deleted);
+
+            return deleted;
+        } catch (SQLException ex) {
+            sample.failure(ex);
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Waits until deleting rowsDeleted rows since start fits in the rate.
+     *
+     * @return false if the thread was interrupted, the delete must stop
+     */
+    private static boolean pace(long start, long rowsDeleted, int maxRowsPerSecond) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+
+        if (maxRowsPerSecond <= 0) {
+            return true;
+        }
+
+        long wait = start + rowsDeleted * 1_000_000_000L / maxRowsPerSecond - System.nanoTime();
+
+        try {
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.delete;
+
+/**
+ * How a BulkDeleter removes the rows of a table.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public enum DeleteMode {
+
+    /** TRUNCATE TABLE, only for all the rows of a table without triggers or references. */
+    TRUNCATE,
+
+    /** Chunks of consecutive primary keys, each one deleted and committed on its own. */
+    KEY_RANGES,
+
+    /** DELETE ... LIMIT repeated until no row is left, for tables without a single column key. */
+    LIMIT_BATCHES,
+
+    /** One DELETE of all the rows, for tables without a single column key on databases without a LIMIT. */
+    SINGLE_STATEMENT
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.delete;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+
+/**
+ * How a bulk delete is split and paced.
+ *
+ * @param chunkSize        rows deleted and committed at a time
+ * @param maxRowsPerSecond the chunks are spaced so this rate isn't exceeded, 0
+ *                         doesn't wait
+ * @param truncate         deleteAll() may use TRUNCATE when it is safe
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record DeleteOptions(int chunkSize, int maxRowsPerSecond, boolean truncate) {
+
+    public DeleteOptions {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1: " + chunkSize);
+        }
+
+        if (maxRowsPerSecond < 0) {
+            throw new IllegalArgumentException("maxRowsPerSecond must not be negative: " + maxRowsPerSecond);
+        }
+    }
+
+    /**
+     * @param delete the db.delete.* settings
+     * @return the options configured in application.yml
+     */
+    public static DeleteOptions of(DbConfig.Delete delete) {
+        return new DeleteOptions(delete.getChunkSize(), delete.getMaxRowsPerSecond(), delete.isTruncate());
+    }
+
+    public DeleteOptions withChunkSize(int chunkSize) {
+        return new DeleteOptions(chunkSize, maxRowsPerSecond, truncate);
+    }
+
+    public DeleteOptions withMaxRowsPerSecond(int maxRowsPerSecond) {
+        return new DeleteOptions(chunkSize, maxRowsPerSecond, truncate);
+    }
+
+    public DeleteOptions withTruncate(boolean truncate) {
+        return new DeleteOptions(chunkSize, maxRowsPerSecond, truncate);
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.delete;
+
+/**
+ * The state of a bulk delete after a committed chunk.
+ *
+ * @param mode        how the rows are deleted
+ * @param rowsDeleted rows deleted and committed so far, -1 after a TRUNCATE
+ * @param chunks      chunks committed so far
+ * @param resumeToken passed to BulkDeleter.delete() it continues after the
+ *                    last committed chunk, null when starting again is just as
+ *                    good
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record DeleteProgress(DeleteMode mode, long rowsDeleted, int chunks, String resumeToken) {
+}
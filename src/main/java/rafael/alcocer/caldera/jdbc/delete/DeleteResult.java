@@ -0,0 +1,32 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.delete;
+
+/**
+ * The outcome of a bulk delete.
+ *
+ * @param mode        how the rows were deleted
+ * @param rowsDeleted rows deleted, -1 after a TRUNCATE, which doesn't count
+ *                    them
+ * @param chunks      chunks committed
+ * @param completed   false when the thread was interrupted before the last
+ *                    chunk
+ * @param resumeToken continues an interrupted delete, see DeleteProgress
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record DeleteResult(DeleteMode mode, long rowsDeleted, int chunks, boolean completed, String resumeToken) {
+}
@@ -0,0 +1,291 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes text into a reusable direct buffer and drains it to a channel, the
+ * bytes are never copied into Strings or heap arrays. With gzip the buffer
+ * goes through a Deflater that also reads and writes direct buffers.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+final class ByteSink implements AutoCloseable {
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final byte[] NO_INPUT = new byte[0];
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    enum Escape {
+
+        /** Quoted only when it holds a comma, a quote or a line break. */
+        CSV,
+
+        /** Always quoted, with the JSON escapes. */
+        JSON
+    }
+
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+    private final ByteBuffer buffer;
+    private final Deflater deflater;
+    private final ByteBuffer compressed;
+    private final CRC32 crc;
+    private final byte[] digits = new byte[20];
+
+    private long bytes;
+    private long written;
+
+    /**
+     * @param channel      receives the bytes
+     * @param closeChannel closes the channel with the sink
+     * @param bufferSize   bytes encoded before draining
+     * @param gzip         writes a gzip stream
+     */
+    ByteSink(WritableByteChannel channel, boolean closeChannel, int bufferSize, boolean gzip) throws IOException {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+
+        if (gzip) {
+            this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            this.compressed = ByteBuffer.allocateDirect(bufferSize);
+            this.crc = new CRC32();
+            writeFully(ByteBuffer.wrap(GZIP_HEADER));
+        } else {
+            this.deflater = null;
+            this.compressed = null;
+            this.crc = null;
+        }
+    }
+
+    /**
+     * @return bytes of text received, before compression
+     */
+    long bytes() {
+        return bytes + buffer.position();
+    }
+
+    /**
+     * @return bytes in the channel so far, compressed ones lag behind the
+     *         deflater
+     */
+    long size() {
+        return deflater == null ? written + buffer.position() : written;
+    }
+
+    void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+
+        buffer.put(b);
+    }
+
+    void put(byte[] bytes) throws IOException {
+        int offset = 0;
+
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * @param text only ASCII characters, like the text of a number
+     */
+    void putAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            put((byte) text.charAt(i));
+        }
+    }
+
+    void putLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            put(MIN_LONG);
+
+            return;
+        }
+
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+
+        int position = digits.length;
+
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        if (buffer.remaining() < digits.length - position) {
+            drain();
+        }
+
+        buffer.put(digits, position, digits.length - position);
+    }
+
+    /**
+     * Writes the UTF-8 bytes of a text, quoted and escaped for the format.
+     */
+    void putText(String text, Escape escape) throws IOException {
+        boolean quote = escape == Escape.JSON || needsCsvQuotes(text);
+
+        if (quote) {
+            put((byte) '"');
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (buffer.remaining() < 6) {
+                drain();
+            }
+
+            if (c == '"') {
+                buffer.put(escape == Escape.CSV ? (byte) '"' : (byte) '\\').put((byte) '"');
+            } else if (escape == Escape.JSON && (c == '\\' || c < 0x20)) {
+                putJsonEscape(c);
+            } else if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18))).put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+                        .put((byte) (0x80 | ((codePoint >> 6) & 0x3F))).put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3F)))
+                        .put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+
+        if (quote) {
+            put((byte) '"');
+        }
+    }
+
+    /**
+     * Writes the buffered bytes and, with gzip, ends the stream. The channel is
+     * closed only when the sink owns it.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+
+            if (deflater != null) {
+                deflater.finish();
+
+                while (!deflater.finished()) {
+                    deflate();
+                }
+
+                ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                trailer.putInt((int) crc.getValue()).putInt((int) bytes).flip();
+                writeFully(trailer);
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+
+            if (closeChannel) {
+                channel.close();
+            }
+        }
+    }
+
+    private void putJsonEscape(char c) {
+        buffer.put((byte) '\\');
+
+        switch (c) {
+        case '\\' -> buffer.put((byte) '\\');
+        case '\n' -> buffer.put((byte) 'n');
+        case '\r' -> buffer.put((byte) 'r');
+        case '\t' -> buffer.put((byte) 't');
+        default -> buffer.put((byte) 'u').put((byte) '0').put((byte) '0').put(HEX[c >> 4]).put(HEX[c & 0xF]);
+        }
+    }
+
+    /**
+     * An empty text is quoted, an empty field is NULL.
+     */
+    private static boolean needsCsvQuotes(String text) {
+        if (text.isEmpty()) {
+            return true;
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        bytes += buffer.remaining();
+
+        if (deflater == null) {
+            writeFully(buffer);
+        } else {
+            crc.update(buffer.duplicate());
+            deflater.setInput(buffer);
+
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+
+            // The deflater keeps the buffer, it would read it again once cleared
+            deflater.setInput(NO_INPUT);
+        }
+
+        buffer.clear();
+    }
+
+    private void deflate() throws IOException {
+        deflater.deflate(compressed);
+        compressed.flip();
+        writeFully(compressed);
+        compressed.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            written += channel.write(source);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.export;
+
+/**
+ * The text format of an export.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public enum ExportFormat {
+
+    /** RFC 4180, a header with the column labels, NULL is an empty field. */
+    CSV,
+
+    /** One JSON object per line, keyed by the column labels. */
+    NDJSON
+}
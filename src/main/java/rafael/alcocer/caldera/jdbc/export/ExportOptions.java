@@ -0,0 +1,63 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.export;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+
+/**
+ * How the rows of a query are written.
+ *
+ * @param format       CSV or NDJSON
+ * @param gzip         compress the output
+ * @param maxFileBytes a new file is started once a file reaches this size, 0
+ *                     writes a single file, ignored when writing to a stream
+ * @param bufferSize   bytes of the direct buffer the rows are encoded into
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record ExportOptions(ExportFormat format, boolean gzip, long maxFileBytes, int bufferSize) {
+
+    public ExportOptions {
+        if (bufferSize < 64) {
+            throw new IllegalArgumentException("bufferSize must be at least 64: " + bufferSize);
+        }
+
+        if (maxFileBytes < 0) {
+            throw new IllegalArgumentException("maxFileBytes must not be negative: " + maxFileBytes);
+        }
+    }
+
+    /**
+     * @param export the db.export.* settings
+     * @return the options configured in application.yml
+     */
+    public static ExportOptions of(DbConfig.Export export) {
+        return new ExportOptions(export.getFormat(), export.isGzip(), export.getMaxFileBytes(),
+                export.getBufferSize());
+    }
+
+    public ExportOptions withFormat(ExportFormat format) {
+        return new ExportOptions(format, gzip, maxFileBytes, bufferSize);
+    }
+
+    public ExportOptions withGzip(boolean gzip) {
+        return new ExportOptions(format, gzip, maxFileBytes, bufferSize);
+    }
+
+    public ExportOptions withMaxFileBytes(long maxFileBytes) {
+        return new ExportOptions(format, gzip, maxFileBytes, bufferSize);
+    }
+}
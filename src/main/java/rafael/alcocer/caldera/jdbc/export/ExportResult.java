@@ -0,0 +1,43 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.export;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The outcome of an export.
+ *
+ * @param rows         rows written
+ * @param bytes        bytes of text written, before compression
+ * @param files        the files written, empty when writing to a stream
+ * @param elapsedNanos time from the execution of the query to the last byte
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record ExportResult(long rows, long bytes, List<Path> files, long elapsedNanos) {
+
+    public double rowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return megabytes (10^6 bytes) of text per second, before compression
+     */
+    public double megabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytes * 1e3 / elapsedNanos;
+    }
+}
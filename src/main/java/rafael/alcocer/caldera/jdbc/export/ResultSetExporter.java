@@ -0,0 +1,256 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.streaming.QueryStreamer;
+
+/**
+ * Writes the rows of a query to files or streams as CSV or NDJSON. The rows
+ * come from a server side cursor and are encoded into a reusable direct
+ * buffer, so neither the result nor the file is ever held in memory.
+ *
+ * Text values still go through ResultSet.getString(), JDBC has no way to read
+ * the bytes of a column as the driver received them.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class ResultSetExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultSetExporter.class);
+
+    private final QueryStreamer queryStreamer;
+    private final DbConfig dbConfig;
+
+    /**
+     * Exports the rows of a query with the db.export.* settings.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param file       the file, with maxFileBytes every part gets a number
+     *                   before the extension: rows-00001.csv
+     * @return rows, bytes and files written
+     * @throws SQLException
+     * @throws IOException
+     */
+    public ExportResult export(String query, List<?> parameters, Path file) throws SQLException, IOException {
+        return export(query, parameters, file, ExportOptions.of(dbConfig.getExport()));
+    }
+
+    /**
+     * Exports the rows of a query to one or more files.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param file       the file, with maxFileBytes every part gets a number
+     *                   before the extension: rows-00001.csv
+     * @param options    format, compression and split of the files
+     * @return rows, bytes and files written
+     * @throws SQLException
+     * @throws IOException
+     */
+    public ExportResult export(String query, List<?> parameters, Path file, ExportOptions options)
+            throws SQLException, IOException {
+        return run(query, parameters, new Export(options) {
+            @Override
+            WritableByteChannel open(int part) throws IOException {
+                Path path = options.maxFileBytes() > 0 ? part(file, part) : file;
+                files.add(path);
+
+                return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE);
+            }
+        });
+    }
+
+    /**
+     * Exports the rows of a query to a stream, maxFileBytes is ignored. The
+     * stream is not closed.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param out        receives the rows
+     * @param options    format and compression
+     * @return rows and bytes written
+     * @throws SQLException
+     * @throws IOException
+     */
+    public ExportResult export(String query, List<?> parameters, OutputStream out, ExportOptions options)
+            throws SQLException, IOException {
+        WritableByteChannel channel = Channels.newChannel(out);
+
+        return run(query, parameters, new Export(options.withMaxFileBytes(0)) {
+            @Override
+            WritableByteChannel open(int part) {
+                return channel;
+            }
+
+            @Override
+            boolean ownsChannel() {
+                return false;
+            }
+        });
+    }
+
+    private ExportResult run(String query, List<?> parameters, Export export) throws SQLException, IOException {
+        long start = System.nanoTime();
+        long rows;
+
+        try {
+            rows = queryStreamer.forEach(query, parameters, queryStreamer.defaultFetchSize(), rs -> {
+                try {
+                    export.write(rs);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+
+            export.close();
+        } catch (UncheckedIOException ex) {
+            export.closeQuietly(ex.getCause());
+
+            throw ex.getCause();
+        } catch (SQLException | IOException | RuntimeException ex) {
+            export.closeQuietly(ex);
+
+            throw ex;
+        }
+
+        ExportResult result = new ExportResult(rows, export.bytes, List.copyOf(export.files),
+                System.nanoTime() - start);
+        LOGGER.debug("##### {} rows, {} bytes in {} files: {} rows/s, {} MB/s", result.rows(), result.bytes(),
+                result.files().size(), (long) result.rowsPerSecond(), "%.1f".formatted(result.megabytesPerSecond()));
+
+        return result;
+    }
+
+    /**
+     * rows.csv.gz becomes rows-00001.csv.gz
+     */
+    private static Path part(Path file, int part) {
+        String name = file.getFileName().toString();
+        int dot = name.indexOf('.', 1);
+        String number = "-%05d".formatted(part);
+        String partName = dot < 0 ? name + number : name.substring(0, dot) + number + name.substring(dot);
+
+        return file.resolveSibling(partName);
+    }
+
+    /**
+     * The state of one export. The RowWriter is built from the first row, an
+     * empty result produces one empty file.
+     */
+    private abstract static class Export {
+
+        final ExportOptions options;
+        final List<Path> files = new ArrayList<>();
+        RowWriter rowWriter;
+        ByteSink sink;
+        int part;
+        long bytes;
+
+        Export(ExportOptions options) {
+            this.options = options;
+        }
+
+        abstract WritableByteChannel open(int part) throws IOException;
+
+        boolean ownsChannel() {
+            return true;
+        }
+
+        void write(ResultSet rs) throws SQLException, IOException {
+            if (rowWriter == null) {
+                rowWriter = new RowWriter(rs.getMetaData(), options.format());
+            }
+
+            if (sink != null && options.maxFileBytes() > 0 && sink.size() >= options.maxFileBytes()) {
+                closeSink();
+            }
+
+            if (sink == null) {
+                openSink();
+            }
+
+            rowWriter.writeRow(rs, sink);
+        }
+
+        void close() throws IOException {
+            if (sink == null && part == 0) {
+                openSink();
+            }
+
+            closeSink();
+        }
+
+        void closeQuietly(Exception cause) {
+            try {
+                closeSink();
+            } catch (IOException ex) {
+                cause.addSuppressed(ex);
+            }
+        }
+
+        private void openSink() throws IOException {
+            WritableByteChannel channel = open(++part);
+
+            try {
+                sink = new ByteSink(channel, ownsChannel(), options.bufferSize(), options.gzip());
+            } catch (IOException ex) {
+                if (ownsChannel()) {
+                    channel.close();
+                }
+
+                throw ex;
+            }
+
+            if (rowWriter != null) {
+                rowWriter.writeHeader(sink);
+            }
+        }
+
+        private void closeSink() throws IOException {
+            if (sink == null) {
+                return;
+            }
+
+            ByteSink closing = sink;
+            sink = null;
+            bytes += closing.bytes();
+            closing.close();
+        }
+    }
+}
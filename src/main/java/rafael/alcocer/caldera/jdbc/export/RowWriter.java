@@ -0,0 +1,232 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.export;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import rafael.alcocer.caldera.jdbc.export.ByteSink.Escape;
+
+/**
+ * Writes the current row of a ResultSet, with one encoder per column chosen
+ * once from the ResultSetMetaData: numbers and booleans are written without
+ * going through a String, every other value is written as text.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+final class RowWriter {
+
+    private static final byte[] CSV_LINE_END = { '\r', '\n' };
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private final ExportFormat format;
+    private final String[] labels;
+    private final ValueWriter[] writers;
+
+    /**
+     * The JSON key of every column, with its quotes and colon.
+     */
+    private final byte[][] prefixes;
+
+    RowWriter(ResultSetMetaData metaData, ExportFormat format) throws SQLException {
+        this.format = format;
+
+        int columnCount = metaData.getColumnCount();
+        this.labels = new String[columnCount];
+        this.writers = new ValueWriter[columnCount];
+        this.prefixes = new byte[columnCount][];
+
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1);
+            writers[i] = writer(metaData, i + 1, format);
+            prefixes[i] = ("\"" + jsonEscape(labels[i]) + "\":").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Writes the column labels, CSV only.
+     */
+    void writeHeader(ByteSink sink) throws IOException {
+        if (format != ExportFormat.CSV) {
+            return;
+        }
+
+        for (int i = 0; i < labels.length; i++) {
+            if (i > 0) {
+                sink.put((byte) ',');
+            }
+
+            sink.putText(labels[i], Escape.CSV);
+        }
+
+        sink.put(CSV_LINE_END);
+    }
+
+    void writeRow(ResultSet rs, ByteSink sink) throws SQLException, IOException {
+        if (format == ExportFormat.CSV) {
+            for (int i = 0; i < writers.length; i++) {
+                if (i > 0) {
+                    sink.put((byte) ',');
+                }
+
+                writers[i].write(rs, i + 1, sink);
+            }
+
+            sink.put(CSV_LINE_END);
+        } else {
+            sink.put((byte) '{');
+
+            for (int i = 0; i < writers.length; i++) {
+                if (i > 0) {
+                    sink.put((byte) ',');
+                }
+
+                sink.put(prefixes[i]);
+                writers[i].write(rs, i + 1, sink);
+            }
+
+            sink.put((byte) '}');
+            sink.put((byte) '\n');
+        }
+    }
+
+    private static ValueWriter writer(ResultSetMetaData metaData, int columnIndex, ExportFormat format)
+            throws SQLException {
+        boolean json = format == ExportFormat.NDJSON;
+        Escape escape = json ? Escape.JSON : Escape.CSV;
+        int jdbcType = metaData.getColumnType(columnIndex);
+
+        // PostgreSQL reports boolean as BIT(1), bit(8) or BIT(8) are written as text
+        if (jdbcType == Types.BIT && metaData.getPrecision(columnIndex) > 1) {
+            jdbcType = Types.VARCHAR;
+        }
+
+        switch (jdbcType) {
+        case Types.TINYINT, Types.SMALLINT, Types.INTEGER:
+            return (rs, column, sink) -> {
+                int value = rs.getInt(column);
+
+                if (rs.wasNull()) {
+                    writeNull(sink, json);
+                } else {
+                    sink.putLong(value);
+                }
+            };
+        case Types.BIGINT:
+            return (rs, column, sink) -> {
+                long value = rs.getLong(column);
+
+                if (rs.wasNull()) {
+                    writeNull(sink, json);
+                } else {
+                    sink.putLong(value);
+                }
+            };
+        case Types.BOOLEAN, Types.BIT:
+            return (rs, column, sink) -> {
+                boolean value = rs.getBoolean(column);
+
+                if (rs.wasNull()) {
+                    writeNull(sink, json);
+                } else {
+                    sink.put(value ? TRUE : FALSE);
+                }
+            };
+        case Types.REAL:
+            return (rs, column, sink) -> {
+                // Through a double 0.1f would be written as 0.10000000149011612
+                float value = rs.getFloat(column);
+
+                if (rs.wasNull() || (json && !Float.isFinite(value))) {
+                    writeNull(sink, json);
+                } else {
+                    sink.putAscii(Float.toString(value));
+                }
+            };
+        case Types.FLOAT, Types.DOUBLE:
+            return (rs, column, sink) -> {
+                double value = rs.getDouble(column);
+
+                if (rs.wasNull() || (json && !Double.isFinite(value))) {
+                    // JSON has no NaN nor Infinity
+                    writeNull(sink, json);
+                } else {
+                    sink.putAscii(Double.toString(value));
+                }
+            };
+        case Types.DECIMAL, Types.NUMERIC:
+            return (rs, column, sink) -> {
+                BigDecimal value = rs.getBigDecimal(column);
+
+                if (value == null) {
+                    writeNull(sink, json);
+                } else {
+                    sink.putAscii(value.toPlainString());
+                }
+            };
+        default:
+            return (rs, column, sink) -> {
+                String value = rs.getString(column);
+
+                if (value == null) {
+                    writeNull(sink, json);
+                } else {
+                    sink.putText(value, escape);
+                }
+            };
+        }
+    }
+
+    /**
+     * NULL is an empty CSV field.
+     */
+    private static void writeNull(ByteSink sink, boolean json) throws IOException {
+        if (json) {
+            sink.put(NULL);
+        }
+    }
+
+    private static String jsonEscape(String label) {
+        StringBuilder sb = new StringBuilder(label.length());
+
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append("\\u%04x".formatted((int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter {
+
+        void write(ResultSet rs, int column, ByteSink sink) throws SQLException, IOException;
+    }
+}
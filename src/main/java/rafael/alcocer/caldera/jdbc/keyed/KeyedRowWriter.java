@@ -0,0 +1,532 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.keyed;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.batch.BatchOptions;
+import rafael.alcocer.caldera.jdbc.batch.ChunkFailure;
+import rafael.alcocer.caldera.jdbc.batch.CommitMode;
+import rafael.alcocer.caldera.jdbc.binding.RowBinder;
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.Operation;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+
+/**
+ * Updates and deletes rows by their primary key, found with
+ * DatabaseMetaData.getPrimaryKeys(), in chunks that are committed like the
+ * batch inserts. They replace the row by row updateRow() and deleteRow() of
+ * an updatable ResultSet, which need one round trip per row and an open
+ * cursor.
+ *
+ * Updates are one UPDATE ... SET ... WHERE pk = ? per row, sent with
+ * executeBatch. Deletes pack db.batch.keys-per-statement keys in every
+ * DELETE ... WHERE pk IN (...); shorter lists are padded to a power of two by
+ * repeating the last key, so only a few statement texts are prepared.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class KeyedRowWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeyedRowWriter.class);
+
+    private final DataSource dataSource;
+    private final TableMetadataCache tableMetadataCache;
+    private final QueryMetrics queryMetrics;
+    private final DbConfig dbConfig;
+
+    /**
+     * Updates rows by primary key.
+     *
+     * @param tableName           the name of the table
+     * @param columns             the columns that are set, empty for the
+     *                            columns of getColumns() that are not in the
+     *                            primary key
+     * @param rows                the values of the columns, followed by the
+     *                            values of the primary key
+     * @param options             how the rows are split and committed
+     * @param collectUpdateCounts true to return one count per row
+     * @return the outcome of the update
+     * @throws SQLException if the metadata can't be loaded, the table has no
+     *                      primary key or a connection can't be obtained,
+     *                      failed chunks are reported in the result
+     */
+    public KeyedWriteResult update(String tableName, List<String> columns, Iterator<? extends List<?>> rows,
+            BatchOptions options, boolean collectUpdateCounts) throws SQLException {
+        TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+        List<ColumnMetadata> keys = primaryKey(tableMetadata);
+        List<ColumnMetadata> setColumns = setColumns(tableMetadata, columns, keys);
+
+        String updateSql = """
+                UPDATE %s
+                SET %s
+                WHERE %s
+                """.formatted(tableName, conditions(setColumns, ", "), conditions(keys, " AND "));
+
+        List<ColumnMetadata> parameters = new ArrayList<>(setColumns);
+        parameters.addAll(keys);
+        RowBinder rowBinder = RowBinder.compile(parameters.stream().mapToInt(ColumnMetadata::jdbcType).toArray());
+
+        return write(tableMetadata, Operation.UPDATE, updateSql, rows, options, collectUpdateCounts,
+                conn -> new UpdateChunkWriter(conn.prepareStatement(updateSql), rowBinder));
+    }
+
+    /**
+     * Deletes rows by primary key.
+     *
+     * @param tableName the name of the table
+     * @param keys      the keys, a value for a primary key of one column, a
+     *                  List of values in key order for a composite key
+     * @param options   how the keys are split and committed
+     * @return the outcome of the delete, without update counts
+     * @throws SQLException if the metadata can't be loaded, the table has no
+     *                      primary key or a connection can't be obtained,
+     *                      failed chunks are reported in the result
+     */
+    public KeyedWriteResult delete(String tableName, Iterator<?> keys, BatchOptions options) throws SQLException {
+        TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+        List<ColumnMetadata> keyColumns = primaryKey(tableMetadata);
+        int keysPerStatement = Math.max(1, dbConfig.getBatch().getKeysPerStatement());
+
+        return write(tableMetadata, Operation.DELETE, deleteSql(tableName, keyColumns, keysPerStatement), keys,
+                options, false, conn -> new DeleteChunkWriter(conn, tableName, keyColumns, keysPerStatement));
+    }
+
+    private <T> KeyedWriteResult write(TableMetadata tableMetadata, Operation operation, String sql,
+            Iterator<? extends T> items, BatchOptions options, boolean collectUpdateCounts,
+            ChunkWriterFactory<T> chunkWriterFactory) throws SQLException {
+        String tableName = tableMetadata.tableName();
+        QueryMetrics.Sample sample = queryMetrics.start(operation, tableName, sql, null);
+
+        try {
+            KeyedWriteResult result = writeChunks(tableName, items, options, collectUpdateCounts,
+                    chunkWriterFactory);
+
+            if (result.failures().isEmpty()) {
+                sample.success(result.rowsAffected());
+            } else {
+                sample.failure(result.failures().get(0).cause());
+            }
+
+            return result;
+        } catch (SQLException | RuntimeException ex) {
+            sample.failure(ex);
+
+            throw ex;
+        }
+    }
+
+    private <T> KeyedWriteResult writeChunks(String tableName, Iterator<? extends T> items, BatchOptions options,
+            boolean collectUpdateCounts, ChunkWriterFactory<T> chunkWriterFactory) throws SQLException {
+        CommitMode commitMode = options.commitMode();
+
+        List<T> chunk = new ArrayList<>(options.chunkSize());
+        List<ChunkFailure> failures = new ArrayList<>();
+        List<int[]> allCounts = collectUpdateCounts ? new ArrayList<>() : null;
+        long rowsRead = 0;
+        long rowsAffected = 0;
+        int chunks = 0;
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(commitMode == CommitMode.AUTO_COMMIT);
+
+            try (ChunkWriter<T> chunkWriter = chunkWriterFactory.create(conn)) {
+                boolean stop = false;
+
+                while (!stop && items.hasNext()) {
+                    chunk.clear();
+
+                    while (chunk.size() < options.chunkSize() && items.hasNext()) {
+                        chunk.add(items.next());
+                    }
+
+                    int[] counts = new int[chunk.size()];
+                    Arrays.fill(counts, Statement.EXECUTE_FAILED);
+                    long affected = 0;
+
+                    queryMetrics.recordBatchSize(tableName, chunk.size());
+
+                    try {
+                        affected = chunkWriter.write(chunk, counts);
+
+                        if (commitMode == CommitMode.PER_CHUNK) {
+                            conn.commit();
+                        }
+                    } catch (SQLException ex) {
+                        LOGGER.warn("##### chunk {} of {} failed: {}", chunks, tableName, ex.getMessage());
+
+                        failures.add(new ChunkFailure(chunks, rowsRead, chunk.size(), ex));
+                        chunkWriter.clear();
+
+                        if (commitMode != CommitMode.AUTO_COMMIT) {
+                            conn.rollback();
+                            Arrays.fill(counts, Statement.EXECUTE_FAILED);
+                        }
+
+                        affected = commitMode == CommitMode.AUTO_COMMIT ? sum(counts) : 0;
+                        stop = commitMode == CommitMode.SINGLE_TRANSACTION || !options.continueOnError();
+                    }
+
+                    rowsRead += chunk.size();
+                    rowsAffected += affected;
+                    chunks++;
+
+                    if (allCounts != null) {
+                        allCounts.add(counts);
+                    }
+
+                    LOGGER.debug("##### {}: chunk {}, {} rows read", tableName, chunks, rowsRead);
+                }
+
+                if (commitMode == CommitMode.SINGLE_TRANSACTION) {
+                    if (failures.isEmpty()) {
+                        conn.commit();
+                    } else {
+                        // Everything was rolled back
+                        rowsAffected = 0;
+
+                        if (allCounts != null) {
+                            allCounts.forEach(counts -> Arrays.fill(counts, Statement.EXECUTE_FAILED));
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException ex) {
+                // Turning auto-commit back on would commit the rows sent so far
+                if (commitMode != CommitMode.AUTO_COMMIT) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException rollbackEx) {
+                        ex.addSuppressed(rollbackEx);
+                    }
+                }
+
+                throw ex;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+
+        return new KeyedWriteResult(rowsRead, rowsAffected, chunks, List.copyOf(failures),
+                allCounts == null ? null : concat(allCounts));
+    }
+
+    private static List<ColumnMetadata> primaryKey(TableMetadata tableMetadata) throws SQLException {
+        if (tableMetadata.primaryKey().isEmpty()) {
+            throw new SQLException(tableMetadata.tableName() + " needs a primary key to be written by key");
+        }
+
+        List<ColumnMetadata> keys = new ArrayList<>();
+
+        for (String name : tableMetadata.primaryKey()) {
+            keys.add(tableMetadata.column(name).orElseThrow());
+        }
+
+        return keys;
+    }
+
+    private static List<ColumnMetadata> setColumns(TableMetadata tableMetadata, List<String> columns,
+            List<ColumnMetadata> keys) throws SQLException {
+        List<ColumnMetadata> setColumns = new ArrayList<>();
+
+        if (columns == null || columns.isEmpty()) {
+            tableMetadata.insertableColumns().stream().filter(column -> !keys.contains(column))
+                    .forEach(setColumns::add);
+        } else {
+            for (String name : columns) {
+                setColumns.add(tableMetadata.column(name).orElseThrow(
+                        () -> new SQLException("Column not found: " + tableMetadata.tableName() + "." + name)));
+            }
+        }
+
+        if (setColumns.isEmpty()) {
+            throw new SQLException(tableMetadata.tableName() + " has no columns to update");
+        }
+
+        return setColumns;
+    }
+
+    /**
+     * @return c1 = ?, c2 = ? joined with the separator
+     */
+    private static String conditions(List<ColumnMetadata> columns, String separator) {
+        return String.join(separator, columns.stream().map(column -> column.name() + " = ?").toList());
+    }
+
+    /**
+     * @return DELETE FROM table WHERE pk IN (?, ...) or, for a composite key,
+     *         WHERE (pk1, pk2) IN ((?, ?), ...)
+     */
+    private static String deleteSql(String tableName, List<ColumnMetadata> keyColumns, int keys) {
+        List<String> names = keyColumns.stream().map(ColumnMetadata::name).toList();
+        String key = names.size() == 1 ? "?" : "(" + String.join(", ", Collections.nCopies(names.size(), "?")) + ")";
+
+        return """
+                DELETE FROM %s
+                WHERE %s IN (%s)
+                """.formatted(tableName, names.size() == 1 ? names.get(0) : "(" + String.join(", ", names) + ")",
+                String.join(", ", Collections.nCopies(keys, key)));
+    }
+
+    /**
+     * @return the smallest power of two not below size, without passing the
+     *         keys per statement
+     */
+    static int bucket(int size, int keysPerStatement) {
+        int bucket = 1;
+
+        while (bucket < size) {
+            bucket <<= 1;
+        }
+
+        return Math.max(size, Math.min(bucket, keysPerStatement));
+    }
+
+    private static long sum(int[] counts) {
+        long sum = 0;
+
+        for (int count : counts) {
+            if (count > 0) {
+                sum += count;
+            }
+        }
+
+        return sum;
+    }
+
+    private static int[] concat(List<int[]> counts) {
+        int[] all = new int[counts.stream().mapToInt(chunkCounts -> chunkCounts.length).sum()];
+        int position = 0;
+
+        for (int[] chunkCounts : counts) {
+            System.arraycopy(chunkCounts, 0, all, position, chunkCounts.length);
+            position += chunkCounts.length;
+        }
+
+        return all;
+    }
+
+    /**
+     * Sends one chunk of rows or keys, with statements prepared once per call.
+     */
+    private interface ChunkWriter<T> extends AutoCloseable {
+
+        /**
+         * @param chunk  the rows or keys
+         * @param counts receives one count per row or key, they are
+         *               EXECUTE_FAILED when it is called
+         * @return the rows affected
+         * @throws SQLException
+         */
+        long write(List<T> chunk, int[] counts) throws SQLException;
+
+        /**
+         * Forgets the batch of a failed chunk.
+         */
+        void clear() throws SQLException;
+
+        @Override
+        void close() throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriterFactory<T> {
+
+        ChunkWriter<T> create(Connection conn) throws SQLException;
+    }
+
+    private static class UpdateChunkWriter implements ChunkWriter<List<?>> {
+
+        private final PreparedStatement ps;
+        private final RowBinder rowBinder;
+
+        UpdateChunkWriter(PreparedStatement ps, RowBinder rowBinder) {
+            this.ps = ps;
+            this.rowBinder = rowBinder;
+        }
+
+        @Override
+        public long write(List<List<?>> chunk, int[] counts) throws SQLException {
+            for (List<?> row : chunk) {
+                rowBinder.bind(ps, row);
+                ps.addBatch();
+            }
+
+            int[] statementCounts;
+
+            try {
+                statementCounts = ps.executeBatch();
+            } catch (BatchUpdateException ex) {
+                copy(ex.getUpdateCounts(), counts);
+                throw ex;
+            }
+
+            copy(statementCounts, counts);
+
+            return sum(counts);
+        }
+
+        @Override
+        public void clear() throws SQLException {
+            ps.clearBatch();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            ps.close();
+        }
+
+        private static void copy(int[] statementCounts, int[] counts) {
+            if (statementCounts != null) {
+                System.arraycopy(statementCounts, 0, counts, 0, Math.min(statementCounts.length, counts.length));
+            }
+        }
+    }
+
+    private static class DeleteChunkWriter implements ChunkWriter<Object> {
+
+        private final Connection conn;
+        private final String tableName;
+        private final List<ColumnMetadata> keyColumns;
+        private final int keysPerStatement;
+        private final Map<Integer, Statements> statementsByBucket = new HashMap<>();
+
+        DeleteChunkWriter(Connection conn, String tableName, List<ColumnMetadata> keyColumns,
+                int keysPerStatement) {
+            this.conn = conn;
+            this.tableName = tableName;
+            this.keyColumns = keyColumns;
+            this.keysPerStatement = keysPerStatement;
+        }
+
+        @Override
+        public long write(List<Object> chunk, int[] counts) throws SQLException {
+            List<Statements> used = new ArrayList<>();
+
+            for (int from = 0; from < chunk.size(); from += keysPerStatement) {
+                List<Object> keys = chunk.subList(from, Math.min(chunk.size(), from + keysPerStatement));
+                int bucket = bucket(keys.size(), keysPerStatement);
+                Statements statements = statements(bucket);
+
+                List<Object> parameters = new ArrayList<>(bucket * keyColumns.size());
+
+                for (int i = 0; i < bucket; i++) {
+                    addKey(parameters, keys.get(Math.min(i, keys.size() - 1)));
+                }
+
+                statements.rowBinder.bind(statements.ps, parameters);
+                statements.ps.addBatch();
+
+                if (!used.contains(statements)) {
+                    used.add(statements);
+                }
+            }
+
+            long affected = 0;
+
+            for (Statements statements : used) {
+                for (int count : statements.ps.executeBatch()) {
+                    if (count > 0) {
+                        affected += count;
+                    }
+                }
+            }
+
+            Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+
+            return affected;
+        }
+
+        @Override
+        public void clear() throws SQLException {
+            for (Statements statements : statementsByBucket.values()) {
+                statements.ps.clearBatch();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            SQLException failure = null;
+
+            for (Statements statements : statementsByBucket.values()) {
+                try {
+                    statements.ps.close();
+                } catch (SQLException ex) {
+                    failure = ex;
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private Statements statements(int bucket) throws SQLException {
+            Statements statements = statementsByBucket.get(bucket);
+
+            if (statements == null) {
+                int[] types = new int[bucket * keyColumns.size()];
+
+                for (int i = 0; i < types.length; i++) {
+                    types[i] = keyColumns.get(i % keyColumns.size()).jdbcType();
+                }
+
+                statements = new Statements(conn.prepareStatement(deleteSql(tableName, keyColumns, bucket)),
+                        RowBinder.compile(types));
+                statementsByBucket.put(bucket, statements);
+            }
+
+            return statements;
+        }
+
+        private void addKey(List<Object> parameters, Object key) throws SQLException {
+            if (keyColumns.size() == 1) {
+                parameters.add(key);
+            } else if (key instanceof List<?> values && values.size() == keyColumns.size()) {
+                parameters.addAll(values);
+            } else {
+                throw new SQLException(tableName + " has a primary key of " + keyColumns.size()
+                        + " columns, every key must be a List of " + keyColumns.size() + " values: " + key);
+            }
+        }
+    }
+
+    private record Statements(PreparedStatement ps, RowBinder rowBinder) {
+    }
+}
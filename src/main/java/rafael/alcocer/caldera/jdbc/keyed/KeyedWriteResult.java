@@ -0,0 +1,43 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.keyed;
+
+import java.util.List;
+
+import rafael.alcocer.caldera.jdbc.batch.ChunkFailure;
+
+/**
+ * The outcome of a batched UPDATE or DELETE by primary key.
+ *
+ * @param rowsRead     rows or keys taken from the input
+ * @param rowsAffected rows updated or deleted, as reported by the driver
+ * @param chunks       number of chunks sent
+ * @param failures     the chunks that failed, empty if everything was written
+ * @param updateCounts one count per input row of an update when they were
+ *                     requested, 0 when no row has the key,
+ *                     Statement.EXECUTE_FAILED for the rows that were not
+ *                     written. Null for deletes, the keys of a DELETE ... IN
+ *                     share one count
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record KeyedWriteResult(long rowsRead, long rowsAffected, int chunks, List<ChunkFailure> failures,
+        int[] updateCounts) {
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+}
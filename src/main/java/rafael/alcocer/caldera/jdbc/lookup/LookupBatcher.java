@@ -0,0 +1,434 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.lookup;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.binding.RowBinder;
+import rafael.alcocer.caldera.jdbc.binding.RowReader;
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.Operation;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+
+/**
+ * Coalesces point lookups: the lookups of the same table and column that
+ * arrive within db.lookup.window are sent as one
+ * SELECT * FROM table WHERE column IN (?, ?, ...) and the rows are handed back
+ * to the future of every caller.
+ *
+ * A window is sent when it expires or when it holds db.lookup.max-batch-size
+ * distinct keys. The IN list is padded to the next power of two by repeating
+ * the last key, so only a handful of SQL texts exist and all of them stay in
+ * the statement cache of the driver.
+ *
+ * Only numeric and UUID columns are coalesced, their rows are matched to the
+ * callers by value, so "11" finds the row whose id is 11. Other columns depend
+ * on the collation and the padding of the database: the distinct keys of a
+ * window are sent one query each. The arrays of a row are shared by the
+ * callers that asked for the same key, don't modify them.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@Component
+public class LookupBatcher implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LookupBatcher.class);
+
+    private final DataSource dataSource;
+    private final TableMetadataCache tableMetadataCache;
+    private final QueryMetrics queryMetrics;
+    private final DbConfig dbConfig;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+
+    private final ConcurrentMap<Target, Window> windows = new ConcurrentHashMap<>();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder keys = new LongAdder();
+
+    public LookupBatcher(DataSource dataSource, TableMetadataCache tableMetadataCache, QueryMetrics queryMetrics,
+            DbConfig dbConfig, @Qualifier("dynamicQueryExecutor") ExecutorService executor) {
+        this.dataSource = dataSource;
+        this.tableMetadataCache = tableMetadataCache;
+        this.queryMetrics = queryMetrics;
+        this.dbConfig = dbConfig;
+        this.executor = executor;
+        this.timer = Executors
+                .newSingleThreadScheduledExecutor(Thread.ofPlatform().name("lookup-window").daemon(true).factory());
+    }
+
+    /**
+     * Finds the rows whose column is equal to a key, the same as
+     * SELECT * FROM table WHERE column = ?
+     *
+     * @param tableName  the name of the table
+     * @param columnName the column compared with the key, usually indexed
+     * @param key        the value of the column
+     * @return the rows, empty if none matches
+     */
+    public CompletableFuture<List<Object[]>> lookup(String tableName, String columnName, Object key) {
+        lookups.increment();
+
+        CompletableFuture<List<Object[]>> future = new CompletableFuture<>();
+
+        if (key == null) {
+            // column = NULL is never true
+            future.complete(List.of());
+
+            return future;
+        }
+
+        Target target = new Target(tableName, columnName);
+        int maxBatchSize = dbConfig.getLookup().getMaxBatchSize();
+        Window[] full = new Window[1];
+
+        windows.compute(target, (t, window) -> {
+            if (window == null) {
+                Window opened = new Window();
+                opened.timer = timer.schedule(() -> expire(t, opened), dbConfig.getLookup().getWindow().toNanos(),
+                        TimeUnit.NANOSECONDS);
+                window = opened;
+            }
+
+            window.add(key, future);
+
+            if (window.size() >= maxBatchSize) {
+                full[0] = window;
+
+                return null;
+            }
+
+            return window;
+        });
+
+        if (full[0] != null) {
+            Window window = full[0];
+            window.timer.cancel(false);
+            executor.execute(() -> execute(target, window));
+        }
+
+        return future;
+    }
+
+    /**
+     * Takes a point in time copy of the statistics.
+     *
+     * @return the statistics
+     */
+    public Stats stats() {
+        return new Stats(lookups.sum(), batches.sum(), keys.sum());
+    }
+
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+        windows.values().forEach(window -> window.fail(new IllegalStateException("LookupBatcher closed")));
+        windows.clear();
+    }
+
+    private void expire(Target target, Window window) {
+        // False when the window was sent because it was full
+        if (windows.remove(target, window)) {
+            executor.execute(() -> execute(target, window));
+        }
+    }
+
+    private void execute(Target target, Window window) {
+        try {
+            TableMetadata tableMetadata = tableMetadataCache.get(target.tableName());
+            ColumnMetadata column = tableMetadata.column(target.columnName()).orElseThrow(
+                    () -> new SQLException("Column not found: " + target.tableName() + "." + target.columnName()));
+
+            List<Lookup> batch = new ArrayList<>(window.lookups.values());
+
+            if (isCoalesced(column)) {
+                executeCoalesced(target, tableMetadata, column, batch);
+            } else {
+                executeOneByOne(target, tableMetadata, column, batch);
+            }
+        } catch (SQLException | RuntimeException ex) {
+            window.fail(ex);
+        }
+    }
+
+    private void executeCoalesced(Target target, TableMetadata tableMetadata, ColumnMetadata column,
+            List<Lookup> batch) throws SQLException {
+        int bucket = bucket(batch.size(), dbConfig.getLookup().getMaxBatchSize());
+
+        List<Object> parameters = new ArrayList<>(bucket);
+        batch.forEach(lookup -> parameters.add(lookup.key()));
+
+        while (parameters.size() < bucket) {
+            parameters.add(parameters.get(parameters.size() - 1));
+        }
+
+        Map<Object, List<Object[]>> rowsByKey;
+
+        try (Connection conn = dataSource.getConnection()) {
+            rowsByKey = select(conn, target, tableMetadata, column, parameters);
+        }
+
+        batches.increment();
+        keys.add(batch.size());
+
+        LOGGER.debug("##### {}.{}: {} keys in one query of {} parameters", target.tableName(),
+                target.columnName(), batch.size(), bucket);
+
+        for (Lookup lookup : batch) {
+            List<Object[]> rows = rowsByKey.get(matchKey(lookup.key(), column));
+            List<Object[]> result = rows == null ? List.of() : List.copyOf(rows);
+
+            lookup.futures().forEach(future -> future.complete(result));
+        }
+    }
+
+    /**
+     * The database compares the key with its own collation and padding, every
+     * distinct key of the window is one query on the same connection.
+     */
+    private void executeOneByOne(Target target, TableMetadata tableMetadata, ColumnMetadata column,
+            List<Lookup> batch) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            for (Lookup lookup : batch) {
+                List<Object[]> result = new ArrayList<>();
+                select(conn, target, tableMetadata, column, List.of(lookup.key())).values().forEach(result::addAll);
+
+                batches.increment();
+                keys.increment();
+
+                List<Object[]> rows = List.copyOf(result);
+                lookup.futures().forEach(future -> future.complete(rows));
+            }
+        }
+
+        LOGGER.debug("##### {}.{}: {} keys in one query each", target.tableName(), target.columnName(),
+                batch.size());
+    }
+
+    /**
+     * @return the rows grouped by the matchKey of the column
+     */
+    private Map<Object, List<Object[]>> select(Connection conn, Target target, TableMetadata tableMetadata,
+            ColumnMetadata column, List<Object> parameters) throws SQLException {
+        int[] types = new int[parameters.size()];
+        Arrays.fill(types, column.jdbcType());
+
+        String query = """
+                SELECT *
+                FROM %s
+                WHERE %s IN (%s)
+                """.formatted(tableMetadata.tableName(), column.name(),
+                String.join(", ", Collections.nCopies(parameters.size(), "?")));
+
+        Map<Object, List<Object[]>> rowsByKey = new LinkedHashMap<>();
+        QueryMetrics.Sample sample = queryMetrics.start(Operation.SELECT, target.tableName(), query, parameters);
+        long rowCount = 0;
+
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
+            RowBinder.compile(types).bind(ps, parameters);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                RowReader rowReader = RowReader.compile(rs.getMetaData());
+                int keyIndex = keyIndex(rowReader, column.name());
+
+                while (rs.next()) {
+                    Object[] row = rowReader.read(rs);
+                    rowsByKey.computeIfAbsent(matchKey(row[keyIndex - 1], column), k -> new ArrayList<>()).add(row);
+                    rowCount++;
+                }
+            }
+        } catch (SQLException | RuntimeException ex) {
+            sample.failure(ex);
+
+            throw ex;
+        }
+
+        sample.success(rowCount);
+
+        return rowsByKey;
+    }
+
+    /**
+     * Only the keys whose text identifies the value are coalesced: exact
+     * numbers and UUIDs. A case-insensitive collation or the padding of CHAR(n)
+     * makes the database return values that differ from the key, those columns
+     * are looked up one key at a time.
+     */
+    private static boolean isCoalesced(ColumnMetadata column) {
+        return isExactNumber(column) || "uuid".equalsIgnoreCase(column.typeName());
+    }
+
+    private static boolean isExactNumber(ColumnMetadata column) {
+        return switch (column.jdbcType()) {
+        case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT, Types.NUMERIC, Types.DECIMAL -> true;
+        default -> false;
+        };
+    }
+
+    /**
+     * @return the text a key and a value of the column are matched by: "11",
+     *         11L and 11.0 are the same number, a UUID matches its text in any
+     *         case
+     */
+    private static Object matchKey(Object value, ColumnMetadata column) {
+        if (value == null) {
+            return null;
+        }
+
+        if (isExactNumber(column)) {
+            try {
+                return new BigDecimal(value.toString().trim()).stripTrailingZeros().toPlainString();
+            } catch (NumberFormatException ex) {
+                return value.toString();
+            }
+        }
+
+        return value.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the smallest power of two not below size, without passing the
+     *         maximum batch size
+     */
+    private static int bucket(int size, int maxBatchSize) {
+        int bucket = 1;
+
+        while (bucket < size) {
+            bucket <<= 1;
+        }
+
+        return Math.max(size, Math.min(bucket, maxBatchSize));
+    }
+
+    private static int keyIndex(RowReader rowReader, String columnName) throws SQLException {
+        for (int i = 1; i <= rowReader.columnCount(); i++) {
+            if (rowReader.columnLabel(i).equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+
+        throw new SQLException("Column not found in the result: " + columnName);
+    }
+
+    /**
+     * Duplicate keys of a window are sent once, 11, 11L and 11.0 are the same
+     * key.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Number number) {
+            try {
+                return new BigDecimal(number.toString()).stripTrailingZeros().toPlainString();
+            } catch (NumberFormatException ex) {
+                // NaN and Infinity
+                return number.toString();
+            }
+        }
+
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * The table and column of a lookup, lookups are only coalesced with the
+     * ones of the same target.
+     */
+    private record Target(String tableName, String columnName) {
+    }
+
+    /**
+     * The callers waiting for the same key.
+     */
+    private record Lookup(Object key, List<CompletableFuture<List<Object[]>>> futures) {
+    }
+
+    /**
+     * The distinct keys collected during one window, only changed inside
+     * windows.compute().
+     */
+    private static class Window {
+
+        private final Map<Object, Lookup> lookups = new LinkedHashMap<>();
+        private ScheduledFuture<?> timer;
+
+        void add(Object key, CompletableFuture<List<Object[]>> future) {
+            lookups.computeIfAbsent(normalize(key), k -> new Lookup(key, new ArrayList<>())).futures().add(future);
+        }
+
+        int size() {
+            return lookups.size();
+        }
+
+        void fail(Exception ex) {
+            lookups.values().forEach(lookup -> lookup.futures().forEach(future -> future.completeExceptionally(ex)));
+        }
+    }
+
+    /**
+     * Point in time view of the coalescing.
+     *
+     * @param lookups number of calls to lookup()
+     * @param batches number of queries sent to the database
+     * @param keys    number of distinct keys sent in those queries
+     */
+    public record Stats(long lookups, long batches, long keys) {
+
+        /**
+         * @return lookups per query, how many round trips were saved
+         */
+        public double coalescingRatio() {
+            return batches == 0 ? 0 : (double) lookups / batches;
+        }
+
+        /**
+         * @return distinct keys per query
+         */
+        public double averageBatchSize() {
+            return batches == 0 ? 0 : (double) keys / batches;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.metadata;
+
+/**
+ * Description of one column, as returned by DatabaseMetaData.getColumns().
+ *
+ * @param name          COLUMN_NAME
+ * @param jdbcType      DATA_TYPE, one of java.sql.Types
+ * @param typeName      TYPE_NAME, the database specific type name
+ * @param size          COLUMN_SIZE
+ * @param nullable      IS_NULLABLE
+ * @param autoIncrement IS_AUTOINCREMENT
+ * @param generated     IS_GENERATEDCOLUMN
+ * @param defaultValue  COLUMN_DEF, null if the column has no default
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record ColumnMetadata(String name, int jdbcType, String typeName, int size, boolean nullable,
+        boolean autoIncrement, boolean generated, String defaultValue) {
+
+    /**
+     * Serial, auto increment and CURRENT_TIMESTAMP columns are filled by the
+     * database, so they are left out of the generated INSERT.
+     *
+     * @return true if the column goes in the INSERT
+     */
+    public boolean isInsertable() {
+        return !("serial".equalsIgnoreCase(typeName) || autoIncrement
+                || "CURRENT_TIMESTAMP".equalsIgnoreCase(defaultValue));
+    }
+}
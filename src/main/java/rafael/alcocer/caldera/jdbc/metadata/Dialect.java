@@ -0,0 +1,79 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.metadata;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The databases with specific SQL or bulk protocols.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public enum Dialect {
+
+    POSTGRESQL, MYSQL, OTHER;
+
+    /**
+     * @param conn a connection to the database
+     * @return the dialect of the database
+     * @throws SQLException
+     */
+    public static Dialect of(Connection conn) throws SQLException {
+        return of(conn.getMetaData().getDatabaseProductName());
+    }
+
+    /**
+     * @param productName the name of the database product, as given by the
+     *                    driver
+     * @return the dialect of the database
+     */
+    public static Dialect of(String productName) {
+        if ("PostgreSQL".equalsIgnoreCase(productName)) {
+            return POSTGRESQL;
+        }
+
+        if ("MySQL".equalsIgnoreCase(productName) || "MariaDB".equalsIgnoreCase(productName)) {
+            return MYSQL;
+        }
+
+        return OTHER;
+    }
+
+    /**
+     * Quotes an identifier: backticks on MySQL, double quotes on the others.
+     * The parts of schema.table are quoted separately.
+     *
+     * @param identifier the name of a table or column, as stored in the
+     *                   database
+     * @return the quoted identifier
+     */
+    public String quote(String identifier) {
+        String quote = this == MYSQL ? "`" : "\"";
+        StringBuilder quoted = new StringBuilder(identifier.length() + 4);
+
+        for (String part : identifier.split("\\.")) {
+            if (quoted.length() > 0) {
+                quoted.append('.');
+            }
+
+            // A quote inside the name is written twice
+            quoted.append(quote).append(part.replace(quote, quote + quote)).append(quote);
+        }
+
+        return quoted.toString();
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.metadata;
+
+import java.util.List;
+import java.util.Optional;
+
+import rafael.alcocer.caldera.jdbc.binding.RowBinder;
+
+/**
+ * Everything DynamicQuery needs to know about a table, loaded once and kept in
+ * the TableMetadataCache.
+ *
+ * @param tableName          the name of the table
+ * @param columns            all the columns, in ordinal position
+ * @param insertableColumns  the columns that go in the generated INSERT
+ * @param insertSql          INSERT INTO table (columns) VALUES (?, ...)
+ * @param insertBinder       the setters of the parameters of insertSql
+ * @param primaryKey         the columns of the primary key, in key order, empty
+ *                           if the table has no primary key
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record TableMetadata(String tableName, List<ColumnMetadata> columns, List<ColumnMetadata> insertableColumns,
+        String insertSql, RowBinder insertBinder, List<String> primaryKey) {
+
+    public static TableMetadata of(String tableName, List<ColumnMetadata> columns, List<String> primaryKey) {
+        List<ColumnMetadata> insertableColumns = columns.stream().filter(ColumnMetadata::isInsertable).toList();
+
+        int[] insertTypes = insertableColumns.stream().mapToInt(ColumnMetadata::jdbcType).toArray();
+
+        return new TableMetadata(tableName, List.copyOf(columns), insertableColumns,
+                createInsertSql(tableName, insertableColumns, 1), RowBinder.compile(insertTypes),
+                List.copyOf(primaryKey));
+    }
+
+    /**
+     * @param columnName the name of a column, case insensitive
+     * @return the column, empty if the table doesn't have it
+     */
+    public Optional<ColumnMetadata> column(String columnName) {
+        return columns.stream().filter(column -> column.name().equalsIgnoreCase(columnName)).findFirst();
+    }
+
+    /**
+     * @return the names of the columns that go in the generated INSERT
+     */
+    public List<String> insertableColumnNames() {
+        return insertableColumns.stream().map(ColumnMetadata::name).toList();
+    }
+
+    /**
+     * Creates an INSERT that carries several rows, the parameters of the first
+     * row go first.
+     *
+     * @param rows number of rows
+     * @return INSERT INTO table (columns) VALUES (?, ...), (?, ...)
+     */
+    public String multiRowInsertSql(int rows) {
+        return rows == 1 ? insertSql : createInsertSql(tableName, insertableColumns, rows);
+    }
+
+    private static String createInsertSql(String tableName, List<ColumnMetadata> insertableColumns, int rows) {
+        StringBuilder insertColumns = new StringBuilder();
+        StringBuilder rowValues = new StringBuilder("(");
+
+        for (ColumnMetadata column : insertableColumns) {
+            if (insertColumns.length() > 0) {
+                insertColumns.append(", ");
+                rowValues.append(", ");
+            }
+
+            insertColumns.append(column.name());
+            rowValues.append("?");
+        }
+
+        rowValues.append(")");
+
+        StringBuilder insertValues = new StringBuilder(rowValues);
+
+        for (int i = 1; i < rows; i++) {
+            insertValues.append(", ").append(rowValues);
+        }
+
+        return """
+                INSERT INTO %s (%s)
+                VALUES %s
+                         """.formatted(tableName, insertColumns, insertValues);
+    }
+}
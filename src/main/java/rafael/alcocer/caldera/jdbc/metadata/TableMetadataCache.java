@@ -0,0 +1,187 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.metadata;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.metrics.Operation;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+
+/**
+ * Keeps the metadata of every table used by DynamicQuery, so
+ * DatabaseMetaData.getColumns() is called once per table instead of once per
+ * INSERT.
+ *
+ * Entries expire after db.metadata.ttl and can be invalidated explicitly, for
+ * example after a DDL. When many threads miss the same table at the same time
+ * only one of them goes to the database, the others wait for its result.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class TableMetadataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TableMetadataCache.class);
+
+    private final ReplicaRouter replicaRouter;
+    private final QueryMetrics queryMetrics;
+    private final DbConfig dbConfig;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the metadata of a table, loading it if it is not cached or it has
+     * expired.
+     *
+     * @param tableName the name of the table
+     * @return the metadata of the table
+     * @throws SQLException if the metadata can't be loaded or the table doesn't
+     *                      exist
+     */
+    public TableMetadata get(String tableName) throws SQLException {
+        long now = System.nanoTime();
+        Entry entry = entries.get(tableName);
+
+        if (entry == null || entry.isExpired(now)) {
+            Entry newEntry = new Entry(new CompletableFuture<>(), now + dbConfig.getMetadata().getTtl().toNanos());
+            entry = entries.compute(tableName,
+                    (key, current) -> current == null || current.isExpired(now) ? newEntry : current);
+
+            if (entry == newEntry) {
+                load(tableName, newEntry);
+            }
+        }
+
+        try {
+            return entry.metadata().join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Adds metadata read from somewhere else than the database, like a schema
+     * snapshot. It expires after db.metadata.ttl as if it had been loaded, so a
+     * stale snapshot is corrected by the next load.
+     *
+     * @param tableMetadata the metadata of a table
+     */
+    public void put(TableMetadata tableMetadata) {
+        entries.put(tableMetadata.tableName(), new Entry(CompletableFuture.completedFuture(tableMetadata),
+                System.nanoTime() + dbConfig.getMetadata().getTtl().toNanos()));
+    }
+
+    /**
+     * Removes a table from the cache, the next call loads it again.
+     *
+     * @param tableName the name of the table
+     */
+    public void invalidate(String tableName) {
+        entries.remove(tableName);
+    }
+
+    /**
+     * Removes all the tables from the cache.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private void load(String tableName, Entry entry) {
+        QueryMetrics.Sample sample = queryMetrics.start(Operation.METADATA, tableName, "DatabaseMetaData.getColumns()",
+                null);
+
+        try {
+            TableMetadata tableMetadata = loadFromDatabase(tableName);
+            sample.success(tableMetadata.columns().size());
+            entry.metadata().complete(tableMetadata);
+        } catch (SQLException | RuntimeException ex) {
+            sample.failure(ex);
+
+            // Failures are not cached, the next caller tries again
+            entries.remove(tableName, entry);
+            entry.metadata().completeExceptionally(ex);
+        }
+    }
+
+    private TableMetadata loadFromDatabase(String tableName) throws SQLException {
+        List<ColumnMetadata> columns = new ArrayList<>();
+
+        // The schema of a replica is the one of the primary
+        try (Connection conn = replicaRouter.getReadConnection()) {
+            DatabaseMetaData databaseMetaData = conn.getMetaData();
+
+            try (ResultSet rs = databaseMetaData.getColumns(null, null, tableName, null)) {
+                while (rs.next()) {
+                    ColumnMetadata column = new ColumnMetadata(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"),
+                            rs.getString("TYPE_NAME"), rs.getInt("COLUMN_SIZE"),
+                            "YES".equalsIgnoreCase(rs.getString("IS_NULLABLE")),
+                            "YES".equalsIgnoreCase(rs.getString("IS_AUTOINCREMENT")),
+                            "YES".equalsIgnoreCase(rs.getString("IS_GENERATEDCOLUMN")), rs.getString("COLUMN_DEF"));
+
+                    LOGGER.debug("##### {}: {}", tableName, column);
+
+                    columns.add(column);
+                }
+            }
+
+            // KEY_SEQ gives the position of the column in a composite key
+            Map<Short, String> primaryKey = new TreeMap<>();
+
+            try (ResultSet rs = databaseMetaData.getPrimaryKeys(null, null, tableName)) {
+                while (rs.next()) {
+                    primaryKey.put(rs.getShort("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+                }
+            }
+
+            if (columns.isEmpty()) {
+                throw new SQLException("Table not found: " + tableName);
+            }
+
+            return TableMetadata.of(tableName, columns, List.copyOf(primaryKey.values()));
+        }
+    }
+
+    private record Entry(CompletableFuture<TableMetadata> metadata, long expiresAt) {
+
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.metrics;
+
+import java.util.Locale;
+
+/**
+ * The operations measured by QueryMetrics, the tag operation of the meters.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public enum Operation {
+
+    SELECT, INSERT, BATCH_INSERT, BULK_LOAD, UPSERT, UPDATE, DELETE, METADATA;
+
+    private final String tag = name().toLowerCase(Locale.ROOT);
+
+    /**
+     * @return the value of the tag, select, batch_insert...
+     */
+    public String tag() {
+        return tag;
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.metrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.cache.SqlTables;
+
+/**
+ * Measures the operations of DynamicQuery with Micrometer, tagged by
+ * operation and table:
+ *
+ * dynamic.query: latency timer, also tagged by outcome (success or error),
+ * with the percentiles of db.metrics.percentiles.
+ *
+ * dynamic.query.rows: rows read or written by every operation.
+ *
+ * dynamic.query.batch.size: rows of every executeBatch of the batch inserts.
+ *
+ * dynamic.query.errors: failed operations, also tagged by exception.
+ *
+ * Operations slower than db.metrics.slow-query-threshold are logged with their
+ * SQL. The meters are kept in maps, so a measurement doesn't build meter ids.
+ * The metrics are exposed by Actuator, the connection acquire time of the pool
+ * is published by Hikari as hikaricp.connections.acquire.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class QueryMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryMetrics.class);
+
+    private static final String UNKNOWN_TABLE = "unknown";
+
+    private final MeterRegistry meterRegistry;
+    private final DbConfig dbConfig;
+
+    private final ConcurrentMap<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<TableKey, DistributionSummary> rows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, DistributionSummary> batchSizes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ErrorKey, Counter> errors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> tablesBySql = new ConcurrentHashMap<>();
+
+    /**
+     * Starts measuring an operation on a table.
+     *
+     * @param operation  the kind of operation
+     * @param tableName  the name of the table, null if unknown
+     * @param sql        the SQL, logged if the operation is slow
+     * @param parameters the parameters, logged only with db.metrics.log-parameters
+     * @return the sample, it must be ended with success() or failure()
+     */
+    public Sample start(Operation operation, String tableName, String sql, List<?> parameters) {
+        return new Sample(operation, tableName == null ? UNKNOWN_TABLE : SqlTables.normalize(tableName), sql,
+                parameters, System.nanoTime());
+    }
+
+    /**
+     * Starts measuring a query, the table tag is taken from its FROM and JOIN.
+     *
+     * @param sql        the SELECT
+     * @param parameters the parameters
+     * @return the sample, it must be ended with success() or failure()
+     */
+    public Sample startSelect(String sql, List<?> parameters) {
+        return new Sample(Operation.SELECT, tables(sql), sql, parameters, System.nanoTime());
+    }
+
+    /**
+     * Records the rows sent in one executeBatch.
+     *
+     * @param tableName the name of the table
+     * @param batchSize the number of rows
+     */
+    public void recordBatchSize(String tableName, int batchSize) {
+        batchSizes.computeIfAbsent(tableName, key -> DistributionSummary.builder("dynamic.query.batch.size")
+                .description("Rows sent in one executeBatch")
+                .baseUnit("rows")
+                .tag("table", SqlTables.normalize(key))
+                .register(meterRegistry))
+                .record(batchSize);
+    }
+
+    /**
+     * The tables of a query, joined with commas, parsed once per SQL text.
+     */
+    private String tables(String sql) {
+        String tables = tablesBySql.get(sql);
+
+        if (tables == null) {
+            Set<String> names = SqlTables.of(sql);
+            tables = names.isEmpty() ? UNKNOWN_TABLE : String.join(",", names);
+
+            // Dynamic SQL can produce any number of texts, stop caching when full
+            if (tablesBySql.size() < dbConfig.getBinding().getMaxPlans()) {
+                tablesBySql.putIfAbsent(sql, tables);
+            }
+        }
+
+        return tables;
+    }
+
+    private void record(Sample sample, String outcome, long rowCount, Throwable failure) {
+        long elapsedNanos = System.nanoTime() - sample.startNanos;
+        DbConfig.Metrics settings = dbConfig.getMetrics();
+
+        timers.computeIfAbsent(new TimerKey(sample.operation, sample.table, outcome), key -> Timer
+                .builder("dynamic.query")
+                .description("Latency of the operations of DynamicQuery")
+                .tags("operation", key.operation().tag(), "table", key.table(), "outcome", key.outcome())
+                .publishPercentiles(settings.getPercentiles())
+                .publishPercentileHistogram(settings.isPercentileHistogram())
+                .register(meterRegistry))
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        if (rowCount >= 0) {
+            rows.computeIfAbsent(new TableKey(sample.operation, sample.table), key -> DistributionSummary
+                    .builder("dynamic.query.rows")
+                    .description("Rows read or written by the operations of DynamicQuery")
+                    .baseUnit("rows")
+                    .tags("operation", key.operation().tag(), "table", key.table())
+                    .register(meterRegistry))
+                    .record(rowCount);
+        }
+
+        if (failure != null) {
+            errors.computeIfAbsent(new ErrorKey(sample.operation, sample.table, failure.getClass()),
+                    key -> Counter.builder("dynamic.query.errors")
+                            .description("Failed operations of DynamicQuery")
+                            .tags("operation", key.operation().tag(), "table", key.table(), "exception",
+                                    key.exception().getSimpleName())
+                            .register(meterRegistry))
+                    .increment();
+        }
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("##### {} {}: {} {} us, {} rows", sample.operation, sample.table, outcome,
+                    TimeUnit.NANOSECONDS.toMicros(elapsedNanos), rowCount);
+        }
+
+        Duration threshold = settings.getSlowQueryThreshold();
+
+        if (!threshold.isZero() && elapsedNanos >= threshold.toNanos()) {
+            if (settings.isLogParameters()) {
+                LOGGER.warn("##### Slow {} on {}: {} ms, {} rows, {}\n{}parameters: {}", sample.operation,
+                        sample.table, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), rowCount, outcome, sample.sql,
+                        sample.parameters);
+            } else {
+                LOGGER.warn("##### Slow {} on {}: {} ms, {} rows, {}\n{}", sample.operation, sample.table,
+                        TimeUnit.NANOSECONDS.toMillis(elapsedNanos), rowCount, outcome, sample.sql);
+            }
+        }
+    }
+
+    /**
+     * One measured operation.
+     */
+    public final class Sample {
+
+        private final Operation operation;
+        private final String table;
+        private final String sql;
+        private final List<?> parameters;
+        private final long startNanos;
+
+        private Sample(Operation operation, String table, String sql, List<?> parameters, long startNanos) {
+            this.operation = operation;
+            this.table = table;
+            this.sql = sql;
+            this.parameters = parameters;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Ends the operation successfully.
+         *
+         * @param rowCount rows read or written, -1 if unknown
+         */
+        public void success(long rowCount) {
+            record(this, "success", rowCount, null);
+        }
+
+        /**
+         * Ends the operation with an error.
+         *
+         * @param failure the cause
+         */
+        public void failure(Throwable failure) {
+            record(this, "error", -1, failure);
+        }
+    }
+
+    private record TimerKey(Operation operation, String table, String outcome) {
+    }
+
+    private record TableKey(Operation operation, String table) {
+    }
+
+    private record ErrorKey(Operation operation, String table, Class<?> exception) {
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.query;
+
+import java.util.List;
+
+/**
+ * A predicate of the WHERE of a SelectQuery. The columns are checked against
+ * the metadata of the table when the condition is added to the query.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public sealed interface Condition {
+
+    static Condition eq(String column, Object value) {
+        return new Comparison(column, "=", value);
+    }
+
+    static Condition ne(String column, Object value) {
+        return new Comparison(column, "<>", value);
+    }
+
+    static Condition lt(String column, Object value) {
+        return new Comparison(column, "<", value);
+    }
+
+    static Condition le(String column, Object value) {
+        return new Comparison(column, "<=", value);
+    }
+
+    static Condition gt(String column, Object value) {
+        return new Comparison(column, ">", value);
+    }
+
+    static Condition ge(String column, Object value) {
+        return new Comparison(column, ">=", value);
+    }
+
+    static Condition like(String column, String pattern) {
+        return new Comparison(column, "LIKE", pattern);
+    }
+
+    /**
+     * @param column the column
+     * @param values the values, the list is padded to a power of two so only
+     *               a few statement texts exist
+     * @return column IN (?, ...), always false when values is empty
+     */
+    static Condition in(String column, List<?> values) {
+        return new In(column, List.copyOf(values));
+    }
+
+    static Condition isNull(String column) {
+        return new IsNull(column, false);
+    }
+
+    static Condition isNotNull(String column) {
+        return new IsNull(column, true);
+    }
+
+    static Condition and(Condition... conditions) {
+        return new And(List.of(conditions));
+    }
+
+    static Condition or(Condition... conditions) {
+        return new Or(List.of(conditions));
+    }
+
+    default Condition and(Condition condition) {
+        return and(this, condition);
+    }
+
+    default Condition or(Condition condition) {
+        return or(this, condition);
+    }
+
+    /**
+     * column operator ?, a null value is bound as NULL, use isNull() to find
+     * nulls.
+     */
+    record Comparison(String column, String operator, Object value) implements Condition {
+    }
+
+    record In(String column, List<?> values) implements Condition {
+    }
+
+    record IsNull(String column, boolean negated) implements Condition {
+    }
+
+    record And(List<Condition> conditions) implements Condition {
+    }
+
+    record Or(List<Condition> conditions) implements Condition {
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.query;
+
+import java.util.Collections;
+import java.util.List;
+
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+
+/**
+ * Writes the names and conditions of the queries of a table: names with the
+ * spelling of the metadata and quoted for the dialect, values as parameters
+ * and IN lists padded to a power of two.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class ConditionWriter {
+
+    private final TableMetadata tableMetadata;
+    private final Dialect dialect;
+
+    ConditionWriter(TableMetadata tableMetadata, Dialect dialect) {
+        this.tableMetadata = tableMetadata;
+        this.dialect = dialect;
+    }
+
+    Dialect dialect() {
+        return dialect;
+    }
+
+    String table() {
+        return dialect.quote(tableMetadata.tableName());
+    }
+
+    String quote(String identifier) {
+        return dialect.quote(identifier);
+    }
+
+    /**
+     * @param condition a Condition or a RowComparison
+     */
+    void append(StringBuilder sql, List<Object> parameters, Object condition) {
+        if (condition instanceof Condition.Comparison comparison) {
+            sql.append(quote(column(comparison.column()))).append(' ').append(comparison.operator()).append(" ?");
+            parameters.add(comparison.value());
+        } else if (condition instanceof Condition.In in) {
+            if (in.values().isEmpty()) {
+                sql.append("1 = 0");
+
+                return;
+            }
+
+            int bucket = bucket(in.values().size());
+
+            sql.append(quote(column(in.column()))).append(" IN (")
+                    .append(String.join(", ", Collections.nCopies(bucket, "?"))).append(')');
+
+            parameters.addAll(in.values());
+
+            for (int i = in.values().size(); i < bucket; i++) {
+                parameters.add(in.values().get(in.values().size() - 1));
+            }
+        } else if (condition instanceof Condition.IsNull isNull) {
+            sql.append(quote(column(isNull.column()))).append(isNull.negated() ? " IS NOT NULL" : " IS NULL");
+        } else if (condition instanceof Condition.And and) {
+            sql.append('(');
+            appendAll(sql, parameters, and.conditions(), " AND ");
+            sql.append(')');
+        } else if (condition instanceof Condition.Or or) {
+            sql.append('(');
+            appendAll(sql, parameters, or.conditions(), " OR ");
+            sql.append(')');
+        } else if (condition instanceof RowComparison rowComparison) {
+            sql.append('(');
+            appendColumns(sql, rowComparison.columns());
+            sql.append(") ").append(rowComparison.operator()).append(" (")
+                    .append(String.join(", ", Collections.nCopies(rowComparison.values().size(), "?"))).append(')');
+            parameters.addAll(rowComparison.values());
+        }
+    }
+
+    void appendAll(StringBuilder sql, List<Object> parameters, List<?> conditions, String separator) {
+        for (int i = 0; i < conditions.size(); i++) {
+            if (i > 0) {
+                sql.append(separator);
+            }
+
+            append(sql, parameters, conditions.get(i));
+        }
+    }
+
+    void appendColumns(StringBuilder sql, List<String> columnNames) {
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+
+            sql.append(quote(columnNames.get(i)));
+        }
+    }
+
+    void validate(Condition condition) {
+        switch (condition) {
+        case Condition.Comparison comparison -> column(comparison.column());
+        case Condition.In in -> column(in.column());
+        case Condition.IsNull isNull -> column(isNull.column());
+        case Condition.And and -> and.conditions().forEach(this::validate);
+        case Condition.Or or -> or.conditions().forEach(this::validate);
+        }
+    }
+
+    /**
+     * @return the name of the column as it is in the metadata
+     */
+    String column(String columnName) {
+        return tableMetadata.column(columnName).map(ColumnMetadata::name).orElseThrow(
+                () -> new IllegalArgumentException("Column not found: " + tableMetadata.tableName() + "." + columnName));
+    }
+
+    /**
+     * @return the smallest power of two not below size
+     */
+    private static int bucket(int size) {
+        int bucket = 1;
+
+        while (bucket < size) {
+            bucket <<= 1;
+        }
+
+        return bucket;
+    }
+
+    /**
+     * (a, b) > (?, ?), only built by the keyset of SelectQuery.
+     */
+    record RowComparison(List<String> columns, String operator, List<?> values) {
+    }
+}
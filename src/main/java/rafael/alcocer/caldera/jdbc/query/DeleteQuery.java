@@ -0,0 +1,108 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.query;
+
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+
+/**
+ * Builds a DELETE of one table, with the same checked and quoted names as
+ * SelectQuery.
+ *
+ * DELETE FROM "employees" WHERE "active" = ?
+ *
+ * A limit deletes the rows in batches: DELETE ... LIMIT ? on MySQL and
+ * DELETE ... WHERE (tableoid, ctid) IN (SELECT tableoid, ctid ... LIMIT ?) on
+ * PostgreSQL, which has no LIMIT in DELETE. A ctid is only unique within one
+ * relation, the tableoid keeps a partition from losing the rows of another
+ * partition with the same ctid.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public class DeleteQuery {
+
+    private final ConditionWriter writer;
+
+    private final List<Condition> conditions = new ArrayList<>();
+    private Long limit;
+
+    public DeleteQuery(TableMetadata tableMetadata, Dialect dialect) {
+        this.writer = new ConditionWriter(tableMetadata, dialect);
+    }
+
+    /**
+     * Adds a condition, the conditions are joined with AND.
+     *
+     * @param condition the condition
+     * @return this query
+     */
+    public DeleteQuery where(Condition condition) {
+        writer.validate(condition);
+        conditions.add(condition);
+
+        return this;
+    }
+
+    public DeleteQuery limit(long limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+
+        this.limit = limit;
+
+        return this;
+    }
+
+    /**
+     * @return the SQL and its parameters
+     * @throws SQLFeatureNotSupportedException if there is a limit and the
+     *                                         database has no way to limit a
+     *                                         DELETE
+     */
+    public SqlQuery build() throws SQLFeatureNotSupportedException {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(writer.table());
+        List<Object> parameters = new ArrayList<>();
+
+        if (limit != null && writer.dialect() == Dialect.POSTGRESQL) {
+            sql.append(" WHERE (tableoid, ctid) IN (SELECT tableoid, ctid FROM ").append(writer.table());
+            appendWhere(sql, parameters);
+            sql.append(" LIMIT ?)");
+            parameters.add(limit);
+        } else if (limit != null && writer.dialect() == Dialect.MYSQL) {
+            appendWhere(sql, parameters);
+            sql.append(" LIMIT ?");
+            parameters.add(limit);
+        } else if (limit != null) {
+            throw new SQLFeatureNotSupportedException("DELETE with a limit needs PostgreSQL or MySQL");
+        } else {
+            appendWhere(sql, parameters);
+        }
+
+        return new SqlQuery(sql.toString(), Collections.unmodifiableList(parameters));
+    }
+
+    private void appendWhere(StringBuilder sql, List<Object> parameters) {
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ");
+            writer.appendAll(sql, parameters, conditions, " AND ");
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.query;
+
+import java.util.List;
+
+/**
+ * One page of a keyset pagination.
+ *
+ * @param <T>           the type of the rows
+ * @param rows          the rows, always in the order of the sort columns
+ * @param nextToken     token of the following page, null on the last page
+ * @param previousToken token of the page before, null on the first page
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record Page<T>(List<T> rows, String nextToken, String previousToken) {
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    public boolean hasPrevious() {
+        return previousToken != null;
+    }
+}
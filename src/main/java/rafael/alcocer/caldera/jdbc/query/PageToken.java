@@ -0,0 +1,224 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The position of a page: the sort key of a row and the direction to read
+ * from it. It travels to the client as an opaque URL safe Base64 string.
+ *
+ * The token keeps a hash of the table and the sort columns, a token of
+ * another pagination is rejected instead of returning a wrong page.
+ *
+ * @param backward true for the rows before the key, false for the rows after
+ * @param key      the values of the sort columns
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record PageToken(boolean backward, List<Object> key) {
+
+    private static final int VERSION = 1;
+
+    /**
+     * @param shape the table and sort columns of the pagination
+     * @return the opaque token
+     */
+    public String encode(String shape) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeBoolean(backward);
+            out.writeInt(shape.hashCode());
+            out.writeShort(key.size());
+
+            for (Object value : key) {
+                write(out, value);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @param token the opaque token
+     * @param shape the table and sort columns of the pagination
+     * @return the position
+     * @throws IllegalArgumentException if the token is damaged or belongs to
+     *                                  another pagination
+     */
+    public static PageToken decode(String token, String shape) {
+        byte[] bytes;
+
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid page token", ex);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unknown page token version");
+            }
+
+            boolean backward = in.readBoolean();
+
+            if (in.readInt() != shape.hashCode()) {
+                throw new IllegalArgumentException("The page token belongs to another query");
+            }
+
+            return new PageToken(backward, readKey(in));
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Invalid page token", ex);
+        }
+    }
+
+    /**
+     * A tampered value fails to parse with a DateTimeParseException, a
+     * NumberFormatException..., all of them are reported as an invalid token.
+     */
+    private static List<Object> readKey(DataInputStream in) throws IOException {
+        try {
+            int size = in.readShort();
+            List<Object> key = new ArrayList<>(size);
+
+            for (int i = 0; i < size; i++) {
+                key.add(read(in));
+            }
+
+            return key;
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Invalid page token", ex);
+        }
+    }
+
+    private static void write(DataOutputStream out, Object value) throws IOException {
+        switch (value) {
+        case null -> out.writeByte('N');
+        case Integer i -> {
+            out.writeByte('I');
+            out.writeInt(i);
+        }
+        case Long l -> {
+            out.writeByte('L');
+            out.writeLong(l);
+        }
+        case Short s -> {
+            out.writeByte('S');
+            out.writeShort(s);
+        }
+        case Boolean b -> {
+            out.writeByte('Z');
+            out.writeBoolean(b);
+        }
+        case Double d -> {
+            out.writeByte('D');
+            out.writeDouble(d);
+        }
+        case Float f -> {
+            out.writeByte('F');
+            out.writeFloat(f);
+        }
+        case String s -> {
+            out.writeByte('T');
+            out.writeUTF(s);
+        }
+        case BigDecimal d -> {
+            out.writeByte('B');
+            out.writeUTF(d.toString());
+        }
+        case UUID u -> {
+            out.writeByte('U');
+            out.writeLong(u.getMostSignificantBits());
+            out.writeLong(u.getLeastSignificantBits());
+        }
+        case Timestamp t -> {
+            out.writeByte('P');
+            out.writeLong(t.getTime());
+            out.writeInt(t.getNanos());
+        }
+        case java.sql.Date d -> {
+            out.writeByte('d');
+            out.writeUTF(d.toString());
+        }
+        case LocalDate d -> {
+            out.writeByte('l');
+            out.writeUTF(d.toString());
+        }
+        case LocalDateTime d -> {
+            out.writeByte('t');
+            out.writeUTF(d.toString());
+        }
+        case OffsetDateTime d -> {
+            out.writeByte('o');
+            out.writeUTF(d.toString());
+        }
+        case Instant i -> {
+            out.writeByte('i');
+            out.writeUTF(i.toString());
+        }
+        default -> throw new IllegalArgumentException(
+                "A " + value.getClass().getName() + " can't be part of a page token");
+        }
+    }
+
+    private static Object read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+
+        return switch (type) {
+        case 'N' -> null;
+        case 'I' -> in.readInt();
+        case 'L' -> in.readLong();
+        case 'S' -> in.readShort();
+        case 'Z' -> in.readBoolean();
+        case 'D' -> in.readDouble();
+        case 'F' -> in.readFloat();
+        case 'T' -> in.readUTF();
+        case 'B' -> new BigDecimal(in.readUTF());
+        case 'U' -> new UUID(in.readLong(), in.readLong());
+        case 'P' -> {
+            Timestamp timestamp = new Timestamp(in.readLong());
+            timestamp.setNanos(in.readInt());
+
+            yield timestamp;
+        }
+        case 'd' -> java.sql.Date.valueOf(in.readUTF());
+        case 'l' -> LocalDate.parse(in.readUTF());
+        case 't' -> LocalDateTime.parse(in.readUTF());
+        case 'o' -> OffsetDateTime.parse(in.readUTF());
+        case 'i' -> Instant.parse(in.readUTF());
+        default -> throw new IllegalArgumentException("Invalid page token");
+        };
+    }
+}
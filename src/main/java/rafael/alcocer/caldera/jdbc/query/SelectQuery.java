@@ -0,0 +1,198 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+
+/**
+ * Builds a SELECT of one table: columns, WHERE, ORDER BY, LIMIT and keyset
+ * pagination. Table and column names are checked against the cached metadata
+ * and written quoted, with the spelling of the metadata, so the same query
+ * always produces the same text and the statement caches of the driver and
+ * the server are hit.
+ *
+ * SELECT "id", "name" FROM "employees" WHERE "active" = ? AND "id" IN (?, ?)
+ * ORDER BY "id" ASC LIMIT ?
+ *
+ * Values are always parameters, also the LIMIT. IN lists are padded to a
+ * power of two by repeating their last value.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public class SelectQuery {
+
+    private final ConditionWriter writer;
+
+    private final List<String> columns = new ArrayList<>();
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<String> orderColumns = new ArrayList<>();
+    private final List<Direction> directions = new ArrayList<>();
+    private List<?> after;
+    private Long limit;
+
+    public SelectQuery(TableMetadata tableMetadata, Dialect dialect) {
+        this.writer = new ConditionWriter(tableMetadata, dialect);
+    }
+
+    /**
+     * @param columnNames the columns of the SELECT, all of them when it is not
+     *                    called
+     * @return this query
+     */
+    public SelectQuery columns(String... columnNames) {
+        for (String columnName : columnNames) {
+            columns.add(writer.column(columnName));
+        }
+
+        return this;
+    }
+
+    /**
+     * Adds a condition, the conditions are joined with AND.
+     *
+     * @param condition the condition
+     * @return this query
+     */
+    public SelectQuery where(Condition condition) {
+        writer.validate(condition);
+        conditions.add(condition);
+
+        return this;
+    }
+
+    public SelectQuery orderBy(String columnName) {
+        return orderBy(columnName, Direction.ASC);
+    }
+
+    public SelectQuery orderBy(String columnName, Direction direction) {
+        orderColumns.add(writer.column(columnName));
+        directions.add(direction);
+
+        return this;
+    }
+
+    /**
+     * Keyset pagination: only the rows after the given values of the ORDER BY
+     * columns, usually the last row of the previous page. The ORDER BY columns
+     * must identify a row and not be null.
+     *
+     * @param values one value per ORDER BY column
+     * @return this query
+     */
+    public SelectQuery after(List<?> values) {
+        this.after = List.copyOf(values);
+
+        return this;
+    }
+
+    public SelectQuery limit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+
+        this.limit = limit;
+
+        return this;
+    }
+
+    /**
+     * @return the SQL and its parameters
+     */
+    public SqlQuery build() {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        List<Object> parameters = new ArrayList<>();
+
+        if (columns.isEmpty()) {
+            sql.append('*');
+        } else {
+            writer.appendColumns(sql, columns);
+        }
+
+        sql.append(" FROM ").append(writer.table());
+
+        List<Object> where = new ArrayList<>(conditions);
+
+        if (after != null) {
+            where.add(keyset());
+        }
+
+        if (!where.isEmpty()) {
+            sql.append(" WHERE ");
+            writer.appendAll(sql, parameters, where, " AND ");
+        }
+
+        if (!orderColumns.isEmpty()) {
+            sql.append(" ORDER BY ");
+
+            for (int i = 0; i < orderColumns.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+
+                sql.append(writer.quote(orderColumns.get(i))).append(' ').append(directions.get(i));
+            }
+        }
+
+        if (limit != null) {
+            sql.append(" LIMIT ?");
+            parameters.add(limit);
+        }
+
+        return new SqlQuery(sql.toString(), Collections.unmodifiableList(parameters));
+    }
+
+    /**
+     * (a > ?) OR (a = ? AND b > ?) ..., with the operator of the direction of
+     * every column. When all the directions are the same PostgreSQL gets the
+     * row comparison (a, b) > (?, ?), which uses the index directly.
+     */
+    private Object keyset() {
+        if (orderColumns.isEmpty() || after.size() != orderColumns.size()) {
+            throw new IllegalStateException("after() needs one value per ORDER BY column");
+        }
+
+        boolean sameDirection = directions.stream().distinct().count() == 1;
+
+        if (sameDirection && writer.dialect() == Dialect.POSTGRESQL && orderColumns.size() > 1) {
+            return new ConditionWriter.RowComparison(orderColumns, directions.get(0) == Direction.ASC ? ">" : "<", after);
+        }
+
+        List<Condition> branches = new ArrayList<>();
+
+        for (int i = 0; i < orderColumns.size(); i++) {
+            List<Condition> branch = new ArrayList<>();
+
+            for (int j = 0; j < i; j++) {
+                branch.add(Condition.eq(orderColumns.get(j), after.get(j)));
+            }
+
+            branch.add(directions.get(i) == Direction.ASC ? Condition.gt(orderColumns.get(i), after.get(i))
+                    : Condition.lt(orderColumns.get(i), after.get(i)));
+            branches.add(branch.size() == 1 ? branch.get(0) : new Condition.And(branch));
+        }
+
+        return branches.size() == 1 ? branches.get(0) : new Condition.Or(branches);
+    }
+
+    public enum Direction {
+        ASC, DESC
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.query;
+
+import java.util.List;
+
+/**
+ * The SQL text and parameters built by a SelectQuery.
+ *
+ * @param sql        canonical SQL, the same query always has the same text
+ * @param parameters the values of the ? of the SQL, in order
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record SqlQuery(String sql, List<Object> parameters) {
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.routing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rafael.alcocer.caldera.jdbc.cache.SqlTables;
+
+/**
+ * Chooses the database of every connection: writes and transactions always go
+ * to the primary, read only queries go to the replicas in round robin.
+ *
+ * A replica that fails to give a connection is ejected for db.routing.ejection-time
+ * and the read is tried on the next one, the primary is used when no replica
+ * is left. After the ejection time the replica gets reads again, if it still
+ * fails it is ejected again.
+ *
+ * A replica whose pool has no free connection within db.routing.acquire-timeout
+ * is busy, not failing: it isn't ejected, the read is tried on the next
+ * replica and fails with the timeout when all of them are busy.
+ *
+ * Read your writes: a query reading a table written less than
+ * db.routing.read-your-writes ago goes to the primary, so it doesn't miss the
+ * write on a lagging replica. The writes are the ones notified by written().
+ *
+ * Without replicas every connection comes from the primary.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public class ReplicaRouter implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long ejectionNanos;
+    private final long readYourWritesNanos;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final ConcurrentMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    // Last write of any table, the tables of a query are only parsed after a recent write
+    private volatile long lastWrite;
+    private volatile boolean written;
+
+    /**
+     * @param primary       the database of the writes
+     * @param replicas      the databases of the reads, they can be empty
+     * @param ejectionTime  how long a failing replica is skipped
+     * @param readYourWrites how long the reads of a written table go to the
+     *                      primary, 0 disables it
+     */
+    public ReplicaRouter(DataSource primary, List<? extends DataSource> replicas, Duration ejectionTime,
+            Duration readYourWrites) {
+        this.primary = primary;
+        this.ejectionNanos = ejectionTime.toNanos();
+        this.readYourWritesNanos = readYourWrites.toNanos();
+
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica("replica-" + (i + 1), replicas.get(i)));
+        }
+    }
+
+    /**
+     * @return a connection to the primary, for writes and transactions
+     * @throws SQLException
+     */
+    public Connection getWriteConnection() throws SQLException {
+        return primary.getConnection();
+    }
+
+    /**
+     * @param sql the query that will use the connection, its tables decide if
+     *            it has to read its writes
+     * @return a connection to a replica, or to the primary
+     * @throws SQLException
+     */
+    public Connection getReadConnection(String sql) throws SQLException {
+        if (replicas.isEmpty() || mustReadFromPrimary(sql)) {
+            return primary.getConnection();
+        }
+
+        return getReadConnection();
+    }
+
+    /**
+     * @return a connection to a replica, or to the primary when there are no
+     *         healthy replicas
+     * @throws SQLException
+     */
+    public Connection getReadConnection() throws SQLException {
+        int size = replicas.size();
+
+        if (size == 0) {
+            return primary.getConnection();
+        }
+
+        int first = Math.floorMod(next.getAndIncrement(), size);
+        long now = System.nanoTime();
+        SQLException busy = null;
+
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((first + i) % size);
+
+            if (replica.isEjected(now)) {
+                continue;
+            }
+
+            try {
+                return replica.dataSource().getConnection();
+            } catch (SQLException ex) {
+                if (isPoolTimeout(ex)) {
+                    LOGGER.debug("##### {} has no free connection: {}", replica.name(), ex.getMessage());
+                    busy = ex;
+
+                    continue;
+                }
+
+                replica.eject(System.nanoTime() + ejectionNanos);
+
+                LOGGER.warn("##### {} ejected for {} ms: {}", replica.name(), ejectionNanos / 1_000_000,
+                        ex.getMessage());
+            }
+        }
+
+        if (busy != null) {
+            // The replicas are healthy but loaded, their reads don't belong on the primary
+            throw busy;
+        }
+
+        LOGGER.debug("##### No healthy replica, reading from the primary");
+
+        return primary.getConnection();
+    }
+
+    /**
+     * Records a write, the next reads of the table go to the primary during
+     * db.routing.read-your-writes.
+     *
+     * @param tableName the table written, null when it is not known, then the
+     *                  reads of all the tables go to the primary
+     */
+    public void written(String tableName) {
+        if (readYourWritesNanos <= 0 || replicas.isEmpty()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        if (tableName == null) {
+            lastWrites.clear();
+            lastWrites.put("", now);
+        } else {
+            lastWrites.put(SqlTables.normalize(tableName), now);
+        }
+
+        lastWrite = now;
+        written = true;
+    }
+
+    /**
+     * @return the number of replicas not ejected
+     */
+    public int healthyReplicas() {
+        long now = System.nanoTime();
+
+        return (int) replicas.stream().filter(replica -> !replica.isEjected(now)).count();
+    }
+
+    /**
+     * Closes the pools of the replicas, the primary belongs to the caller.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Replica replica : replicas) {
+            if (replica.dataSource() instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private boolean mustReadFromPrimary(String sql) {
+        if (!written) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+
+        if (now - lastWrite >= readYourWritesNanos) {
+            return false;
+        }
+
+        if (isRecent(lastWrites.get(""), now)) {
+            return true;
+        }
+
+        Set<String> tables = SqlTables.of(sql);
+
+        if (tables.isEmpty()) {
+            // Tables not recognized, the primary is always right
+            return true;
+        }
+
+        for (String table : tables) {
+            if (isRecent(lastWrites.get(table), now)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A pool timeout without a cause means every connection was in use, with a
+     * cause the pool could not connect: HikariCP passes the last connection
+     * error.
+     */
+    private static boolean isPoolTimeout(SQLException ex) {
+        return ex instanceof SQLTransientConnectionException && ex.getCause() == null;
+    }
+
+    private boolean isRecent(Long writtenAt, long now) {
+        return writtenAt != null && now - writtenAt < readYourWritesNanos;
+    }
+
+    private static class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        String name() {
+            return name;
+        }
+
+        DataSource dataSource() {
+            return dataSource;
+        }
+
+        boolean isEjected(long now) {
+            if (ejected && now - ejectedUntil >= 0) {
+                ejected = false;
+                LOGGER.info("##### {} back in the rotation", name);
+            }
+
+            return ejected;
+        }
+
+        void eject(long until) {
+            ejectedUntil = until;
+            ejected = true;
+        }
+    }
+}
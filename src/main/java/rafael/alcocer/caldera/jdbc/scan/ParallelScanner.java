@@ -0,0 +1,308 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.scan;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.RowMapper;
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.streaming.QueryStreamer;
+
+/**
+ * Reads a whole table in parallel: the range MIN..MAX of its numeric primary
+ * key is split in partitions and every partition is read by its own thread,
+ * with its own pooled connection. The rows of all the partitions are handed to
+ * one consumer, on the calling thread.
+ *
+ * Every partition has a bounded queue, so a slow consumer slows the readers
+ * down instead of filling the heap.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@Component
+public class ParallelScanner implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelScanner.class);
+
+    private static final Object END_OF_PARTITION = new Object();
+
+    private final DataSource dataSource;
+    private final TableMetadataCache tableMetadataCache;
+    private final QueryStreamer queryStreamer;
+    private final DbConfig dbConfig;
+    private final ExecutorService pool;
+
+    public ParallelScanner(DataSource dataSource, TableMetadataCache tableMetadataCache, QueryStreamer queryStreamer,
+            DbConfig dbConfig) {
+        this.dataSource = dataSource;
+        this.tableMetadataCache = tableMetadataCache;
+        this.queryStreamer = queryStreamer;
+        this.dbConfig = dbConfig;
+
+        // FIFO, so the partition the ordered consumer waits for always runs first
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(parallelism(dbConfig), runnable -> {
+            Thread thread = new Thread(runnable, "parallel-scan-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Every thread holds a connection while it reads, one connection of the
+     * pool is always left to the other callers.
+     *
+     * @return db.scan.parallelism, or the number of cores when it is 0
+     * @throws IllegalArgumentException if the threads would take all the
+     *                                  connections of the pool
+     */
+    static int parallelism(DbConfig dbConfig) {
+        int connections = Math.max(1, dbConfig.getPool().getMaxSize() - 1);
+        int parallelism = dbConfig.getScan().getParallelism();
+
+        if (parallelism <= 0) {
+            return Math.min(Runtime.getRuntime().availableProcessors(), connections);
+        }
+
+        if (parallelism > connections) {
+            throw new IllegalArgumentException("db.scan.parallelism is " + parallelism
+                    + ", it must be below db.pool.max-size: " + dbConfig.getPool().getMaxSize());
+        }
+
+        return parallelism;
+    }
+
+    /**
+     * Reads all the rows of a table.
+     *
+     * @param <T>        the type of the rows
+     * @param tableName  the name of the table, with a single numeric primary key
+     * @param partitions number of ranges read at the same time
+     * @param ordered    true to receive the rows ordered by the primary key,
+     *                   false to receive them as soon as any partition reads
+     *                   them
+     * @param rowMapper  converts every row, it must not return null
+     * @param consumer   receives every row, on the calling thread
+     * @return the number of rows read
+     * @throws SQLException
+     */
+    public <T> long scan(String tableName, int partitions, boolean ordered, RowMapper<T> rowMapper,
+            Consumer<? super T> consumer) throws SQLException {
+        TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+        String keyColumn = keyColumn(tableMetadata);
+        long[] range = keyRange(tableName, keyColumn);
+
+        if (range == null) {
+            return 0;
+        }
+
+        List<long[]> bounds = split(range[0], range[1], partitions);
+        String query = """
+                SELECT *
+                FROM %s
+                WHERE %s >= ? AND %s <= ?%s
+                """.formatted(tableName, keyColumn, keyColumn, ordered ? " ORDER BY " + keyColumn : "");
+
+        int capacity = dbConfig.getScan().getQueueCapacity();
+        List<BlockingQueue<Object>> queues = new ArrayList<>();
+
+        if (ordered) {
+            bounds.forEach(bound -> queues.add(new ArrayBlockingQueue<>(capacity)));
+        } else {
+            queues.add(new ArrayBlockingQueue<>(capacity * bounds.size()));
+        }
+
+        Scan scan = new Scan();
+        List<Future<?>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < bounds.size(); i++) {
+            long[] bound = bounds.get(i);
+            BlockingQueue<Object> queue = queues.get(ordered ? i : 0);
+
+            tasks.add(pool.submit(() -> readPartition(scan, query, bound, rowMapper, queue)));
+        }
+
+        LOGGER.debug("##### {}: {} partitions of {}..{}", tableName, bounds.size(), range[0], range[1]);
+
+        try {
+            return consume(queues, ordered ? 1 : bounds.size(), consumer);
+        } finally {
+            scan.cancelled = true;
+            tasks.forEach(task -> task.cancel(true));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> long consume(List<BlockingQueue<Object>> queues, int partitionsPerQueue,
+            Consumer<? super T> consumer) throws SQLException {
+        long rowCount = 0;
+
+        try {
+            for (BlockingQueue<Object> queue : queues) {
+                int finished = 0;
+
+                while (finished < partitionsPerQueue) {
+                    Object item = queue.take();
+
+                    if (item == END_OF_PARTITION) {
+                        finished++;
+                    } else if (item instanceof PartitionFailure failure) {
+                        throw failure.cause();
+                    } else {
+                        consumer.accept((T) item);
+                        rowCount++;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new SQLException("Interrupted while scanning", ex);
+        }
+
+        return rowCount;
+    }
+
+    private <T> void readPartition(Scan scan, String query, long[] bound, RowMapper<T> rowMapper,
+            BlockingQueue<Object> queue) {
+        Object last = END_OF_PARTITION;
+
+        try {
+            queryStreamer.forEach(query, List.of(bound[0], bound[1]), queryStreamer.defaultFetchSize(),
+                    rs -> put(scan, queue, rowMapper.map(rs)));
+        } catch (SQLException ex) {
+            last = new PartitionFailure(ex);
+        } catch (RuntimeException ex) {
+            last = new PartitionFailure(new SQLException(ex.getMessage(), ex));
+        }
+
+        try {
+            put(scan, queue, last);
+        } catch (SQLException ex) {
+            // The scan was cancelled, nobody is waiting for the end
+        }
+    }
+
+    /**
+     * Waits while the queue is full, unless the consumer gave up.
+     */
+    private static void put(Scan scan, BlockingQueue<Object> queue, Object item) throws SQLException {
+        try {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (scan.cancelled) {
+                    throw new SQLException("Scan cancelled");
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new SQLException("Scan cancelled", ex);
+        }
+    }
+
+    private static String keyColumn(TableMetadata tableMetadata) throws SQLException {
+        if (tableMetadata.primaryKey().size() != 1) {
+            throw new SQLException(tableMetadata.tableName() + " needs a primary key of one column to be scanned");
+        }
+
+        String keyColumn = tableMetadata.primaryKey().get(0);
+        int jdbcType = tableMetadata.column(keyColumn).map(ColumnMetadata::jdbcType).orElse(Types.OTHER);
+
+        switch (jdbcType) {
+        case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT:
+            return keyColumn;
+        default:
+            throw new SQLException(tableMetadata.tableName() + " needs an integer primary key to be scanned");
+        }
+    }
+
+    /**
+     * @return MIN and MAX of the key, null if the table is empty
+     */
+    private long[] keyRange(String tableName, String keyColumn) throws SQLException {
+        String query = """
+                SELECT MIN(%s), MAX(%s)
+                FROM %s
+                """.formatted(keyColumn, keyColumn, tableName);
+
+        try (Connection conn = dataSource.getConnection();
+                PreparedStatement ps = conn.prepareStatement(query);
+                ResultSet rs = ps.executeQuery()) {
+            rs.next();
+
+            long min = rs.getLong(1);
+
+            return rs.wasNull() ? null : new long[] { min, rs.getLong(2) };
+        }
+    }
+
+    /**
+     * Splits min..max, both included, in ranges of the same size.
+     */
+    private static List<long[]> split(long min, long max, int partitions) {
+        List<long[]> bounds = new ArrayList<>();
+        long size = Math.max(1, (max - min) / Math.max(1, partitions) + 1);
+
+        for (long low = min; low <= max; low += size) {
+            long high = max - low < size ? max : low + size - 1;
+            bounds.add(new long[] { low, high });
+
+            if (high == max) {
+                break;
+            }
+        }
+
+        return bounds;
+    }
+
+    private static class Scan {
+
+        private volatile boolean cancelled;
+    }
+
+    private record PartitionFailure(SQLException cause) {
+    }
+}
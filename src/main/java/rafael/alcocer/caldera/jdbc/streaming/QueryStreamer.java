@@ -0,0 +1,305 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.streaming;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.RowMapper;
+import rafael.alcocer.caldera.jdbc.UncheckedSQLException;
+import rafael.alcocer.caldera.jdbc.binding.BindingPlanCache;
+import rafael.alcocer.caldera.jdbc.binding.RowBinder;
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+
+/**
+ * Runs read only queries whose rows are fetched from the server as they are
+ * consumed, so the memory used doesn't depend on the number of rows.
+ *
+ * PostgreSQL only uses a server side cursor with autocommit off and a fetch
+ * size, MySQL only streams with a fetch size of Integer.MIN_VALUE.
+ *
+ * A query is measured until its cursor is closed, with the rows consumed.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class QueryStreamer {
+
+    private final DataSource dataSource;
+    private final BindingPlanCache bindingPlanCache;
+    private final QueryMetrics queryMetrics;
+    private final DbConfig dbConfig;
+
+    /**
+     * Opens a cursor over the rows of a query. The Stream holds a pooled
+     * connection until it is consumed completely or closed, use it in a
+     * try-with-resources.
+     *
+     * @param <T>        the type of the rows
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param fetchSize  rows fetched from the server at a time
+     * @param rowMapper  converts every row
+     * @return the lazily fetched rows
+     * @throws SQLException
+     */
+    public <T> Stream<T> stream(String query, List<?> parameters, int fetchSize, RowMapper<T> rowMapper)
+            throws SQLException {
+        Cursor cursor = open(query, parameters, fetchSize);
+
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (cursor.rs.next()) {
+                        action.accept(rowMapper.map(cursor.rs));
+                        cursor.rowCount++;
+
+                        return true;
+                    }
+
+                    cursor.close();
+
+                    return false;
+                } catch (SQLException ex) {
+                    cursor.closeQuietly(ex);
+
+                    throw new UncheckedSQLException(ex);
+                }
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                cursor.close();
+            } catch (SQLException ex) {
+                throw new UncheckedSQLException(ex);
+            }
+        });
+    }
+
+    /**
+     * Runs a query and hands every row to a callback, the cursor is closed when
+     * the method returns.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param fetchSize  rows fetched from the server at a time
+     * @param callback   receives the ResultSet positioned on every row
+     * @return the number of rows
+     * @throws SQLException
+     */
+    public long forEach(String query, List<?> parameters, int fetchSize, RowCallback callback)
+            throws SQLException {
+        Cursor cursor = open(query, parameters, fetchSize);
+
+        try {
+            while (cursor.rs.next()) {
+                callback.process(cursor.rs);
+                cursor.rowCount++;
+            }
+        } catch (SQLException | RuntimeException ex) {
+            cursor.closeQuietly(ex);
+
+            throw ex;
+        }
+
+        cursor.close();
+
+        return cursor.rowCount;
+    }
+
+    /**
+     * Runs a query and hands its open cursor to a reader, which moves it
+     * itself. Unlike forEach() the reader sees the ResultSetMetaData even when
+     * there are no rows.
+     *
+     * @param query      SELECT * FROM %s WHERE %s = ?
+     * @param parameters the column values
+     * @param fetchSize  rows fetched from the server at a time
+     * @param reader     reads the ResultSet, positioned before the first row
+     * @return the number of rows, as returned by the reader
+     * @throws SQLException
+     */
+    public long read(String query, List<?> parameters, int fetchSize, CursorReader reader) throws SQLException {
+        Cursor cursor = open(query, parameters, fetchSize);
+
+        try {
+            cursor.rowCount = reader.read(cursor.rs);
+        } catch (SQLException | RuntimeException ex) {
+            cursor.closeQuietly(ex);
+
+            throw ex;
+        }
+
+        cursor.close();
+
+        return cursor.rowCount;
+    }
+
+    /**
+     * @return the db.streaming.fetch-size
+     */
+    public int defaultFetchSize() {
+        return dbConfig.getStreaming().getFetchSize();
+    }
+
+    private Cursor open(String query, List<?> parameters, int fetchSize) throws SQLException {
+        Connection conn = dataSource.getConnection();
+        Cursor cursor = new Cursor(conn, conn.getAutoCommit(), queryMetrics.startSelect(query, parameters));
+
+        try {
+            Dialect dialect = Dialect.of(conn);
+
+            if (dialect == Dialect.POSTGRESQL) {
+                conn.setAutoCommit(false);
+            }
+
+            cursor.ps = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            cursor.ps.setFetchSize(dialect == Dialect.MYSQL ? Integer.MIN_VALUE : fetchSize);
+
+            RowBinder rowBinder = bindingPlanCache.get(query, cursor.ps);
+
+            if (rowBinder.parameterCount() != parameters.size()) {
+                throw new SQLException("The query has " + rowBinder.parameterCount() + " parameters, "
+                        + parameters.size() + " were given");
+            }
+
+            rowBinder.bind(cursor.ps, parameters);
+            cursor.rs = cursor.ps.executeQuery();
+
+            return cursor;
+        } catch (SQLException | RuntimeException ex) {
+            cursor.closeQuietly(ex);
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Receives every row of a query.
+     */
+    @FunctionalInterface
+    public interface RowCallback {
+
+        /**
+         * @param rs the ResultSet positioned on the row, don't move it
+         * @throws SQLException
+         */
+        void process(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Reads a whole cursor.
+     */
+    @FunctionalInterface
+    public interface CursorReader {
+
+        /**
+         * @param rs the ResultSet positioned before the first row, don't close
+         *           it
+         * @return the number of rows read
+         * @throws SQLException
+         */
+        long read(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * The resources of an open query, closed only once.
+     */
+    private static class Cursor implements AutoCloseable {
+
+        private final Connection conn;
+        private final boolean autoCommit;
+        private QueryMetrics.Sample sample;
+        private PreparedStatement ps;
+        private ResultSet rs;
+        private long rowCount;
+        private boolean closed;
+
+        Cursor(Connection conn, boolean autoCommit, QueryMetrics.Sample sample) {
+            this.conn = conn;
+            this.autoCommit = autoCommit;
+            this.sample = sample;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            end(null);
+
+            try (Connection c = conn) {
+                try (PreparedStatement p = ps; ResultSet r = rs) {
+                    // Closed before ending the transaction of the cursor
+                }
+
+                if (autoCommit && !conn.getAutoCommit()) {
+                    // Nothing was written, it only ends the transaction
+                    conn.commit();
+                    conn.setAutoCommit(true);
+                }
+            }
+        }
+
+        void closeQuietly(Exception cause) {
+            end(cause);
+
+            try {
+                close();
+            } catch (SQLException ex) {
+                cause.addSuppressed(ex);
+            }
+        }
+
+        /**
+         * Records the query once, the first end wins.
+         */
+        private void end(Exception cause) {
+            if (sample == null) {
+                return;
+            }
+
+            if (cause == null) {
+                sample.success(rowCount);
+            } else {
+                sample.failure(cause);
+            }
+
+            sample = null;
+        }
+    }
+}
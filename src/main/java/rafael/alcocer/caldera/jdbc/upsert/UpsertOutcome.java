@@ -0,0 +1,39 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.upsert;
+
+/**
+ * What an upsert did with one row.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public enum UpsertOutcome {
+
+    /** No row had the key, the row was inserted. */
+    INSERTED,
+
+    /** A row with the key existed and was updated. */
+    UPDATED,
+
+    /** A row with the key existed with the same values, reported by MySQL with useAffectedRows=true. */
+    UNCHANGED,
+
+    /** The row was written but the driver didn't tell how, for example with rewritten batches. */
+    UNKNOWN,
+
+    /** The row was not written, its chunk failed or was not sent. */
+    FAILED
+}
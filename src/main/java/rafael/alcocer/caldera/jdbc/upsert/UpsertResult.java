@@ -0,0 +1,44 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.upsert;
+
+import java.util.List;
+
+import rafael.alcocer.caldera.jdbc.batch.ChunkFailure;
+
+/**
+ * The outcome of a batched upsert.
+ *
+ * @param rowsRead     rows taken from the input
+ * @param rowsInserted rows committed as new rows
+ * @param rowsUpdated  rows committed over an existing row
+ * @param chunks       number of chunks sent
+ * @param failures     the chunks that failed, empty if every row was written
+ * @param outcomes     one outcome per input row when they were requested,
+ *                     otherwise null
+ * @param keys         the primary key of every input row, as returned by
+ *                     PostgreSQL, null for the failed rows. Null when the
+ *                     outcomes were not requested or on MySQL
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record UpsertResult(long rowsRead, long rowsInserted, long rowsUpdated, int chunks,
+        List<ChunkFailure> failures, List<UpsertOutcome> outcomes, List<Object[]> keys) {
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+}
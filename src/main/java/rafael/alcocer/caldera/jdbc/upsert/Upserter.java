@@ -0,0 +1,391 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.upsert;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.jdbc.batch.BatchOptions;
+import rafael.alcocer.caldera.jdbc.batch.ChunkFailure;
+import rafael.alcocer.caldera.jdbc.batch.CommitMode;
+import rafael.alcocer.caldera.jdbc.binding.RowBinder;
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.Operation;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+
+/**
+ * Inserts rows or updates the rows with the same key, in chunks, with the SQL
+ * of the database built from the metadata of the table:
+ *
+ * PostgreSQL: INSERT ... ON CONFLICT (keys) DO UPDATE SET c = EXCLUDED.c
+ * RETURNING (xmax = 0), primary key. The RETURNING tells apart inserted and
+ * updated rows and gives the generated keys. The key columns need a unique
+ * index.
+ *
+ * MySQL: INSERT ... ON DUPLICATE KEY UPDATE c = VALUES(c), any unique key of
+ * the table can match. The outcome comes from the update count: 1 inserted, 2
+ * updated, 0 unchanged. Connector/J reports unchanged rows as 1 unless the url
+ * has useAffectedRows=true.
+ *
+ * Every row is its own statement in the batch, so the outcomes map to the
+ * rows, db.batch.rows-per-statement is not used. The chunks are committed like
+ * the batch inserts.
+ *
+ * The rows have the columns of getColumns(), followed by the key columns that
+ * getColumns() leaves out, for example a SERIAL id. Explicit values of a
+ * SERIAL key don't advance its sequence on PostgreSQL.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class Upserter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Upserter.class);
+
+    private final DataSource dataSource;
+    private final TableMetadataCache tableMetadataCache;
+    private final QueryMetrics queryMetrics;
+
+    /**
+     * Upserts the rows of an iterator, reading one chunk at a time.
+     *
+     * @param tableName       the name of the table
+     * @param keyColumns      the columns that identify a row, empty for the
+     *                        primary key
+     * @param rows            the rows, in the order of upsertColumnNames()
+     * @param options         how the rows are split and committed
+     * @param collectOutcomes true to return the outcome and key of every row
+     * @return the outcome of the upsert
+     * @throws SQLException if the metadata can't be loaded, the key columns
+     *                      are not valid or a connection can't be obtained,
+     *                      failed chunks are reported in the result
+     */
+    public UpsertResult upsert(String tableName, List<String> keyColumns, Iterator<? extends List<?>> rows,
+            BatchOptions options, boolean collectOutcomes) throws SQLException {
+        TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+        List<ColumnMetadata> keys = keyColumns(tableMetadata, keyColumns);
+        List<ColumnMetadata> columns = upsertColumns(tableMetadata, keys);
+
+        try (Connection conn = dataSource.getConnection()) {
+            Dialect dialect = Dialect.of(conn);
+            String upsertSql = upsertSql(dialect, tableMetadata, columns, keys);
+            QueryMetrics.Sample sample = queryMetrics.start(Operation.UPSERT, tableName, upsertSql, null);
+
+            try {
+                UpsertResult result = upsertChunks(conn, dialect, upsertSql, tableMetadata, columns, rows, options,
+                        collectOutcomes);
+
+                if (result.failures().isEmpty()) {
+                    sample.success(result.rowsInserted() + result.rowsUpdated());
+                } else {
+                    sample.failure(result.failures().get(0).cause());
+                }
+
+                return result;
+            } catch (SQLException | RuntimeException ex) {
+                sample.failure(ex);
+
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * @param tableName  the name of the table
+     * @param keyColumns the columns that identify a row, empty for the primary
+     *                   key
+     * @return the columns of the rows given to upsert(), in order
+     * @throws SQLException
+     */
+    public List<String> upsertColumnNames(String tableName, List<String> keyColumns) throws SQLException {
+        TableMetadata tableMetadata = tableMetadataCache.get(tableName);
+
+        return upsertColumns(tableMetadata, keyColumns(tableMetadata, keyColumns)).stream()
+                .map(ColumnMetadata::name)
+                .toList();
+    }
+
+    private UpsertResult upsertChunks(Connection conn, Dialect dialect, String upsertSql,
+            TableMetadata tableMetadata, List<ColumnMetadata> columns, Iterator<? extends List<?>> rows,
+            BatchOptions options, boolean collectOutcomes) throws SQLException {
+        String tableName = tableMetadata.tableName();
+        CommitMode commitMode = options.commitMode();
+        RowBinder rowBinder = RowBinder.compile(columns.stream().mapToInt(ColumnMetadata::jdbcType).toArray());
+        boolean returning = dialect == Dialect.POSTGRESQL;
+        int keyCount = tableMetadata.primaryKey().size();
+
+        List<List<?>> chunk = new ArrayList<>(options.chunkSize());
+        List<ChunkFailure> failures = new ArrayList<>();
+        List<UpsertOutcome> allOutcomes = collectOutcomes ? new ArrayList<>() : null;
+        List<Object[]> allKeys = collectOutcomes && returning ? new ArrayList<>() : null;
+        long rowsRead = 0;
+        long rowsInserted = 0;
+        long rowsUpdated = 0;
+        int chunks = 0;
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(commitMode == CommitMode.AUTO_COMMIT);
+
+        try (PreparedStatement ps = returning ? conn.prepareStatement(upsertSql, Statement.RETURN_GENERATED_KEYS)
+                : conn.prepareStatement(upsertSql)) {
+            boolean stop = false;
+
+            while (!stop && rows.hasNext()) {
+                chunk.clear();
+
+                while (chunk.size() < options.chunkSize() && rows.hasNext()) {
+                    chunk.add(rows.next());
+                }
+
+                UpsertOutcome[] outcomes = new UpsertOutcome[chunk.size()];
+                Object[][] keys = new Object[chunk.size()][];
+                Arrays.fill(outcomes, UpsertOutcome.FAILED);
+
+                queryMetrics.recordBatchSize(tableName, chunk.size());
+
+                try {
+                    for (List<?> row : chunk) {
+                        rowBinder.bind(ps, row);
+                        ps.addBatch();
+                    }
+
+                    int[] counts = ps.executeBatch();
+
+                    if (returning) {
+                        readReturning(ps, outcomes, keys, keyCount);
+                    } else {
+                        readCounts(counts, outcomes);
+                    }
+
+                    if (commitMode == CommitMode.PER_CHUNK) {
+                        conn.commit();
+                    }
+                } catch (SQLException ex) {
+                    LOGGER.warn("##### upsert chunk {} of {} failed: {}", chunks, tableName, ex.getMessage());
+
+                    failures.add(new ChunkFailure(chunks, rowsRead, chunk.size(), ex));
+                    ps.clearBatch();
+
+                    if (commitMode != CommitMode.AUTO_COMMIT) {
+                        conn.rollback();
+                        Arrays.fill(outcomes, UpsertOutcome.FAILED);
+                        Arrays.fill(keys, null);
+                    } else if (ex instanceof BatchUpdateException batchUpdateException) {
+                        // The statements before the failed one were committed by the driver
+                        readCounts(batchUpdateException.getUpdateCounts(), outcomes);
+                    }
+
+                    stop = commitMode == CommitMode.SINGLE_TRANSACTION || !options.continueOnError();
+                }
+
+                for (UpsertOutcome outcome : outcomes) {
+                    if (outcome == UpsertOutcome.INSERTED) {
+                        rowsInserted++;
+                    } else if (outcome == UpsertOutcome.UPDATED) {
+                        rowsUpdated++;
+                    }
+                }
+
+                rowsRead += chunk.size();
+                chunks++;
+
+                if (allOutcomes != null) {
+                    Collections.addAll(allOutcomes, outcomes);
+                }
+
+                if (allKeys != null) {
+                    Collections.addAll(allKeys, keys);
+                }
+
+                LOGGER.debug("##### {}: upsert chunk {}, {} rows read", tableName, chunks, rowsRead);
+            }
+
+            if (commitMode == CommitMode.SINGLE_TRANSACTION) {
+                if (failures.isEmpty()) {
+                    conn.commit();
+                } else {
+                    // Everything was rolled back
+                    rowsInserted = 0;
+                    rowsUpdated = 0;
+
+                    if (allOutcomes != null) {
+                        Collections.fill(allOutcomes, UpsertOutcome.FAILED);
+                    }
+
+                    if (allKeys != null) {
+                        Collections.fill(allKeys, null);
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException ex) {
+            // Turning auto-commit back on would commit the rows sent so far
+            if (commitMode != CommitMode.AUTO_COMMIT) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    ex.addSuppressed(rollbackEx);
+                }
+            }
+
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        return new UpsertResult(rowsRead, rowsInserted, rowsUpdated, chunks, List.copyOf(failures),
+                allOutcomes == null ? null : Collections.unmodifiableList(allOutcomes),
+                allKeys == null ? null : Collections.unmodifiableList(allKeys));
+    }
+
+    /**
+     * Every statement of the batch returns one row: inserted, then the primary
+     * key.
+     */
+    private static void readReturning(PreparedStatement ps, UpsertOutcome[] outcomes, Object[][] keys,
+            int keyCount) throws SQLException {
+        Arrays.fill(outcomes, UpsertOutcome.UNKNOWN);
+
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            for (int i = 0; i < outcomes.length && rs.next(); i++) {
+                outcomes[i] = rs.getBoolean(1) ? UpsertOutcome.INSERTED : UpsertOutcome.UPDATED;
+
+                if (keyCount > 0) {
+                    Object[] key = new Object[keyCount];
+
+                    // Starts with 2, the first column is the inserted flag
+                    for (int j = 0; j < keyCount; j++) {
+                        key[j] = rs.getObject(j + 2);
+                    }
+
+                    keys[i] = key;
+                }
+            }
+        }
+    }
+
+    /**
+     * The update counts of ON DUPLICATE KEY UPDATE: 1 inserted, 2 updated, 0
+     * unchanged.
+     */
+    private static void readCounts(int[] counts, UpsertOutcome[] outcomes) {
+        if (counts == null) {
+            return;
+        }
+
+        for (int i = 0; i < counts.length && i < outcomes.length; i++) {
+            outcomes[i] = switch (counts[i]) {
+            case 1 -> UpsertOutcome.INSERTED;
+            case 2 -> UpsertOutcome.UPDATED;
+            case 0 -> UpsertOutcome.UNCHANGED;
+            case Statement.EXECUTE_FAILED -> UpsertOutcome.FAILED;
+            default -> UpsertOutcome.UNKNOWN;
+            };
+        }
+    }
+
+    private static List<ColumnMetadata> keyColumns(TableMetadata tableMetadata, List<String> keyColumns)
+            throws SQLException {
+        List<String> names = keyColumns == null || keyColumns.isEmpty() ? tableMetadata.primaryKey() : keyColumns;
+
+        if (names.isEmpty()) {
+            throw new SQLException(tableMetadata.tableName() + " needs key columns or a primary key to be upserted");
+        }
+
+        List<ColumnMetadata> keys = new ArrayList<>();
+
+        for (String name : names) {
+            keys.add(tableMetadata.column(name)
+                    .orElseThrow(() -> new SQLException("Column not found: " + tableMetadata.tableName() + "." + name)));
+        }
+
+        return keys;
+    }
+
+    /**
+     * The insertable columns, then the keys that are not insertable.
+     */
+    private static List<ColumnMetadata> upsertColumns(TableMetadata tableMetadata, List<ColumnMetadata> keys) {
+        List<ColumnMetadata> columns = new ArrayList<>(tableMetadata.insertableColumns());
+
+        keys.stream().filter(key -> !columns.contains(key)).forEach(columns::add);
+
+        return columns;
+    }
+
+    private static String upsertSql(Dialect dialect, TableMetadata tableMetadata, List<ColumnMetadata> columns,
+            List<ColumnMetadata> keys) throws SQLException {
+        List<String> columnNames = columns.stream().map(ColumnMetadata::name).toList();
+        List<String> keyNames = keys.stream().map(ColumnMetadata::name).toList();
+        List<String> updateNames = columnNames.stream().filter(name -> !keyNames.contains(name)).toList();
+
+        if (updateNames.isEmpty()) {
+            // Only keys: the row is "updated" to itself, so it is still returned
+            updateNames = List.of(keyNames.get(0));
+        }
+
+        String values = String.join(", ", Collections.nCopies(columns.size(), "?"));
+
+        switch (dialect) {
+        case POSTGRESQL:
+            List<String> returning = new ArrayList<>();
+            returning.add("(xmax = 0) AS inserted");
+            returning.addAll(tableMetadata.primaryKey());
+
+            return """
+                    INSERT INTO %s (%s)
+                    VALUES (%s)
+                    ON CONFLICT (%s) DO UPDATE SET %s
+                    RETURNING %s
+                    """.formatted(tableMetadata.tableName(), String.join(", ", columnNames), values,
+                    String.join(", ", keyNames), assignments(updateNames, "%s = EXCLUDED.%s"),
+                    String.join(", ", returning));
+        case MYSQL:
+            return """
+                    INSERT INTO %s (%s)
+                    VALUES (%s)
+                    ON DUPLICATE KEY UPDATE %s
+                    """.formatted(tableMetadata.tableName(), String.join(", ", columnNames), values,
+                    assignments(updateNames, "%s = VALUES(%s)"));
+        default:
+            throw new SQLFeatureNotSupportedException("UPSERT is only generated for PostgreSQL and MySQL");
+        }
+    }
+
+    private static String assignments(List<String> columnNames, String format) {
+        return String.join(", ", columnNames.stream().map(name -> format.formatted(name, name)).toList());
+    }
+}
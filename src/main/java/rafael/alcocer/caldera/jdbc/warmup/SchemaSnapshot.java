@@ -0,0 +1,90 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.warmup;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import rafael.alcocer.caldera.jdbc.cache.SqlTables;
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+
+/**
+ * The metadata of the warm-up tables, saved as JSON so the next start can fill
+ * the TableMetadataCache without calling DatabaseMetaData.
+ *
+ * Every table keeps the fingerprint of its columns when it was read, a table
+ * whose fingerprint changed since then, after a migration for example, is
+ * read from the database again.
+ *
+ * @param version   the format of the file, a snapshot of another format is
+ *                  ignored
+ * @param url       the db.url it was read from, a snapshot of another database
+ *                  is ignored
+ * @param createdAt when the metadata was read
+ * @param tables    the metadata of every table
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record SchemaSnapshot(int version, String url, Instant createdAt, List<Table> tables) {
+
+    public static final int VERSION = 2;
+
+    /**
+     * @param url          the db.url of the application
+     * @param tables       the metadata of the tables
+     * @param fingerprints the fingerprint of every table, by normalized name
+     * @return the snapshot
+     */
+    public static SchemaSnapshot of(String url, Collection<TableMetadata> tables, Map<String, String> fingerprints) {
+        return new SchemaSnapshot(VERSION, url, Instant.now(),
+                tables.stream().map(table -> new Table(table.tableName(), table.columns(), table.primaryKey(),
+                        fingerprints.get(SqlTables.normalize(table.tableName())))).toList());
+    }
+
+    /**
+     * @param url the db.url of the application
+     * @return true if the snapshot can be used with that database
+     */
+    public boolean isUsableWith(String url) {
+        return version == VERSION && this.url != null && this.url.equals(url) && tables != null;
+    }
+
+    /**
+     * The columns and key of one table, TableMetadata builds the rest.
+     *
+     * @param fingerprint the fingerprint of the columns when they were read,
+     *                    null if it was not known
+     */
+    public record Table(String tableName, List<ColumnMetadata> columns, List<String> primaryKey,
+            String fingerprint) {
+
+        /**
+         * @param fingerprints the current fingerprint of every table, by
+         *                     normalized name
+         * @return true if the columns of the table didn't change
+         */
+        public boolean isCurrent(Map<String, String> fingerprints) {
+            return fingerprint != null && fingerprint.equals(fingerprints.get(SqlTables.normalize(tableName)));
+        }
+
+        public TableMetadata toTableMetadata() {
+            return TableMetadata.of(tableName, columns, primaryKey);
+        }
+    }
+}
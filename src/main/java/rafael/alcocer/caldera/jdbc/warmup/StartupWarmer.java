@@ -0,0 +1,357 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.binding.BindingPlanCache;
+import rafael.alcocer.caldera.jdbc.cache.SqlTables;
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.query.Condition;
+import rafael.alcocer.caldera.jdbc.query.SelectQuery;
+
+/**
+ * Does at startup the work the first requests would do: loads the metadata of
+ * the db.warmup.tables in parallel, opens db.pool.min-size connections and
+ * prepares on each one the generated INSERT and SELECT by primary key, whose
+ * binding plans are cached too.
+ *
+ * It runs before the other runners. Spring Boot only changes the readiness
+ * state to ACCEPTING_TRAFFIC once all the runners have finished, so the
+ * instance is not reported as ready while it is cold.
+ *
+ * A failure is logged and doesn't stop the application, whatever was not
+ * warmed up is loaded on first use as usual.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StartupWarmer implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupWarmer.class);
+
+    private final DataSource dataSource;
+    private final TableMetadataCache tableMetadataCache;
+    private final BindingPlanCache bindingPlanCache;
+    private final ObjectMapper objectMapper;
+    private final DbConfig dbConfig;
+    private final ExecutorService executor;
+
+    public StartupWarmer(DataSource dataSource, TableMetadataCache tableMetadataCache,
+            BindingPlanCache bindingPlanCache, ObjectMapper objectMapper, DbConfig dbConfig,
+            @Qualifier("dynamicQueryExecutor") ExecutorService executor) {
+        this.dataSource = dataSource;
+        this.tableMetadataCache = tableMetadataCache;
+        this.bindingPlanCache = bindingPlanCache;
+        this.objectMapper = objectMapper;
+        this.dbConfig = dbConfig;
+        this.executor = executor;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        DbConfig.Warmup warmup = dbConfig.getWarmup();
+
+        if (!warmup.isEnabled()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<TableMetadata> tables = loadTables(warmup);
+        List<Connection> connections = new ArrayList<>();
+
+        try {
+            if (warmup.isOpenConnections()) {
+                // Held together, so the pool has to create all of them
+                for (int i = 0; i < dbConfig.getPool().getMinSize(); i++) {
+                    connections.add(dataSource.getConnection());
+                }
+            }
+
+            if (warmup.isPrepareStatements() && !tables.isEmpty()) {
+                if (connections.isEmpty()) {
+                    connections.add(dataSource.getConnection());
+                }
+
+                for (Connection conn : connections) {
+                    prepare(conn, tables);
+                }
+            }
+        } catch (SQLException | RuntimeException ex) {
+            LOGGER.warn("##### Warm-up of the connections failed: {}", ex.getMessage());
+        } finally {
+            close(connections);
+        }
+
+        LOGGER.info("##### Warm-up: {} tables, {} connections in {} ms", tables.size(), connections.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Reads the tables from the snapshot, the missing ones and the ones whose
+     * columns changed from the database. The snapshot is written again when
+     * something had to be read from the database.
+     */
+    private List<TableMetadata> loadTables(DbConfig.Warmup warmup) {
+        Map<String, TableMetadata> tables = new LinkedHashMap<>();
+        Path snapshotFile = warmup.getSnapshotFile() == null || warmup.getSnapshotFile().isBlank() ? null
+                : Path.of(warmup.getSnapshotFile());
+        Map<String, String> fingerprints = snapshotFile == null ? Map.of() : fingerprints(warmup.getTables());
+
+        if (snapshotFile != null) {
+            readSnapshot(snapshotFile).forEach(table -> {
+                if (!warmup.getTables().contains(table.tableName())) {
+                    return;
+                }
+
+                if (table.isCurrent(fingerprints)) {
+                    TableMetadata tableMetadata = table.toTableMetadata();
+                    tableMetadataCache.put(tableMetadata);
+                    tables.put(tableMetadata.tableName(), tableMetadata);
+                } else {
+                    LOGGER.info("##### {} changed since the snapshot, reading it again", table.tableName());
+                }
+            });
+        }
+
+        List<String> missing = warmup.getTables().stream().filter(tableName -> !tables.containsKey(tableName))
+                .toList();
+
+        if (missing.isEmpty()) {
+            return List.copyOf(tables.values());
+        }
+
+        int fromSnapshot = tables.size();
+
+        Semaphore permits = new Semaphore(Math.max(1, warmup.getParallelism()));
+        Map<String, CompletableFuture<TableMetadata>> loads = new LinkedHashMap<>();
+
+        for (String tableName : missing) {
+            loads.put(tableName, CompletableFuture.supplyAsync(() -> {
+                try {
+                    permits.acquire();
+
+                    try {
+                        return tableMetadataCache.get(tableName);
+                    } finally {
+                        permits.release();
+                    }
+                } catch (SQLException ex) {
+                    throw new CompletionException(ex);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+
+                    throw new CompletionException(ex);
+                }
+            }, executor));
+        }
+
+        loads.forEach((tableName, load) -> {
+            try {
+                tables.put(tableName, load.join());
+            } catch (CompletionException ex) {
+                LOGGER.warn("##### Warm-up of {} failed: {}", tableName, ex.getCause().getMessage());
+            }
+        });
+
+        if (snapshotFile != null && tables.size() > fromSnapshot) {
+            writeSnapshot(snapshotFile, SchemaSnapshot.of(dbConfig.getUrl(), tables.values(), fingerprints));
+        }
+
+        return List.copyOf(tables.values());
+    }
+
+    /**
+     * One query for all the tables: a hash of the name, type, nullability and
+     * default of their columns, in order. Any change of the columns changes
+     * it.
+     *
+     * @return the fingerprint of every table found, by normalized name, empty
+     *         if they can't be read
+     */
+    private Map<String, String> fingerprints(List<String> tableNames) {
+        if (tableNames.isEmpty()) {
+            return Map.of();
+        }
+
+        String columnsSql = """
+                SELECT table_schema, table_name, column_name, data_type, is_nullable, column_default
+                FROM information_schema.columns WHERE LOWER(table_name) IN (%s)
+                ORDER BY table_schema, table_name, ordinal_position
+                """.formatted(String.join(", ", Collections.nCopies(tableNames.size(), "?")));
+        Map<String, MessageDigest> digests = new HashMap<>();
+
+        try (Connection conn = dataSource.getConnection();
+                PreparedStatement ps = conn.prepareStatement(columnsSql)) {
+            for (int i = 0; i < tableNames.size(); i++) {
+                ps.setString(i + 1, SqlTables.normalize(tableNames.get(i)));
+            }
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    MessageDigest digest = digests.computeIfAbsent(SqlTables.normalize(rs.getString(2)),
+                            tableName -> sha256());
+
+                    for (int column = 1; column <= 6; column++) {
+                        String value = rs.getString(column);
+                        digest.update((value == null ? "\0" : value + "\t").getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            LOGGER.warn("##### The columns of the tables can't be read, the snapshot is not used: {}",
+                    ex.getMessage());
+
+            return Map.of();
+        }
+
+        Map<String, String> fingerprints = new HashMap<>();
+        digests.forEach((tableName, digest) -> fingerprints.put(tableName, HexFormat.of().formatHex(digest.digest())));
+
+        return fingerprints;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every JVM has SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private List<SchemaSnapshot.Table> readSnapshot(Path snapshotFile) {
+        if (!Files.exists(snapshotFile)) {
+            return List.of();
+        }
+
+        try {
+            SchemaSnapshot snapshot = objectMapper.readValue(snapshotFile.toFile(), SchemaSnapshot.class);
+
+            if (!snapshot.isUsableWith(dbConfig.getUrl())) {
+                LOGGER.info("##### {} is of another database or format, ignored", snapshotFile);
+
+                return List.of();
+            }
+
+            LOGGER.info("##### {} tables read from {}, created at {}", snapshot.tables().size(), snapshotFile,
+                    snapshot.createdAt());
+
+            return snapshot.tables();
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("##### {} can't be read, ignored: {}", snapshotFile, ex.getMessage());
+
+            return List.of();
+        }
+    }
+
+    /**
+     * Writes a temporary file and moves it, a crash never leaves half a
+     * snapshot.
+     */
+    private void writeSnapshot(Path snapshotFile, SchemaSnapshot snapshot) {
+        try {
+            Path directory = snapshotFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+
+            Path temporary = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temporary.toFile(), snapshot);
+            Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            LOGGER.info("##### {} tables written to {}", snapshot.tables().size(), snapshotFile);
+        } catch (IOException ex) {
+            LOGGER.warn("##### {} can't be written: {}", snapshotFile, ex.getMessage());
+        }
+    }
+
+    /**
+     * Prepares the statements as DynamicQuery does, so they land in the
+     * statement cache of the driver (cachePrepStmts on MySQL), and caches the
+     * binding plan of the SELECT.
+     */
+    private void prepare(Connection conn, List<TableMetadata> tables) throws SQLException {
+        Dialect dialect = Dialect.of(conn);
+
+        for (TableMetadata table : tables) {
+            // The insert binder is already compiled by TableMetadata
+            conn.prepareStatement(table.insertSql()).close();
+
+            if (table.primaryKey().isEmpty()) {
+                continue;
+            }
+
+            List<Condition> keyConditions = table.primaryKey().stream()
+                    .map(column -> Condition.eq(column, null)).toList();
+            String selectSql = new SelectQuery(table, dialect)
+                    .where(keyConditions.size() == 1 ? keyConditions.get(0)
+                            : Condition.and(keyConditions.toArray(Condition[]::new)))
+                    .build().sql();
+
+            try (PreparedStatement ps = conn.prepareStatement(selectSql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                bindingPlanCache.get(selectSql, ps);
+            }
+        }
+    }
+
+    private static void close(List<Connection> connections) {
+        for (Connection conn : connections) {
+            try {
+                conn.close();
+            } catch (SQLException ex) {
+                LOGGER.debug("##### Connection not closed: {}", ex.getMessage());
+            }
+        }
+    }
+}
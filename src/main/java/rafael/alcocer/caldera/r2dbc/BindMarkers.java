@@ -0,0 +1,65 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.r2dbc;
+
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+
+/**
+ * The SQL of DynamicQuery uses JDBC ? parameters. r2dbc-mysql accepts them as
+ * they are, r2dbc-postgresql only accepts $1, $2, ...
+ *
+ * @author Rafael Alcocer Caldera
+ */
+final class BindMarkers {
+
+    private BindMarkers() {
+    }
+
+    /**
+     * Replaces every ? outside quotes with the bind marker of the dialect.
+     *
+     * @param sql     INSERT INTO table (columns) VALUES (?, ...)
+     * @param dialect the dialect of the database
+     * @return the SQL for the R2DBC driver
+     */
+    static String of(String sql, Dialect dialect) {
+        if (dialect != Dialect.POSTGRESQL || sql.indexOf('?') < 0) {
+            return sql;
+        }
+
+        StringBuilder converted = new StringBuilder(sql.length() + 16);
+        char quote = 0;
+        int marker = 0;
+
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+
+            if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+
+            if (c == '?' && quote == 0) {
+                converted.append('$').append(++marker);
+            } else {
+                converted.append(c);
+            }
+        }
+
+        return converted.toString();
+    }
+}
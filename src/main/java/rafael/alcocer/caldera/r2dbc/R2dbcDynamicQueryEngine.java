@@ -0,0 +1,266 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.r2dbc;
+
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.reactivestreams.Publisher;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import io.r2dbc.spi.Statement;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.engine.DynamicQueryEngine;
+import rafael.alcocer.caldera.engine.EngineType;
+import rafael.alcocer.caldera.jdbc.batch.BatchOptions;
+import rafael.alcocer.caldera.jdbc.batch.CommitMode;
+import rafael.alcocer.caldera.jdbc.cache.QueryResultCache;
+import rafael.alcocer.caldera.jdbc.delete.DeleteOptions;
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.query.DeleteQuery;
+import rafael.alcocer.caldera.jdbc.query.SqlQuery;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * DynamicQueryEngine over R2DBC, PostgreSQL and MySQL. No call blocks a
+ * thread, the connections come from an r2dbc-pool ConnectionPool.
+ *
+ * The INSERT is generated from the metadata of the table, as DynamicQuery
+ * does, and the ? of the SQL are converted to the bind markers of the driver.
+ *
+ * Batch inserts send every chunk as one Statement with a binding per row, the
+ * driver pipelines them. db.batch.commit-mode is honored, rows-per-statement is
+ * not needed and continue-on-error is not supported: a failed chunk ends the
+ * insert with its error.
+ *
+ * deleteAllRows() deletes in chunks of db.delete.chunk-size, every chunk
+ * commits on its own and the chunks are spaced by db.delete.max-rows-per-second.
+ * TRUNCATE isn't used, the triggers and references are only checked over JDBC.
+ *
+ * Writes invalidate the QueryResultCache of DynamicQuery and are notified to
+ * its ReplicaRouter, DynamicQuery reads the same database.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public class R2dbcDynamicQueryEngine implements DynamicQueryEngine {
+
+    private final ConnectionFactory connectionFactory;
+    private final QueryResultCache queryResultCache;
+    private final ReplicaRouter replicaRouter;
+    private final DbConfig dbConfig;
+    private final Dialect dialect;
+    private final R2dbcTableMetadataCache tableMetadataCache;
+
+    public R2dbcDynamicQueryEngine(ConnectionFactory connectionFactory, QueryResultCache queryResultCache,
+            ReplicaRouter replicaRouter, DbConfig dbConfig) {
+        this.connectionFactory = connectionFactory;
+        this.queryResultCache = queryResultCache;
+        this.replicaRouter = replicaRouter;
+        this.dbConfig = dbConfig;
+        this.dialect = Dialect.of(connectionFactory.getMetadata().getName());
+        this.tableMetadataCache = new R2dbcTableMetadataCache(connectionFactory, dialect,
+                dbConfig.getMetadata().getTtl());
+    }
+
+    @Override
+    public Flux<Map<String, Object>> select(String query, List<?> parameters) {
+        return Flux.usingWhen(connectionFactory.create(), conn -> {
+            Statement statement = conn.createStatement(BindMarkers.of(query, dialect))
+                    .fetchSize(dbConfig.getStreaming().getFetchSize());
+
+            for (int i = 0; i < parameters.size(); i++) {
+                // Without metadata a null is bound as a string
+                bind(statement, i, parameters.get(i), String.class);
+            }
+
+            return Flux.from(statement.execute()).concatMap(result -> result.map(R2dbcDynamicQueryEngine::toMap));
+        }, Connection::close);
+    }
+
+    @Override
+    public Mono<Long> insertOneRow(String tableName, List<?> parameters) {
+        return tableMetadataCache.get(tableName)
+                .flatMap(tableMetadata -> Mono.usingWhen(connectionFactory.create(), conn -> {
+                    Statement statement = conn.createStatement(BindMarkers.of(tableMetadata.insertSql(), dialect));
+                    bindRow(statement, tableMetadata, parameters);
+
+                    return rowsUpdated(statement);
+                }, Connection::close))
+                .doOnSuccess(inserted -> written(tableName));
+    }
+
+    @Override
+    public Mono<Long> insertMultipleRows(String tableName, Publisher<? extends List<?>> rows) {
+        BatchOptions options = BatchOptions.of(dbConfig.getBatch());
+
+        return tableMetadataCache.get(tableName)
+                .flatMap(tableMetadata -> Mono.usingWhen(connectionFactory.create(), conn -> {
+                    String insertSql = BindMarkers.of(tableMetadata.insertSql(), dialect);
+
+                    // Only the chunk being inserted and the next one are requested
+                    Mono<Long> inserted = Flux.from(rows).buffer(options.chunkSize())
+                            .concatMap(chunk -> insertChunk(conn, insertSql, tableMetadata, chunk,
+                                    options.commitMode()), 1)
+                            .reduce(0L, Long::sum);
+
+                    return options.commitMode() == CommitMode.SINGLE_TRANSACTION ? inTransaction(conn, inserted)
+                            : inserted;
+                }, Connection::close))
+                .doFinally(signal -> written(tableName));
+    }
+
+    @Override
+    public Mono<Long> deleteAllRows(String tableName) {
+        DeleteOptions options = DeleteOptions.of(dbConfig.getDelete());
+
+        return tableMetadataCache.get(tableName)
+                .flatMap(tableMetadata -> Mono.usingWhen(connectionFactory.create(), conn -> {
+                    SqlQuery delete;
+
+                    try {
+                        delete = new DeleteQuery(tableMetadata, dialect).limit(options.chunkSize()).build();
+                    } catch (SQLFeatureNotSupportedException ex) {
+                        return Mono.error(ex);
+                    }
+
+                    String deleteSql = BindMarkers.of(delete.sql(), dialect);
+
+                    // The next chunk is only deleted when the last one was full
+                    return deleteChunk(conn, deleteSql, delete.parameters())
+                            .expand(deleted -> deleted < options.chunkSize() ? Mono.empty()
+                                    : Mono.delay(pause(deleted, options.maxRowsPerSecond()))
+                                            .then(deleteChunk(conn, deleteSql, delete.parameters())))
+                            .reduce(0L, Long::sum);
+                }, Connection::close))
+                .doFinally(signal -> written(tableName));
+    }
+
+    @Override
+    public Mono<List<String>> getColumns(String tableName) {
+        return tableMetadataCache.get(tableName).map(TableMetadata::insertableColumnNames);
+    }
+
+    @Override
+    public EngineType type() {
+        return EngineType.R2DBC;
+    }
+
+    /**
+     * Removes a table from the metadata cache, the next call loads it again.
+     *
+     * @param tableName the name of the table
+     */
+    public void invalidateMetadata(String tableName) {
+        tableMetadataCache.invalidate(tableName);
+    }
+
+    private Mono<Long> insertChunk(Connection conn, String insertSql, TableMetadata tableMetadata,
+            List<? extends List<?>> chunk, CommitMode commitMode) {
+        Statement statement = conn.createStatement(insertSql);
+
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) {
+                statement.add();
+            }
+
+            bindRow(statement, tableMetadata, chunk.get(i));
+        }
+
+        Mono<Long> inserted = rowsUpdated(statement);
+
+        return commitMode == CommitMode.PER_CHUNK ? inTransaction(conn, inserted) : inserted;
+    }
+
+    private void written(String tableName) {
+        queryResultCache.invalidate(tableName);
+        replicaRouter.written(tableName);
+    }
+
+    private static Mono<Long> deleteChunk(Connection conn, String deleteSql, List<Object> parameters) {
+        return Mono.defer(() -> {
+            Statement statement = conn.createStatement(deleteSql);
+
+            for (int i = 0; i < parameters.size(); i++) {
+                bind(statement, i, parameters.get(i), String.class);
+            }
+
+            // Auto-commit, every chunk is its own transaction
+            return rowsUpdated(statement);
+        });
+    }
+
+    /**
+     * @return the time deleting rows takes at maxRowsPerSecond, zero without a
+     *         limit
+     */
+    private static Duration pause(long rows, int maxRowsPerSecond) {
+        return maxRowsPerSecond <= 0 ? Duration.ZERO : Duration.ofNanos(rows * 1_000_000_000L / maxRowsPerSecond);
+    }
+
+    private static void bindRow(Statement statement, TableMetadata tableMetadata, List<?> row) {
+        List<ColumnMetadata> columns = tableMetadata.insertableColumns();
+
+        if (row.size() != columns.size()) {
+            throw new IllegalArgumentException(tableMetadata.tableName() + " has " + columns.size()
+                    + " insertable columns, " + row.size() + " values were given");
+        }
+
+        for (int i = 0; i < columns.size(); i++) {
+            bind(statement, i, row.get(i), R2dbcTypes.javaType(columns.get(i).jdbcType()));
+        }
+    }
+
+    private static void bind(Statement statement, int index, Object value, Class<?> nullType) {
+        if (value == null) {
+            statement.bindNull(index, nullType);
+        } else {
+            statement.bind(index, R2dbcTypes.value(value));
+        }
+    }
+
+    private static Mono<Long> rowsUpdated(Statement statement) {
+        return Flux.from(statement.execute()).concatMap(Result::getRowsUpdated).reduce(0L, Long::sum);
+    }
+
+    private static <T> Mono<T> inTransaction(Connection conn, Mono<T> work) {
+        return Mono.from(conn.beginTransaction())
+                .then(work)
+                .flatMap(value -> Mono.from(conn.commitTransaction()).thenReturn(value))
+                .onErrorResume(ex -> Mono.from(conn.rollbackTransaction()).then(Mono.error(ex)));
+    }
+
+    private static Map<String, Object> toMap(Row row, RowMetadata rowMetadata) {
+        int columnCount = rowMetadata.getColumnMetadatas().size();
+        Map<String, Object> map = new LinkedHashMap<>();
+
+        for (int i = 0; i < columnCount; i++) {
+            map.put(rowMetadata.getColumnMetadata(i).getName(), row.get(i));
+        }
+
+        return map;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.r2dbc;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.R2dbcNonTransientResourceException;
+import io.r2dbc.spi.Row;
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The TableMetadataCache of the R2DBC engine. R2DBC has no DatabaseMetaData,
+ * so the columns and the primary key are read from information_schema.
+ *
+ * Every table is a cached Mono: subscribers that miss the same table at the
+ * same time share one load, failures are not cached and the metadata is loaded
+ * again after db.metadata.ttl.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class R2dbcTableMetadataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(R2dbcTableMetadataCache.class);
+
+    private static final String POSTGRESQL_COLUMNS = """
+            SELECT column_name::text, data_type::text, character_maximum_length::bigint, is_nullable::text,
+                   column_default::text,
+                   CASE WHEN is_identity = 'YES' OR column_default LIKE 'nextval(%' THEN 'YES' ELSE 'NO' END,
+                   CASE WHEN is_generated = 'ALWAYS' THEN 'YES' ELSE 'NO' END
+            FROM information_schema.columns
+            WHERE table_schema = current_schema() AND table_name = $1
+            ORDER BY ordinal_position
+            """;
+
+    private static final String MYSQL_COLUMNS = """
+            SELECT column_name, data_type, CAST(character_maximum_length AS SIGNED), is_nullable,
+                   column_default,
+                   IF(extra LIKE '%auto_increment%', 'YES', 'NO'),
+                   IF(extra LIKE '%GENERATED%', 'YES', 'NO')
+            FROM information_schema.columns
+            WHERE table_schema = DATABASE() AND table_name = ?
+            ORDER BY ordinal_position
+            """;
+
+    private static final String PRIMARY_KEY = """
+            SELECT CAST(kcu.column_name AS %s)
+            FROM information_schema.table_constraints tc
+            JOIN information_schema.key_column_usage kcu
+              ON kcu.constraint_name = tc.constraint_name
+             AND kcu.table_schema = tc.table_schema
+             AND kcu.table_name = tc.table_name
+            WHERE tc.constraint_type = 'PRIMARY KEY'
+              AND tc.table_schema = %s
+              AND tc.table_name = %s
+            ORDER BY kcu.ordinal_position
+            """;
+
+    private final ConnectionFactory connectionFactory;
+    private final Dialect dialect;
+    private final Duration ttl;
+
+    private final ConcurrentMap<String, Mono<TableMetadata>> entries = new ConcurrentHashMap<>();
+
+    R2dbcTableMetadataCache(ConnectionFactory connectionFactory, Dialect dialect, Duration ttl) {
+        this.connectionFactory = connectionFactory;
+        this.dialect = dialect;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param tableName the name of the table
+     * @return the metadata of the table, an error if it doesn't exist
+     */
+    Mono<TableMetadata> get(String tableName) {
+        return entries.computeIfAbsent(tableName,
+                key -> load(key).cache(metadata -> ttl, ex -> Duration.ZERO, () -> Duration.ZERO));
+    }
+
+    void invalidate(String tableName) {
+        entries.remove(tableName);
+    }
+
+    private Mono<TableMetadata> load(String tableName) {
+        String columnsSql = dialect == Dialect.POSTGRESQL ? POSTGRESQL_COLUMNS : MYSQL_COLUMNS;
+        String primaryKeySql = dialect == Dialect.POSTGRESQL
+                ? PRIMARY_KEY.formatted("text", "current_schema()", "$1")
+                : PRIMARY_KEY.formatted("CHAR", "DATABASE()", "?");
+
+        // One statement after the other, a connection runs one at a time
+        return Mono.usingWhen(connectionFactory.create(),
+                conn -> query(conn, columnsSql, tableName, R2dbcTableMetadataCache::column).collectList()
+                        .flatMap(columns -> query(conn, primaryKeySql, tableName, row -> row.get(0, String.class))
+                                .collectList().map(primaryKey -> of(tableName, columns, primaryKey))),
+                Connection::close);
+    }
+
+    private static <T> Flux<T> query(Connection conn, String sql, String tableName,
+            Function<Row, T> mapper) {
+        return Flux.from(conn.createStatement(sql).bind(0, tableName).execute())
+                .concatMap(result -> result.map((row, rowMetadata) -> mapper.apply(row)));
+    }
+
+    private static TableMetadata of(String tableName, List<ColumnMetadata> columns, List<String> primaryKey) {
+        if (columns.isEmpty()) {
+            throw new R2dbcNonTransientResourceException("Table not found: " + tableName);
+        }
+
+        columns.forEach(column -> LOGGER.debug("##### {}: {}", tableName, column));
+
+        return TableMetadata.of(tableName, columns, primaryKey);
+    }
+
+    private static ColumnMetadata column(Row row) {
+        String dataType = row.get(1, String.class);
+        Long size = row.get(2, Long.class);
+
+        // LONGTEXT is 4294967295 characters
+        int columnSize = size == null ? 0 : (int) Math.min(size, Integer.MAX_VALUE);
+
+        return new ColumnMetadata(row.get(0, String.class), R2dbcTypes.jdbcType(dataType), dataType, columnSize,
+                "YES".equalsIgnoreCase(row.get(3, String.class)), "YES".equals(row.get(5, String.class)),
+                "YES".equals(row.get(6, String.class)), row.get(4, String.class));
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.r2dbc;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.util.Locale;
+
+/**
+ * R2DBC has no DatabaseMetaData and its drivers don't know the java.sql
+ * classes, this converts between both worlds.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+final class R2dbcTypes {
+
+    private R2dbcTypes() {
+    }
+
+    /**
+     * @param dataType the DATA_TYPE of information_schema.columns, PostgreSQL
+     *                 or MySQL
+     * @return one of java.sql.Types
+     */
+    static int jdbcType(String dataType) {
+        return switch (dataType.toLowerCase(Locale.ROOT)) {
+        case "tinyint" -> Types.TINYINT;
+        case "smallint" -> Types.SMALLINT;
+        case "integer", "int", "mediumint" -> Types.INTEGER;
+        case "bigint" -> Types.BIGINT;
+        case "real", "float" -> Types.REAL;
+        case "double precision", "double" -> Types.DOUBLE;
+        case "numeric", "decimal" -> Types.NUMERIC;
+        case "boolean", "bit" -> Types.BOOLEAN;
+        case "character", "char" -> Types.CHAR;
+        case "character varying", "varchar", "text", "tinytext", "mediumtext", "longtext", "enum" -> Types.VARCHAR;
+        case "date" -> Types.DATE;
+        case "time", "time without time zone" -> Types.TIME;
+        case "time with time zone" -> Types.TIME_WITH_TIMEZONE;
+        case "timestamp", "timestamp without time zone", "datetime" -> Types.TIMESTAMP;
+        case "timestamp with time zone" -> Types.TIMESTAMP_WITH_TIMEZONE;
+        case "bytea", "binary", "varbinary", "blob", "tinyblob", "mediumblob", "longblob" -> Types.VARBINARY;
+        default -> Types.OTHER;
+        };
+    }
+
+    /**
+     * R2DBC needs the class of a null parameter to choose its type.
+     *
+     * @param jdbcType one of java.sql.Types
+     * @return the class R2DBC uses for the type
+     */
+    static Class<?> javaType(int jdbcType) {
+        return switch (jdbcType) {
+        case Types.TINYINT, Types.SMALLINT -> Short.class;
+        case Types.INTEGER -> Integer.class;
+        case Types.BIGINT -> Long.class;
+        case Types.REAL -> Float.class;
+        case Types.FLOAT, Types.DOUBLE -> Double.class;
+        case Types.NUMERIC, Types.DECIMAL -> BigDecimal.class;
+        case Types.BIT, Types.BOOLEAN -> Boolean.class;
+        case Types.DATE -> LocalDate.class;
+        case Types.TIME -> LocalTime.class;
+        case Types.TIME_WITH_TIMEZONE -> OffsetTime.class;
+        case Types.TIMESTAMP -> LocalDateTime.class;
+        case Types.TIMESTAMP_WITH_TIMEZONE -> OffsetDateTime.class;
+        case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY -> ByteBuffer.class;
+        default -> String.class;
+        };
+    }
+
+    /**
+     * Converts the java.sql date and time classes, accepted by the JDBC engine,
+     * to their java.time equivalents.
+     *
+     * @param value a parameter
+     * @return the value R2DBC can bind
+     */
+    static Object value(Object value) {
+        if (value instanceof java.sql.Timestamp t) {
+            return t.toLocalDateTime();
+        }
+
+        if (value instanceof java.sql.Date d) {
+            return d.toLocalDate();
+        }
+
+        if (value instanceof java.sql.Time t) {
+            return t.toLocalTime();
+        }
+
+        return value;
+    }
+}
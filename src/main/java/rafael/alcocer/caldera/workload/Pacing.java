@@ -0,0 +1,47 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.workload;
+
+/**
+ * How the workers space their operations. With a target rate a slow operation
+ * delays the ones behind it, measuring only the service time would hide that
+ * wait (coordinated omission), so the response time is corrected.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public enum Pacing {
+
+    /**
+     * Closed loop: every worker starts an operation when the previous one
+     * ends. The response time is the service time.
+     */
+    MAX,
+
+    /**
+     * Every worker starts an operation each workers / rate seconds. A late
+     * worker skips the slots it missed and records them as HdrHistogram
+     * recordValueWithExpectedInterval() would have seen them.
+     */
+    FIXED_RATE,
+
+    /**
+     * Open loop: the operations are scheduled at the rate whether the previous
+     * ones ended or not, any free worker takes the next one. The response time
+     * counts from the scheduled start, so the time waiting for a worker is
+     * included.
+     */
+    OPEN_LOOP
+}
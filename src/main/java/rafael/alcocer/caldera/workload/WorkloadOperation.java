@@ -0,0 +1,39 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.workload;
+
+/**
+ * The operations of a workload, each one is one call to DynamicQuery.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public enum WorkloadOperation {
+
+    /** getResultSet() of a SELECT by key, reading all the rows. */
+    SELECT,
+
+    /** insertOneRow(). */
+    INSERT,
+
+    /** insertMultipleRows() of workload.batch-size rows. */
+    BATCH_INSERT,
+
+    /** updateRowsByKey() of one row. */
+    UPDATE,
+
+    /** deleteRowsByKey() of one key. */
+    DELETE
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.workload;
+
+import java.time.Instant;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * The outcome of a workload run, written as JSON to compare runs. Latencies
+ * are in microseconds.
+ *
+ * @param startedAt       when the measurement started, after the warm-up
+ * @param table           the table used
+ * @param workers         threads running operations
+ * @param pacing          how the operations were spaced
+ * @param targetRate      operations per second asked for, 0 with MAX
+ * @param durationSeconds time measured
+ * @param operations      operations measured
+ * @param errors          operations that failed
+ * @param throughput      operations per second
+ * @param byOperation     the same figures for every operation
+ *
+ * @author Rafael Alcocer Caldera
+ */
+public record WorkloadReport(Instant startedAt, String table, int workers, Pacing pacing, double targetRate,
+        double durationSeconds, long operations, long errors, double throughput,
+        Map<WorkloadOperation, OperationReport> byOperation) {
+
+    /**
+     * @param count        operations measured
+     * @param errors       operations that failed
+     * @param throughput   operations per second
+     * @param serviceTime  from the start to the end of the call
+     * @param responseTime the service time corrected for coordinated omission
+     */
+    public record OperationReport(long count, long errors, double throughput, Latency serviceTime,
+            Latency responseTime) {
+    }
+
+    /**
+     * Percentiles of a histogram, in microseconds.
+     */
+    public record Latency(double mean, long p50, long p90, long p99, long p999, long max) {
+
+        public static Latency of(Histogram histogram) {
+            return new Latency(histogram.getMean(), histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(90), histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+        }
+    }
+}
@@ -0,0 +1,416 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.workload;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import rafael.alcocer.caldera.configuration.WorkloadConfig;
+import rafael.alcocer.caldera.jdbc.DynamicQuery;
+import rafael.alcocer.caldera.jdbc.ExecuteDynamicQuery;
+import rafael.alcocer.caldera.jdbc.keyed.KeyedWriteResult;
+import rafael.alcocer.caldera.jdbc.query.Condition;
+
+/**
+ * Runs a mix of selects, inserts, batch inserts, updates and deletes with
+ * several workers, as configured in workload.*, and reports the throughput
+ * and the latency percentiles of every operation.
+ *
+ * Every worker records in its own histograms and generates its data with
+ * ThreadLocalRandom, the workers share nothing but the schedule of OPEN_LOOP.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+@RequiredArgsConstructor
+@Component
+public class WorkloadRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WorkloadRunner.class);
+
+    // One hour, in microseconds
+    private static final long HIGHEST_LATENCY = TimeUnit.HOURS.toMicros(1);
+
+    private final DynamicQuery dynamicQuery;
+    private final ExecuteDynamicQuery executeDynamicQuery;
+    private final ObjectMapper objectMapper;
+    private final WorkloadConfig workloadConfig;
+
+    /**
+     * Runs the workload and writes its report to workload.report-file.
+     *
+     * @return the report
+     * @throws SQLException if the seed rows can't be inserted
+     * @throws IOException  if the report can't be written
+     */
+    public WorkloadReport run() throws SQLException, IOException {
+        WorkloadConfig config = workloadConfig;
+
+        if (config.getSeedRows() > 0) {
+            dynamicQuery.insertRows(config.getTable(),
+                    IntStream.rangeClosed(1, config.getSeedRows()).mapToObj(executeDynamicQuery::generateParameters));
+        }
+
+        Run run = new Run(config);
+
+        LOGGER.info("##### Workload on {}: {} workers, {}{}, warm-up {}, duration {}", config.getTable(),
+                config.getWorkers(), config.getPacing(),
+                config.getPacing() == Pacing.MAX ? "" : " at " + config.getRate() + " ops/s", config.getWarmup(),
+                config.getDuration());
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(config.getWorkers(),
+                runnable -> new Thread(runnable, "workload-" + threadNumber.incrementAndGet()));
+        List<Future<Recorders>> workers = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < config.getWorkers(); i++) {
+                int worker = i;
+                workers.add(pool.submit(() -> work(run, worker)));
+            }
+
+            Recorders total = new Recorders();
+
+            for (Future<Recorders> worker : workers) {
+                total.add(worker.get());
+            }
+
+            WorkloadReport report = report(run, total);
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(Path.of(config.getReportFile()).toFile(),
+                    report);
+            log(report);
+
+            return report;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            run.stop();
+
+            throw new IllegalStateException("Workload interrupted", ex);
+        } catch (ExecutionException ex) {
+            run.stop();
+
+            throw new IllegalStateException("Workload failed", ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Recorders work(Run run, int worker) {
+        Recorders recorders = new Recorders();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        // The workers of FIXED_RATE start spread over one interval
+        long next = run.start + worker * run.workerIntervalNanos / run.workers;
+
+        while (!run.stopped) {
+            long intended;
+
+            switch (run.pacing) {
+            case FIXED_RATE:
+                intended = next;
+                next += run.workerIntervalNanos;
+                break;
+            case OPEN_LOOP:
+                intended = run.start + run.tickets.getAndIncrement() * run.intervalNanos;
+                break;
+            default:
+                intended = System.nanoTime();
+                break;
+            }
+
+            if (intended - run.end >= 0) {
+                break;
+            }
+
+            waitUntil(intended);
+
+            WorkloadOperation operation = run.pick(random.nextInt(run.totalWeight));
+            long begin = System.nanoTime();
+            boolean success = execute(operation, random);
+            long end = System.nanoTime();
+
+            if (end - run.end >= 0) {
+                break;
+            }
+
+            if (begin - run.measureStart < 0) {
+                continue;
+            }
+
+            long serviceMicros = Math.min((end - begin) / 1000, HIGHEST_LATENCY);
+            Recorder recorder = recorders.get(operation);
+            recorder.serviceTime.recordValue(serviceMicros);
+
+            switch (run.pacing) {
+            case FIXED_RATE:
+                recorder.responseTime.recordValueWithExpectedInterval(serviceMicros, run.workerIntervalNanos / 1000);
+
+                // The missed slots are counted above, not run
+                if (end - next > 0) {
+                    next += ((end - next) / run.workerIntervalNanos + 1) * run.workerIntervalNanos;
+                }
+                break;
+            case OPEN_LOOP:
+                recorder.responseTime.recordValue(Math.min((end - intended) / 1000, HIGHEST_LATENCY));
+                break;
+            default:
+                recorder.responseTime.recordValue(serviceMicros);
+                break;
+            }
+
+            recorder.count++;
+
+            if (!success) {
+                recorder.errors++;
+            }
+        }
+
+        return recorders;
+    }
+
+    /**
+     * @return true if the operation succeeded, a key not found counts as a
+     *         success
+     */
+    private boolean execute(WorkloadOperation operation, ThreadLocalRandom random) {
+        String table = workloadConfig.getTable();
+        long key = random.nextLong(1, workloadConfig.getKeyRange() + 1);
+
+        try {
+            switch (operation) {
+            case SELECT:
+                try (ResultSet rs = dynamicQuery.getResultSet(dynamicQuery.select(table)
+                        .where(Condition.eq(workloadConfig.getKeyColumn(), key)).build())) {
+                    while (rs.next()) {
+                        // Only the fetch is measured
+                    }
+                }
+
+                return true;
+            case INSERT:
+                return dynamicQuery.insertOneRow(table, executeDynamicQuery.generateParameters(random.nextInt())) == 1;
+            case BATCH_INSERT:
+                List<List<?>> rows = new ArrayList<>(workloadConfig.getBatchSize());
+
+                for (int i = 0; i < workloadConfig.getBatchSize(); i++) {
+                    rows.add(executeDynamicQuery.generateParameters(random.nextInt()));
+                }
+
+                for (int count : dynamicQuery.insertMultipleRows(table, rows)) {
+                    if (count == Statement.EXECUTE_FAILED) {
+                        return false;
+                    }
+                }
+
+                return true;
+            case UPDATE:
+                // The primary key goes last
+                List<Object> row = new ArrayList<>(executeDynamicQuery.generateParameters(random.nextInt()));
+                row.add(key);
+                KeyedWriteResult updated = dynamicQuery.updateRowsByKey(table, List.of(row));
+
+                return updated.failures().isEmpty();
+            default:
+                return dynamicQuery.deleteRowsByKey(table, List.of(key)).failures().isEmpty();
+            }
+        } catch (SQLException | RuntimeException ex) {
+            LOGGER.debug("##### {} failed: {}", operation, ex.getMessage());
+
+            return false;
+        }
+    }
+
+    private static void waitUntil(long nanoTime) {
+        long wait;
+
+        while ((wait = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private WorkloadReport report(Run run, Recorders total) {
+        double seconds = run.durationNanos / 1e9;
+        Map<WorkloadOperation, WorkloadReport.OperationReport> byOperation = new EnumMap<>(WorkloadOperation.class);
+        long operations = 0;
+        long errors = 0;
+
+        for (Map.Entry<WorkloadOperation, Recorder> entry : total.recorders.entrySet()) {
+            Recorder recorder = entry.getValue();
+
+            if (recorder.count == 0) {
+                continue;
+            }
+
+            operations += recorder.count;
+            errors += recorder.errors;
+            byOperation.put(entry.getKey(), new WorkloadReport.OperationReport(recorder.count, recorder.errors,
+                    recorder.count / seconds, WorkloadReport.Latency.of(recorder.serviceTime),
+                    WorkloadReport.Latency.of(recorder.responseTime)));
+        }
+
+        return new WorkloadReport(run.startedAt, workloadConfig.getTable(), run.workers, run.pacing,
+                run.pacing == Pacing.MAX ? 0 : workloadConfig.getRate(), seconds, operations, errors,
+                operations / seconds, byOperation);
+    }
+
+    private void log(WorkloadReport report) {
+        LOGGER.info("##### {} operations, {} errors, {} ops/s, report: {}", report.operations(), report.errors(),
+                "%.1f".formatted(report.throughput()), workloadConfig.getReportFile());
+
+        report.byOperation().forEach((operation, figures) -> LOGGER.info(
+                "##### {}: {} ops/s, errors: {}, response time µs p50: {}, p99: {}, p99.9: {}, max: {}", operation,
+                "%.1f".formatted(figures.throughput()), figures.errors(), figures.responseTime().p50(),
+                figures.responseTime().p99(), figures.responseTime().p999(), figures.responseTime().max()));
+    }
+
+    /**
+     * The schedule shared by the workers, all the times are System.nanoTime().
+     */
+    private static class Run {
+
+        final Pacing pacing;
+        final int workers;
+        final long start;
+        final long measureStart;
+        final long end;
+        final long durationNanos;
+        final Instant startedAt;
+
+        /** Between two operations of all the workers. */
+        final long intervalNanos;
+
+        /** Between two operations of one worker. */
+        final long workerIntervalNanos;
+
+        final AtomicLong tickets = new AtomicLong();
+        final WorkloadOperation[] operations;
+        final int[] cumulativeWeights;
+        final int totalWeight;
+
+        volatile boolean stopped;
+
+        Run(WorkloadConfig config) {
+            if (config.getWorkers() < 1) {
+                throw new IllegalArgumentException("workload.workers must be positive: " + config.getWorkers());
+            }
+
+            if (config.getPacing() != Pacing.MAX && config.getRate() <= 0) {
+                throw new IllegalArgumentException("workload.rate must be positive with " + config.getPacing());
+            }
+
+            this.pacing = config.getPacing();
+            this.workers = config.getWorkers();
+            this.intervalNanos = pacing == Pacing.MAX ? 0 : (long) (1e9 / config.getRate());
+            this.workerIntervalNanos = Math.max(1, intervalNanos * workers);
+
+            List<WorkloadOperation> selected = new ArrayList<>();
+            List<Integer> weights = new ArrayList<>();
+            int sum = 0;
+
+            for (Map.Entry<WorkloadOperation, Integer> entry : new EnumMap<>(config.getMix()).entrySet()) {
+                if (entry.getValue() != null && entry.getValue() > 0) {
+                    sum += entry.getValue();
+                    selected.add(entry.getKey());
+                    weights.add(sum);
+                }
+            }
+
+            if (sum == 0) {
+                throw new IllegalArgumentException("workload.mix has no operation with a weight");
+            }
+
+            this.operations = selected.toArray(WorkloadOperation[]::new);
+            this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+            this.totalWeight = sum;
+
+            this.start = System.nanoTime();
+            this.measureStart = start + config.getWarmup().toNanos();
+            this.durationNanos = config.getDuration().toNanos();
+            this.end = measureStart + durationNanos;
+            this.startedAt = Instant.now().plus(config.getWarmup());
+        }
+
+        WorkloadOperation pick(int weight) {
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (weight < cumulativeWeights[i]) {
+                    return operations[i];
+                }
+            }
+
+            return operations[operations.length - 1];
+        }
+
+        void stop() {
+            stopped = true;
+        }
+    }
+
+    /**
+     * The histograms of one worker, merged at the end.
+     */
+    private static class Recorders {
+
+        final Map<WorkloadOperation, Recorder> recorders = new EnumMap<>(WorkloadOperation.class);
+
+        Recorder get(WorkloadOperation operation) {
+            return recorders.computeIfAbsent(operation, key -> new Recorder());
+        }
+
+        void add(Recorders other) {
+            other.recorders.forEach((operation, recorder) -> get(operation).add(recorder));
+        }
+    }
+
+    private static class Recorder {
+
+        final Histogram serviceTime = new Histogram(HIGHEST_LATENCY, 3);
+        final Histogram responseTime = new Histogram(HIGHEST_LATENCY, 3);
+        long count;
+        long errors;
+
+        void add(Recorder other) {
+            serviceTime.add(other.serviceTime);
+            responseTime.add(other.responseTime);
+            count += other.count;
+            errors += other.errors;
+        }
+    }
+}
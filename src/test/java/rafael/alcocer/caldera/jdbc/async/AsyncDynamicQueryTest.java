@@ -0,0 +1,152 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.async;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.h2.api.Trigger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.batch.BatchInserter;
+import rafael.alcocer.caldera.jdbc.binding.BindingPlanCache;
+import rafael.alcocer.caldera.jdbc.cache.QueryResultCache;
+import rafael.alcocer.caldera.jdbc.delete.BulkDeleter;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+
+/**
+ * Timeouts of AsyncDynamicQuery over an embedded H2 database with a pool of
+ * one connection: the connection comes back only when the running statement
+ * was cancelled. H2 checks for a cancel every 128 rows.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class AsyncDynamicQueryTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(1);
+
+    private HikariDataSource dataSource;
+    private ExecutorService executor;
+    private AsyncDynamicQuery asyncDynamicQuery;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:async;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(1);
+        config.setConnectionTimeout(3000);
+        dataSource = new HikariDataSource(config);
+
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT PRIMARY KEY)");
+            statement.execute("INSERT INTO items SELECT \"X\" FROM SYSTEM_RANGE(1, 2000)");
+            statement.execute("CREATE TRIGGER slow_delete BEFORE DELETE ON items FOR EACH ROW CALL \""
+                    + SlowDelete.class.getName() + "\"");
+        }
+
+        DbConfig dbConfig = new DbConfig();
+        dbConfig.getAsync().setTimeout(TIMEOUT);
+
+        QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry(), dbConfig);
+        ReplicaRouter replicaRouter = new ReplicaRouter(dataSource, List.of(), Duration.ZERO, Duration.ZERO);
+        TableMetadataCache tableMetadataCache = new TableMetadataCache(replicaRouter, queryMetrics, dbConfig);
+        BindingPlanCache bindingPlanCache = new BindingPlanCache(dbConfig);
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        asyncDynamicQuery = new AsyncDynamicQuery(dataSource, tableMetadataCache, bindingPlanCache,
+                new BatchInserter(dataSource, tableMetadataCache, queryMetrics),
+                new BulkDeleter(dataSource, tableMetadataCache, bindingPlanCache, queryMetrics),
+                new QueryResultCache(dbConfig), replicaRouter, queryMetrics, dbConfig, executor);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+
+        executor.shutdownNow();
+        dataSource.close();
+    }
+
+    @Test
+    void aTimeoutCancelsTheRunningSelect() throws SQLException {
+        CompletableFuture<List<Long>> future = asyncDynamicQuery.select(
+                "SELECT COUNT(*) FROM SYSTEM_RANGE(1, ?) WHERE MOD(\"X\", 7) = 99", List.of(2_000_000_000L),
+                rs -> rs.getLong(1));
+
+        assertThatThrownBy(future::join).hasCauseInstanceOf(TimeoutException.class);
+
+        // Fails after 3 seconds if the query is still running
+        try (Connection conn = dataSource.getConnection()) {
+            assertThat(conn.isValid(1)).isTrue();
+        }
+    }
+
+    @Test
+    void aTimeoutCancelsTheRunningDelete() throws SQLException {
+        CompletableFuture<Integer> future = asyncDynamicQuery.deleteAllRows("items");
+
+        assertThatThrownBy(future::join).hasCauseInstanceOf(TimeoutException.class);
+
+        // Fails after 3 seconds if the delete is still running, it takes 10
+        try (Connection conn = dataSource.getConnection(); Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM items")) {
+            rs.next();
+
+            // The cancelled chunk was rolled back
+            assertThat(rs.getLong(1)).isEqualTo(2000);
+        }
+    }
+
+    /**
+     * Takes 5 ms per row and swallows interrupts, like a driver blocked on its
+     * socket, only Statement.cancel() stops the delete.
+     */
+    public static class SlowDelete implements Trigger {
+
+        @Override
+        public void fire(Connection conn, Object[] oldRow, Object[] newRow) {
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5);
+
+            while (System.nanoTime() < end) {
+                Thread.interrupted();
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
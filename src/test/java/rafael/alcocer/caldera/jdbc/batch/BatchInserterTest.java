@@ -0,0 +1,195 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+
+/**
+ * BatchInserter over an embedded H2 database in PostgreSQL mode: the rows of
+ * the multi-row statements, the update counts of every row and the chunks
+ * that fail.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class BatchInserterTest {
+
+    private Connection conn;
+    private BatchInserter batchInserter;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:batch;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE");
+
+        // Keeps the database open between the connections of the inserter
+        conn = dataSource.getConnection();
+
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE items (id SERIAL PRIMARY KEY, name VARCHAR(50) NOT NULL, quantity INT)");
+        }
+
+        DbConfig dbConfig = new DbConfig();
+        QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry(), dbConfig);
+        ReplicaRouter replicaRouter = new ReplicaRouter(dataSource, List.of(), Duration.ZERO, Duration.ZERO);
+
+        batchInserter = new BatchInserter(dataSource, new TableMetadataCache(replicaRouter, queryMetrics, dbConfig),
+                queryMetrics);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    void rowsPerStatementFitTheBindParameterLimit() {
+        List<ColumnMetadata> columns = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            columns.add(new ColumnMetadata("c" + i, Types.INTEGER, "int", 10, true, false, false, null));
+        }
+
+        TableMetadata tableMetadata = TableMetadata.of("wide", columns, List.of());
+
+        assertThat(BatchInserter.rowsPerStatement(100, tableMetadata)).isEqualTo(100);
+        assertThat(BatchInserter.rowsPerStatement(10_000, tableMetadata)).isEqualTo(6553);
+    }
+
+    @Test
+    void everyRowGetsItsOwnCount() throws SQLException {
+        BatchResult result = batchInserter.insert("items", rows(23, -1).iterator(),
+                new BatchOptions(10, CommitMode.PER_CHUNK, 4, false), true);
+
+        assertThat(result.isSuccessful()).isTrue();
+        assertThat(result.rowsRead()).isEqualTo(23);
+        assertThat(result.rowsInserted()).isEqualTo(23);
+        assertThat(result.chunks()).isEqualTo(3);
+        assertThat(result.updateCounts()).hasSize(23).containsOnly(1);
+        assertThat(count()).isEqualTo(23);
+    }
+
+    @Test
+    void aFailedChunkIsRolledBackAndTheOthersContinue() throws SQLException {
+        BatchResult result = batchInserter.insert("items", rows(23, 15).iterator(),
+                new BatchOptions(10, CommitMode.PER_CHUNK, 4, true), true);
+
+        assertThat(result.failures()).singleElement().satisfies(failure -> {
+            assertThat(failure.chunk()).isEqualTo(1);
+            assertThat(failure.firstRow()).isEqualTo(10);
+            assertThat(failure.rowCount()).isEqualTo(10);
+        });
+        assertThat(result.rowsInserted()).isEqualTo(13);
+        assertThat(Arrays.copyOfRange(result.updateCounts(), 0, 10)).containsOnly(1);
+        assertThat(Arrays.copyOfRange(result.updateCounts(), 10, 20)).containsOnly(Statement.EXECUTE_FAILED);
+        assertThat(Arrays.copyOfRange(result.updateCounts(), 20, 23)).containsOnly(1);
+        assertThat(count()).isEqualTo(13);
+    }
+
+    @Test
+    void theRowsAfterAStopHaveNoCountUntilPadded() throws SQLException {
+        BatchResult result = batchInserter.insert("items", rows(23, 15).iterator(),
+                new BatchOptions(10, CommitMode.PER_CHUNK, 4, false), true);
+
+        assertThat(result.rowsRead()).isEqualTo(20);
+        assertThat(result.updateCounts()).hasSize(20);
+
+        int[] counts = result.updateCounts(23);
+
+        assertThat(counts).hasSize(23);
+        assertThat(Arrays.copyOfRange(counts, 10, 23)).containsOnly(Statement.EXECUTE_FAILED);
+        assertThat(count()).isEqualTo(10);
+    }
+
+    @Test
+    void aSingleTransactionIsRolledBackCompletely() throws SQLException {
+        BatchResult result = batchInserter.insert("items", rows(23, 15).iterator(),
+                new BatchOptions(10, CommitMode.SINGLE_TRANSACTION, 4, true), true);
+
+        assertThat(result.rowsInserted()).isZero();
+        assertThat(result.updateCounts()).containsOnly(Statement.EXECUTE_FAILED);
+        assertThat(count()).isZero();
+    }
+
+    @Test
+    void aSingleTransactionIsRolledBackWhenARowCantBeBound() throws SQLException {
+        List<List<?>> rows = rows(25, -1);
+
+        // A row without its second column fails in the binder, not in the driver
+        rows.set(15, List.of("short"));
+
+        assertThatThrownBy(() -> batchInserter.insert("items", rows.iterator(),
+                new BatchOptions(10, CommitMode.SINGLE_TRANSACTION, 1, false), true))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(count()).isZero();
+    }
+
+    @Test
+    void perChunkKeepsOnlyTheChunksCommittedBeforeARowCantBeBound() throws SQLException {
+        List<List<?>> rows = rows(25, -1);
+        rows.set(15, List.of("short"));
+
+        assertThatThrownBy(() -> batchInserter.insert("items", rows.iterator(),
+                new BatchOptions(10, CommitMode.PER_CHUNK, 1, false), true))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(count()).isEqualTo(10);
+    }
+
+    /**
+     * @param invalid the row without name, -1 for none
+     */
+    private static List<List<?>> rows(int count, int invalid) {
+        List<List<?>> rows = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            rows.add(i == invalid ? Arrays.asList(null, i) : List.of("item" + i, i));
+        }
+
+        return rows;
+    }
+
+    private long count() throws SQLException {
+        try (Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM items")) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.batch;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+
+/**
+ * The connections of the parallel inserts against the size of the pool.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class ParallelInserterTest {
+
+    @Test
+    void aConnectionIsLeftToTheOtherCallers() {
+        assertThatCode(() -> ParallelInserter.checkConnections(9, 10)).doesNotThrowAnyException();
+
+        assertThatThrownBy(() -> ParallelInserter.checkConnections(10, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void aPoolOfOneConnectionStillInserts() {
+        assertThatCode(() -> ParallelInserter.checkConnections(1, 1)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void theConfiguredConnectionsAreCheckedOnlyWhenEnabled() {
+        assertThatCode(() -> new ParallelInserter(null, config(false, 10, 10), null)).doesNotThrowAnyException();
+
+        assertThatThrownBy(() -> new ParallelInserter(null, config(true, 10, 10), null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void theConnectionsOfEveryInsertAreChecked() {
+        ParallelInserter parallelInserter = new ParallelInserter(null, config(false, 4, 10), null);
+
+        assertThatThrownBy(() -> parallelInserter.insert("items", Collections.emptyIterator(),
+                new BatchOptions(10, CommitMode.PER_CHUNK, 1, false),
+                new ParallelOptions(10, 100, FailurePolicy.FAIL_FAST), false))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static DbConfig config(boolean enabled, int connections, int maxSize) {
+        DbConfig dbConfig = new DbConfig();
+        dbConfig.getParallelInsert().setEnabled(enabled);
+        dbConfig.getParallelInsert().setConnections(connections);
+        dbConfig.getPool().setMaxSize(maxSize);
+
+        return dbConfig;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.bulk;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.batch.BatchInserter;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+
+/**
+ * BulkLoader over an embedded H2 database, which has no bulk protocol and
+ * goes through the batch inserts.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class BulkLoaderTest {
+
+    private Connection conn;
+    private BulkLoader bulkLoader;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bulk;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE");
+
+        // Keeps the database open between the connections of the loader
+        conn = dataSource.getConnection();
+
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE items (id SERIAL PRIMARY KEY, name VARCHAR(50) NOT NULL, quantity INT)");
+        }
+
+        DbConfig dbConfig = new DbConfig();
+        dbConfig.getBatch().setChunkSize(10);
+
+        QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry(), dbConfig);
+        ReplicaRouter replicaRouter = new ReplicaRouter(dataSource, List.of(), Duration.ZERO, Duration.ZERO);
+        TableMetadataCache tableMetadataCache = new TableMetadataCache(replicaRouter, queryMetrics, dbConfig);
+
+        bulkLoader = new BulkLoader(dataSource, tableMetadataCache,
+                new BatchInserter(dataSource, tableMetadataCache, queryMetrics), queryMetrics, dbConfig);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    void otherDatabasesAreLoadedWithBatchInserts() throws SQLException {
+        assertThat(bulkLoader.load("items", rows(25, -1).iterator())).isEqualTo(25);
+        assertThat(count()).isEqualTo(25);
+    }
+
+    @Test
+    void aFailedChunkOfTheBatchInsertsIsThrown() {
+        assertThatThrownBy(() -> bulkLoader.load("items", rows(25, 15).iterator()))
+                .isInstanceOf(SQLException.class);
+    }
+
+    /**
+     * @param invalid the row without name, -1 for none
+     */
+    private static List<List<?>> rows(int count, int invalid) {
+        List<List<?>> rows = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            rows.add(i == invalid ? Arrays.asList(null, i) : List.of("item" + i, i));
+        }
+
+        return rows;
+    }
+
+    private long count() throws SQLException {
+        try (Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM items")) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+}
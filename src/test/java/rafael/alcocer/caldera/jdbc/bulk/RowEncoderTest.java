@@ -0,0 +1,81 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.bulk;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import rafael.alcocer.caldera.jdbc.bulk.RowEncoder.Format;
+
+/**
+ * The text of the rows given to COPY and LOAD DATA.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class RowEncoderTest {
+
+    @Test
+    void postgresqlQuotesTextAndLeavesNullEmpty() {
+        assertThat(encode(Format.POSTGRESQL_CSV, Arrays.asList(1, null, "", true, 2.5)))
+                .isEqualTo("1,,\"\",true,2.5\n");
+    }
+
+    @Test
+    void postgresqlDoublesTheQuotes() {
+        assertThat(encode(Format.POSTGRESQL_CSV, List.of("say \"hi\", bye\nnow")))
+                .isEqualTo("\"say \"\"hi\"\", bye\nnow\"\n");
+    }
+
+    @Test
+    void mysqlEscapesTheSeparatorsAndNull() {
+        assertThat(encode(Format.MYSQL_TEXT, Arrays.asList(null, false, "a\tb\nc\\d\r\0")))
+                .isEqualTo("\\N\t0\ta\\tb\\nc\\\\d\\r\\0\n");
+    }
+
+    @Test
+    void textIsUtf8IncludingSurrogatePairs() {
+        String text = "ñ € 😀";
+
+        assertThat(encode(Format.POSTGRESQL_CSV, List.of(text))).isEqualTo("\"" + text + "\"\n");
+        assertThat(encode(Format.MYSQL_TEXT, List.of(text))).isEqualTo(text + "\n");
+    }
+
+    @Test
+    void theBufferGrowsAndIsReused() {
+        RowEncoder encoder = new RowEncoder(Format.MYSQL_TEXT, 4);
+        String text = "x".repeat(1000);
+
+        encoder.encode(List.of(text));
+        assertThat(encoder.size()).isEqualTo(1001);
+
+        encoder.reset();
+        encoder.encode(List.of("a", "b"));
+
+        assertThat(new String(encoder.buffer(), 0, encoder.size(), StandardCharsets.UTF_8)).isEqualTo("a\tb\n");
+    }
+
+    private static String encode(Format format, List<?> row) {
+        RowEncoder encoder = new RowEncoder(format, 16);
+        encoder.encode(row);
+
+        return new String(encoder.buffer(), 0, encoder.size(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+
+/**
+ * Hits, invalidations and the writes that happen while a result is loaded.
+ * The results are read from an embedded H2 database.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class QueryResultCacheTest {
+
+    private static final String QUERY = "SELECT * FROM employees WHERE id = ?";
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Connection conn;
+    private QueryResultCache cache;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:h2:mem:");
+
+        DbConfig dbConfig = new DbConfig();
+        dbConfig.getResultCache().setEnabled(true);
+        cache = new QueryResultCache(dbConfig);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    void aCachedResultIsNotLoadedAgain() throws Exception {
+        QueryResult first = cache.get(QUERY, List.of(1), this::load);
+
+        assertThat(cache.get(QUERY, List.of(1), this::load)).isSameAs(first);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void theParametersArePartOfTheKey() throws Exception {
+        cache.get(QUERY, List.of(1), this::load);
+        cache.get(QUERY, List.of(2), this::load);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void aWriteRemovesTheResultsOfItsTable() throws Exception {
+        String other = "SELECT * FROM departments WHERE id = ?";
+
+        cache.get(QUERY, List.of(1), this::load);
+        cache.get(other, List.of(1), this::load);
+        cache.invalidate("\"PUBLIC\".\"EMPLOYEES\"");
+        cache.get(QUERY, List.of(1), this::load);
+        cache.get(other, List.of(1), this::load);
+
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void aResultLoadedDuringAWriteIsNotKept() throws Exception {
+        cache.get(QUERY, List.of(1), () -> {
+            QueryResult result = load();
+
+            // Another thread writes after the rows were read
+            cache.invalidate("employees");
+
+            return result;
+        });
+
+        cache.get(QUERY, List.of(1), this::load);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void invalidateAllRemovesEverything() throws Exception {
+        cache.get(QUERY, List.of(1), this::load);
+        cache.invalidateAll();
+        cache.get(QUERY, List.of(1), this::load);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void aQueryWithoutTablesIsNotCached() throws Exception {
+        cache.get("SELECT 1", List.of(), this::load);
+        cache.get("SELECT 1", List.of(), this::load);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void nothingIsCachedWhenDisabled() throws Exception {
+        cache = new QueryResultCache(new DbConfig());
+
+        cache.get(QUERY, List.of(1), this::load);
+        cache.get(QUERY, List.of(1), this::load);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    private QueryResult load() throws SQLException {
+        loads.incrementAndGet();
+
+        try (Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT 1 AS id, 'Ann' AS name")) {
+            return QueryResult.read(rs);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tables found by SqlTables in the queries of DynamicQuery and a few
+ * harder ones.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class SqlTablesTest {
+
+    @Test
+    void theTableOfASimpleSelect() {
+        assertThat(SqlTables.of("SELECT * FROM employees WHERE id = ?")).containsExactly("employees");
+    }
+
+    @Test
+    void quotedAndQualifiedNamesAreNormalized() {
+        assertThat(SqlTables.of("SELECT * FROM \"HR\".\"Employees\" e JOIN `Departments` d ON e.dept = d.id"))
+                .containsExactly("employees", "departments");
+    }
+
+    @Test
+    void everyTableOfACommaList() {
+        assertThat(SqlTables.of("SELECT * FROM employees AS e, departments d, offices WHERE e.id = ?"))
+                .containsExactly("employees", "departments", "offices");
+    }
+
+    @Test
+    void everyKindOfJoin() {
+        assertThat(SqlTables.of("SELECT * FROM a LEFT JOIN b ON a.id = b.id INNER JOIN c USING (id) CROSS JOIN d"))
+                .containsExactly("a", "b", "c", "d");
+    }
+
+    @Test
+    void tablesInsideSubqueries() {
+        assertThat(SqlTables.of("SELECT * FROM (SELECT id FROM orders WHERE total > 10) o"
+                + " WHERE o.id IN (SELECT order_id FROM refunds)")).containsExactly("orders", "refunds");
+    }
+
+    @Test
+    void stringLiteralsAreIgnored() {
+        assertThat(SqlTables.of("SELECT * FROM employees WHERE name = 'from payroll join audit'"))
+                .containsExactly("employees");
+    }
+
+    @Test
+    void noTablesWithoutFrom() {
+        assertThat(SqlTables.of("SELECT 1")).isEmpty();
+    }
+
+    @Test
+    void normalizeRemovesQuotesSchemaAndCase() {
+        assertThat(SqlTables.normalize("\"HR\".\"Employees\"")).isEqualTo("employees");
+        assertThat(SqlTables.normalize("`hr`.`EMPLOYEES`")).isEqualTo("employees");
+        assertThat(SqlTables.normalize("Employees")).isEqualTo("employees");
+    }
+}
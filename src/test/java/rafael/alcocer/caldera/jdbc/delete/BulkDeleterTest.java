@@ -0,0 +1,122 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.delete;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.binding.BindingPlanCache;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.query.Condition;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+
+/**
+ * BulkDeleter over an embedded H2 database, which can't limit a DELETE.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class BulkDeleterTest {
+
+    private static final DeleteOptions OPTIONS = new DeleteOptions(10, 0, false);
+
+    private Connection conn;
+    private BulkDeleter bulkDeleter;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:delete;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE");
+
+        // Keeps the database open between the connections of the deleter
+        conn = dataSource.getConnection();
+
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT PRIMARY KEY, quantity INT)");
+            statement.execute("INSERT INTO items SELECT \"X\", MOD(\"X\", 2) FROM SYSTEM_RANGE(1, 25)");
+            statement.execute("CREATE TABLE events (name VARCHAR(20), quantity INT)");
+            statement.execute("INSERT INTO events SELECT 'event' || \"X\", MOD(\"X\", 2) FROM SYSTEM_RANGE(1, 25)");
+        }
+
+        DbConfig dbConfig = new DbConfig();
+        QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry(), dbConfig);
+        ReplicaRouter replicaRouter = new ReplicaRouter(dataSource, List.of(), Duration.ZERO, Duration.ZERO);
+
+        bulkDeleter = new BulkDeleter(dataSource, new TableMetadataCache(replicaRouter, queryMetrics, dbConfig),
+                new BindingPlanCache(dbConfig), queryMetrics);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    void aSingleColumnKeyIsDeletedInRanges() throws SQLException {
+        List<DeleteProgress> progress = new ArrayList<>();
+        DeleteResult result = bulkDeleter.deleteAll("items", OPTIONS, progress::add);
+
+        assertThat(result.mode()).isEqualTo(DeleteMode.KEY_RANGES);
+        assertThat(result.rowsDeleted()).isEqualTo(25);
+        assertThat(result.chunks()).isEqualTo(3);
+        assertThat(progress).hasSize(3);
+        assertThat(count("items")).isZero();
+    }
+
+    @Test
+    void withoutKeyNorLimitTheRowsAreDeletedInOneStatement() throws SQLException {
+        DeleteResult result = bulkDeleter.deleteAll("events", OPTIONS, progress -> {
+        });
+
+        assertThat(result.mode()).isEqualTo(DeleteMode.SINGLE_STATEMENT);
+        assertThat(result.rowsDeleted()).isEqualTo(25);
+        assertThat(result.completed()).isTrue();
+        assertThat(count("events")).isZero();
+    }
+
+    @Test
+    void theStatementKeepsTheFilter() throws SQLException {
+        DeleteResult result = bulkDeleter.delete("events", Condition.eq("quantity", 0), OPTIONS, null,
+                progress -> {
+                });
+
+        assertThat(result.rowsDeleted()).isEqualTo(12);
+        assertThat(count("events")).isEqualTo(13);
+    }
+
+    private long count(String tableName) throws SQLException {
+        try (Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + tableName)) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.export;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import rafael.alcocer.caldera.jdbc.export.ByteSink.Escape;
+
+/**
+ * The bytes written by ByteSink, plain and gzipped, with the smallest buffer
+ * of ExportOptions so values are drained in the middle.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class ByteSinkTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Test
+    void csvQuotesOnlyWhenNeeded() throws IOException {
+        try (ByteSink sink = sink(false)) {
+            sink.putText("plain", Escape.CSV);
+            sink.put((byte) ',');
+            sink.putText("a,b \"c\"\nd", Escape.CSV);
+        }
+
+        assertThat(text()).isEqualTo("plain,\"a,b \"\"c\"\"\nd\"");
+    }
+
+    @Test
+    void anEmptyCsvTextIsQuotedToTellItFromNull() throws IOException {
+        try (ByteSink sink = sink(false)) {
+            sink.putText("", Escape.CSV);
+            sink.put((byte) ',');
+        }
+
+        assertThat(text()).isEqualTo("\"\",");
+    }
+
+    @Test
+    void jsonIsAlwaysQuotedAndEscaped() throws IOException {
+        try (ByteSink sink = sink(false)) {
+            sink.putText("a\"b\\c\n\r\t\u0001", Escape.JSON);
+        }
+
+        assertThat(text()).isEqualTo("\"a\\\"b\\\\c\\n\\r\\t\\u0001\"");
+    }
+
+    @Test
+    void textIsUtf8AcrossDrains() throws IOException {
+        String text = "ñ€😀".repeat(100);
+
+        try (ByteSink sink = sink(false)) {
+            sink.putText(text, Escape.CSV);
+        }
+
+        assertThat(text()).isEqualTo(text);
+    }
+
+    @Test
+    void longsAreWrittenAsDecimalText() throws IOException {
+        try (ByteSink sink = sink(false)) {
+            for (long value : new long[] { 0, -7, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+                sink.putLong(value);
+                sink.put((byte) ' ');
+            }
+        }
+
+        assertThat(text()).isEqualTo("0 -7 1234567890123 9223372036854775807 -9223372036854775808 ");
+    }
+
+    @Test
+    void theBytesAreCountedBeforeCompression() throws IOException {
+        try (ByteSink sink = sink(true)) {
+            sink.putAscii("x".repeat(1000));
+
+            assertThat(sink.bytes()).isEqualTo(1000);
+        }
+    }
+
+    @Test
+    void gzipIsReadableWithItsTrailer() throws IOException {
+        StringBuilder expected = new StringBuilder();
+
+        try (ByteSink sink = sink(true)) {
+            for (int i = 0; i < 1000; i++) {
+                sink.putLong(i);
+                sink.put((byte) ',');
+                sink.putText("nombre " + i + " ñ", Escape.CSV);
+                sink.put((byte) '\n');
+                expected.append(i).append(",nombre ").append(i).append(" ñ\n");
+            }
+        }
+
+        // GZIPInputStream checks the CRC and the size of the trailer
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(expected.toString());
+        }
+    }
+
+    private ByteSink sink(boolean gzip) throws IOException {
+        return new ByteSink(Channels.newChannel(out), true, 64, gzip);
+    }
+
+    private String text() {
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.keyed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.batch.BatchOptions;
+import rafael.alcocer.caldera.jdbc.batch.CommitMode;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+
+/**
+ * The IN lists of the deletes and the updates by primary key, over an
+ * embedded H2 database, and the rollback of the chunks that fail.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class KeyedRowWriterTest {
+
+    private static final BatchOptions OPTIONS = new BatchOptions(10, CommitMode.PER_CHUNK, 1, false);
+
+    private Connection conn;
+    private KeyedRowWriter keyedRowWriter;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:keyed;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE");
+
+        // Keeps the database open between the connections of the writer
+        conn = dataSource.getConnection();
+
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT PRIMARY KEY, quantity INT)");
+            statement.execute("INSERT INTO items SELECT \"X\", 0 FROM SYSTEM_RANGE(1, 20)");
+        }
+
+        DbConfig dbConfig = new DbConfig();
+        dbConfig.getBatch().setKeysPerStatement(4);
+
+        QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry(), dbConfig);
+        ReplicaRouter replicaRouter = new ReplicaRouter(dataSource, List.of(), Duration.ZERO, Duration.ZERO);
+
+        keyedRowWriter = new KeyedRowWriter(dataSource, new TableMetadataCache(replicaRouter, queryMetrics, dbConfig),
+                queryMetrics, dbConfig);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    void bucketIsAPowerOfTwoUpToTheKeysPerStatement() {
+        assertThat(KeyedRowWriter.bucket(1, 100)).isEqualTo(1);
+        assertThat(KeyedRowWriter.bucket(3, 100)).isEqualTo(4);
+        assertThat(KeyedRowWriter.bucket(64, 100)).isEqualTo(64);
+        assertThat(KeyedRowWriter.bucket(65, 100)).isEqualTo(100);
+        assertThat(KeyedRowWriter.bucket(100, 100)).isEqualTo(100);
+    }
+
+    @Test
+    void bucketIsNeverBelowTheKeys() {
+        assertThat(KeyedRowWriter.bucket(5, 3)).isEqualTo(5);
+    }
+
+    @Test
+    void deletedKeysAreCountedOnceDespiteThePadding() throws SQLException {
+        KeyedWriteResult result = keyedRowWriter.delete("items", List.<Object>of(1, 2, 3, 5, 7, 9, 30).iterator(),
+                OPTIONS);
+
+        assertThat(result.isSuccessful()).isTrue();
+        assertThat(result.rowsRead()).isEqualTo(7);
+        assertThat(result.rowsAffected()).isEqualTo(6);
+        assertThat(ids()).doesNotContain(1, 2, 3, 5, 7, 9).hasSize(14);
+    }
+
+    @Test
+    void updatesSetTheColumnsByPrimaryKey() throws SQLException {
+        KeyedWriteResult result = keyedRowWriter.update("items", List.of("quantity"),
+                List.of(List.of(100, 1), List.of(200, 2), List.of(300, 99)).iterator(), OPTIONS, true);
+
+        assertThat(result.rowsAffected()).isEqualTo(2);
+        assertThat(result.updateCounts()).containsExactly(1, 1, 0);
+        assertThat(quantity(1)).isEqualTo(100);
+        assertThat(quantity(2)).isEqualTo(200);
+    }
+
+    @Test
+    void aSingleTransactionIsRolledBackWhenARowCantBeBound() throws SQLException {
+        List<List<?>> rows = updates();
+
+        // A row without its key fails in the binder, not in the driver
+        rows.set(15, List.of(100));
+
+        assertThatThrownBy(() -> keyedRowWriter.update("items", List.of("quantity"), rows.iterator(),
+                new BatchOptions(10, CommitMode.SINGLE_TRANSACTION, 1, false), false))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(updated()).isZero();
+    }
+
+    @Test
+    void perChunkKeepsOnlyTheChunksCommittedBeforeARowCantBeBound() throws SQLException {
+        List<List<?>> rows = updates();
+        rows.set(15, List.of(100));
+
+        assertThatThrownBy(() -> keyedRowWriter.update("items", List.of("quantity"), rows.iterator(), OPTIONS, false))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(updated()).isEqualTo(10);
+    }
+
+    /**
+     * @return quantity 100 for every row of the table
+     */
+    private static List<List<?>> updates() {
+        List<List<?>> rows = new ArrayList<>();
+
+        for (int id = 1; id <= 20; id++) {
+            rows.add(List.of(100, id));
+        }
+
+        return rows;
+    }
+
+    private long updated() throws SQLException {
+        try (Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM items WHERE quantity = 100")) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+
+    private List<Integer> ids() throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+
+        try (Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT id FROM items")) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+
+        return ids;
+    }
+
+    private int quantity(int id) throws SQLException {
+        try (Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT quantity FROM items WHERE id = " + id)) {
+            rs.next();
+
+            return rs.getInt(1);
+        }
+    }
+}
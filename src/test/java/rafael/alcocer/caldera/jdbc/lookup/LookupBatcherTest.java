@@ -0,0 +1,114 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.lookup;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+
+/**
+ * Coalesced and one by one lookups over an embedded H2 database, whose
+ * case-insensitive VARCHAR and padded CHAR(n) columns return values that
+ * differ from the key.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class LookupBatcherTest {
+
+    private Connection conn;
+    private ExecutorService executor;
+    private LookupBatcher lookupBatcher;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:lookup;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;IGNORECASE=TRUE");
+
+        // Keeps the database open between the connections of the batcher
+        conn = dataSource.getConnection();
+
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE people (id INT PRIMARY KEY, name VARCHAR(20), code CHAR(5))");
+            statement.execute("INSERT INTO people VALUES (1, 'alice', 'ab'), (2, 'bob', 'cd'), (3, 'carol', 'ef')");
+        }
+
+        DbConfig dbConfig = new DbConfig();
+        dbConfig.getLookup().setWindow(Duration.ofMillis(50));
+
+        QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry(), dbConfig);
+        ReplicaRouter replicaRouter = new ReplicaRouter(dataSource, List.of(), Duration.ZERO, Duration.ZERO);
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        lookupBatcher = new LookupBatcher(dataSource, new TableMetadataCache(replicaRouter, queryMetrics, dbConfig),
+                queryMetrics, dbConfig, executor);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        lookupBatcher.destroy();
+        executor.shutdownNow();
+        conn.close();
+    }
+
+    @Test
+    void numericKeysOfOneWindowAreOneQuery() {
+        CompletableFuture<List<Object[]>> first = lookupBatcher.lookup("people", "id", 1);
+        CompletableFuture<List<Object[]>> second = lookupBatcher.lookup("people", "id", 2L);
+        CompletableFuture<List<Object[]>> third = lookupBatcher.lookup("people", "id", "3");
+        CompletableFuture<List<Object[]>> missing = lookupBatcher.lookup("people", "id", 4);
+
+        assertThat(first.join()).singleElement().satisfies(row -> assertThat(row[1]).isEqualTo("alice"));
+        assertThat(second.join()).singleElement().satisfies(row -> assertThat(row[1]).isEqualTo("bob"));
+        assertThat(third.join()).singleElement().satisfies(row -> assertThat(row[1]).isEqualTo("carol"));
+        assertThat(missing.join()).isEmpty();
+        assertThat(lookupBatcher.stats().batches()).isEqualTo(1);
+    }
+
+    @Test
+    void aCaseInsensitiveColumnFindsTheRowsOfEveryCase() {
+        CompletableFuture<List<Object[]>> upper = lookupBatcher.lookup("people", "name", "ALICE");
+        CompletableFuture<List<Object[]>> lower = lookupBatcher.lookup("people", "name", "bob");
+
+        assertThat(upper.join()).singleElement().satisfies(row -> assertThat(row[0]).isEqualTo(1));
+        assertThat(lower.join()).singleElement().satisfies(row -> assertThat(row[0]).isEqualTo(2));
+        assertThat(lookupBatcher.stats().batches()).isEqualTo(2);
+    }
+
+    @Test
+    void aCharColumnFindsThePaddedRows() {
+        CompletableFuture<List<Object[]>> padded = lookupBatcher.lookup("people", "code", "ab");
+
+        assertThat(padded.join()).singleElement().satisfies(row -> assertThat(row[0]).isEqualTo(1));
+    }
+}
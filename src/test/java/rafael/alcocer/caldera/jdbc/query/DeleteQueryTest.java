@@ -0,0 +1,74 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static rafael.alcocer.caldera.jdbc.query.SelectQueryTest.EMPLOYEES;
+
+import java.sql.SQLFeatureNotSupportedException;
+
+import org.junit.jupiter.api.Test;
+
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+
+/**
+ * The SQL and parameters built by DeleteQuery, without a database.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class DeleteQueryTest {
+
+    @Test
+    void withoutLimitEveryDialectGetsAPlainDelete() throws Exception {
+        SqlQuery query = new DeleteQuery(EMPLOYEES, Dialect.OTHER).where(Condition.lt("id", 100)).build();
+
+        assertThat(query.sql()).isEqualTo("DELETE FROM \"employees\" WHERE \"id\" < ?");
+        assertThat(query.parameters()).containsExactly(100);
+    }
+
+    @Test
+    void postgresqlLimitsTheRowsWithTheirPhysicalAddress() throws Exception {
+        SqlQuery query = new DeleteQuery(EMPLOYEES, Dialect.POSTGRESQL).where(Condition.isNull("created")).limit(500)
+                .build();
+
+        assertThat(query.sql()).isEqualTo("DELETE FROM \"employees\" WHERE (tableoid, ctid) IN"
+                + " (SELECT tableoid, ctid FROM \"employees\" WHERE \"created\" IS NULL LIMIT ?)");
+        assertThat(query.parameters()).containsExactly(500L);
+    }
+
+    @Test
+    void mysqlLimitsTheDeleteItself() throws Exception {
+        SqlQuery query = new DeleteQuery(EMPLOYEES, Dialect.MYSQL).where(Condition.eq("name", "Ann")).limit(500)
+                .build();
+
+        assertThat(query.sql()).isEqualTo("DELETE FROM `employees` WHERE `name` = ? LIMIT ?");
+        assertThat(query.parameters()).containsExactly("Ann", 500L);
+    }
+
+    @Test
+    void otherDatabasesCantLimitADelete() {
+        DeleteQuery query = new DeleteQuery(EMPLOYEES, Dialect.OTHER).limit(500);
+
+        assertThatThrownBy(query::build).isInstanceOf(SQLFeatureNotSupportedException.class);
+    }
+
+    @Test
+    void theLimitMustBePositive() {
+        assertThatThrownBy(() -> new DeleteQuery(EMPLOYEES, Dialect.MYSQL).limit(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
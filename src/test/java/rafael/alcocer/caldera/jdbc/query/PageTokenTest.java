@@ -0,0 +1,126 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Encoding and decoding of the page tokens, and the tokens that must be
+ * rejected.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class PageTokenTest {
+
+    private static final String SHAPE = "employees:name,id";
+
+    @Test
+    void everySupportedTypeSurvivesTheRoundTrip() {
+        Timestamp timestamp = Timestamp.valueOf("2023-05-01 10:15:30.123456789");
+        List<Object> key = Arrays.asList(null, 7, 8L, (short) 9, true, 1.5d, 2.5f, "Añn ☃", new BigDecimal("12.340"),
+                UUID.randomUUID(), timestamp, java.sql.Date.valueOf("2023-05-01"), LocalDate.of(2023, 5, 1),
+                LocalDateTime.of(2023, 5, 1, 10, 15, 30), OffsetDateTime.parse("2023-05-01T10:15:30+02:00"),
+                Instant.parse("2023-05-01T08:15:30Z"));
+
+        PageToken decoded = PageToken.decode(new PageToken(true, key).encode(SHAPE), SHAPE);
+
+        assertThat(decoded.backward()).isTrue();
+        assertThat(decoded.key()).isEqualTo(key);
+        assertThat(((Timestamp) decoded.key().get(10)).getNanos()).isEqualTo(123456789);
+    }
+
+    @Test
+    void theTokenIsUrlSafe() {
+        String token = new PageToken(false, List.of("???>>>~~~", Long.MAX_VALUE)).encode(SHAPE);
+
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void aTokenOfAnotherQueryIsRejected() {
+        String token = new PageToken(false, List.of("Ann", 5)).encode(SHAPE);
+
+        assertThatThrownBy(() -> PageToken.decode(token, "employees:id"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("The page token belongs to another query");
+    }
+
+    @Test
+    void aValueThatCantBeEncodedIsRejected() {
+        PageToken pageToken = new PageToken(false, List.of(new Object()));
+
+        assertThatThrownBy(() -> pageToken.encode(SHAPE)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void aTokenThatIsNotBase64IsRejected() {
+        assertThatThrownBy(() -> PageToken.decode("not a token!", SHAPE))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid page token");
+    }
+
+    @Test
+    void aTruncatedTokenIsRejected() {
+        String token = new PageToken(false, List.of("Ann", 5)).encode(SHAPE);
+
+        assertThatThrownBy(() -> PageToken.decode(token.substring(0, token.length() - 4), SHAPE))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid page token");
+    }
+
+    @Test
+    void aTamperedValueIsRejected() {
+        byte[] bytes = Base64.getUrlDecoder().decode(new PageToken(false, List.of(LocalDate.of(2023, 5, 1)))
+                .encode(SHAPE));
+
+        // The last character of 2023-05-01
+        bytes[bytes.length - 1] = 'x';
+
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        assertThatThrownBy(() -> PageToken.decode(token, SHAPE))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid page token");
+    }
+
+    @Test
+    void anUnknownTypeIsRejected() {
+        byte[] bytes = Base64.getUrlDecoder().decode(new PageToken(false, List.of(5)).encode(SHAPE));
+
+        // The type of the first value, after version, direction, hash and size
+        bytes[1 + 1 + 4 + 2] = 'X';
+
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        assertThatThrownBy(() -> PageToken.decode(token, SHAPE))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid page token");
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Types;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import rafael.alcocer.caldera.jdbc.metadata.ColumnMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.Dialect;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.query.SelectQuery.Direction;
+
+/**
+ * The SQL and parameters built by SelectQuery, without a database.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class SelectQueryTest {
+
+    static final TableMetadata EMPLOYEES = TableMetadata.of("employees",
+            List.of(new ColumnMetadata("id", Types.INTEGER, "serial", 10, false, true, false, null),
+                    new ColumnMetadata("name", Types.VARCHAR, "varchar", 100, false, false, false, null),
+                    new ColumnMetadata("created", Types.TIMESTAMP, "timestamp", 26, true, false, false, null)),
+            List.of("id"));
+
+    @Test
+    void allTheColumnsWhenNoneIsGiven() {
+        SqlQuery query = select(Dialect.POSTGRESQL).build();
+
+        assertThat(query.sql()).isEqualTo("SELECT * FROM \"employees\"");
+        assertThat(query.parameters()).isEmpty();
+    }
+
+    @Test
+    void namesTakeTheSpellingOfTheMetadata() {
+        SqlQuery query = select(Dialect.POSTGRESQL).columns("ID", "Name").build();
+
+        assertThat(query.sql()).isEqualTo("SELECT \"id\", \"name\" FROM \"employees\"");
+    }
+
+    @Test
+    void namesAreQuotedForTheDialect() {
+        SqlQuery query = select(Dialect.MYSQL)
+                .where(Condition.eq("name", "Ann").or(Condition.isNull("created")))
+                .orderBy("id", Direction.DESC)
+                .limit(10)
+                .build();
+
+        assertThat(query.sql()).isEqualTo(
+                "SELECT * FROM `employees` WHERE (`name` = ? OR `created` IS NULL) ORDER BY `id` DESC LIMIT ?");
+        assertThat(query.parameters()).containsExactly("Ann", 10L);
+    }
+
+    @Test
+    void anUnknownColumnIsRejected() {
+        assertThatThrownBy(() -> select(Dialect.POSTGRESQL).where(Condition.eq("salary", 1)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Column not found: employees.salary");
+    }
+
+    @Test
+    void inListsArePaddedToAPowerOfTwoWithTheLastValue() {
+        SqlQuery query = select(Dialect.POSTGRESQL).where(Condition.in("id", List.of(1, 2, 3))).build();
+
+        assertThat(query.sql()).isEqualTo("SELECT * FROM \"employees\" WHERE \"id\" IN (?, ?, ?, ?)");
+        assertThat(query.parameters()).containsExactly(1, 2, 3, 3);
+    }
+
+    @Test
+    void inListsOfAPowerOfTwoAreNotPadded() {
+        SqlQuery query = select(Dialect.POSTGRESQL).where(Condition.in("id", List.of(1, 2))).build();
+
+        assertThat(query.sql()).isEqualTo("SELECT * FROM \"employees\" WHERE \"id\" IN (?, ?)");
+        assertThat(query.parameters()).containsExactly(1, 2);
+    }
+
+    @Test
+    void anEmptyInListFindsNothing() {
+        SqlQuery query = select(Dialect.POSTGRESQL).where(Condition.in("id", List.of())).build();
+
+        assertThat(query.sql()).isEqualTo("SELECT * FROM \"employees\" WHERE 1 = 0");
+        assertThat(query.parameters()).isEmpty();
+    }
+
+    @Test
+    void keysetOfOneColumn() {
+        SqlQuery query = select(Dialect.POSTGRESQL).orderBy("id").after(List.of(5)).build();
+
+        assertThat(query.sql()).isEqualTo("SELECT * FROM \"employees\" WHERE \"id\" > ? ORDER BY \"id\" ASC");
+        assertThat(query.parameters()).containsExactly(5);
+    }
+
+    @Test
+    void keysetIsARowComparisonOnPostgresqlWhenTheDirectionsAreTheSame() {
+        SqlQuery query = select(Dialect.POSTGRESQL).orderBy("name", Direction.DESC).orderBy("id", Direction.DESC)
+                .after(List.of("Ann", 5)).build();
+
+        assertThat(query.sql()).isEqualTo(
+                "SELECT * FROM \"employees\" WHERE (\"name\", \"id\") < (?, ?) ORDER BY \"name\" DESC, \"id\" DESC");
+        assertThat(query.parameters()).containsExactly("Ann", 5);
+    }
+
+    @Test
+    void keysetIsExpandedWhenTheDirectionsDiffer() {
+        SqlQuery query = select(Dialect.POSTGRESQL).orderBy("name", Direction.DESC).orderBy("id")
+                .after(List.of("Ann", 5)).build();
+
+        assertThat(query.sql()).isEqualTo("SELECT * FROM \"employees\""
+                + " WHERE (\"name\" < ? OR (\"name\" = ? AND \"id\" > ?)) ORDER BY \"name\" DESC, \"id\" ASC");
+        assertThat(query.parameters()).containsExactly("Ann", "Ann", 5);
+    }
+
+    @Test
+    void keysetIsExpandedOnMysql() {
+        SqlQuery query = select(Dialect.MYSQL).orderBy("name").orderBy("id").after(List.of("Ann", 5)).limit(20)
+                .build();
+
+        assertThat(query.sql()).isEqualTo("SELECT * FROM `employees`"
+                + " WHERE (`name` > ? OR (`name` = ? AND `id` > ?)) ORDER BY `name` ASC, `id` ASC LIMIT ?");
+        assertThat(query.parameters()).containsExactly("Ann", "Ann", 5, 20L);
+    }
+
+    @Test
+    void keysetNeedsOneValuePerOrderColumn() {
+        SelectQuery query = select(Dialect.POSTGRESQL).orderBy("name").orderBy("id").after(List.of("Ann"));
+
+        assertThatThrownBy(query::build).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void aNegativeLimitIsRejected() {
+        assertThatThrownBy(() -> select(Dialect.POSTGRESQL).limit(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static SelectQuery select(Dialect dialect) {
+        return new SelectQuery(EMPLOYEES, dialect);
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.routing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * ReplicaRouter over three embedded H2 databases, a primary and two replicas.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class ReplicaRouterTest {
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+    private final List<Connection> held = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (Connection conn : held) {
+            conn.close();
+        }
+
+        pools.forEach(HikariDataSource::close);
+    }
+
+    @Test
+    void readsGoToTheReplicasInRoundRobin() throws Exception {
+        try (ReplicaRouter router = router(pool("replica1"), pool("replica2"))) {
+            assertThat(readFrom(router)).isEqualTo("REPLICA1");
+            assertThat(readFrom(router)).isEqualTo("REPLICA2");
+            assertThat(readFrom(router)).isEqualTo("REPLICA1");
+        }
+    }
+
+    @Test
+    void writesGoToThePrimary() throws Exception {
+        try (ReplicaRouter router = router(pool("replica1"), pool("replica2"));
+                Connection conn = router.getWriteConnection()) {
+            assertThat(name(conn)).isEqualTo("PRIMARY");
+        }
+    }
+
+    @Test
+    void withoutReplicasReadsGoToThePrimary() throws Exception {
+        try (ReplicaRouter router = router()) {
+            assertThat(readFrom(router)).isEqualTo("PRIMARY");
+        }
+    }
+
+    @Test
+    void aFailingReplicaIsEjected() throws Exception {
+        try (ReplicaRouter router = router(missing("missing1"), pool("replica2"))) {
+            assertThat(readFrom(router)).isEqualTo("REPLICA2");
+            assertThat(router.healthyReplicas()).isEqualTo(1);
+            assertThat(readFrom(router)).isEqualTo("REPLICA2");
+        }
+    }
+
+    @Test
+    void withEveryReplicaEjectedReadsGoToThePrimary() throws Exception {
+        try (ReplicaRouter router = router(missing("missing1"), missing("missing2"))) {
+            assertThat(readFrom(router)).isEqualTo("PRIMARY");
+            assertThat(router.healthyReplicas()).isZero();
+        }
+    }
+
+    @Test
+    void aReplicaWithoutFreeConnectionsIsNotEjected() throws Exception {
+        HikariDataSource replica1 = pool("replica1");
+        HikariDataSource replica2 = pool("replica2");
+
+        try (ReplicaRouter router = router(replica1, replica2)) {
+            held.add(replica1.getConnection());
+
+            // The busy replica is skipped, not ejected
+            assertThat(readFrom(router)).isEqualTo("REPLICA2");
+            assertThat(router.healthyReplicas()).isEqualTo(2);
+
+            held.add(replica2.getConnection());
+
+            // Both busy: the read fails instead of moving to the primary
+            assertThatThrownBy(() -> readFrom(router)).isInstanceOf(SQLTransientConnectionException.class);
+            assertThat(router.healthyReplicas()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void aWrittenTableIsReadFromThePrimary() throws Exception {
+        try (ReplicaRouter router = router(pool("replica1"))) {
+            router.written("Employees");
+
+            try (Connection conn = router.getReadConnection("SELECT * FROM employees WHERE id = ?")) {
+                assertThat(name(conn)).isEqualTo("PRIMARY");
+            }
+
+            try (Connection conn = router.getReadConnection("SELECT * FROM departments")) {
+                assertThat(name(conn)).isEqualTo("REPLICA1");
+            }
+        }
+    }
+
+    @Test
+    void anUnknownWriteSendsEveryReadToThePrimary() throws Exception {
+        try (ReplicaRouter router = router(pool("replica1"))) {
+            router.written(null);
+
+            try (Connection conn = router.getReadConnection("SELECT * FROM departments")) {
+                assertThat(name(conn)).isEqualTo("PRIMARY");
+            }
+        }
+    }
+
+    private ReplicaRouter router(HikariDataSource... replicas) {
+        return new ReplicaRouter(pool("primary"), List.of(replicas), Duration.ofSeconds(30), Duration.ofSeconds(2));
+    }
+
+    /**
+     * A pool of one connection, it gives up after one second.
+     */
+    private HikariDataSource pool(String database) {
+        return poolOf("jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1");
+    }
+
+    /**
+     * A pool of a database that doesn't exist, every connection fails.
+     */
+    private HikariDataSource missing(String database) {
+        return poolOf("jdbc:h2:mem:" + database + ";IFEXISTS=TRUE");
+    }
+
+    private HikariDataSource poolOf(String url) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setMaximumPoolSize(1);
+        config.setMinimumIdle(0);
+        config.setConnectionTimeout(1000);
+        config.setInitializationFailTimeout(-1);
+
+        HikariDataSource dataSource = new HikariDataSource(config);
+        pools.add(dataSource);
+
+        return dataSource;
+    }
+
+    private static String readFrom(ReplicaRouter router) throws SQLException {
+        try (Connection conn = router.getReadConnection()) {
+            return name(conn);
+        }
+    }
+
+    private static String name(Connection conn) throws SQLException {
+        return conn.getCatalog();
+    }
+}
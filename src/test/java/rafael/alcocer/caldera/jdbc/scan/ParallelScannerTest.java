@@ -0,0 +1,60 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.scan;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+import rafael.alcocer.caldera.configuration.DbConfig;
+
+/**
+ * The threads of the scans against the size of the pool.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class ParallelScannerTest {
+
+    @Test
+    void zeroUsesTheCoresWithoutTakingThePool() {
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        assertThat(ParallelScanner.parallelism(config(0, 100))).isEqualTo(Math.min(cores, 99));
+        assertThat(ParallelScanner.parallelism(config(0, 2))).isEqualTo(1);
+    }
+
+    @Test
+    void aConnectionIsLeftToTheOtherCallers() {
+        assertThat(ParallelScanner.parallelism(config(9, 10))).isEqualTo(9);
+
+        assertThatThrownBy(() -> ParallelScanner.parallelism(config(10, 10)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void aPoolOfOneConnectionStillScans() {
+        assertThat(ParallelScanner.parallelism(config(0, 1))).isEqualTo(1);
+    }
+
+    private static DbConfig config(int parallelism, int maxSize) {
+        DbConfig dbConfig = new DbConfig();
+        dbConfig.getScan().setParallelism(parallelism);
+        dbConfig.getPool().setMaxSize(maxSize);
+
+        return dbConfig;
+    }
+}
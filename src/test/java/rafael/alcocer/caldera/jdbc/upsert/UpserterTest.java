@@ -0,0 +1,184 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.upsert;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.batch.BatchOptions;
+import rafael.alcocer.caldera.jdbc.batch.CommitMode;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+
+/**
+ * Upserter over an embedded H2 database in MySQL mode, which runs
+ * ON DUPLICATE KEY UPDATE. The connections say they are MySQL so the upserter
+ * generates that SQL.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class UpserterTest {
+
+    private Connection conn;
+    private Upserter upserter;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:upsert;MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+
+        // Keeps the database open between the connections of the upserter
+        conn = dataSource.getConnection();
+
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT PRIMARY KEY, name VARCHAR(50) NOT NULL, quantity INT)");
+            statement.execute("INSERT INTO items SELECT \"X\", 'old', 0 FROM SYSTEM_RANGE(1, 5)");
+        }
+
+        DbConfig dbConfig = new DbConfig();
+        QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry(), dbConfig);
+        ReplicaRouter replicaRouter = new ReplicaRouter(dataSource, List.of(), Duration.ZERO, Duration.ZERO);
+
+        upserter = new Upserter(mysql(dataSource), new TableMetadataCache(replicaRouter, queryMetrics, dbConfig),
+                queryMetrics);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    void existingRowsAreUpdatedAndTheOthersInserted() throws SQLException {
+        UpsertResult result = upserter.upsert("items", List.of(), rows(25).iterator(),
+                new BatchOptions(10, CommitMode.PER_CHUNK, 1, false), false);
+
+        assertThat(result.isSuccessful()).isTrue();
+        assertThat(result.rowsRead()).isEqualTo(25);
+        assertThat(count()).isEqualTo(25);
+        assertThat(count("name = 'old'")).isZero();
+    }
+
+    @Test
+    void aSingleTransactionIsRolledBackWhenARowCantBeBound() throws SQLException {
+        List<List<?>> rows = rows(25);
+
+        // A row without its last column fails in the binder, not in the driver
+        rows.set(15, List.of(16, "short"));
+
+        assertThatThrownBy(() -> upserter.upsert("items", List.of(), rows.iterator(),
+                new BatchOptions(10, CommitMode.SINGLE_TRANSACTION, 1, false), false))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(count()).isEqualTo(5);
+        assertThat(count("name = 'old'")).isEqualTo(5);
+    }
+
+    @Test
+    void perChunkKeepsOnlyTheChunksCommittedBeforeARowCantBeBound() throws SQLException {
+        List<List<?>> rows = rows(25);
+        rows.set(15, List.of(16, "short"));
+
+        assertThatThrownBy(() -> upserter.upsert("items", List.of(), rows.iterator(),
+                new BatchOptions(10, CommitMode.PER_CHUNK, 1, false), false))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(count()).isEqualTo(10);
+    }
+
+    private static List<List<?>> rows(int count) {
+        List<List<?>> rows = new ArrayList<>(count);
+
+        for (int i = 1; i <= count; i++) {
+            rows.add(List.of(i, "item" + i, i));
+        }
+
+        return rows;
+    }
+
+    private long count() throws SQLException {
+        return count("TRUE");
+    }
+
+    private long count(String condition) throws SQLException {
+        try (Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM items WHERE " + condition)) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * @return the data source with connections whose metadata says MySQL
+     */
+    private static DataSource mysql(JdbcDataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(UpserterTest.class.getClassLoader(),
+                new Class<?>[] { DataSource.class }, (proxy, method, args) -> {
+                    Object result = invoke(dataSource, method, args);
+
+                    return result instanceof Connection connection ? wrap(connection) : result;
+                });
+    }
+
+    private static Connection wrap(Connection connection) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+
+            if (result instanceof DatabaseMetaData metaData) {
+                return Proxy.newProxyInstance(UpserterTest.class.getClassLoader(),
+                        new Class<?>[] { DatabaseMetaData.class },
+                        (metaDataProxy, metaDataMethod, metaDataArgs) -> "getDatabaseProductName"
+                                .equals(metaDataMethod.getName()) ? "MySQL"
+                                        : invoke(metaData, metaDataMethod, metaDataArgs));
+            }
+
+            return result;
+        };
+
+        return (Connection) Proxy.newProxyInstance(UpserterTest.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
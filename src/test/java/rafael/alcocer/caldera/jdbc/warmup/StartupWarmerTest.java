@@ -0,0 +1,174 @@
+/**
+ * Copyright [2023] [RAFAEL ALCOCER CALDERA]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rafael.alcocer.caldera.jdbc.warmup;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rafael.alcocer.caldera.configuration.DbConfig;
+import rafael.alcocer.caldera.jdbc.binding.BindingPlanCache;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadata;
+import rafael.alcocer.caldera.jdbc.metadata.TableMetadataCache;
+import rafael.alcocer.caldera.jdbc.metrics.QueryMetrics;
+import rafael.alcocer.caldera.jdbc.routing.ReplicaRouter;
+
+/**
+ * The schema snapshot of StartupWarmer over an embedded H2 database: written
+ * on the first start, used while the columns don't change.
+ *
+ * @author Rafael Alcocer Caldera
+ */
+class StartupWarmerTest {
+
+    private static final String URL = "jdbc:h2:mem:warmup;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE";
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private JdbcDataSource dataSource;
+    private Connection conn;
+    private ExecutorService executor;
+    private DbConfig dbConfig;
+    private Path snapshotFile;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL(URL);
+
+        // Keeps the database open between the connections of the warmer
+        conn = dataSource.getConnection();
+
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT PRIMARY KEY, name VARCHAR(50))");
+        }
+
+        snapshotFile = directory.resolve("schema.json");
+
+        dbConfig = new DbConfig();
+        dbConfig.setUrl(URL);
+        dbConfig.getWarmup().setTables(List.of("items"));
+        dbConfig.getWarmup().setSnapshotFile(snapshotFile.toString());
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        executor.shutdownNow();
+        conn.close();
+    }
+
+    @Test
+    void theFirstStartWritesTheSnapshot() throws IOException, SQLException {
+        TableMetadataCache tableMetadataCache = warmUp();
+
+        SchemaSnapshot snapshot = objectMapper.readValue(snapshotFile.toFile(), SchemaSnapshot.class);
+
+        assertThat(snapshot.isUsableWith(URL)).isTrue();
+        assertThat(snapshot.tables()).singleElement().satisfies(table -> {
+            assertThat(table.tableName()).isEqualTo("items");
+            assertThat(table.primaryKey()).containsExactly("id");
+            assertThat(table.fingerprint()).isNotNull();
+        });
+        assertThat(tableMetadataCache.get("items").columns()).hasSize(2);
+    }
+
+    @Test
+    void anUnchangedTableIsTakenFromTheSnapshot() throws IOException, SQLException {
+        warmUp();
+        markSnapshot();
+
+        // Only the snapshot has no primary key
+        assertThat(warmUp().get("items").primaryKey()).isEmpty();
+    }
+
+    @Test
+    void aChangedTableIsReadAgain() throws IOException, SQLException {
+        warmUp();
+        markSnapshot();
+
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("ALTER TABLE items ADD COLUMN quantity INT");
+        }
+
+        TableMetadata items = warmUp().get("items");
+
+        assertThat(items.primaryKey()).containsExactly("id");
+        assertThat(items.columns()).hasSize(3);
+    }
+
+    @Test
+    void aSnapshotOfAnotherDatabaseIsIgnored() throws IOException, SQLException {
+        warmUp();
+        markSnapshot();
+
+        dbConfig.setUrl(URL + ";IFEXISTS=TRUE");
+
+        assertThat(warmUp().get("items").primaryKey()).containsExactly("id");
+    }
+
+    /**
+     * Runs the warmer with an empty cache, as a new start would.
+     */
+    private TableMetadataCache warmUp() {
+        QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry(), dbConfig);
+        ReplicaRouter replicaRouter = new ReplicaRouter(dataSource, List.of(), Duration.ZERO, Duration.ZERO);
+        TableMetadataCache tableMetadataCache = new TableMetadataCache(replicaRouter, queryMetrics, dbConfig);
+
+        new StartupWarmer(dataSource, tableMetadataCache, new BindingPlanCache(dbConfig), objectMapper, dbConfig,
+                executor).run(new DefaultApplicationArguments());
+
+        return tableMetadataCache;
+    }
+
+    /**
+     * Drops the primary key from the snapshot, keeping its fingerprint, to
+     * tell the tables read from it.
+     */
+    private void markSnapshot() throws IOException {
+        SchemaSnapshot snapshot = objectMapper.readValue(snapshotFile.toFile(), SchemaSnapshot.class);
+        List<SchemaSnapshot.Table> tables = snapshot.tables().stream()
+                .map(table -> new SchemaSnapshot.Table(table.tableName(), table.columns(), List.of(),
+                        table.fingerprint()))
+                .toList();
+
+        objectMapper.writeValue(snapshotFile.toFile(),
+                new SchemaSnapshot(snapshot.version(), snapshot.url(), snapshot.createdAt(), tables));
+    }
+}